@@ -0,0 +1,71 @@
+package com.finance.app.benchmark;
+
+import com.finance.app.dto.OverallTrendDataPointDTO;
+import com.finance.app.dto.RiskAssessmentDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AnalysisService 基准：按币种净资产、总体趋势、风险评估
+ *
+ * 运行：java -jar target/benchmarks.jar AnalysisBenchmark -prof gc
+ * 索引、快照汇总和汇率时间线在首次调用后常驻内存，测得的是稳定状态下的开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalysisBenchmark {
+
+    @Param({"10", "200", "2000"})
+    public int accounts;
+
+    @Param({"10"})
+    public int years;
+
+    private BenchmarkContext context;
+    private LocalDate asOfDate;
+    private String trendStart;
+    private String trendEnd;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticFamily data = SyntheticFamily.generate(accounts, years, 42L);
+        context = new BenchmarkContext(data);
+        asOfDate = LocalDate.of(SyntheticFamily.LAST_YEAR, 12, 31);
+        trendStart = data.firstMonthEnd().toString();
+        trendEnd = asOfDate.toString();
+    }
+
+    @Benchmark
+    public Map<String, Object> netWorthByCurrency() {
+        return context.analysisService.getNetWorthByCurrency(null, SyntheticFamily.FAMILY_ID, asOfDate);
+    }
+
+    @Benchmark
+    public List<OverallTrendDataPointDTO> overallTrend() {
+        return context.analysisService.getOverallTrend(trendStart, trendEnd, SyntheticFamily.FAMILY_ID);
+    }
+
+    @Benchmark
+    public RiskAssessmentDTO riskAssessment() {
+        return context.analysisService.getRiskAssessment(null, SyntheticFamily.FAMILY_ID, asOfDate);
+    }
+}
@@ -0,0 +1,61 @@
+package com.finance.app.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AnnualExpenseSummaryService 基准：年度支出汇总全量计算与单个大类的增量重算
+ *
+ * 运行：java -jar target/benchmarks.jar AnnualExpenseSummaryBenchmark -prof gc
+ * 调整配置包含一条资产类型调整，accounts 参数影响调整部分读取的最新资产记录数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnualExpenseSummaryBenchmark {
+
+    @Param({"10", "200", "2000"})
+    public int accounts;
+
+    @Param({"10"})
+    public int years;
+
+    private BenchmarkContext context;
+    private List<Long> changedMajorCategoryIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticFamily data = SyntheticFamily.generate(accounts, years, 42L);
+        context = new BenchmarkContext(data);
+        // 第二个大类没有调整配置，增量重算只涉及支出部分
+        changedMajorCategoryIds = List.of(data.majorCategories.get(1).getId());
+        context.annualExpenseSummaryService.rebuild(SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR);
+    }
+
+    @Benchmark
+    public void rebuild() {
+        context.annualExpenseSummaryService.rebuild(SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR);
+    }
+
+    @Benchmark
+    public void expenseRecordsChanged() {
+        context.annualExpenseSummaryService.onExpenseRecordsChanged(
+            SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR, changedMajorCategoryIds);
+    }
+}
@@ -0,0 +1,168 @@
+package com.finance.app.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.finance.app.repository.AnnualFinancialSummaryRepository;
+import com.finance.app.repository.GoogleSheetsSyncRepository;
+import com.finance.app.repository.IncomeCategoryMajorRepository;
+import com.finance.app.repository.IncomeCategoryMinorRepository;
+import com.finance.app.repository.IncomeRecordRepository;
+import com.finance.app.repository.LiabilityTypeRepository;
+import com.finance.app.repository.PropertyRecordRepository;
+import com.finance.app.repository.UserProfileRepository;
+import com.finance.app.service.AccountBalanceIndexService;
+import com.finance.app.service.AnalysisSectionRunner;
+import com.finance.app.service.AnalysisService;
+import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.GoogleSheetsExportService;
+import com.finance.app.service.InvestmentAnalysisService;
+import com.finance.app.service.NetWorthCubeService;
+import com.finance.app.service.ReferenceDataCache;
+import com.finance.app.service.SseEmitterManager;
+import com.finance.app.service.asset.AssetAnalysisService;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
+import com.finance.app.service.expense.ExpenseAnalysisService;
+import com.finance.app.service.income.IncomeAnalysisService;
+import com.finance.app.service.liability.LiabilityAnalysisService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 基准测试用的服务装配
+ *
+ * 按生产代码的构造顺序手工组装服务，仓库全部替换为 InMemoryRepositories，
+ * 字段注入（@Autowired）的服务通过反射赋值。分段执行器为调用线程直接执行，
+ * 事务管理器为空实现，结果只反映服务层的计算与分配。
+ */
+final class BenchmarkContext {
+
+    final SyntheticFamily data;
+    final InMemoryRepositories repositories;
+    final ExchangeRateService exchangeRateService;
+    final AnalysisService analysisService;
+    final ExpenseAnalysisService expenseAnalysisService;
+    final AnnualExpenseSummaryService annualExpenseSummaryService;
+    final GoogleSheetsExportService exportService;
+    final RecordingGoogleSheetsService sheetsService;
+
+    BenchmarkContext(SyntheticFamily data) {
+        this.data = data;
+        InMemoryRepositories repos = new InMemoryRepositories(data);
+        this.repositories = repos;
+
+        exchangeRateService = new ExchangeRateService();
+        inject(exchangeRateService, "exchangeRateRepository", repos.exchangeRates);
+
+        ReferenceDataCache referenceDataCache = new ReferenceDataCache(
+            repos.expenseMajorCategories, repos.expenseMinorCategories,
+            FakeRepository.of(IncomeCategoryMajorRepository.class).on("findAll", args -> List.of()).build(),
+            FakeRepository.of(IncomeCategoryMinorRepository.class).on("findAll", args -> List.of()).build(),
+            repos.assetTypes, FakeRepository.of(LiabilityTypeRepository.class).build(),
+            repos.netAssetCategories, repos.assetTypeMappings, repos.liabilityTypeMappings, null);
+
+        expenseAnalysisService = new ExpenseAnalysisService();
+        inject(expenseAnalysisService, "expenseRecordRepository", repos.expenseRecords);
+        inject(expenseAnalysisService, "majorCategoryRepository", repos.expenseMajorCategories);
+        inject(expenseAnalysisService, "expenseBudgetRepository", repos.expenseBudgets);
+        inject(expenseAnalysisService, "minorCategoryRepository", repos.expenseMinorCategories);
+        inject(expenseAnalysisService, "exchangeRateService", exchangeRateService);
+        inject(expenseAnalysisService, "annualExpenseSummaryRepository", repos.annualExpenseSummaries);
+        inject(expenseAnalysisService, "referenceDataCache", referenceDataCache);
+
+        // 调整配置只有一条：第一个大类按第一种资产类型的年度变化扣减，使计算覆盖资产余额路径
+        Object[] adjustmentConfig = {data.majorCategories.get(0).getId(), "ASSET",
+            data.assetTypes.get(0).getType(), null, "SUBTRACT"};
+        Query adjustmentConfigs = FakeRepository.of(Query.class)
+            .on("getResultList", args -> List.<Object[]>of(adjustmentConfig))
+            .build();
+        NoOpTransactionManager transactionManager = new NoOpTransactionManager();
+        annualExpenseSummaryService = new AnnualExpenseSummaryService(
+            repos.annualExpenseSummaries, repos.expenseRecords, repos.expenseMajorCategories,
+            repos.expenseMinorCategories, repos.assetRecords, repos.liabilityRecords, repos.assetAccounts,
+            FakeRepository.of(PropertyRecordRepository.class).on("findByFamilyIdAndPurchaseYear", args -> List.of()).build(),
+            FakeRepository.of(AnnualFinancialSummaryRepository.class).on("findByFamilyIdAndYear", args -> Optional.empty()).build(),
+            repos.users, exchangeRateService, new ObjectMapper(), transactionManager);
+        inject(annualExpenseSummaryService, "entityManager", FakeRepository.of(EntityManager.class)
+            .on("createNativeQuery", args -> adjustmentConfigs)
+            .build());
+        inject(expenseAnalysisService, "annualExpenseSummaryService", annualExpenseSummaryService);
+
+        AccountBalanceIndexService balanceIndexService =
+            new AccountBalanceIndexService(repos.assetRecords, repos.liabilityRecords, repos.users);
+        InvestmentAnalysisService investmentAnalysisService = new InvestmentAnalysisService(
+            repos.investmentTransactions, repos.assetTypes, repos.assetRecords, repos.assetAccounts, repos.users,
+            exchangeRateService, repos.liabilityAccounts, repos.liabilityRecords, repos.expenseRecords,
+            repos.expenseMajorCategories, repos.expenseMinorCategories, balanceIndexService);
+
+        IncomeAnalysisService incomeAnalysisService = new IncomeAnalysisService();
+        inject(incomeAnalysisService, "incomeRecordRepository", FakeRepository.of(IncomeRecordRepository.class).build());
+        inject(incomeAnalysisService, "referenceDataCache", referenceDataCache);
+        inject(incomeAnalysisService, "exchangeRateService", exchangeRateService);
+        inject(incomeAnalysisService, "investmentAnalysisService", investmentAnalysisService);
+
+        NetWorthCubeService netWorthCubeService = new NetWorthCubeService(repos.netWorthCube, repos.netWorthCubeBuilds,
+            repos.batchInserts, repos.assetRecords, repos.liabilityRecords, repos.users, exchangeRateService, transactionManager);
+        AnalysisSectionRunner sectionRunner = new AnalysisSectionRunner(Runnable::run, transactionManager, 60_000L);
+
+        UserProfileRepository userProfiles = FakeRepository.of(UserProfileRepository.class)
+            .on("findByUserId", args -> Optional.empty())
+            .build();
+
+        analysisService = new AnalysisService(
+            repos.assetAccounts, repos.assetRecords, repos.liabilityAccounts, repos.liabilityRecords,
+            referenceDataCache, userProfiles, repos.users, exchangeRateService, balanceIndexService, netWorthCubeService, sectionRunner,
+            investmentAnalysisService, expenseAnalysisService, incomeAnalysisService,
+            new AssetAnalysisService(repos.assetAccounts, repos.assetRecords, repos.users, exchangeRateService,
+                balanceIndexService, netWorthCubeService),
+            new LiabilityAnalysisService(repos.liabilityAccounts, repos.liabilityRecords, repos.users, exchangeRateService,
+                balanceIndexService, netWorthCubeService));
+
+        sheetsService = new RecordingGoogleSheetsService();
+        exportService = new GoogleSheetsExportService(
+            sheetsService, FakeRepository.of(GoogleSheetsSyncRepository.class).build(),
+            repos.assetAccounts, repos.assetRecords, repos.liabilityAccounts, repos.liabilityRecords,
+            repos.expenseRecords, repos.expenseBudgets, repos.expenseMajorCategories, repos.expenseMinorCategories,
+            repos.assetTypes, FakeRepository.of(LiabilityTypeRepository.class).build(),
+            exchangeRateService, repos.users, new SseEmitterManager(), null, analysisService, repos.families,
+            null, null);
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法注入 " + target.getClass().getSimpleName() + "." + fieldName, e);
+        }
+    }
+
+    /**
+     * 空事务管理器：TransactionTemplate 只执行回调，不开启任何资源
+     */
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
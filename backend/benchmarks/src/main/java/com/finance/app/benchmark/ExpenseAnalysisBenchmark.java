@@ -0,0 +1,69 @@
+package com.finance.app.benchmark;
+
+import com.finance.app.dto.expense.BudgetExecutionDTO;
+import com.finance.app.dto.expense.ExpenseAnnualMajorCategoryDTO;
+import com.finance.app.dto.expense.ExpenseAnnualMinorCategoryDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ExpenseAnalysisService 基准：年度大类/小类汇总与预算执行（全部币种折算为 USD）
+ *
+ * 运行：java -jar target/benchmarks.jar ExpenseAnalysisBenchmark -prof gc
+ * 开支记录量与分类数相关，与账户数无关；accounts 参数保留以便和其他基准对齐。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpenseAnalysisBenchmark {
+
+    @Param({"10", "200", "2000"})
+    public int accounts;
+
+    @Param({"10"})
+    public int years;
+
+    private BenchmarkContext context;
+    private Long majorCategoryId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticFamily data = SyntheticFamily.generate(accounts, years, 42L);
+        context = new BenchmarkContext(data);
+        majorCategoryId = data.majorCategories.get(0).getId();
+    }
+
+    @Benchmark
+    public List<ExpenseAnnualMajorCategoryDTO> annualMajorCategorySummary() {
+        return context.expenseAnalysisService.getAnnualMajorCategorySummary(
+            SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR, "All");
+    }
+
+    @Benchmark
+    public List<ExpenseAnnualMinorCategoryDTO> annualMinorCategorySummary() {
+        return context.expenseAnalysisService.getAnnualMinorCategorySummary(
+            SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR, majorCategoryId, "All");
+    }
+
+    @Benchmark
+    public List<BudgetExecutionDTO> budgetExecution() {
+        return context.expenseAnalysisService.getBudgetExecution(
+            SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR, "All");
+    }
+}
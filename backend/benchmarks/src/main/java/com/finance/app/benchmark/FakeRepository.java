@@ -0,0 +1,61 @@
+package com.finance.app.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 基于动态代理的内存仓库
+ *
+ * 只实现基准测试路径上用到的查询方法（按方法名注册），接口默认方法按原实现执行，
+ * 其余方法抛出 UnsupportedOperationException，提示需要在 InMemoryRepositories 中补充。
+ * 代理本身不分配额外对象（参数数组除外），基准结果主要反映服务层的计算开销。
+ */
+final class FakeRepository<T> {
+
+    private final Class<T> type;
+    private final Map<String, Function<Object[], Object>> methods = new HashMap<>();
+
+    private FakeRepository(Class<T> type) {
+        this.type = type;
+    }
+
+    static <T> FakeRepository<T> of(Class<T> type) {
+        return new FakeRepository<>(type);
+    }
+
+    FakeRepository<T> on(String methodName, Function<Object[], Object> implementation) {
+        methods.put(methodName, implementation);
+        return this;
+    }
+
+    T build() {
+        Map<String, Function<Object[], Object>> registered = Map.copyOf(methods);
+        String name = type.getSimpleName();
+        InvocationHandler handler = (proxy, method, args) -> {
+            Function<Object[], Object> implementation = registered.get(method.getName());
+            if (implementation != null) {
+                return implementation.apply(args);
+            }
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args, name);
+            }
+            throw new UnsupportedOperationException(name + "." + method.getName() + " 未在内存仓库中实现");
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args, String name) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> "InMemory" + name;
+        };
+    }
+}
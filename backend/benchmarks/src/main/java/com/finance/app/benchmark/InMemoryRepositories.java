@@ -0,0 +1,445 @@
+package com.finance.app.benchmark;
+
+import com.finance.app.model.AnnualExpenseSummary;
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.ExchangeRate;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.InvestmentTransaction;
+import com.finance.app.model.LiabilityAccount;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.NetWorthCubeBuild;
+import com.finance.app.model.NetWorthSnapshotCube;
+import com.finance.app.repository.AnnualExpenseSummaryRepository;
+import com.finance.app.repository.AssetAccountRepository;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.AssetTypeRepository;
+import com.finance.app.repository.ExchangeRateRepository;
+import com.finance.app.repository.ExpenseBudgetRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.ExpenseRecordRepository;
+import com.finance.app.repository.FamilyRepository;
+import com.finance.app.repository.InvestmentTransactionRepository;
+import com.finance.app.repository.LiabilityAccountRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.NetAssetCategoryAssetTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryLiabilityTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryRepository;
+import com.finance.app.repository.NetWorthCubeBuildRepository;
+import com.finance.app.repository.NetWorthSnapshotCubeRepository;
+import com.finance.app.repository.RecordBatchInsertRepository;
+import com.finance.app.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * SyntheticFamily 上的内存仓库集合
+ *
+ * 查询语义与仓库接口上的 JPQL 保持一致（同一家庭、活跃账户、截至日期的最新记录等），
+ * 按账户的查询走预先建好的按日期有序列表，开销接近数据库的索引查找。
+ */
+final class InMemoryRepositories {
+
+    final UserRepository users;
+    final FamilyRepository families;
+    final AssetTypeRepository assetTypes;
+    final AssetAccountRepository assetAccounts;
+    final AssetRecordRepository assetRecords;
+    final LiabilityAccountRepository liabilityAccounts;
+    final LiabilityRecordRepository liabilityRecords;
+    final ExchangeRateRepository exchangeRates;
+    final NetAssetCategoryRepository netAssetCategories;
+    final NetAssetCategoryAssetTypeMappingRepository assetTypeMappings;
+    final NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappings;
+    final NetWorthSnapshotCubeRepository netWorthCube;
+    final NetWorthCubeBuildRepository netWorthCubeBuilds;
+    final RecordBatchInsertRepository batchInserts;
+    final ExpenseCategoryMajorRepository expenseMajorCategories;
+    final ExpenseCategoryMinorRepository expenseMinorCategories;
+    final ExpenseRecordRepository expenseRecords;
+    final ExpenseBudgetRepository expenseBudgets;
+    final AnnualExpenseSummaryRepository annualExpenseSummaries;
+    final InvestmentTransactionRepository investmentTransactions;
+
+    private final SyntheticFamily data;
+    private final List<NetWorthSnapshotCube> cubeCells = new ArrayList<>();
+    private final Set<Long> builtFamilies = new HashSet<>();
+    private final List<AnnualExpenseSummary> expenseSummaries = new ArrayList<>();
+    private final TreeMap<String, List<ExpenseRecord>> expensesByPeriod;
+
+    InMemoryRepositories(SyntheticFamily data) {
+        this.data = data;
+        this.expensesByPeriod = data.expenseRecords.stream()
+            .collect(Collectors.groupingBy(ExpenseRecord::getExpensePeriod, TreeMap::new, Collectors.toList()));
+
+        users = FakeRepository.of(UserRepository.class)
+            .on("findById", args -> data.users.stream().filter(u -> u.getId().equals(args[0])).findFirst())
+            .on("findAll", args -> data.users)
+            .on("findAllById", args -> data.users.stream().filter(u -> contains(args[0], u.getId())).toList())
+            .on("findByFamilyId", args -> familyOnly(args[0], data.users))
+            .on("findByFamilyIdAndIsActiveTrue", args -> familyOnly(args[0], data.users))
+            .build();
+        families = FakeRepository.of(FamilyRepository.class)
+            .on("findById", args -> Optional.of(data.family).filter(f -> f.getId().equals(args[0])))
+            .build();
+        assetTypes = FakeRepository.of(AssetTypeRepository.class)
+            .on("findAll", args -> data.assetTypes)
+            .on("findAllByOrderByDisplayOrderAsc", args -> data.assetTypes)
+            .on("findByIsInvestmentTrueOrderByDisplayOrderAsc", args ->
+                data.assetTypes.stream().filter(t -> Boolean.TRUE.equals(t.getIsInvestment())).toList())
+            .build();
+
+        assetAccounts = FakeRepository.of(AssetAccountRepository.class)
+            .on("findById", args -> data.assetAccounts.stream().filter(a -> a.getId().equals(args[0])).findFirst())
+            .on("findByIsActiveTrue", args -> data.assetAccounts)
+            .on("findByUserIdAndIsActiveTrue", args -> filter(data.assetAccounts, a -> a.getUserId().equals(args[0])))
+            .on("findByUserIdInAndIsActiveTrue", args -> filter(data.assetAccounts, a -> contains(args[0], a.getUserId())))
+            .on("findByFamilyIdAndIsActiveTrue", args -> familyOnly(args[0], data.assetAccounts))
+            .on("findActiveByFamilyIdWithType", args -> familyOnly(args[0], data.assetAccounts))
+            .build();
+        liabilityAccounts = FakeRepository.of(LiabilityAccountRepository.class)
+            .on("findByIsActiveTrue", args -> data.liabilityAccounts)
+            .on("findByUserIdAndIsActiveTrue", args -> filter(data.liabilityAccounts, a -> a.getUserId().equals(args[0])))
+            .on("findByUserIdInAndIsActiveTrue", args -> filter(data.liabilityAccounts, a -> contains(args[0], a.getUserId())))
+            .on("findByFamilyIdAndIsActiveTrue", args -> familyOnly(args[0], data.liabilityAccounts))
+            .on("findActiveByFamilyIdWithType", args -> familyOnly(args[0], data.liabilityAccounts))
+            .build();
+
+        assetRecords = FakeRepository.of(AssetRecordRepository.class)
+            .on("findByAccountIdOrderByRecordDateDesc", args -> descending(series(data.assetRecords, args[0])))
+            .on("findLatestByAccountId", args -> latest(data.assetRecords, args[0], null, AssetRecord::getRecordDate))
+            .on("findLatestByAccountIdBeforeOrOnDate", args ->
+                latest(data.assetRecords, args[0], (LocalDate) args[1], AssetRecord::getRecordDate))
+            .on("findLatestByAccountAndDate", args ->
+                latest(data.assetRecords, args[0], (LocalDate) args[1], AssetRecord::getRecordDate))
+            .on("findByAccountIdAndRecordDateBetweenOrderByRecordDateDesc", args -> descending(
+                between(series(data.assetRecords, args[0]), (LocalDate) args[1], (LocalDate) args[2], AssetRecord::getRecordDate)))
+            .on("findByAccountIdInAndRecordDateBetweenOrderByRecordDateDesc", args -> {
+                List<AssetRecord> result = new ArrayList<>();
+                for (Object accountId : (Collection<?>) args[0]) {
+                    result.addAll(between(series(data.assetRecords, accountId),
+                        (LocalDate) args[1], (LocalDate) args[2], AssetRecord::getRecordDate));
+                }
+                result.sort(Comparator.comparing(AssetRecord::getRecordDate).reversed());
+                return result;
+            })
+            .on("findLatestByAccountIds", args -> latestOf(data.assetRecords, args[0], null, AssetRecord::getRecordDate))
+            .on("findLatestByAccountIdsBeforeOrEqualDate", args ->
+                latestOf(data.assetRecords, args[0], (LocalDate) args[1], AssetRecord::getRecordDate))
+            .on("findLatestRecordsByFamilyAndDate", args -> latestOf(data.assetRecords,
+                    data.assetAccounts.stream().map(AssetAccount::getId).toList(), (LocalDate) args[1], AssetRecord::getRecordDate)
+                .stream()
+                .sorted(Comparator.comparing((AssetRecord r) -> r.getAccount().getAssetType().getDisplayOrder())
+                    .thenComparing(r -> r.getAccount().getAccountName()))
+                .toList())
+            .on("findAllByFamilyIdOrderByAccountAndDate", args -> flatten(data.assetRecords))
+            .on("getBalanceIndexWatermark", args -> List.<Object[]>of(new Object[]{flatten(data.assetRecords).size()}))
+            .on("findForSnapshotCube", args -> filter(flatten(data.assetRecords), r ->
+                inRange(r.getRecordDate(), (LocalDate) args[1], (LocalDate) args[2])
+                    && (args[3] == null || args[3].equals(r.getCurrency()))))
+            .build();
+        liabilityRecords = FakeRepository.of(LiabilityRecordRepository.class)
+            .on("findByAccountIdOrderByRecordDateDesc", args -> descending(series(data.liabilityRecords, args[0])))
+            .on("findLatestByAccountId", args -> latest(data.liabilityRecords, args[0], null, LiabilityRecord::getRecordDate))
+            .on("findLatestByAccountIdBeforeOrOnDate", args ->
+                latest(data.liabilityRecords, args[0], (LocalDate) args[1], LiabilityRecord::getRecordDate))
+            .on("findByAccountIdAndRecordDateBetweenOrderByRecordDateDesc", args -> descending(
+                between(series(data.liabilityRecords, args[0]), (LocalDate) args[1], (LocalDate) args[2], LiabilityRecord::getRecordDate)))
+            .on("findByAccountIdInAndRecordDateBetweenOrderByRecordDateDesc", args -> {
+                List<LiabilityRecord> result = new ArrayList<>();
+                for (Object accountId : (Collection<?>) args[0]) {
+                    result.addAll(between(series(data.liabilityRecords, accountId),
+                        (LocalDate) args[1], (LocalDate) args[2], LiabilityRecord::getRecordDate));
+                }
+                result.sort(Comparator.comparing(LiabilityRecord::getRecordDate).reversed());
+                return result;
+            })
+            .on("findLatestByAccountIds", args -> latestOf(data.liabilityRecords, args[0], null, LiabilityRecord::getRecordDate))
+            .on("findLatestByAccountIdsBeforeOrEqualDate", args ->
+                latestOf(data.liabilityRecords, args[0], (LocalDate) args[1], LiabilityRecord::getRecordDate))
+            .on("findLatestRecordsByFamilyAndDate", args -> latestOf(data.liabilityRecords,
+                    data.liabilityAccounts.stream().map(LiabilityAccount::getId).toList(), (LocalDate) args[1], LiabilityRecord::getRecordDate)
+                .stream()
+                .sorted(Comparator.comparing((LiabilityRecord r) -> r.getAccount().getLiabilityType().getDisplayOrder())
+                    .thenComparing(r -> r.getAccount().getAccountName()))
+                .toList())
+            .on("findAllByFamilyIdOrderByAccountAndDate", args -> flatten(data.liabilityRecords))
+            .on("getBalanceIndexWatermark", args -> List.<Object[]>of(new Object[]{flatten(data.liabilityRecords).size()}))
+            .on("findForSnapshotCube", args -> filter(flatten(data.liabilityRecords), r ->
+                inRange(r.getRecordDate(), (LocalDate) args[1], (LocalDate) args[2])
+                    && (args[3] == null || args[3].equals(r.getCurrency()))))
+            .build();
+
+        exchangeRates = FakeRepository.of(ExchangeRateRepository.class)
+            .on("findActiveCurrencies", args -> data.exchangeRates.stream().map(ExchangeRate::getCurrency).distinct().toList())
+            .on("getCacheWatermark", args -> List.<Object[]>of(new Object[]{data.exchangeRates.size()}))
+            .on("findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc", args -> data.exchangeRates.stream()
+                .filter(r -> r.getCurrency().equals(args[0]))
+                .sorted(Comparator.comparing(ExchangeRate::getEffectiveDate))
+                .toList())
+            .build();
+
+        netAssetCategories = FakeRepository.of(NetAssetCategoryRepository.class)
+            .on("findAllByOrderByDisplayOrderAsc", args -> data.netAssetCategories)
+            .on("findByCode", args -> data.netAssetCategories.stream().filter(c -> c.getCode().equals(args[0])).findFirst())
+            .build();
+        assetTypeMappings = FakeRepository.of(NetAssetCategoryAssetTypeMappingRepository.class)
+            .on("findAll", args -> data.assetTypeMappings)
+            .on("findByNetAssetCategoryId", args ->
+                filter(data.assetTypeMappings, m -> m.getNetAssetCategoryId().equals(args[0])))
+            .build();
+        liabilityTypeMappings = FakeRepository.of(NetAssetCategoryLiabilityTypeMappingRepository.class)
+            .on("findAll", args -> data.liabilityTypeMappings)
+            .on("findByNetAssetCategoryId", args ->
+                filter(data.liabilityTypeMappings, m -> m.getNetAssetCategoryId().equals(args[0])))
+            .build();
+
+        netWorthCube = FakeRepository.of(NetWorthSnapshotCubeRepository.class)
+            .on("deleteByFamilyId", args -> {
+                int before = cubeCells.size();
+                cubeCells.removeIf(c -> c.getFamilyId().equals(args[0]));
+                return before - cubeCells.size();
+            })
+            .on("deleteCells", args -> {
+                int before = cubeCells.size();
+                cubeCells.removeIf(c -> c.getFamilyId().equals(args[0])
+                    && inRange(c.getSnapshotDate(), (LocalDate) args[1], (LocalDate) args[2])
+                    && (args[3] == null || args[3].equals(c.getCurrency())));
+                return before - cubeCells.size();
+            })
+            .on("sumUsdByDate", args -> sumCube(args, cell -> true))
+            .on("sumUsdByDateAndTypes", args -> sumCube(args, cell -> contains(args[2], cell.getTypeCode())))
+            .build();
+        netWorthCubeBuilds = FakeRepository.of(NetWorthCubeBuildRepository.class)
+            .on("existsById", args -> builtFamilies.contains(args[0]))
+            .on("save", args -> {
+                builtFamilies.add(((NetWorthCubeBuild) args[0]).getFamilyId());
+                return args[0];
+            })
+            .build();
+        batchInserts = new RecordBatchInsertRepository(null) {
+            @Override
+            public void insertCubeCells(List<NetWorthSnapshotCube> cells) {
+                cubeCells.addAll(cells);
+            }
+        };
+
+        expenseMajorCategories = FakeRepository.of(ExpenseCategoryMajorRepository.class)
+            .on("findAll", args -> data.majorCategories)
+            .on("findById", args -> data.majorCategories.stream().filter(m -> m.getId().equals(args[0])).findFirst())
+            .on("findByCode", args -> data.majorCategories.stream().filter(m -> m.getCode().equals(args[0])).findFirst())
+            .build();
+        expenseMinorCategories = FakeRepository.of(ExpenseCategoryMinorRepository.class)
+            .on("findAll", args -> data.minorCategories)
+            .on("findById", args -> data.minorCategories.stream().filter(m -> m.getId().equals(args[0])).findFirst())
+            .on("findAllById", args -> filter(data.minorCategories, m -> contains(args[0], m.getId())))
+            .on("findByMajorCategoryIdOrderBySortOrder", args -> data.minorCategories.stream()
+                .filter(m -> m.getMajorCategoryId().equals(args[0]))
+                .sorted(Comparator.comparing(ExpenseCategoryMinor::getSortOrder))
+                .toList())
+            .build();
+        expenseRecords = FakeRepository.of(ExpenseRecordRepository.class)
+            .on("findByFamilyIdAndPeriodRange", args -> {
+                List<ExpenseRecord> result = new ArrayList<>();
+                expensesByPeriod
+                    .subMap((String) args[1], true, (String) args[2], true)
+                    .values()
+                    .forEach(rows -> result.addAll(familyOnly(args[0], rows)));
+                return result;
+            })
+            .on("findByFamilyIdAndExpensePeriodAndMinorCategoryId", args -> filter(period(args[0], args[1]),
+                r -> r.getMinorCategoryId().equals(args[2])))
+            .on("findByFamilyIdAndExpensePeriodAndCurrencyAndMinorCategoryIdIn", args -> filter(period(args[0], args[1]),
+                r -> r.getCurrency().equals(args[2]) && contains(args[3], r.getMinorCategoryId())))
+            .on("findByFamilyIdAndExpensePeriod", args -> period(args[0], args[1]))
+            .on("findByFamilyIdAndExpenseYear", args -> year(args[0], args[1], r -> true))
+            .on("findByFamilyIdAndExpenseYearAndMajorCategoryIdIn", args -> year(args[0], args[1],
+                r -> contains(args[2], r.getMajorCategoryId())))
+            .build();
+        expenseBudgets = FakeRepository.of(ExpenseBudgetRepository.class)
+            .on("findByFamilyIdAndBudgetYear", args -> filter(data.expenseBudgets, b ->
+                b.getFamilyId().equals(args[0]) && b.getBudgetYear().equals(args[1])))
+            .on("findByFamilyIdAndBudgetYearAndCurrencyAndMinorCategoryIdIn", args -> filter(data.expenseBudgets, b ->
+                b.getFamilyId().equals(args[0]) && b.getBudgetYear().equals(args[1]) && b.getCurrency().equals(args[2])
+                    && contains(args[3], b.getMinorCategoryId())))
+            .on("findByFamilyIdAndBudgetYearAndCurrency", args -> filter(data.expenseBudgets, b ->
+                b.getFamilyId().equals(args[0]) && b.getBudgetYear().equals(args[1]) && b.getCurrency().equals(args[2])))
+            .build();
+        annualExpenseSummaries = FakeRepository.of(AnnualExpenseSummaryRepository.class)
+            .on("findByFamilyIdAndSummaryYear", args -> filter(expenseSummaries, row ->
+                row.getFamilyId().equals(args[0]) && row.getSummaryYear().equals(args[1])))
+            .on("deleteByFamilyIdAndSummaryYear", args -> {
+                expenseSummaries.removeIf(row -> row.getFamilyId().equals(args[0]) && row.getSummaryYear().equals(args[1]));
+                return null;
+            })
+            .on("flush", args -> null)
+            .on("save", args -> {
+                if (expenseSummaries.stream().noneMatch(row -> row == args[0])) {
+                    expenseSummaries.add((AnnualExpenseSummary) args[0]);
+                }
+                return args[0];
+            })
+            .on("saveAll", args -> {
+                for (Object row : (Iterable<?>) args[0]) {
+                    expenseSummaries.add((AnnualExpenseSummary) row);
+                }
+                return args[0];
+            })
+            .on("delete", args -> {
+                expenseSummaries.removeIf(row -> row == args[0]);
+                return null;
+            })
+            .on("deleteAll", args -> {
+                for (Object deleted : (Iterable<?>) args[0]) {
+                    expenseSummaries.removeIf(row -> row == deleted);
+                }
+                return null;
+            })
+            .build();
+        investmentTransactions = FakeRepository.of(InvestmentTransactionRepository.class)
+            .on("findByFamilyIdAndYearPattern", args -> filter(data.investmentTransactions, tx ->
+                tx.getTransactionPeriod().startsWith(((String) args[1]).replace("%", ""))))
+            .on("findByFamilyIdAndAssetTypeIdAndYearPattern", args -> filter(data.investmentTransactions, tx ->
+                tx.getAccount().getAssetTypeId().equals(args[1])
+                    && tx.getTransactionPeriod().startsWith(((String) args[2]).replace("%", ""))))
+            .on("findByAccountIdAndYearPattern", args -> data.investmentTransactions.stream()
+                .filter(tx -> tx.getAccountId().equals(args[0])
+                    && tx.getTransactionPeriod().startsWith(((String) args[1]).replace("%", "")))
+                .sorted(Comparator.comparing(InvestmentTransaction::getTransactionPeriod))
+                .toList())
+            .build();
+    }
+
+    /**
+     * 已写入内存快照汇总的单元格数
+     */
+    int cubeCellCount() {
+        return cubeCells.size();
+    }
+
+    private List<Object[]> sumCube(Object[] args, Predicate<NetWorthSnapshotCube> typeFilter) {
+        LocalDate start = (LocalDate) args[args.length - 2];
+        LocalDate end = (LocalDate) args[args.length - 1];
+        Map<LocalDate, BigDecimal> totals = new TreeMap<>();
+        for (NetWorthSnapshotCube cell : cubeCells) {
+            if (cell.getFamilyId().equals(args[0]) && cell.getRecordKind().equals(args[1])
+                    && inRange(cell.getSnapshotDate(), start, end) && typeFilter.test(cell)) {
+                totals.merge(cell.getSnapshotDate(), cell.getAmountUsd(), BigDecimal::add);
+            }
+        }
+        return totals.entrySet().stream().map(e -> new Object[]{e.getKey(), e.getValue()}).collect(Collectors.toList());
+    }
+
+    private List<ExpenseRecord> year(Object familyId, Object year, Predicate<ExpenseRecord> predicate) {
+        List<ExpenseRecord> result = new ArrayList<>();
+        expensesByPeriod
+            .subMap(year + "-01", true, year + "-12", true)
+            .values()
+            .forEach(rows -> result.addAll(filter(familyOnly(familyId, rows), predicate)));
+        return result;
+    }
+
+    private List<ExpenseRecord> period(Object familyId, Object expensePeriod) {
+        return familyOnly(familyId, expensesByPeriod.getOrDefault((String) expensePeriod, List.of()));
+    }
+
+    private <T> List<T> familyOnly(Object familyId, List<T> rows) {
+        return Objects.equals(familyId, SyntheticFamily.FAMILY_ID) ? rows : List.of();
+    }
+
+    private static <T> List<T> filter(List<T> rows, Predicate<T> predicate) {
+        List<T> result = new ArrayList<>();
+        for (T row : rows) {
+            if (predicate.test(row)) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static boolean contains(Object collection, Object value) {
+        return ((Collection<?>) collection).contains(value);
+    }
+
+    private static boolean inRange(LocalDate date, LocalDate start, LocalDate end) {
+        return !date.isBefore(start) && !date.isAfter(end);
+    }
+
+    private static <R> List<R> series(Map<Long, List<R>> recordsByAccount, Object accountId) {
+        return recordsByAccount.getOrDefault((Long) accountId, List.of());
+    }
+
+    private static <R> List<R> flatten(Map<Long, List<R>> recordsByAccount) {
+        List<R> result = new ArrayList<>();
+        recordsByAccount.keySet().stream().sorted().forEach(id -> result.addAll(recordsByAccount.get(id)));
+        return result;
+    }
+
+    private static <R> List<R> descending(List<R> ascending) {
+        List<R> result = new ArrayList<>(ascending);
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static <R> List<R> between(List<R> ascending, LocalDate start, LocalDate end, Function<R, LocalDate> date) {
+        int from = floorIndex(ascending, start.minusDays(1), date) + 1;
+        int to = floorIndex(ascending, end, date) + 1;
+        return ascending.subList(from, to);
+    }
+
+    private static <R> Optional<R> latest(Map<Long, List<R>> recordsByAccount, Object accountId, LocalDate asOfDate,
+                                          Function<R, LocalDate> date) {
+        List<R> ascending = series(recordsByAccount, accountId);
+        if (ascending.isEmpty()) {
+            return Optional.empty();
+        }
+        if (asOfDate == null) {
+            return Optional.of(ascending.get(ascending.size() - 1));
+        }
+        int index = floorIndex(ascending, asOfDate, date);
+        return index >= 0 ? Optional.of(ascending.get(index)) : Optional.empty();
+    }
+
+    private static <R> List<R> latestOf(Map<Long, List<R>> recordsByAccount, Object accountIds, LocalDate asOfDate,
+                                        Function<R, LocalDate> date) {
+        List<R> result = new ArrayList<>();
+        for (Object accountId : (Collection<?>) accountIds) {
+            latest(recordsByAccount, accountId, asOfDate, date).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    // 最后一个日期 <= target 的下标，没有时返回 -1
+    private static <R> int floorIndex(List<R> ascending, LocalDate target, Function<R, LocalDate> date) {
+        int low = 0;
+        int high = ascending.size() - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (!date.apply(ascending.get(mid)).isAfter(target)) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+}
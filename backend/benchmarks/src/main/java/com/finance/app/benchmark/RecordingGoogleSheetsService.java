@@ -0,0 +1,96 @@
+package com.finance.app.benchmark;
+
+import com.finance.app.service.GoogleSheetsService;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不访问网络的 GoogleSheetsService
+ *
+ * 覆盖所有调用 Sheets/Drive API 的方法，只统计写入的单元格数和格式请求数；
+ * 各种 create*Format 辅助方法沿用父类实现，格式请求的构建开销计入基准结果。
+ */
+class RecordingGoogleSheetsService extends GoogleSheetsService {
+
+    private final Map<String, Integer> sheetIds = new HashMap<>();
+    private long cellCount;
+    private long requestCount;
+
+    RecordingGoogleSheetsService() {
+        super(null);
+    }
+
+    @Override
+    public String createSpreadsheet(String title) {
+        return "benchmark";
+    }
+
+    @Override
+    public Integer addSheet(String spreadsheetId, String sheetTitle) {
+        return sheetIds.computeIfAbsent(sheetTitle, title -> sheetIds.size() + 1);
+    }
+
+    @Override
+    public void writeData(String spreadsheetId, String sheetName, List<List<Object>> values) {
+        for (List<Object> row : values) {
+            cellCount += row.size();
+        }
+    }
+
+    @Override
+    public void batchWriteData(String spreadsheetId, List<ValueRange> data) {
+        for (ValueRange range : data) {
+            for (List<Object> row : range.getValues()) {
+                cellCount += row.size();
+            }
+        }
+    }
+
+    @Override
+    public void batchClear(String spreadsheetId, List<String> ranges) {
+    }
+
+    @Override
+    public Map<String, Integer> getSheetIds(String spreadsheetId) {
+        return new HashMap<>(sheetIds);
+    }
+
+    @Override
+    public void formatCells(String spreadsheetId, List<Request> requests) {
+        requestCount += requests.size();
+    }
+
+    @Override
+    public String setPermissions(String spreadsheetId, String role) {
+        return getSpreadsheetUrl(spreadsheetId);
+    }
+
+    @Override
+    public boolean sheetExists(String spreadsheetId, String sheetName) {
+        return sheetIds.containsKey(sheetName);
+    }
+
+    @Override
+    public void clearSheet(String spreadsheetId, String sheetName) {
+    }
+
+    @Override
+    public void deleteSheetByTitle(String spreadsheetId, String sheetTitle) {
+        sheetIds.remove(sheetTitle);
+    }
+
+    /**
+     * 自上次调用以来写入的单元格数与格式请求数之和，并清零计数
+     */
+    long drain() {
+        long total = cellCount + requestCount;
+        cellCount = 0;
+        requestCount = 0;
+        sheetIds.clear();
+        return total;
+    }
+}
@@ -0,0 +1,59 @@
+package com.finance.app.benchmark;
+
+import com.finance.app.service.GoogleSheetsExportService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GoogleSheetsExportService 基准：生成年度报表的全部工作表（数据与格式请求），不访问网络
+ *
+ * 运行：java -jar target/benchmarks.jar SheetsExportBenchmark -prof gc
+ * 返回值为写入的单元格数与格式请求数之和，用于核对优化前后的输出规模一致。
+ * dryRunAnnualReport 走完整的新建报表流程（写入内存表格模型），返回 API 请求数与单元格数之和。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SheetsExportBenchmark {
+
+    @Param({"10", "200", "2000"})
+    public int accounts;
+
+    @Param({"10"})
+    public int years;
+
+    private BenchmarkContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new BenchmarkContext(SyntheticFamily.generate(accounts, years, 42L));
+    }
+
+    @Benchmark
+    public long exportAllSheets() throws Exception {
+        context.exportService.exportAllSheets("benchmark", SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR);
+        return context.sheetsService.drain();
+    }
+
+    @Benchmark
+    public long dryRunAnnualReport() throws Exception {
+        GoogleSheetsExportService.DryRunReport report =
+            context.exportService.dryRunAnnualReport(SyntheticFamily.FAMILY_ID, SyntheticFamily.LAST_YEAR);
+        return report.totalApiRequests() + report.tabs().stream().mapToLong(GoogleSheetsExportService.DryRunTab::cells).sum();
+    }
+}
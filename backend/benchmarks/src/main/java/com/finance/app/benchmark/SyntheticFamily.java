@@ -0,0 +1,372 @@
+package com.finance.app.benchmark;
+
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.AssetType;
+import com.finance.app.model.ExchangeRate;
+import com.finance.app.model.ExpenseBudget;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.Family;
+import com.finance.app.model.InvestmentTransaction;
+import com.finance.app.model.LiabilityAccount;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.LiabilityType;
+import com.finance.app.model.NetAssetCategory;
+import com.finance.app.model.NetAssetCategoryAssetTypeMapping;
+import com.finance.app.model.NetAssetCategoryLiabilityTypeMapping;
+import com.finance.app.model.TaxStatus;
+import com.finance.app.model.User;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成家庭数据
+ *
+ * 一个家庭、3 个成员，账户数量可配置（约 85% 资产账户、15% 负债账户，60% USD、40% CNY），
+ * 每个账户在 years 年内每月月末一条记录；另含 CNY 月度汇率、开支分类与每月开支、预算和投资交易。
+ * 相同参数和种子生成的数据完全相同，便于对比优化前后的结果。
+ */
+final class SyntheticFamily {
+
+    static final Long FAMILY_ID = 1L;
+    static final int LAST_YEAR = 2025;
+
+    private static final String[] ASSET_TYPES = {
+        "CASH", "STOCKS", "RETIREMENT_FUND", "INSURANCE", "REAL_ESTATE", "CRYPTOCURRENCY", "PRECIOUS_METALS", "OTHER"
+    };
+    private static final String[] ASSET_TYPE_NAMES = {
+        "现金类", "股票投资", "退休基金", "保险", "房地产", "数字货币", "贵金属", "其他"
+    };
+    private static final boolean[] ASSET_TYPE_INVESTMENT = {false, true, true, false, true, true, true, false};
+    // 账户类型分布权重（与 ASSET_TYPES 对应）
+    private static final int[] ASSET_TYPE_WEIGHTS = {25, 25, 15, 5, 10, 8, 4, 8};
+
+    private static final String[] LIABILITY_TYPES = {
+        "MORTGAGE", "AUTO_LOAN", "CREDIT_CARD", "PERSONAL_LOAN", "STUDENT_LOAN", "OTHER"
+    };
+    private static final String[] LIABILITY_TYPE_NAMES = {"房贷", "车贷", "信用卡", "个人贷款", "学生贷款", "其他负债"};
+
+    private static final String[][] NET_ASSET_CATEGORIES = {
+        {"REAL_ESTATE_NET", "房地产净值"}, {"LIQUID_NET", "流动资产净值"}, {"INVESTMENT_NET", "投资净值"},
+        {"OTHER_NET", "其他净值"}, {"RETIREMENT_FUND_NET", "退休基金净值"}, {"INSURANCE_NET", "保险净值"}
+    };
+    private static final String[][] NET_ASSET_ASSET_MAPPINGS = {
+        {"1", "REAL_ESTATE"}, {"2", "CASH"}, {"3", "STOCKS"}, {"3", "CRYPTOCURRENCY"}, {"4", "PRECIOUS_METALS"},
+        {"4", "OTHER"}, {"5", "RETIREMENT_FUND"}, {"6", "INSURANCE"}
+    };
+    private static final String[][] NET_ASSET_LIABILITY_MAPPINGS = {
+        {"1", "MORTGAGE"}, {"1", "AUTO_LOAN"}, {"2", "CREDIT_CARD"}, {"2", "PERSONAL_LOAN"}, {"2", "STUDENT_LOAN"},
+        {"4", "OTHER"}
+    };
+
+    private static final int MAJOR_CATEGORIES = 10;
+    private static final int MINORS_PER_MAJOR = 5;
+
+    final int accountCount;
+    final int years;
+    final Family family;
+    final List<User> users = new ArrayList<>();
+    final List<AssetType> assetTypes = new ArrayList<>();
+    final List<LiabilityType> liabilityTypes = new ArrayList<>();
+    final List<AssetAccount> assetAccounts = new ArrayList<>();
+    final List<LiabilityAccount> liabilityAccounts = new ArrayList<>();
+    // 账户ID -> 记录（按日期升序）
+    final Map<Long, List<AssetRecord>> assetRecords = new HashMap<>();
+    final Map<Long, List<LiabilityRecord>> liabilityRecords = new HashMap<>();
+    final List<ExchangeRate> exchangeRates = new ArrayList<>();
+    final List<NetAssetCategory> netAssetCategories = new ArrayList<>();
+    final List<NetAssetCategoryAssetTypeMapping> assetTypeMappings = new ArrayList<>();
+    final List<NetAssetCategoryLiabilityTypeMapping> liabilityTypeMappings = new ArrayList<>();
+    final List<ExpenseCategoryMajor> majorCategories = new ArrayList<>();
+    final List<ExpenseCategoryMinor> minorCategories = new ArrayList<>();
+    final List<ExpenseRecord> expenseRecords = new ArrayList<>();
+    final List<ExpenseBudget> expenseBudgets = new ArrayList<>();
+    final List<InvestmentTransaction> investmentTransactions = new ArrayList<>();
+
+    private final Random random;
+    private long nextRecordId = 1;
+
+    private SyntheticFamily(int accountCount, int years, long seed) {
+        this.accountCount = accountCount;
+        this.years = years;
+        this.random = new Random(seed);
+
+        family = new Family();
+        family.setId(FAMILY_ID);
+        family.setFamilyName("基准测试");
+        family.setAnnualExpenses(new BigDecimal("120000.00"));
+    }
+
+    /**
+     * @param accountCount 账户总数（资产 + 负债）
+     * @param years        记录年数，截止到 LAST_YEAR 年底
+     */
+    static SyntheticFamily generate(int accountCount, int years, long seed) {
+        SyntheticFamily data = new SyntheticFamily(accountCount, years, seed);
+        data.generateReferenceData();
+        data.generateUsers();
+        data.generateExchangeRates();
+        data.generateAccounts();
+        data.generateExpenses();
+        return data;
+    }
+
+    LocalDate firstMonthEnd() {
+        return YearMonth.of(LAST_YEAR - years + 1, 1).atEndOfMonth();
+    }
+
+    private void generateReferenceData() {
+        for (int i = 0; i < ASSET_TYPES.length; i++) {
+            AssetType type = new AssetType();
+            type.setId((long) i + 1);
+            type.setType(ASSET_TYPES[i]);
+            type.setName(ASSET_TYPES[i]);
+            type.setChineseName(ASSET_TYPE_NAMES[i]);
+            type.setIsInvestment(ASSET_TYPE_INVESTMENT[i]);
+            type.setDisplayOrder(i + 1);
+            assetTypes.add(type);
+        }
+        for (int i = 0; i < LIABILITY_TYPES.length; i++) {
+            LiabilityType type = new LiabilityType();
+            type.setId((long) i + 1);
+            type.setType(LIABILITY_TYPES[i]);
+            type.setChineseName(LIABILITY_TYPE_NAMES[i]);
+            type.setEnglishName(LIABILITY_TYPES[i]);
+            type.setDisplayOrder(i + 1);
+            liabilityTypes.add(type);
+        }
+        for (int i = 0; i < NET_ASSET_CATEGORIES.length; i++) {
+            NetAssetCategory category = new NetAssetCategory();
+            category.setId((long) i + 1);
+            category.setCode(NET_ASSET_CATEGORIES[i][0]);
+            category.setName(NET_ASSET_CATEGORIES[i][1]);
+            category.setDisplayOrder(i + 1);
+            netAssetCategories.add(category);
+        }
+        for (int i = 0; i < NET_ASSET_ASSET_MAPPINGS.length; i++) {
+            NetAssetCategoryAssetTypeMapping mapping = new NetAssetCategoryAssetTypeMapping();
+            mapping.setId((long) i + 1);
+            mapping.setNetAssetCategoryId(Long.valueOf(NET_ASSET_ASSET_MAPPINGS[i][0]));
+            mapping.setAssetType(NET_ASSET_ASSET_MAPPINGS[i][1]);
+            assetTypeMappings.add(mapping);
+        }
+        for (int i = 0; i < NET_ASSET_LIABILITY_MAPPINGS.length; i++) {
+            NetAssetCategoryLiabilityTypeMapping mapping = new NetAssetCategoryLiabilityTypeMapping();
+            mapping.setId((long) i + 1);
+            mapping.setNetAssetCategoryId(Long.valueOf(NET_ASSET_LIABILITY_MAPPINGS[i][0]));
+            mapping.setLiabilityType(NET_ASSET_LIABILITY_MAPPINGS[i][1]);
+            liabilityTypeMappings.add(mapping);
+        }
+
+        long minorId = 1;
+        for (int m = 1; m <= MAJOR_CATEGORIES; m++) {
+            ExpenseCategoryMajor major = new ExpenseCategoryMajor();
+            major.setId((long) m);
+            major.setCode("MAJOR_" + m);
+            major.setName("大类" + m);
+            major.setIcon("📦");
+            major.setSortOrder(m);
+            List<ExpenseCategoryMinor> minors = new ArrayList<>();
+            for (int n = 1; n <= MINORS_PER_MAJOR; n++) {
+                ExpenseCategoryMinor minor = new ExpenseCategoryMinor();
+                minor.setId(minorId++);
+                minor.setMajorCategoryId(major.getId());
+                minor.setMajorCategory(major);
+                minor.setName("小类" + m + "-" + n);
+                minor.setSortOrder(n);
+                minor.setExpenseType(n % 2 == 0 ? "FIXED_DAILY" : "LARGE_IRREGULAR");
+                minors.add(minor);
+            }
+            major.setMinorCategories(minors);
+            majorCategories.add(major);
+            minorCategories.addAll(minors);
+        }
+    }
+
+    private void generateUsers() {
+        for (long id = 1; id <= 3; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setFamilyId(FAMILY_ID);
+            user.setUsername("member" + id);
+            user.setFullName("成员" + id);
+            users.add(user);
+        }
+    }
+
+    private void generateExchangeRates() {
+        long id = 1;
+        exchangeRates.add(rate(id++, "CNY", LocalDate.of(2000, 1, 1), new BigDecimal("0.14000000")));
+        BigDecimal cny = new BigDecimal("0.15000000");
+        for (YearMonth month = YearMonth.from(firstMonthEnd()); !month.isAfter(YearMonth.of(LAST_YEAR, 12));
+             month = month.plusMonths(1)) {
+            cny = cny.multiply(BigDecimal.valueOf(0.99 + random.nextDouble() * 0.02)).setScale(8, RoundingMode.HALF_UP);
+            exchangeRates.add(rate(id++, "CNY", month.atDay(1), cny));
+        }
+    }
+
+    private static ExchangeRate rate(long id, String currency, LocalDate date, BigDecimal value) {
+        ExchangeRate rate = new ExchangeRate();
+        rate.setId(id);
+        rate.setCurrency(currency);
+        rate.setEffectiveDate(date);
+        rate.setRateToUsd(value);
+        rate.setIsActive(true);
+        return rate;
+    }
+
+    private void generateAccounts() {
+        int liabilityCount = Math.max(1, accountCount * 15 / 100);
+        int assetCount = Math.max(1, accountCount - liabilityCount);
+
+        for (long id = 1; id <= assetCount; id++) {
+            AssetType type = assetTypes.get(weightedIndex());
+            AssetAccount account = new AssetAccount();
+            account.setId(id);
+            account.setUserId(users.get((int) (id % users.size())).getId());
+            account.setAssetTypeId(type.getId());
+            account.setAssetType(type);
+            account.setAccountName(type.getChineseName() + "-" + id);
+            account.setCurrency(random.nextInt(10) < 6 ? "USD" : "CNY");
+            account.setTaxStatus(TaxStatus.values()[random.nextInt(TaxStatus.values().length)]);
+            account.setIsActive(true);
+            assetAccounts.add(account);
+            assetRecords.put(id, generateAssetRecords(account));
+            if (Boolean.TRUE.equals(type.getIsInvestment())) {
+                generateInvestmentTransactions(account);
+            }
+        }
+
+        for (long id = 1; id <= liabilityCount; id++) {
+            LiabilityType type = liabilityTypes.get(random.nextInt(liabilityTypes.size()));
+            LiabilityAccount account = new LiabilityAccount();
+            account.setId(id);
+            account.setUserId(users.get((int) (id % users.size())).getId());
+            account.setLiabilityTypeId(type.getId());
+            account.setLiabilityType(type);
+            account.setAccountName(type.getChineseName() + "-" + id);
+            account.setCurrency(random.nextInt(10) < 6 ? "USD" : "CNY");
+            account.setIsActive(true);
+            liabilityAccounts.add(account);
+            liabilityRecords.put(id, generateLiabilityRecords(account));
+        }
+    }
+
+    private int weightedIndex() {
+        int total = 0;
+        for (int weight : ASSET_TYPE_WEIGHTS) {
+            total += weight;
+        }
+        int pick = random.nextInt(total);
+        for (int i = 0; i < ASSET_TYPE_WEIGHTS.length; i++) {
+            pick -= ASSET_TYPE_WEIGHTS[i];
+            if (pick < 0) {
+                return i;
+            }
+        }
+        return ASSET_TYPE_WEIGHTS.length - 1;
+    }
+
+    private List<AssetRecord> generateAssetRecords(AssetAccount account) {
+        List<AssetRecord> records = new ArrayList<>();
+        double value = 1_000 + random.nextDouble() * 200_000;
+        for (YearMonth month = YearMonth.from(firstMonthEnd()); !month.isAfter(YearMonth.of(LAST_YEAR, 12));
+             month = month.plusMonths(1)) {
+            value *= 0.97 + random.nextDouble() * 0.07;
+            AssetRecord record = new AssetRecord();
+            record.setId(nextRecordId++);
+            record.setUserId(account.getUserId());
+            record.setAccountId(account.getId());
+            record.setAccount(account);
+            record.setRecordDate(month.atEndOfMonth());
+            record.setAmount(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP));
+            record.setCurrency(account.getCurrency());
+            records.add(record);
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    private List<LiabilityRecord> generateLiabilityRecords(LiabilityAccount account) {
+        List<LiabilityRecord> records = new ArrayList<>();
+        double balance = 5_000 + random.nextDouble() * 500_000;
+        for (YearMonth month = YearMonth.from(firstMonthEnd()); !month.isAfter(YearMonth.of(LAST_YEAR, 12));
+             month = month.plusMonths(1)) {
+            balance *= 0.985 + random.nextDouble() * 0.01;
+            LiabilityRecord record = new LiabilityRecord();
+            record.setId(nextRecordId++);
+            record.setUserId(account.getUserId());
+            record.setAccountId(account.getId());
+            record.setAccount(account);
+            record.setRecordDate(month.atEndOfMonth());
+            record.setOutstandingBalance(BigDecimal.valueOf(balance).setScale(2, RoundingMode.HALF_UP));
+            record.setCurrency(account.getCurrency());
+            records.add(record);
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    private void generateInvestmentTransactions(AssetAccount account) {
+        for (YearMonth month = YearMonth.from(firstMonthEnd()); !month.isAfter(YearMonth.of(LAST_YEAR, 12));
+             month = month.plusMonths(1)) {
+            InvestmentTransaction tx = new InvestmentTransaction();
+            tx.setId((long) investmentTransactions.size() + 1);
+            tx.setAccountId(account.getId());
+            tx.setAccount(account);
+            tx.setTransactionPeriod(month.toString());
+            boolean deposit = random.nextInt(4) != 0;
+            tx.setTransactionType(deposit
+                ? InvestmentTransaction.TransactionType.DEPOSIT
+                : InvestmentTransaction.TransactionType.WITHDRAWAL);
+            tx.setAmount(BigDecimal.valueOf(100 + random.nextInt(5_000_00), 2));
+            investmentTransactions.add(tx);
+        }
+    }
+
+    private void generateExpenses() {
+        long recordId = 1;
+        long budgetId = 1;
+        for (int year = LAST_YEAR - years + 1; year <= LAST_YEAR; year++) {
+            for (ExpenseCategoryMinor minor : minorCategories) {
+                for (String currency : new String[]{"USD", "CNY"}) {
+                    ExpenseBudget budget = new ExpenseBudget();
+                    budget.setId(budgetId++);
+                    budget.setFamilyId(FAMILY_ID);
+                    budget.setBudgetYear(year);
+                    budget.setMinorCategoryId(minor.getId());
+                    budget.setBudgetAmount(BigDecimal.valueOf(1_000 + random.nextInt(50_000)).setScale(2));
+                    budget.setCurrency(currency);
+                    expenseBudgets.add(budget);
+
+                    for (int month = 1; month <= 12; month++) {
+                        ExpenseRecord record = new ExpenseRecord();
+                        record.setId(recordId++);
+                        record.setFamilyId(FAMILY_ID);
+                        record.setUserId(users.get(0).getId());
+                        record.setExpenseYear(year);
+                        record.setExpenseMonth(month);
+                        record.setExpensePeriod(String.format("%d-%02d", year, month));
+                        record.setMajorCategoryId(minor.getMajorCategoryId());
+                        record.setMajorCategory(minor.getMajorCategory());
+                        record.setMinorCategoryId(minor.getId());
+                        record.setMinorCategory(minor);
+                        record.setAmount(BigDecimal.valueOf(random.nextInt(300_000), 2));
+                        record.setCurrency(currency);
+                        record.setExpenseType(minor.getExpenseType());
+                        expenseRecords.add(record);
+                    }
+                }
+            }
+        }
+    }
+}
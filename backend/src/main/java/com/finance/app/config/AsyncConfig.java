@@ -1,11 +1,13 @@
 package com.finance.app.config;
 
+import com.finance.app.util.QueryCounter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * 异步任务配置
@@ -15,17 +17,41 @@ import java.util.concurrent.Executor;
 public class AsyncConfig {
 
     /**
-     * Google Sheets导出专用线程池
+     * 分析接口并行计算线程池（仪表盘各视图并行计算）
      */
-    @Bean(name = "googleSheetsExecutor")
-    public Executor googleSheetsExecutor() {
+    @Bean(name = "analysisExecutor")
+    public Executor analysisExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(2); // 核心线程数
-        executor.setMaxPoolSize(5);  // 最大线程数
-        executor.setQueueCapacity(10); // 队列容量
-        executor.setThreadNamePrefix("google-sheets-");
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("analysis-");
+        // 请求级 SQL 统计跟随任务进入工作线程
+        executor.setTaskDecorator(QueryCounter::propagate);
+        // 队列满时由请求线程直接执行该视图，仪表盘变慢而不是返回 500
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
         executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setAwaitTerminationSeconds(60);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 分析分段线程池（财务指标、优化建议内部的并行分段）
+     * 与 analysisExecutor 分开，避免仪表盘任务等待同一线程池中的分段而相互阻塞
+     */
+    @Bean(name = "analysisSectionExecutor")
+    public Executor analysisSectionExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("analysis-section-");
+        executor.setTaskDecorator(QueryCounter::propagate);
+        // 队列满时由调用线程直接执行，退化为串行而不是拒绝
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
         executor.initialize();
         return executor;
     }
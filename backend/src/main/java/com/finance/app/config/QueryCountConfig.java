@@ -0,0 +1,51 @@
+package com.finance.app.config;
+
+import com.finance.app.util.QueryCountingDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+/**
+ * 请求级 SQL 统计配置
+ *
+ * 包装应用的 DataSource 并注册 QueryCountInterceptor；响应头由 QueryCountHeaderAdvice 按配置开启。
+ * 每条语句都经过动态代理，只在开发和测试环境通过 sql.query-count.enabled=true 开启，生产环境不包装。
+ */
+@Configuration
+@ConditionalOnProperty(name = "sql.query-count.enabled", havingValue = "true")
+public class QueryCountConfig implements WebMvcConfigurer {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public QueryCountConfig(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 用 QueryCountingDataSource 包装容器中的 DataSource（static 以便尽早注册后处理器）
+     */
+    @Bean
+    public static BeanPostProcessor queryCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof QueryCountingDataSource)) {
+                    return new QueryCountingDataSource(dataSource);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new QueryCountInterceptor(meterRegistry));
+    }
+}
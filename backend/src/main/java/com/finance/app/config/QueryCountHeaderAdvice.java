@@ -0,0 +1,40 @@
+package com.finance.app.config;
+
+import com.finance.app.util.QueryCounter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 开发环境下把当前请求的 SQL 统计写入响应头
+ * X-SQL-Statements / X-SQL-Rows / X-SQL-Time-Ms，便于在浏览器开发者工具中直接发现 N+1 查询
+ *
+ * 响应头必须在写出响应体之前设置，因此不包含响应序列化阶段触发的懒加载查询（这部分只计入指标）。
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "sql.query-count.headers", havingValue = "true")
+public class QueryCountHeaderAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        QueryCounter counter = QueryCounter.current();
+        if (counter != null) {
+            response.getHeaders().set("X-SQL-Statements", String.valueOf(counter.getStatements()));
+            response.getHeaders().set("X-SQL-Rows", String.valueOf(counter.getRows()));
+            response.getHeaders().set("X-SQL-Time-Ms", String.valueOf(counter.getElapsedMillis()));
+        }
+        return body;
+    }
+}
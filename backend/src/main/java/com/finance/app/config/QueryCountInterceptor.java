@@ -0,0 +1,77 @@
+package com.finance.app.config;
+
+import com.finance.app.util.QueryCounter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按控制器方法统计 SQL 执行情况
+ *
+ * 请求进入控制器前开始计数，请求完成（含响应序列化）后写入 Micrometer：
+ * sql.request.statements / sql.request.rows（DistributionSummary）、sql.request.time（Timer），
+ * 标签为 controller 和 method，可在 /actuator/metrics 中按方法查看。
+ * 异步处理（SSE、StreamingResponseBody）开始时原请求线程不会收到 afterCompletion，
+ * 在 afterConcurrentHandlingStarted 中解除绑定，避免计数器残留在容器线程上。
+ */
+public class QueryCountInterceptor implements AsyncHandlerInterceptor {
+
+    static final String COUNTER_ATTRIBUTE = QueryCountInterceptor.class.getName() + ".counter";
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public QueryCountInterceptor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod) {
+            request.setAttribute(COUNTER_ATTRIBUTE, QueryCounter.start());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        QueryCounter.stop();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object attribute = request.getAttribute(COUNTER_ATTRIBUTE);
+        if (!(attribute instanceof QueryCounter counter) || !(handler instanceof HandlerMethod handlerMethod)) {
+            return;
+        }
+        QueryCounter.stop();
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return;
+        }
+        String controller = handlerMethod.getBeanType().getSimpleName();
+        String method = handlerMethod.getMethod().getName();
+        DistributionSummary.builder("sql.request.statements")
+            .description("每个请求执行的SQL语句数")
+            .tags("controller", controller, "method", method)
+            .register(registry)
+            .record(counter.getStatements());
+        DistributionSummary.builder("sql.request.rows")
+            .description("每个请求读取的结果行数")
+            .tags("controller", controller, "method", method)
+            .register(registry)
+            .record(counter.getRows());
+        Timer.builder("sql.request.time")
+            .description("每个请求的数据库耗时")
+            .tags("controller", controller, "method", method)
+            .register(registry)
+            .record(counter.getElapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+}
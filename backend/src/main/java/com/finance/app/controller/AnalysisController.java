@@ -5,6 +5,7 @@ import com.finance.app.dto.AIAdviceResponseDTO;
 import com.finance.app.dto.AccountTrendDataPointDTO;
 import com.finance.app.dto.ApiResponse;
 import com.finance.app.dto.AssetSummaryDTO;
+import com.finance.app.dto.DashboardDTO;
 import com.finance.app.dto.EnhancedFinancialMetricsDTO;
 import com.finance.app.dto.FinancialMetricsDTO;
 import com.finance.app.dto.OptimizationRecommendationDTO;
@@ -15,6 +16,7 @@ import com.finance.app.dto.TrendDataPointDTO;
 import com.finance.app.security.AuthHelper;
 import com.finance.app.service.AnalysisService;
 import com.finance.app.service.ClaudeService;
+import com.finance.app.service.DashboardService;
 import com.finance.app.service.asset.AssetAnalysisService;
 import com.finance.app.service.liability.LiabilityAnalysisService;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -35,6 +37,7 @@ public class AnalysisController {
     private final AnalysisService analysisService;
     private final AssetAnalysisService assetAnalysisService;
     private final LiabilityAnalysisService liabilityAnalysisService;
+    private final DashboardService dashboardService;
     private final ClaudeService claudeService;
     private final ObjectMapper objectMapper;
     private final AuthHelper authHelper;
@@ -60,6 +63,20 @@ public class AnalysisController {
         return ApiResponse.success(summary);
     }
 
+    // 获取仪表盘数据（一次请求返回总览、净资产配置、指标和风险评估）
+    @GetMapping("/dashboard")
+    public ApiResponse<DashboardDTO> getDashboard(
+            @RequestParam(required = false) Long familyId,
+            @RequestParam(required = false) LocalDate asOfDate,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        // Use authorized family (respects admin's familyId parameter)
+        Long authorizedFamilyId = authHelper.getAuthorizedFamilyId(authHeader, familyId);
+
+        DashboardDTO dashboard = dashboardService.getDashboard(authorizedFamilyId, asOfDate);
+        return ApiResponse.success(dashboard);
+    }
+
     // 获取总资产趋势数据
     @GetMapping("/trends/total")
     public ApiResponse<List<TrendDataDTO>> getTotalAssetTrend(
@@ -0,0 +1,118 @@
+package com.finance.app.controller;
+
+import com.finance.app.security.AuthHelper;
+import com.finance.app.service.AnnualReportFileExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
+
+/**
+ * 年度报表文件导出控制器
+ * 与 Google Sheets 同步相同的工作表，直接以 CSV 压缩包或 XLSX 文件流式下载
+ */
+@RestController
+@RequestMapping("/annual-report/export")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "年度报表导出", description = "年度财务报表文件导出API")
+public class AnnualReportExportController {
+
+    private static final MediaType XLSX_MEDIA_TYPE =
+        MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    private final AnnualReportFileExportService annualReportFileExportService;
+    private final AuthHelper authHelper;
+
+    /**
+     * 导出为 CSV 压缩包（每个工作表一个 CSV 文件）
+     */
+    @GetMapping("/csv")
+    @Operation(summary = "导出年度财务报表为CSV压缩包", description = "支持多个年份；管理员可以同时导出多个家庭")
+    public ResponseEntity<StreamingResponseBody> exportCsv(
+            @Parameter(description = "年份，可多个", required = true, example = "2024")
+            @RequestParam List<Integer> years,
+
+            @Parameter(description = "家庭ID，可多个；不传时使用认证用户的家庭")
+            @RequestParam(required = false) List<Long> familyIds,
+
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        List<Long> families = authorizedFamilyIds(authHeader, familyIds);
+        List<Integer> reportYears = validateYears(years, families.size());
+        log.info("导出年度报表CSV: familyIds={}, years={}", families, reportYears);
+
+        StreamingResponseBody body = out -> annualReportFileExportService.writeCsvZip(out, families, reportYears);
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, attachment(reportYears, "zip"))
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .body(body);
+    }
+
+    /**
+     * 导出为 XLSX 工作簿
+     */
+    @GetMapping("/xlsx")
+    @Operation(summary = "导出年度财务报表为XLSX", description = "支持多个年份；管理员可以同时导出多个家庭")
+    public ResponseEntity<StreamingResponseBody> exportXlsx(
+            @Parameter(description = "年份，可多个", required = true, example = "2024")
+            @RequestParam List<Integer> years,
+
+            @Parameter(description = "家庭ID，可多个；不传时使用认证用户的家庭")
+            @RequestParam(required = false) List<Long> familyIds,
+
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        List<Long> families = authorizedFamilyIds(authHeader, familyIds);
+        List<Integer> reportYears = validateYears(years, families.size());
+        log.info("导出年度报表XLSX: familyIds={}, years={}", families, reportYears);
+
+        StreamingResponseBody body = out -> annualReportFileExportService.writeXlsx(out, families, reportYears);
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, attachment(reportYears, "xlsx"))
+            .contentType(XLSX_MEDIA_TYPE)
+            .body(body);
+    }
+
+    /**
+     * 在开始写响应之前完成权限校验，未授权时由全局异常处理返回错误
+     */
+    private List<Long> authorizedFamilyIds(String authHeader, List<Long> familyIds) {
+        if (familyIds == null || familyIds.isEmpty()) {
+            return List.of(authHelper.getFamilyIdFromAuth(authHeader));
+        }
+        List<Long> distinct = familyIds.stream().distinct().toList();
+        distinct.forEach(familyId -> authHelper.requireFamilyAccess(authHeader, familyId));
+        return distinct;
+    }
+
+    private List<Integer> validateYears(List<Integer> years, int familyCount) {
+        List<Integer> distinct = years.stream().distinct().sorted().toList();
+        if (distinct.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个年份");
+        }
+        if ((long) distinct.size() * familyCount > AnnualReportFileExportService.MAX_REPORTS_PER_EXPORT) {
+            throw new IllegalArgumentException("单次最多导出" + AnnualReportFileExportService.MAX_REPORTS_PER_EXPORT
+                + "个年度报表（家庭数 × 年份数）");
+        }
+        return distinct;
+    }
+
+    private static String attachment(List<Integer> years, String extension) {
+        String range = years.size() == 1 ? String.valueOf(years.get(0))
+            : years.get(0) + "-" + years.get(years.size() - 1);
+        return ContentDisposition.attachment()
+            .filename("annual-report-" + range + "." + extension)
+            .build()
+            .toString();
+    }
+}
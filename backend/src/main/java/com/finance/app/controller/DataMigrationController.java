@@ -10,6 +10,7 @@ import com.finance.app.repository.NetAssetCategoryRepository;
 import com.finance.app.repository.NetAssetCategoryAssetTypeMappingRepository;
 import com.finance.app.repository.NetAssetCategoryLiabilityTypeMappingRepository;
 import com.finance.app.security.AuthHelper;
+import com.finance.app.service.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
@@ -30,6 +31,7 @@ public class DataMigrationController {
     private final NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository;
     private final NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository;
     private final AuthHelper authHelper;
+    private final ReferenceDataCache referenceDataCache;
 
     @org.springframework.beans.factory.annotation.Autowired
     private org.springframework.jdbc.core.JdbcTemplate jdbcTemplate;
@@ -183,6 +185,8 @@ public class DataMigrationController {
             assetMappingCount++;
         }
 
+        referenceDataCache.invalidateAfterCommit();
+
         Map<String, Object> result = new HashMap<>();
         result.put("netAssetCategoriesCreated", 4);
         result.put("assetMappingsCreated", assetMappingCount);
@@ -172,7 +172,7 @@ public class ExpenseAnalysisController {
     }
 
     /**
-     * 计算年度支出汇总（运行存储过程）
+     * 全量重算年度支出汇总（日常由支出/资产/负债写入增量维护）
      * POST /expenses/analysis/annual/summary/calculate?familyId=1&year=2025
      */
     @PostMapping("/annual/summary/calculate")
@@ -198,6 +198,37 @@ public class ExpenseAnalysisController {
         }
     }
 
+    /**
+     * 核对年度支出汇总：全量计算并与已存数据比对，不修改数据
+     * GET /expenses/analysis/annual/summary/verify?familyId=1&year=2025
+     */
+    @GetMapping("/annual/summary/verify")
+    public ResponseEntity<Map<String, Object>> verifyAnnualExpenseSummary(
+            @RequestParam(required = false) Long familyId,
+            @RequestParam Integer year,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        try {
+            // Admin can view any family, regular users can only view their own
+            Long targetFamilyId = authHelper.getAuthorizedFamilyId(authHeader, familyId);
+
+            List<String> differences = expenseAnalysisService.verifyAnnualExpenseSummary(targetFamilyId, year);
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("consistent", differences.isEmpty());
+            data.put("differences", differences);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", data);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "核对年度汇总失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * 获取多年度支出趋势分析
      * GET /expenses/analysis/annual/trend?familyId=1&limit=5&currency=USD
@@ -3,6 +3,7 @@ package com.finance.app.controller;
 import com.finance.app.model.GoogleSheetsSync;
 import com.finance.app.repository.GoogleSheetsSyncRepository;
 import com.finance.app.security.AuthHelper;
+import com.finance.app.service.GoogleSheetsExportQueue;
 import com.finance.app.service.GoogleSheetsExportService;
 import com.finance.app.service.SseEmitterManager;
 import io.swagger.v3.oas.annotations.Operation;
@@ -15,7 +16,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -31,6 +34,7 @@ import java.util.Optional;
 public class GoogleSheetsController {
 
     private final GoogleSheetsExportService googleSheetsExportService;
+    private final GoogleSheetsExportQueue googleSheetsExportQueue;
     private final GoogleSheetsSyncRepository googleSheetsSyncRepository;
     private final SseEmitterManager sseEmitterManager;
     private final AuthHelper authHelper;
@@ -72,8 +76,8 @@ public class GoogleSheetsController {
                 return ResponseEntity.badRequest().body(errorResponse);
             }
 
-            // 启动异步任务 with authenticated family ID
-            Map<String, Object> taskResult = googleSheetsExportService.createOrUpdateAnnualReport(authenticatedFamilyId, year, permission);
+            // 加入导出队列 with authenticated family ID（同一家庭年份已有任务时返回现有任务）
+            Map<String, Object> taskResult = googleSheetsExportQueue.enqueue(authenticatedFamilyId, year, permission);
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -91,6 +95,104 @@ public class GoogleSheetsController {
         }
     }
 
+    /**
+     * 批量同步多个年份的年度财务报表（例如补齐历史年份）
+     */
+    @PostMapping("/sync-annual-reports")
+    @Operation(summary = "批量同步多个年份的年度财务报表（异步）",
+               description = "为年份范围内的每一年创建或更新报表。各年份由一个任务一起执行、共享数据加载；" +
+                             "返回批次ID，可通过批次状态接口或批次SSE接口查询汇总进度。")
+    public ResponseEntity<Map<String, Object>> syncAnnualReports(
+            @Parameter(description = "起始年份", required = true, example = "2020")
+            @RequestParam Integer fromYear,
+
+            @Parameter(description = "结束年份（含）", required = true, example = "2024")
+            @RequestParam Integer toYear,
+
+            @Parameter(description = "权限设置：reader（只读）或writer（可编辑）", example = "reader")
+            @RequestParam(defaultValue = "reader") String permission,
+
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        Long authenticatedFamilyId = authHelper.getFamilyIdFromAuth(authHeader);
+
+        if (!permission.equals("reader") && !permission.equals("writer")) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", "无效的权限参数，只能是reader或writer");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        try {
+            Map<String, Object> batchResult = googleSheetsExportQueue.enqueueRange(
+                authenticatedFamilyId, fromYear, toYear, permission);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", batchResult);
+
+            log.info("批量同步任务已启动: batchId={}, years={}", batchResult.get("batchId"), batchResult.get("years"));
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * 查询批量同步的汇总状态
+     */
+    @GetMapping("/batch-status/{batchId}")
+    @Operation(summary = "查询批量同步状态",
+               description = "返回批次中各年份任务的状态，以及按年份平均的汇总进度")
+    public ResponseEntity<Map<String, Object>> getBatchStatus(
+            @Parameter(description = "批次ID", required = true)
+            @PathVariable String batchId,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        List<GoogleSheetsSync> syncs = googleSheetsSyncRepository.findByBatchIdOrderByYear(batchId);
+        if (syncs.isEmpty()) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", "找不到指定的批量同步任务");
+            return ResponseEntity.status(404).body(errorResponse);
+        }
+
+        // Verify family access
+        authHelper.requireFamilyAccess(authHeader, syncs.get(0).getFamilyId());
+
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        int progressSum = 0;
+        for (GoogleSheetsSync sync : syncs) {
+            Map<String, Object> task = new HashMap<>();
+            task.put("syncId", sync.getId());
+            task.put("year", sync.getYear());
+            task.put("status", sync.getStatus());
+            task.put("progress", sync.getProgress());
+            if ("COMPLETED".equals(sync.getStatus())) {
+                task.put("shareUrl", sync.getShareUrl());
+            }
+            if ("FAILED".equals(sync.getStatus()) || "CANCELLED".equals(sync.getStatus())) {
+                task.put("errorMessage", sync.getErrorMessage());
+            }
+            progressSum += sync.getProgress() != null ? sync.getProgress() : 0;
+            tasks.add(task);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("batchId", batchId);
+        data.put("progress", progressSum / syncs.size());
+        data.put("tasks", tasks);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", data);
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 查询同步任务状态（轮询方式，保留用于兼容）
      */
@@ -129,7 +231,7 @@ public class GoogleSheetsController {
             data.put("permission", sync.getPermission());
         }
 
-        if ("FAILED".equals(sync.getStatus())) {
+        if ("FAILED".equals(sync.getStatus()) || "CANCELLED".equals(sync.getStatus())) {
             data.put("errorMessage", sync.getErrorMessage());
         }
 
@@ -140,6 +242,47 @@ public class GoogleSheetsController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 取消同步任务
+     */
+    @PostMapping("/sync/{syncId}/cancel")
+    @Operation(summary = "取消同步任务",
+               description = "排队中的任务立即取消；执行中的任务在写入Google Sheets之前停止，表格保持原样")
+    public ResponseEntity<Map<String, Object>> cancelSync(
+            @Parameter(description = "同步任务ID", required = true)
+            @PathVariable Long syncId,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        Optional<GoogleSheetsSync> syncOpt = googleSheetsSyncRepository.findById(syncId);
+
+        if (syncOpt.isEmpty()) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", "找不到指定的同步任务");
+            return ResponseEntity.status(404).body(errorResponse);
+        }
+
+        // Verify family access
+        authHelper.requireFamilyAccess(authHeader, syncOpt.get().getFamilyId());
+
+        String status = googleSheetsExportQueue.cancel(syncId);
+        if (status == null) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", "任务已结束，无法取消");
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("syncId", syncId);
+        data.put("status", status);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", data);
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * SSE端点 - 实时推送同步任务进度
      */
@@ -151,9 +294,12 @@ public class GoogleSheetsController {
             @PathVariable Long syncId,
             @RequestHeader(value = "Authorization", required = false) String authHeader,
             @Parameter(description = "认证Token（URL参数，用于EventSource）", required = false)
-            @RequestParam(value = "token", required = false) String tokenParam) {
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @Parameter(description = "最后收到的事件ID（URL参数，用于手动重连）", required = false)
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
 
-        log.info("客户端订阅SSE进度: syncId={}", syncId);
+        log.debug("客户端订阅SSE进度: syncId={}", syncId);
 
         // 优先使用 URL 参数中的 token（EventSource 无法发送自定义 headers）
         String effectiveAuthHeader = authHeader;
@@ -194,36 +340,82 @@ public class GoogleSheetsController {
             return emitter;
         }
 
-        // 创建SSE连接
-        SseEmitter emitter = sseEmitterManager.createEmitter(syncId);
-
-        // 立即发送当前状态
-        try {
-            Map<String, Object> initialData = new HashMap<>();
-            initialData.put("syncId", sync.getId());
-            initialData.put("status", sync.getStatus());
-            initialData.put("progress", sync.getProgress());
-            initialData.put("message", "连接成功");
-            initialData.put("timestamp", System.currentTimeMillis());
-
-            emitter.send(SseEmitter.event()
-                .name("connected")
-                .data(initialData));
-
-            // 如果任务已完成，立即发送完成消息
+        // 任务已结束但事件流中没有结果（例如服务重启后），按数据库状态补记最终事件
+        if (!sseEmitterManager.isFinished(syncId)) {
             if ("COMPLETED".equals(sync.getStatus())) {
                 sseEmitterManager.sendSuccess(syncId, sync.getShareUrl(), sync.getSpreadsheetId());
-            } else if ("FAILED".equals(sync.getStatus())) {
+            } else if ("FAILED".equals(sync.getStatus()) || "CANCELLED".equals(sync.getStatus())) {
                 sseEmitterManager.sendError(syncId, sync.getErrorMessage());
             }
-
-        } catch (Exception e) {
-            log.error("发送初始状态失败: syncId={}", syncId, e);
         }
 
+        Map<String, Object> initialData = new HashMap<>();
+        initialData.put("syncId", sync.getId());
+        initialData.put("status", sync.getStatus());
+        initialData.put("progress", sync.getProgress());
+        initialData.put("message", "连接成功");
+        initialData.put("timestamp", System.currentTimeMillis());
+
+        // 断线重连时浏览器通过 Last-Event-ID 头带上最后收到的事件ID，补发遗漏的进度
+        String effectiveLastEventId = lastEventId != null ? lastEventId : lastEventIdParam;
+        SseEmitter emitter = sseEmitterManager.subscribe(syncId, effectiveLastEventId, initialData);
+
         return emitter;
     }
 
+    /**
+     * SSE端点 - 实时推送批量同步的汇总进度
+     */
+    @GetMapping(value = "/batch-progress/{batchId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "订阅批量同步进度（SSE）",
+               description = "progress 事件包含当前年份和汇总进度；全部年份结束后推送 complete（至少一个年份成功）或 error 事件")
+    public SseEmitter subscribeBatchProgress(
+            @Parameter(description = "批次ID", required = true)
+            @PathVariable String batchId,
+            @RequestHeader(value = "Authorization", required = false) String authHeader,
+            @Parameter(description = "认证Token（URL参数，用于EventSource）", required = false)
+            @RequestParam(value = "token", required = false) String tokenParam,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+
+        String effectiveAuthHeader = authHeader;
+        if (effectiveAuthHeader == null && tokenParam != null && !tokenParam.isEmpty()) {
+            effectiveAuthHeader = "Bearer " + tokenParam;
+        }
+
+        List<GoogleSheetsSync> syncs = googleSheetsSyncRepository.findByBatchIdOrderByYear(batchId);
+        String error = null;
+        if (syncs.isEmpty()) {
+            error = "找不到指定的批量同步任务";
+        } else {
+            try {
+                authHelper.requireFamilyAccess(effectiveAuthHeader, syncs.get(0).getFamilyId());
+            } catch (Exception e) {
+                error = "无权访问此同步任务";
+            }
+        }
+        if (error != null) {
+            SseEmitter emitter = new SseEmitter(0L);
+            try {
+                emitter.send(SseEmitter.event()
+                    .name("error")
+                    .data(Map.of("error", error)));
+                emitter.complete();
+            } catch (Exception e) {
+                log.error("发送错误消息失败", e);
+            }
+            return emitter;
+        }
+
+        Map<String, Object> initialData = new HashMap<>();
+        initialData.put("batchId", batchId);
+        initialData.put("progress", syncs.stream().mapToInt(sync -> sync.getProgress() != null ? sync.getProgress() : 0).sum() / syncs.size());
+        initialData.put("years", syncs.stream().map(GoogleSheetsSync::getYear).toList());
+        initialData.put("message", "连接成功");
+        initialData.put("timestamp", System.currentTimeMillis());
+
+        return sseEmitterManager.subscribe(SseEmitterManager.batchStream(batchId), lastEventId, initialData);
+    }
+
     /**
      * 从分享链接提取spreadsheetId
      */
@@ -238,6 +430,34 @@ public class GoogleSheetsController {
         return "";
     }
 
+    /**
+     * 试运行年度报表导出（不访问Google API），返回各工作表的构建耗时、输出规模和API请求数
+     */
+    @GetMapping("/dry-run")
+    @Operation(summary = "试运行年度报表导出",
+               description = "在内存中生成全部工作表的数据、格式和图表，不创建Google Sheets表格。用于分析导出耗时和API请求数")
+    public ResponseEntity<Map<String, Object>> dryRunAnnualReport(
+            @Parameter(description = "年份", required = true, example = "2024")
+            @RequestParam Integer year,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+
+        try {
+            Long authenticatedFamilyId = authHelper.getFamilyIdFromAuth(authHeader);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", googleSheetsExportService.dryRunAnnualReport(authenticatedFamilyId, year));
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("年度报表试运行失败", e);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("error", "试运行失败：" + e.getMessage());
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
     /**
      * 测试Google Sheets连接
      * @return 连接状态
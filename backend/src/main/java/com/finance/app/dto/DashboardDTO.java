@@ -0,0 +1,25 @@
+package com.finance.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * 仪表盘聚合数据：各字段与对应的独立分析接口返回结构一致
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DashboardDTO {
+    private LocalDate asOfDate;
+    private AssetSummaryDTO summary;                          // /analysis/summary
+    private Map<String, Object> netAllocation;                // /analysis/allocation/net
+    private Map<String, Object> netWorthByTaxStatus;          // /analysis/allocation/net-worth-by-tax-status
+    private Map<String, Object> netWorthByMember;             // /analysis/allocation/net-worth-by-member
+    private Map<String, Object> netWorthByCurrency;           // /analysis/allocation/net-worth-by-currency
+    private EnhancedFinancialMetricsDTO enhancedMetrics;      // /analysis/financial-metrics/enhanced
+    private RiskAssessmentDTO riskAssessment;                 // /analysis/risk-assessment
+}
@@ -74,6 +74,9 @@ public class EnhancedFinancialMetricsDTO {
     // ==================== 新增: 综合财务健康评分 ====================
     private HealthScoreDTO healthScore;
 
+    // 超时或失败而降级为默认值的分段（assetChanges / cashFlow / investment），全部正常时为空
+    private List<String> unavailableSections;
+
     // ==================== 内部类: 顶级投资大类 ====================
     @Data
     public static class TopInvestmentCategory {
@@ -33,6 +33,9 @@ public class OptimizationRecommendationDTO {
     // 预期效果
     private ExpectedImpact expectedImpact;
 
+    // 超时或失败而降级的分段（metrics / liquidity / tax），全部正常时为空
+    private List<String> unavailableSections;
+
     /**
      * 资产配置优化建议
      */
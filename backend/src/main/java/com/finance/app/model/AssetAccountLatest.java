@@ -0,0 +1,50 @@
+package com.finance.app.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 资产账户最新记录投影（每个账户一行）
+ *
+ * 由 AssetService 在资产记录新增/修改/删除时同步维护，"当前余额"查询直接按主键读取，
+ * 不再对 asset_records 执行 MAX(record_date) 相关子查询。
+ */
+@Entity
+@Table(name = "asset_account_latest")
+@Data
+@NoArgsConstructor
+public class AssetAccountLatest {
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    /**
+     * 最新一条资产记录ID
+     */
+    @Column(name = "record_id", nullable = false)
+    private Long recordId;
+
+    @Column(name = "record_date", nullable = false)
+    private LocalDate recordDate;
+
+    @Column(nullable = false, precision = 18, scale = 2)
+    private BigDecimal amount;
+
+    @Column(length = 10)
+    private String currency;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -47,7 +47,13 @@ public class GoogleSheetsSync {
     private String permission;
 
     /**
-     * 任务状态：PENDING, IN_PROGRESS, COMPLETED, FAILED
+     * 排队时请求的权限，任务完成后写入 permission
+     */
+    @Column(name = "requested_permission", length = 20)
+    private String requestedPermission;
+
+    /**
+     * 任务状态：PENDING, IN_PROGRESS, COMPLETED, FAILED, CANCELLED
      */
     @Column(name = "status", nullable = false, length = 20)
     private String status = "PENDING";
@@ -64,6 +70,55 @@ public class GoogleSheetsSync {
     @Column(name = "error_message", columnDefinition = "TEXT")
     private String errorMessage;
 
+    /**
+     * 各工作表上次成功导出时的指纹（JSON：工作表名 → {watermark, content}）
+     * watermark 为源数据水位，content 为写入内容的摘要；用于重新导出时跳过未变化的工作表
+     */
+    @Column(name = "tab_fingerprints", columnDefinition = "TEXT")
+    private String tabFingerprints;
+
+    /**
+     * 进入队列的时间（按此顺序领取）
+     */
+    @Column(name = "queued_at")
+    private LocalDateTime queuedAt;
+
+    /**
+     * 本次排队后被领取的次数（租约过期重新排队时累加）
+     */
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    /**
+     * 领取任务的实例
+     */
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    /**
+     * 租约到期时间，过期仍未完成的任务视为已中断
+     */
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    /**
+     * 执行实例最近一次心跳时间，超时未更新的任务视为已中断（不依赖实例名称）
+     */
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    /**
+     * 是否已请求取消（执行中的任务在下一个进度节点停止）
+     */
+    @Column(name = "cancel_requested", nullable = false)
+    private Boolean cancelRequested = false;
+
+    /**
+     * 批量导出的批次ID（同一批次的年份由一个工作线程一起执行，单年份导出为空）
+     */
+    @Column(name = "batch_id", length = 36)
+    private String batchId;
+
     /**
      * 首次创建时间
      */
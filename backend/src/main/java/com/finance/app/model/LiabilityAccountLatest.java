@@ -0,0 +1,49 @@
+package com.finance.app.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 负债账户最新记录投影（每个账户一行）
+ *
+ * 由 LiabilityService 在负债记录新增/修改/删除时同步维护。
+ */
+@Entity
+@Table(name = "liability_account_latest")
+@Data
+@NoArgsConstructor
+public class LiabilityAccountLatest {
+
+    @Id
+    @Column(name = "account_id")
+    private Long accountId;
+
+    /**
+     * 最新一条负债记录ID
+     */
+    @Column(name = "record_id", nullable = false)
+    private Long recordId;
+
+    @Column(name = "record_date", nullable = false)
+    private LocalDate recordDate;
+
+    @Column(name = "outstanding_balance", nullable = false, precision = 18, scale = 2)
+    private BigDecimal outstandingBalance;
+
+    @Column(length = 10)
+    private String currency;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
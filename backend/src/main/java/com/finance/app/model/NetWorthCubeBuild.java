@@ -0,0 +1,58 @@
+package com.finance.app.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * 净资产快照汇总构建标记（每个已构建的家庭一行）
+ *
+ * 没有任何记录的家庭构建后不产生单元格，以该标记而不是单元格是否存在判断家庭是否已构建，
+ * 避免这类家庭每次查询都重新构建。清空家庭汇总时一并删除。
+ */
+@Entity
+@Table(name = "net_worth_cube_build")
+@Data
+@NoArgsConstructor
+public class NetWorthCubeBuild implements Persistable<Long> {
+
+    @Id
+    @Column(name = "family_id")
+    private Long familyId;
+
+    @Column(name = "built_at", nullable = false)
+    private LocalDateTime builtAt;
+
+    // 主键由调用方指定，标记是否已入库，使 save 直接 INSERT 而不是先 SELECT 再合并
+    @Transient
+    private boolean persisted;
+
+    public NetWorthCubeBuild(Long familyId) {
+        this.familyId = familyId;
+    }
+
+    @Override
+    public Long getId() {
+        return familyId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        persisted = true;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        builtAt = LocalDateTime.now();
+    }
+}
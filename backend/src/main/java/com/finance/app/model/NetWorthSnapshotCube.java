@@ -0,0 +1,85 @@
+package com.finance.app.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 净资产快照汇总（预聚合趋势数据）
+ *
+ * 每行为 家庭 × 快照日期 × 资产/负债 × 类型 × 币种 的合计，同时保存原币种金额和按记录日期汇率换算的USD金额。
+ * 由 NetWorthCubeService 在记录写入、账户变更和汇率变更时增量维护。
+ */
+@Entity
+@Table(name = "net_worth_snapshot_cube",
+       uniqueConstraints = @UniqueConstraint(name = "uk_cube_cell",
+           columnNames = {"family_id", "snapshot_date", "record_kind", "type_code", "currency"}),
+       indexes = @Index(name = "idx_cube_currency_date", columnList = "currency, snapshot_date"))
+@Data
+@NoArgsConstructor
+public class NetWorthSnapshotCube {
+
+    public static final String KIND_ASSET = "ASSET";
+    public static final String KIND_LIABILITY = "LIABILITY";
+
+    /**
+     * 账户未设置类型时的类型代码（只计入总额，不匹配任何类型筛选）
+     */
+    public static final String TYPE_NONE = "";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "family_id", nullable = false)
+    private Long familyId;
+
+    /**
+     * 快照日期（即记录日期）
+     */
+    @Column(name = "snapshot_date", nullable = false)
+    private LocalDate snapshotDate;
+
+    /**
+     * ASSET 或 LIABILITY
+     */
+    @Column(name = "record_kind", nullable = false, length = 20)
+    private String recordKind;
+
+    /**
+     * 资产类型 / 负债类型代码，账户未设置类型时为 TYPE_NONE
+     */
+    @Column(name = "type_code", nullable = false, length = 50)
+    private String typeCode;
+
+    @Column(nullable = false, length = 10)
+    private String currency;
+
+    /**
+     * 原币种金额合计
+     */
+    @Column(name = "amount_original", nullable = false, precision = 20, scale = 2)
+    private BigDecimal amountOriginal;
+
+    /**
+     * USD金额合计（逐条记录按记录日期汇率换算后求和）
+     */
+    @Column(name = "amount_usd", nullable = false, precision = 20, scale = 2)
+    private BigDecimal amountUsd;
+
+    @Column(name = "record_count", nullable = false)
+    private Integer recordCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -33,6 +34,24 @@ public interface AnnualExpenseSummaryRepository extends JpaRepository<AnnualExpe
         @Param("summaryYear") Integer summaryYear
     );
 
+    /**
+     * 批量查询多个年度的大类级别汇总（条件同 findMajorCategorySummary），同时加载大类
+     * @param familyId 家庭ID
+     * @param summaryYears 汇总年份
+     * @return 各年度大类级别的汇总列表
+     */
+    @Query("SELECT s FROM AnnualExpenseSummary s LEFT JOIN FETCH s.majorCategory " +
+           "WHERE s.familyId = :familyId " +
+           "AND s.summaryYear IN :summaryYears " +
+           "AND s.currency = 'USD' " +
+           "AND s.minorCategoryId IS NULL " +
+           "AND s.majorCategoryId IS NOT NULL " +
+           "ORDER BY s.summaryYear, s.actualExpenseAmount DESC")
+    List<AnnualExpenseSummary> findMajorCategorySummaryByYears(
+        @Param("familyId") Long familyId,
+        @Param("summaryYears") Collection<Integer> summaryYears
+    );
+
     /**
      * 查询小类级别的年度汇总 (minor_category_id IS NOT NULL)
      * @param familyId 家庭ID
@@ -79,6 +98,44 @@ public interface AnnualExpenseSummaryRepository extends JpaRepository<AnnualExpe
         Integer summaryYear
     );
 
+    boolean existsByFamilyIdAndSummaryYear(Long familyId, Integer summaryYear);
+
+    /**
+     * 查询家庭自某年起已有汇总数据的年份
+     */
+    @Query("SELECT DISTINCT s.summaryYear FROM AnnualExpenseSummary s " +
+           "WHERE s.familyId = :familyId " +
+           "AND s.summaryYear >= :fromYear " +
+           "ORDER BY s.summaryYear")
+    List<Integer> findSummaryYearsFrom(
+        @Param("familyId") Long familyId,
+        @Param("fromYear") Integer fromYear
+    );
+
+    /**
+     * 查询自某年起受某币种汇率影响的已有汇总 [家庭ID, 年份]（汇率变更后重算）：
+     * 当年有该币种的支出记录，或家庭有该币种的调整账户（类型在调整配置中）或房产
+     * @param currency 币种（大写）
+     * @param assetTypes 调整配置中的资产类型
+     * @param liabilityTypes 调整配置中的负债类型
+     */
+    @Query("SELECT DISTINCT s.familyId, s.summaryYear FROM AnnualExpenseSummary s " +
+           "WHERE s.summaryYear >= :fromYear AND (" +
+           "EXISTS (SELECT r.id FROM ExpenseRecord r WHERE r.familyId = s.familyId " +
+           "AND r.expenseYear = s.summaryYear AND UPPER(r.currency) = :currency) " +
+           "OR EXISTS (SELECT a.id FROM AssetAccount a, User u WHERE u.id = a.userId AND u.familyId = s.familyId " +
+           "AND UPPER(a.currency) = :currency AND a.assetType.type IN :assetTypes) " +
+           "OR EXISTS (SELECT l.id FROM LiabilityAccount l, User u WHERE u.id = l.userId AND u.familyId = s.familyId " +
+           "AND UPPER(l.currency) = :currency AND l.liabilityType.type IN :liabilityTypes) " +
+           "OR EXISTS (SELECT p.id FROM PropertyRecord p, AssetAccount pa, User u WHERE pa.id = p.assetAccountId " +
+           "AND u.id = pa.userId AND u.familyId = s.familyId " +
+           "AND (UPPER(p.currency) = :currency OR UPPER(pa.currency) = :currency))) " +
+           "ORDER BY s.familyId, s.summaryYear")
+    List<Object[]> findFamilyYearsAffectedByCurrency(@Param("fromYear") Integer fromYear,
+                                                     @Param("currency") String currency,
+                                                     @Param("assetTypes") Collection<String> assetTypes,
+                                                     @Param("liabilityTypes") Collection<String> liabilityTypes);
+
     /**
      * 删除某年度的所有汇总数据
      * @param familyId 家庭ID
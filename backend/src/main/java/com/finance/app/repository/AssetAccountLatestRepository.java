@@ -0,0 +1,25 @@
+package com.finance.app.repository;
+
+import com.finance.app.model.AssetAccountLatest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AssetAccountLatestRepository extends JpaRepository<AssetAccountLatest, Long> {
+
+    @Modifying
+    @Query(value = "DELETE FROM asset_account_latest", nativeQuery = true)
+    int deleteAllRows();
+
+    /**
+     * 从 asset_records 全量重建投影（启动时及数据恢复后执行）
+     */
+    @Modifying
+    @Query(value = "INSERT INTO asset_account_latest (account_id, record_id, record_date, amount, currency, updated_at) " +
+                   "SELECT r.account_id, r.id, r.record_date, r.amount, r.currency, NOW() FROM asset_records r " +
+                   "WHERE r.record_date = (SELECT MAX(r2.record_date) FROM asset_records r2 WHERE r2.account_id = r.account_id)",
+           nativeQuery = true)
+    int rebuildFromRecords();
+}
@@ -18,6 +18,12 @@ public interface AssetAccountRepository extends JpaRepository<AssetAccount, Long
     @Query("SELECT a FROM AssetAccount a JOIN User u ON a.userId = u.id WHERE u.familyId = :familyId AND a.isActive = true")
     List<AssetAccount> findByFamilyIdAndIsActiveTrue(@Param("familyId") Long familyId);
 
+    /**
+     * 查询家庭活跃账户并同时加载类型（供仪表盘快照在多个线程间共享使用）
+     */
+    @Query("SELECT a FROM AssetAccount a LEFT JOIN FETCH a.assetType JOIN User u ON a.userId = u.id WHERE u.familyId = :familyId AND a.isActive = true")
+    List<AssetAccount> findActiveByFamilyIdWithType(@Param("familyId") Long familyId);
+
     List<AssetAccount> findByUserIdInAndIsActiveTrue(List<Long> userIds);
 
     @Query("SELECT a FROM AssetAccount a WHERE a.userId = :userId AND a.isActive = true ORDER BY a.createdAt DESC")
@@ -63,4 +69,11 @@ public interface AssetAccountRepository extends JpaRepository<AssetAccount, Long
         @Param("familyId") Long familyId,
         @Param("types") List<String> types
     );
+
+    /**
+     * 导出水位：家庭资产账户 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(a), MAX(a.id), MAX(a.updatedAt) FROM AssetAccount a " +
+           "JOIN User u ON a.userId = u.id WHERE u.familyId = :familyId")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId);
 }
@@ -19,10 +19,13 @@ public interface AssetRecordRepository extends JpaRepository<AssetRecord, Long>
     List<AssetRecord> findByUserIdAndRecordDateBetweenOrderByRecordDateDesc(
             Long userId, LocalDate startDate, LocalDate endDate);
 
-    @Query("SELECT r FROM AssetRecord r WHERE r.accountId = :accountId " +
-           "AND r.recordDate = (SELECT MAX(r2.recordDate) FROM AssetRecord r2 WHERE r2.accountId = :accountId)")
+    // 通过 AssetAccountLatest 投影按主键定位最新记录
+    @Query("SELECT r FROM AssetAccountLatest l JOIN AssetRecord r ON r.id = l.recordId WHERE l.accountId = :accountId")
     Optional<AssetRecord> findLatestByAccountId(@Param("accountId") Long accountId);
 
+    // 直接从记录表查询最新记录（用于维护最新记录投影）
+    Optional<AssetRecord> findFirstByAccountIdOrderByRecordDateDesc(Long accountId);
+
     @Query("SELECT r FROM AssetRecord r WHERE r.userId = :userId " +
            "ORDER BY r.recordDate DESC")
     List<AssetRecord> findByUserIdOrderByDateDesc(@Param("userId") Long userId);
@@ -53,9 +56,8 @@ public interface AssetRecordRepository extends JpaRepository<AssetRecord, Long>
     /**
      * 查询指定家庭、资产类型的所有账户的最新资产记录（用于投资回报率计算）
      */
-    @Query("SELECT SUM(r.amount) FROM AssetRecord r " +
-           "WHERE r.accountId IN :accountIds " +
-           "AND r.recordDate = (SELECT MAX(r2.recordDate) FROM AssetRecord r2 WHERE r2.accountId = r.accountId)")
+    @Query("SELECT SUM(l.amount) FROM AssetAccountLatest l " +
+           "WHERE l.accountId IN :accountIds")
     BigDecimal sumLatestAmountByAccountIds(@Param("accountIds") List<Long> accountIds);
 
     /**
@@ -113,9 +115,8 @@ public interface AssetRecordRepository extends JpaRepository<AssetRecord, Long>
     /**
      * 批量查询多个账户的最新记录（用于性能优化）
      */
-    @Query("SELECT r FROM AssetRecord r " +
-           "WHERE r.accountId IN :accountIds " +
-           "AND r.recordDate = (SELECT MAX(r2.recordDate) FROM AssetRecord r2 WHERE r2.accountId = r.accountId)")
+    @Query("SELECT r FROM AssetAccountLatest l JOIN AssetRecord r ON r.id = l.recordId " +
+           "WHERE l.accountId IN :accountIds")
     List<AssetRecord> findLatestByAccountIds(@Param("accountIds") List<Long> accountIds);
 
     /**
@@ -134,4 +135,46 @@ public interface AssetRecordRepository extends JpaRepository<AssetRecord, Long>
      */
     List<AssetRecord> findByAccountIdInAndRecordDateBetweenOrderByRecordDateDesc(
             List<Long> accountIds, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * 查询指定家庭所有账户的全部记录，按账户、日期升序排列（用于构建余额索引）
+     */
+    @Query("SELECT r FROM AssetRecord r " +
+           "JOIN r.account a " +
+           "WHERE a.userId IN (SELECT u.id FROM User u WHERE u.familyId = :familyId) " +
+           "ORDER BY r.accountId, r.recordDate")
+    List<AssetRecord> findAllByFamilyIdOrderByAccountAndDate(@Param("familyId") Long familyId);
+
+    /**
+     * 余额索引水位：家庭账户的记录 [条数, 最大ID, 记录最近更新时间, 账户最近更新时间]
+     */
+    @Query("SELECT COUNT(r), MAX(r.id), MAX(r.updatedAt), MAX(a.updatedAt) FROM AssetRecord r " +
+           "JOIN r.account a " +
+           "WHERE a.userId IN (SELECT u.id FROM User u WHERE u.familyId = :familyId)")
+    List<Object[]> getBalanceIndexWatermark(@Param("familyId") Long familyId);
+
+    /**
+     * 查询指定家庭在日期范围内的记录（仅活跃成员的活跃账户，包括未设置类型的账户），用于维护净资产快照汇总
+     */
+    @Query("SELECT r FROM AssetRecord r " +
+           "JOIN FETCH r.account a " +
+           "LEFT JOIN FETCH a.assetType t " +
+           "WHERE a.userId IN (SELECT u.id FROM User u WHERE u.familyId = :familyId AND u.isActive = true) " +
+           "AND a.isActive = true " +
+           "AND r.recordDate BETWEEN :startDate AND :endDate " +
+           "AND (:currency IS NULL OR r.currency = :currency)")
+    List<AssetRecord> findForSnapshotCube(
+            @Param("familyId") Long familyId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("currency") String currency);
+
+    /**
+     * 导出水位：家庭截至指定日期的资产记录 [条数, 最大ID, 最近更新时间, 金额合计]
+     * 任何新增、修改、删除都会改变其中至少一项
+     */
+    @Query("SELECT COUNT(r), MAX(r.id), MAX(r.updatedAt), SUM(r.amount) FROM AssetRecord r " +
+           "JOIN User u ON r.userId = u.id " +
+           "WHERE u.familyId = :familyId AND r.recordDate <= :asOfDate")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId, @Param("asOfDate") LocalDate asOfDate);
 }
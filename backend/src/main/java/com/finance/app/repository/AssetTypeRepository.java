@@ -2,6 +2,7 @@ package com.finance.app.repository;
 
 import com.finance.app.model.AssetType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -40,4 +41,10 @@ public interface AssetTypeRepository extends JpaRepository<AssetType, Long> {
      * 检查type代码是否存在
      */
     boolean existsByType(String type);
+
+    /**
+     * 导出水位：资产类型 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(t), MAX(t.id), MAX(t.updatedAt) FROM AssetType t")
+    List<Object[]> getExportWatermark();
 }
@@ -29,6 +29,13 @@ public interface ExchangeRateRepository extends JpaRepository<ExchangeRate, Long
     List<ExchangeRate> findLatestRateByCurrencyAndDate(@Param("currency") String currency,
                                                         @Param("date") LocalDate date);
 
+    // 查找特定货币的所有启用汇率，按生效日期升序（用于构建汇率时间线）
+    List<ExchangeRate> findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc(String currency);
+
+    // 查找所有启用汇率涉及的货币
+    @Query("SELECT DISTINCT e.currency FROM ExchangeRate e WHERE e.isActive = true")
+    List<String> findActiveCurrencies();
+
     // 查找特定日期的所有汇率
     List<ExchangeRate> findByEffectiveDateOrderByCurrency(LocalDate effectiveDate);
 
@@ -43,4 +50,17 @@ public interface ExchangeRateRepository extends JpaRepository<ExchangeRate, Long
     List<ExchangeRate> findByCurrencyAndDateRange(@Param("currency") String currency,
                                                    @Param("startDate") LocalDate startDate,
                                                    @Param("endDate") LocalDate endDate);
+
+    /**
+     * 导出水位：截至指定日期生效的汇率 [条数, 最大ID, 最近更新时间, 汇率合计]
+     */
+    @Query("SELECT COUNT(e), MAX(e.id), MAX(e.updatedAt), SUM(e.rateToUsd) FROM ExchangeRate e " +
+           "WHERE e.effectiveDate <= :asOfDate")
+    List<Object[]> getExportWatermark(@Param("asOfDate") LocalDate asOfDate);
+
+    /**
+     * 汇率缓存水位：全部汇率 [条数, 最大ID, 最近更新时间]，用于多实例间校验本地汇率缓存
+     */
+    @Query("SELECT COUNT(e), MAX(e.id), MAX(e.updatedAt) FROM ExchangeRate e")
+    List<Object[]> getCacheWatermark();
 }
@@ -56,4 +56,13 @@ public interface ExpenseBudgetRepository extends JpaRepository<ExpenseBudget, Lo
      */
     List<ExpenseBudget> findByFamilyIdAndBudgetYearAndCurrencyAndMinorCategoryIdIn(
         Long familyId, Integer budgetYear, String currency, List<Long> minorCategoryIds);
+
+    /**
+     * 导出水位：家庭在年份范围内的预算 [条数, 最大ID, 最近更新时间, 金额合计]
+     */
+    @Query("SELECT COUNT(b), MAX(b.id), MAX(b.updatedAt), SUM(b.budgetAmount) FROM ExpenseBudget b " +
+           "WHERE b.familyId = :familyId AND b.budgetYear BETWEEN :startYear AND :endYear")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId,
+                                      @Param("startYear") Integer startYear,
+                                      @Param("endYear") Integer endYear);
 }
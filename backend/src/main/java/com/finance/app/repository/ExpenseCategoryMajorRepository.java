@@ -2,6 +2,7 @@ package com.finance.app.repository;
 
 import com.finance.app.model.ExpenseCategoryMajor;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -27,4 +28,10 @@ public interface ExpenseCategoryMajorRepository extends JpaRepository<ExpenseCat
      * 查找所有大类（按排序顺序）
      */
     List<ExpenseCategoryMajor> findAllByOrderBySortOrder();
+
+    /**
+     * 导出水位：支出大类 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(c), MAX(c.id), MAX(c.updatedAt) FROM ExpenseCategoryMajor c")
+    List<Object[]> getExportWatermark();
 }
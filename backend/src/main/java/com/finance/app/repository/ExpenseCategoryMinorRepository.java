@@ -41,4 +41,10 @@ public interface ExpenseCategoryMinorRepository extends JpaRepository<ExpenseCat
      */
     @Query("SELECT COUNT(r) FROM ExpenseRecord r WHERE r.minorCategoryId = :minorCategoryId")
     long countExpenseRecords(@Param("minorCategoryId") Long minorCategoryId);
+
+    /**
+     * 导出水位：支出小类 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(c), MAX(c.id), MAX(c.updatedAt) FROM ExpenseCategoryMinor c")
+    List<Object[]> getExportWatermark();
 }
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,6 +35,20 @@ public interface ExpenseRecordRepository extends JpaRepository<ExpenseRecord, Lo
         @Param("endPeriod") String endPeriod
     );
 
+    /**
+     * 查询家庭某年度的全部支出记录（年度支出汇总全量计算）
+     */
+    List<ExpenseRecord> findByFamilyIdAndExpenseYear(Long familyId, Integer expenseYear);
+
+    /**
+     * 查询家庭某年度指定大类的支出记录（年度支出汇总按大类增量重算）
+     */
+    List<ExpenseRecord> findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(
+        Long familyId,
+        Integer expenseYear,
+        Collection<Long> majorCategoryIds
+    );
+
     /**
      * 根据家庭ID、期间和子分类ID查找单条记录（用于唯一性校验）
      * @deprecated 使用 findByFamilyIdAndExpensePeriodAndMinorCategoryIdAndCurrency 替代
@@ -98,6 +113,24 @@ public interface ExpenseRecordRepository extends JpaRepository<ExpenseRecord, Lo
         Long minorCategoryId
     );
 
+    /**
+     * 按月份和币种汇总指定小类在期间范围内的支出（月度趋势一次查询返回全部月份）
+     * 返回 [expensePeriod, currency, SUM(amount)]；currency 为 null 时不过滤币种
+     */
+    @Query("SELECT r.expensePeriod, r.currency, SUM(r.amount) FROM ExpenseRecord r " +
+           "WHERE r.familyId = :familyId " +
+           "AND r.minorCategoryId = :minorCategoryId " +
+           "AND r.expensePeriod BETWEEN :startPeriod AND :endPeriod " +
+           "AND (:currency IS NULL OR r.currency = :currency) " +
+           "GROUP BY r.expensePeriod, r.currency")
+    List<Object[]> sumByMinorCategoryGroupByPeriodAndCurrency(
+        @Param("familyId") Long familyId,
+        @Param("minorCategoryId") Long minorCategoryId,
+        @Param("startPeriod") String startPeriod,
+        @Param("endPeriod") String endPeriod,
+        @Param("currency") String currency
+    );
+
     /**
      * 查询指定家庭、大类、币种、期间的支出总额
      */
@@ -118,4 +151,13 @@ public interface ExpenseRecordRepository extends JpaRepository<ExpenseRecord, Lo
      */
     List<ExpenseRecord> findByFamilyIdAndExpensePeriodAndCurrencyAndMinorCategoryIdIn(
         Long familyId, String expensePeriod, String currency, List<Long> minorCategoryIds);
+
+    /**
+     * 导出水位：家庭在期间范围内的支出记录 [条数, 最大ID, 最近更新时间, 金额合计]
+     */
+    @Query("SELECT COUNT(e), MAX(e.id), MAX(e.updatedAt), SUM(e.amount) FROM ExpenseRecord e " +
+           "WHERE e.familyId = :familyId AND e.expensePeriod BETWEEN :startPeriod AND :endPeriod")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId,
+                                      @Param("startPeriod") String startPeriod,
+                                      @Param("endPeriod") String endPeriod);
 }
@@ -1,9 +1,18 @@
 package com.finance.app.repository;
 
 import com.finance.app.model.GoogleSheetsSync;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -27,4 +36,168 @@ public interface GoogleSheetsSyncRepository extends JpaRepository<GoogleSheetsSy
      * @return 是否存在
      */
     boolean existsByFamilyIdAndYear(Long familyId, Integer year);
+
+    long countByStatus(String status);
+
+    /**
+     * 重新排队（只有已结束的任务才会被重置，排队中或执行中的任务保持不变）
+     * @param batchId 批量导出的批次ID，单年份导出为 null
+     * @return 更新行数，0 表示已有进行中的任务
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.status = 'PENDING', s.progress = 0, s.errorMessage = NULL, " +
+           "s.requestedPermission = :permission, s.batchId = :batchId, s.queuedAt = :now, s.attempts = 0, " +
+           "s.cancelRequested = false, s.leaseOwner = NULL, s.leaseExpiresAt = NULL, s.heartbeatAt = NULL, " +
+           "s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status NOT IN ('PENDING', 'IN_PROGRESS')")
+    int requeue(@Param("id") Long id, @Param("permission") String permission, @Param("batchId") String batchId,
+                @Param("now") LocalDateTime now);
+
+    /**
+     * 排队中的任务ID（先进先出）
+     */
+    @Query("SELECT s.id FROM GoogleSheetsSync s WHERE s.status = 'PENDING' ORDER BY s.queuedAt, s.id")
+    List<Long> findQueuedIds(Pageable pageable);
+
+    /**
+     * 领取任务：只有仍处于 PENDING 的任务能被领取，多个工作线程（或实例）并发领取时只有一个成功
+     * @return 1 表示领取成功
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.status = 'IN_PROGRESS', s.leaseOwner = :owner, " +
+           "s.leaseExpiresAt = :leaseExpiresAt, s.heartbeatAt = :now, s.attempts = s.attempts + 1, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status = 'PENDING'")
+    int claim(@Param("id") Long id, @Param("owner") String owner,
+              @Param("now") LocalDateTime now, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * 同一批次中排队的任务ID（按年份）
+     */
+    @Query("SELECT s.id FROM GoogleSheetsSync s WHERE s.batchId = :batchId AND s.status = 'PENDING' ORDER BY s.year")
+    List<Long> findQueuedIdsInBatch(@Param("batchId") String batchId);
+
+    List<GoogleSheetsSync> findByBatchIdOrderByYear(String batchId);
+
+    /**
+     * 延长本实例持有的租约（批量导出一次领取多个年份，执行时间更长）
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.leaseExpiresAt = :leaseExpiresAt " +
+           "WHERE s.id IN :ids AND s.status = 'IN_PROGRESS' AND s.leaseOwner = :owner")
+    int extendLease(@Param("ids") List<Long> ids, @Param("owner") String owner,
+                    @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * 写入本实例执行中任务的心跳（由导出队列定期调用，与进度节点无关）
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.heartbeatAt = :now " +
+           "WHERE s.id IN :ids AND s.status = 'IN_PROGRESS' AND s.leaseOwner = :owner")
+    int heartbeat(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    /**
+     * 让指定实例持有的租约立即到期（实例重启后，上次领取的任务不可能仍在执行）
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.leaseExpiresAt = :now " +
+           "WHERE s.status = 'IN_PROGRESS' AND s.leaseOwner = :owner")
+    int expireLeases(@Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    /**
+     * 租约已过期或心跳超时（heartbeatAt 早于 staleBefore）且未超过领取次数上限的任务重新排队
+     * 中断时表格可能只写入了一部分，清除指纹使重新执行时全部重新导出
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.status = 'PENDING', s.tabFingerprints = NULL, " +
+           "s.leaseOwner = NULL, s.leaseExpiresAt = NULL, s.heartbeatAt = NULL, s.updatedAt = :now " +
+           "WHERE s.status = 'IN_PROGRESS' AND s.attempts < :maxAttempts " +
+           "AND (s.leaseExpiresAt IS NULL OR s.leaseExpiresAt <= :now OR s.heartbeatAt <= :staleBefore)")
+    int requeueExpired(@Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore,
+                       @Param("maxAttempts") int maxAttempts);
+
+    /**
+     * 租约已过期或心跳超时且达到领取次数上限的任务标记为失败
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.status = 'FAILED', s.errorMessage = :message, s.tabFingerprints = NULL, " +
+           "s.leaseOwner = NULL, s.leaseExpiresAt = NULL, s.heartbeatAt = NULL, s.updatedAt = :now " +
+           "WHERE s.status = 'IN_PROGRESS' AND s.attempts >= :maxAttempts " +
+           "AND (s.leaseExpiresAt IS NULL OR s.leaseExpiresAt <= :now OR s.heartbeatAt <= :staleBefore)")
+    int failExpired(@Param("now") LocalDateTime now, @Param("staleBefore") LocalDateTime staleBefore,
+                    @Param("maxAttempts") int maxAttempts, @Param("message") String message);
+
+    /**
+     * 取消排队中的任务
+     * @return 1 表示已取消
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.status = 'CANCELLED', s.errorMessage = :message, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status = 'PENDING'")
+    int cancelQueued(@Param("id") Long id, @Param("message") String message, @Param("now") LocalDateTime now);
+
+    /**
+     * 请求取消执行中的任务（由执行线程在下一个进度节点停止）
+     * @return 1 表示已登记
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE GoogleSheetsSync s SET s.cancelRequested = true, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status = 'IN_PROGRESS'")
+    int requestCancel(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * 是否已请求取消
+     * 在新事务中读取：导出过程本身处于只读事务中，需要看到其他请求提交的取消标记
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    boolean existsByIdAndCancelRequestedTrue(Long id);
+
+    /**
+     * 更新进度并续租（独立事务立即提交，轮询接口可以看到实时进度）
+     * 只有仍持有租约的执行者能更新：租约过期后任务可能已被重新排队、由其他工作线程领取
+     * @return 0 表示已失去租约，调用方应停止执行
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE GoogleSheetsSync s SET s.progress = :progress, s.leaseExpiresAt = :leaseExpiresAt, " +
+           "s.heartbeatAt = :now, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status = 'IN_PROGRESS' AND s.leaseOwner = :owner")
+    int updateProgress(@Param("id") Long id, @Param("owner") String owner, @Param("progress") int progress,
+                       @Param("now") LocalDateTime now, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    /**
+     * 记录新建的电子表格ID（重新执行时复用该表格，不再重复创建）
+     * @return 0 表示已失去租约
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE GoogleSheetsSync s SET s.spreadsheetId = :spreadsheetId, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status = 'IN_PROGRESS' AND s.leaseOwner = :owner")
+    int recordSpreadsheet(@Param("id") Long id, @Param("owner") String owner,
+                          @Param("spreadsheetId") String spreadsheetId, @Param("now") LocalDateTime now);
+
+    /**
+     * 写入最终状态并释放租约（仍持有租约时才写入，过期后的旧执行者不会覆盖新执行者的结果）
+     * @return 0 表示已失去租约
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE GoogleSheetsSync s SET s.status = :status, s.progress = :progress, s.errorMessage = :errorMessage, " +
+           "s.spreadsheetId = :spreadsheetId, s.shareUrl = :shareUrl, s.permission = :permission, " +
+           "s.tabFingerprints = :tabFingerprints, s.cancelRequested = false, " +
+           "s.leaseOwner = NULL, s.leaseExpiresAt = NULL, s.heartbeatAt = NULL, s.updatedAt = :now " +
+           "WHERE s.id = :id AND s.status = 'IN_PROGRESS' AND s.leaseOwner = :owner")
+    int finishRun(@Param("id") Long id, @Param("owner") String owner, @Param("status") String status,
+                  @Param("progress") Integer progress, @Param("errorMessage") String errorMessage,
+                  @Param("spreadsheetId") String spreadsheetId, @Param("shareUrl") String shareUrl,
+                  @Param("permission") String permission, @Param("tabFingerprints") String tabFingerprints,
+                  @Param("now") LocalDateTime now);
 }
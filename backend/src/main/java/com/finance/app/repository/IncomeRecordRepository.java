@@ -48,6 +48,27 @@ public interface IncomeRecordRepository extends JpaRepository<IncomeRecord, Long
         @Param("year") String year
     );
 
+    /**
+     * 按月份和币种汇总期间范围内的收入（月度趋势一次查询返回全部月份）
+     * minorCategoryId 不为 null 时汇总该小类，否则汇总该大类下无小类的记录；currency 为 null 时不过滤币种
+     * 返回 [period, currency, SUM(amount)]
+     */
+    @Query("SELECT ir.period, ir.currency, SUM(ir.amount) FROM IncomeRecord ir " +
+           "WHERE ir.familyId = :familyId " +
+           "AND ir.period BETWEEN :startPeriod AND :endPeriod " +
+           "AND ((:minorCategoryId IS NOT NULL AND ir.minorCategoryId = :minorCategoryId) " +
+           "  OR (:minorCategoryId IS NULL AND ir.majorCategoryId = :majorCategoryId AND ir.minorCategoryId IS NULL)) " +
+           "AND (:currency IS NULL OR ir.currency = :currency) " +
+           "GROUP BY ir.period, ir.currency")
+    List<Object[]> sumByCategoryGroupByPeriodAndCurrency(
+        @Param("familyId") Long familyId,
+        @Param("majorCategoryId") Long majorCategoryId,
+        @Param("minorCategoryId") Long minorCategoryId,
+        @Param("startPeriod") String startPeriod,
+        @Param("endPeriod") String endPeriod,
+        @Param("currency") String currency
+    );
+
     /**
      * 删除指定家庭、周期的所有收入记录
      */
@@ -0,0 +1,25 @@
+package com.finance.app.repository;
+
+import com.finance.app.model.LiabilityAccountLatest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface LiabilityAccountLatestRepository extends JpaRepository<LiabilityAccountLatest, Long> {
+
+    @Modifying
+    @Query(value = "DELETE FROM liability_account_latest", nativeQuery = true)
+    int deleteAllRows();
+
+    /**
+     * 从 liability_records 全量重建投影（启动时及数据恢复后执行）
+     */
+    @Modifying
+    @Query(value = "INSERT INTO liability_account_latest (account_id, record_id, record_date, outstanding_balance, currency, updated_at) " +
+                   "SELECT r.account_id, r.id, r.record_date, r.outstanding_balance, r.currency, NOW() FROM liability_records r " +
+                   "WHERE r.record_date = (SELECT MAX(r2.record_date) FROM liability_records r2 WHERE r2.account_id = r.account_id)",
+           nativeQuery = true)
+    int rebuildFromRecords();
+}
@@ -18,7 +18,20 @@ public interface LiabilityAccountRepository extends JpaRepository<LiabilityAccou
     @Query("SELECT l FROM LiabilityAccount l JOIN User u ON l.userId = u.id WHERE u.familyId = :familyId AND l.isActive = true")
     List<LiabilityAccount> findByFamilyIdAndIsActiveTrue(@Param("familyId") Long familyId);
 
+    /**
+     * 查询家庭活跃账户并同时加载类型（供仪表盘快照在多个线程间共享使用）
+     */
+    @Query("SELECT l FROM LiabilityAccount l LEFT JOIN FETCH l.liabilityType JOIN User u ON l.userId = u.id WHERE u.familyId = :familyId AND l.isActive = true")
+    List<LiabilityAccount> findActiveByFamilyIdWithType(@Param("familyId") Long familyId);
+
     List<LiabilityAccount> findByUserIdInAndIsActiveTrue(List<Long> userIds);
 
     List<LiabilityAccount> findByUserIdAndLiabilityTypeId(Long userId, Long liabilityTypeId);
+
+    /**
+     * 导出水位：家庭负债账户 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(a), MAX(a.id), MAX(a.updatedAt) FROM LiabilityAccount a " +
+           "JOIN User u ON a.userId = u.id WHERE u.familyId = :familyId")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId);
 }
@@ -15,10 +15,13 @@ public interface LiabilityRecordRepository extends JpaRepository<LiabilityRecord
 
     List<LiabilityRecord> findByAccountIdOrderByRecordDateDesc(Long accountId);
 
-    @Query("SELECT r FROM LiabilityRecord r WHERE r.accountId = :accountId " +
-           "AND r.recordDate = (SELECT MAX(r2.recordDate) FROM LiabilityRecord r2 WHERE r2.accountId = :accountId)")
+    // 通过 LiabilityAccountLatest 投影按主键定位最新记录
+    @Query("SELECT r FROM LiabilityAccountLatest l JOIN LiabilityRecord r ON r.id = l.recordId WHERE l.accountId = :accountId")
     Optional<LiabilityRecord> findLatestByAccountId(@Param("accountId") Long accountId);
 
+    // 直接从记录表查询最新记录（用于维护最新记录投影）
+    Optional<LiabilityRecord> findFirstByAccountIdOrderByRecordDateDesc(Long accountId);
+
     List<LiabilityRecord> findByUserIdOrderByRecordDateDesc(Long userId);
 
     boolean existsByAccountIdAndRecordDate(Long accountId, LocalDate recordDate);
@@ -77,9 +80,8 @@ public interface LiabilityRecordRepository extends JpaRepository<LiabilityRecord
     /**
      * 批量查询多个账户的最新记录（用于性能优化）
      */
-    @Query("SELECT r FROM LiabilityRecord r " +
-           "WHERE r.accountId IN :accountIds " +
-           "AND r.recordDate = (SELECT MAX(r2.recordDate) FROM LiabilityRecord r2 WHERE r2.accountId = r.accountId)")
+    @Query("SELECT r FROM LiabilityAccountLatest l JOIN LiabilityRecord r ON r.id = l.recordId " +
+           "WHERE l.accountId IN :accountIds")
     List<LiabilityRecord> findLatestByAccountIds(@Param("accountIds") List<Long> accountIds);
 
     /**
@@ -98,4 +100,45 @@ public interface LiabilityRecordRepository extends JpaRepository<LiabilityRecord
      */
     List<LiabilityRecord> findByAccountIdInAndRecordDateBetweenOrderByRecordDateDesc(
             List<Long> accountIds, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * 查询指定家庭所有账户的全部记录，按账户、日期升序排列（用于构建余额索引）
+     */
+    @Query("SELECT r FROM LiabilityRecord r " +
+           "JOIN r.account a " +
+           "WHERE a.userId IN (SELECT u.id FROM User u WHERE u.familyId = :familyId) " +
+           "ORDER BY r.accountId, r.recordDate")
+    List<LiabilityRecord> findAllByFamilyIdOrderByAccountAndDate(@Param("familyId") Long familyId);
+
+    /**
+     * 余额索引水位：家庭账户的记录 [条数, 最大ID, 记录最近更新时间, 账户最近更新时间]
+     */
+    @Query("SELECT COUNT(r), MAX(r.id), MAX(r.updatedAt), MAX(a.updatedAt) FROM LiabilityRecord r " +
+           "JOIN r.account a " +
+           "WHERE a.userId IN (SELECT u.id FROM User u WHERE u.familyId = :familyId)")
+    List<Object[]> getBalanceIndexWatermark(@Param("familyId") Long familyId);
+
+    /**
+     * 查询指定家庭在日期范围内的记录（仅活跃成员的活跃账户，包括未设置类型的账户），用于维护净资产快照汇总
+     */
+    @Query("SELECT r FROM LiabilityRecord r " +
+           "JOIN FETCH r.account a " +
+           "LEFT JOIN FETCH a.liabilityType t " +
+           "WHERE a.userId IN (SELECT u.id FROM User u WHERE u.familyId = :familyId AND u.isActive = true) " +
+           "AND a.isActive = true " +
+           "AND r.recordDate BETWEEN :startDate AND :endDate " +
+           "AND (:currency IS NULL OR r.currency = :currency)")
+    List<LiabilityRecord> findForSnapshotCube(
+            @Param("familyId") Long familyId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("currency") String currency);
+
+    /**
+     * 导出水位：家庭截至指定日期的负债记录 [条数, 最大ID, 最近更新时间, 余额合计]
+     */
+    @Query("SELECT COUNT(r), MAX(r.id), MAX(r.updatedAt), SUM(r.outstandingBalance) FROM LiabilityRecord r " +
+           "JOIN User u ON r.userId = u.id " +
+           "WHERE u.familyId = :familyId AND r.recordDate <= :asOfDate")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId, @Param("asOfDate") LocalDate asOfDate);
 }
@@ -2,6 +2,7 @@ package com.finance.app.repository;
 
 import com.finance.app.model.LiabilityType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -13,4 +14,10 @@ public interface LiabilityTypeRepository extends JpaRepository<LiabilityType, Lo
     List<LiabilityType> findAllByOrderByDisplayOrderAsc();
 
     Optional<LiabilityType> findByType(String type);
+
+    /**
+     * 导出水位：负债类型 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(t), MAX(t.id), MAX(t.updatedAt) FROM LiabilityType t")
+    List<Object[]> getExportWatermark();
 }
@@ -2,6 +2,7 @@ package com.finance.app.repository;
 
 import com.finance.app.model.NetAssetCategoryLiabilityTypeMapping;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,4 +15,10 @@ public interface NetAssetCategoryLiabilityTypeMappingRepository extends JpaRepos
 
     // 根据负债类型查找所有净资产类别映射
     List<NetAssetCategoryLiabilityTypeMapping> findByLiabilityType(String liabilityType);
+
+    /**
+     * 导出水位：净资产类别与负债类型映射 [ID, 净资产类别ID, 类型]，按ID排序（映射表没有更新时间，按行比较）
+     */
+    @Query("SELECT m.id, m.netAssetCategoryId, m.liabilityType FROM NetAssetCategoryLiabilityTypeMapping m ORDER BY m.id")
+    List<Object[]> getExportWatermark();
 }
@@ -2,6 +2,7 @@ package com.finance.app.repository;
 
 import com.finance.app.model.NetAssetCategory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -15,4 +16,10 @@ public interface NetAssetCategoryRepository extends JpaRepository<NetAssetCatego
 
     // 获取所有净资产类别，按显示顺序排序
     List<NetAssetCategory> findAllByOrderByDisplayOrderAsc();
+
+    /**
+     * 导出水位：净资产类别 [条数, 最大ID, 最近更新时间]
+     */
+    @Query("SELECT COUNT(t), MAX(t.id), MAX(t.updatedAt) FROM NetAssetCategory t")
+    List<Object[]> getExportWatermark();
 }
@@ -0,0 +1,20 @@
+package com.finance.app.repository;
+
+import com.finance.app.model.NetWorthCubeBuild;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface NetWorthCubeBuildRepository extends JpaRepository<NetWorthCubeBuild, Long> {
+
+    @Modifying
+    @Query("DELETE FROM NetWorthCubeBuild b WHERE b.familyId = :familyId")
+    int deleteByFamilyId(@Param("familyId") Long familyId);
+
+    @Modifying
+    @Query("DELETE FROM NetWorthCubeBuild b")
+    int deleteAllBuilds();
+}
@@ -0,0 +1,67 @@
+package com.finance.app.repository;
+
+import com.finance.app.model.NetWorthSnapshotCube;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface NetWorthSnapshotCubeRepository extends JpaRepository<NetWorthSnapshotCube, Long> {
+
+    /**
+     * 按快照日期汇总USD金额，返回 [snapshotDate, SUM(amountUsd)]
+     */
+    @Query("SELECT c.snapshotDate, SUM(c.amountUsd) FROM NetWorthSnapshotCube c " +
+           "WHERE c.familyId = :familyId AND c.recordKind = :recordKind " +
+           "AND c.snapshotDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY c.snapshotDate")
+    List<Object[]> sumUsdByDate(@Param("familyId") Long familyId,
+                                @Param("recordKind") String recordKind,
+                                @Param("startDate") LocalDate startDate,
+                                @Param("endDate") LocalDate endDate);
+
+    /**
+     * 按快照日期汇总指定类型的USD金额，返回 [snapshotDate, SUM(amountUsd)]
+     */
+    @Query("SELECT c.snapshotDate, SUM(c.amountUsd) FROM NetWorthSnapshotCube c " +
+           "WHERE c.familyId = :familyId AND c.recordKind = :recordKind " +
+           "AND c.typeCode IN :typeCodes " +
+           "AND c.snapshotDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY c.snapshotDate")
+    List<Object[]> sumUsdByDateAndTypes(@Param("familyId") Long familyId,
+                                        @Param("recordKind") String recordKind,
+                                        @Param("typeCodes") Collection<String> typeCodes,
+                                        @Param("startDate") LocalDate startDate,
+                                        @Param("endDate") LocalDate endDate);
+
+    /**
+     * 查询包含指定币种、且快照日期不早于指定日期的家庭（汇率变更时使用）
+     */
+    @Query("SELECT DISTINCT c.familyId FROM NetWorthSnapshotCube c " +
+           "WHERE c.currency = :currency AND c.snapshotDate >= :fromDate")
+    List<Long> findFamilyIdsByCurrencySince(@Param("currency") String currency,
+                                            @Param("fromDate") LocalDate fromDate);
+
+    @Modifying
+    @Query("DELETE FROM NetWorthSnapshotCube c WHERE c.familyId = :familyId " +
+           "AND c.snapshotDate BETWEEN :startDate AND :endDate " +
+           "AND (:currency IS NULL OR c.currency = :currency)")
+    int deleteCells(@Param("familyId") Long familyId,
+                    @Param("startDate") LocalDate startDate,
+                    @Param("endDate") LocalDate endDate,
+                    @Param("currency") String currency);
+
+    @Modifying
+    @Query("DELETE FROM NetWorthSnapshotCube c WHERE c.familyId = :familyId")
+    int deleteByFamilyId(@Param("familyId") Long familyId);
+
+    @Modifying
+    @Query("DELETE FROM NetWorthSnapshotCube c")
+    int deleteAllCells();
+}
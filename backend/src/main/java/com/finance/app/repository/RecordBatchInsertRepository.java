@@ -0,0 +1,228 @@
+package com.finance.app.repository;
+
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.IncomeRecord;
+import com.finance.app.model.InvestmentTransaction;
+import com.finance.app.model.NetWorthSnapshotCube;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 批量录入的新记录、净资产快照汇总单元格的插入（JDBC 批处理）
+ *
+ * 记录表主键为 IDENTITY，Hibernate 不会对这类实体的 INSERT 做 JDBC 批处理，逐条 save() 每行一次往返。
+ * 这里把一批新记录放进一次 executeBatch（MySQL 连接开启 rewriteBatchedStatements 后改写为多行 INSERT），
+ * 完成后按自然键一次查回自增主键，连同审计时间回填到传入的实体上。
+ *
+ * 不使用驱动返回的生成主键：改写后的多行 INSERT 只有一个 LAST_INSERT_ID，驱动按它逐行递增推算各行主键，
+ * 而 innodb_autoinc_lock_mode=2 下并发插入时同一语句分配的主键不保证连续，推算结果可能与行错位。
+ *
+ * 插入绕过持久化上下文：调用方需先 flush，保证同一事务里之前的更新、删除已经执行（唯一键不冲突）。
+ */
+@Repository
+@RequiredArgsConstructor
+public class RecordBatchInsertRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void insertExpenseRecords(List<ExpenseRecord> records) {
+        LocalDateTime now = LocalDateTime.now();
+        insert("INSERT INTO expense_records (family_id, user_id, expense_year, expense_month, expense_period, " +
+                "major_category_id, minor_category_id, amount, currency, expense_type, description, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            records,
+            (ps, record) -> {
+                ps.setLong(1, record.getFamilyId());
+                ps.setObject(2, record.getUserId(), Types.BIGINT);
+                ps.setInt(3, record.getExpenseYear());
+                ps.setInt(4, record.getExpenseMonth());
+                ps.setString(5, record.getExpensePeriod());
+                ps.setLong(6, record.getMajorCategoryId());
+                ps.setLong(7, record.getMinorCategoryId());
+                ps.setBigDecimal(8, record.getAmount());
+                ps.setString(9, record.getCurrency());
+                ps.setString(10, record.getExpenseType());
+                ps.setString(11, record.getDescription());
+                ps.setTimestamp(12, Timestamp.valueOf(now));
+                ps.setTimestamp(13, Timestamp.valueOf(now));
+            });
+        // 唯一键 uk_period_category (family_id, expense_period, minor_category_id)
+        assignIds("SELECT id, minor_category_id FROM expense_records WHERE family_id = ? AND expense_period = ?",
+            records,
+            record -> List.of(record.getFamilyId(), record.getExpensePeriod()),
+            record -> naturalKey(record.getMinorCategoryId()),
+            (record, id) -> {
+                record.setId(id);
+                record.setCreatedAt(now);
+                record.setUpdatedAt(now);
+            });
+    }
+
+    public void insertIncomeRecords(List<IncomeRecord> records) {
+        LocalDateTime now = LocalDateTime.now();
+        insert("INSERT INTO income_records (family_id, asset_account_id, major_category_id, minor_category_id, " +
+                "period, amount, currency, amount_usd, description, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            records,
+            (ps, record) -> {
+                ps.setLong(1, record.getFamilyId());
+                ps.setObject(2, record.getAssetAccountId(), Types.BIGINT);
+                ps.setLong(3, record.getMajorCategoryId());
+                ps.setObject(4, record.getMinorCategoryId(), Types.BIGINT);
+                ps.setString(5, record.getPeriod());
+                ps.setBigDecimal(6, record.getAmount());
+                ps.setString(7, record.getCurrency());
+                ps.setBigDecimal(8, record.getAmountUsd());
+                ps.setString(9, record.getDescription());
+                ps.setTimestamp(10, Timestamp.valueOf(now));
+                ps.setTimestamp(11, Timestamp.valueOf(now));
+            });
+        // 没有数据库唯一键，批量保存按 家庭 + 期间 + 大类 + 小类 + 币种 去重，调用方只插入该期间尚不存在的组合
+        assignIds("SELECT id, major_category_id, minor_category_id, currency FROM income_records " +
+                "WHERE family_id = ? AND period = ?",
+            records,
+            record -> List.of(record.getFamilyId(), record.getPeriod()),
+            record -> naturalKey(record.getMajorCategoryId(), record.getMinorCategoryId(), record.getCurrency()),
+            (record, id) -> {
+                record.setId(id);
+                record.setCreatedAt(now);
+                record.setUpdatedAt(now);
+            });
+    }
+
+    public void insertInvestmentTransactions(List<InvestmentTransaction> transactions) {
+        LocalDateTime now = LocalDateTime.now();
+        insert("INSERT INTO investment_transactions (account_id, transaction_period, transaction_type, amount, " +
+                "description, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+            transactions,
+            (ps, transaction) -> {
+                ps.setLong(1, transaction.getAccountId());
+                ps.setString(2, transaction.getTransactionPeriod());
+                ps.setString(3, transaction.getTransactionType().name());
+                ps.setBigDecimal(4, transaction.getAmount());
+                ps.setString(5, transaction.getDescription());
+                ps.setTimestamp(6, Timestamp.valueOf(now));
+                ps.setTimestamp(7, Timestamp.valueOf(now));
+            });
+        // 唯一键 uk_account_period_type (account_id, transaction_period, transaction_type)，一批涉及多个账户，按账户和期间一次查回
+        List<Object> periods = transactions.stream().map(InvestmentTransaction::getTransactionPeriod).distinct()
+            .collect(Collectors.toList());
+        List<Object> accountIds = transactions.stream().map(InvestmentTransaction::getAccountId).distinct()
+            .collect(Collectors.toList());
+        List<Object> scope = Stream.concat(periods.stream(), accountIds.stream()).collect(Collectors.toList());
+        assignIds("SELECT id, account_id, transaction_period, transaction_type FROM investment_transactions " +
+                "WHERE transaction_period IN (" + placeholders(periods.size()) + ") " +
+                "AND account_id IN (" + placeholders(accountIds.size()) + ")",
+            transactions,
+            transaction -> scope,
+            transaction -> naturalKey(transaction.getAccountId(), transaction.getTransactionPeriod(),
+                transaction.getTransactionType().name()),
+            (transaction, id) -> {
+                transaction.setId(id);
+                transaction.setCreatedAt(now);
+                transaction.setUpdatedAt(now);
+            });
+    }
+
+    /**
+     * 快照汇总单元格插入（首次构建一个家庭的全部单元格时一次写入，调用方已删除同范围的旧单元格）。
+     * 单元格写入后不再按ID访问，不回填主键
+     */
+    public void insertCubeCells(List<NetWorthSnapshotCube> cells) {
+        LocalDateTime now = LocalDateTime.now();
+        insert("INSERT INTO net_worth_snapshot_cube (family_id, snapshot_date, record_kind, type_code, currency, " +
+                "amount_original, amount_usd, record_count, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            cells,
+            (ps, cell) -> {
+                ps.setLong(1, cell.getFamilyId());
+                ps.setDate(2, Date.valueOf(cell.getSnapshotDate()));
+                ps.setString(3, cell.getRecordKind());
+                ps.setString(4, cell.getTypeCode());
+                ps.setString(5, cell.getCurrency());
+                ps.setBigDecimal(6, cell.getAmountOriginal());
+                ps.setBigDecimal(7, cell.getAmountUsd());
+                ps.setInt(8, cell.getRecordCount());
+                ps.setTimestamp(9, Timestamp.valueOf(now));
+            });
+        cells.forEach(cell -> cell.setUpdatedAt(now));
+    }
+
+    private <T> void insert(String sql, List<T> rows, ParameterBinder<T> binder) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                binder.bind(ps, rows.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * 按自然键查回刚插入行的主键：每个查询范围（如 家庭 + 期间）执行一次 selectSql，
+     * 结果第一列为 id，其余列为自然键，与 keyOf 的结果按 naturalKey 拼接后比对
+     */
+    private <T> void assignIds(String selectSql, List<T> rows, Function<T, List<Object>> scopeOf,
+                               Function<T, String> keyOf, BiConsumer<T, Long> onInserted) {
+        Map<List<Object>, List<T>> rowsByScope = rows.stream()
+            .collect(Collectors.groupingBy(scopeOf, LinkedHashMap::new, Collectors.toList()));
+        rowsByScope.forEach((scope, scopeRows) -> {
+            Map<String, T> pending = new HashMap<>();
+            for (T row : scopeRows) {
+                if (pending.put(keyOf.apply(row), row) != null) {
+                    throw new IllegalStateException("批量插入的行自然键重复: " + keyOf.apply(row));
+                }
+            }
+            jdbcTemplate.query(selectSql, rs -> {
+                Object[] parts = new Object[rs.getMetaData().getColumnCount() - 1];
+                for (int i = 0; i < parts.length; i++) {
+                    parts[i] = rs.getObject(i + 2);
+                }
+                T row = pending.remove(naturalKey(parts));
+                if (row != null) {
+                    onInserted.accept(row, rs.getLong(1));
+                }
+            }, scope.toArray());
+            if (!pending.isEmpty()) {
+                throw new IllegalStateException("批量插入后未能按自然键查回主键: " + pending.keySet());
+            }
+        });
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static String naturalKey(Object... parts) {
+        return Stream.of(parts).map(String::valueOf).collect(Collectors.joining("|"));
+    }
+
+    @FunctionalInterface
+    private interface ParameterBinder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+}
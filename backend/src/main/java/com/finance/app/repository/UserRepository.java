@@ -2,6 +2,8 @@ package com.finance.app.repository;
 
 import com.finance.app.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -21,4 +23,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findByFamilyIdAndIsActiveTrue(Long familyId);
 
     List<User> findByFamilyId(Long familyId);
+
+    /**
+     * 导出水位：家庭成员 [ID, 用户名, 是否启用]，按ID排序（不用更新时间：登录也会更新用户行）
+     */
+    @Query("SELECT u.id, u.username, u.isActive FROM User u WHERE u.familyId = :familyId ORDER BY u.id")
+    List<Object[]> getExportWatermark(@Param("familyId") Long familyId);
 }
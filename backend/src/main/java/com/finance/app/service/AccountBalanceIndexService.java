@@ -0,0 +1,284 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.User;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 家庭账户余额时间点索引
+ *
+ * 每个家庭首次查询时一次性加载全部资产/负债记录，按账户保存为有序的基本类型数组
+ * （记录日期 epochDay + 以分为单位的金额），"截至某日余额"通过二分查找得到，
+ * 取代逐账户执行 findByAccountIdAndRecordDateBeforeOrEqual 的查询。
+ *
+ * 一致性：
+ * - 记录写入、账户变更（类型、归属成员、停用）和成员变更后，本实例立即清除该家庭的索引，事务结束后再清除一次
+ * - 加载期间发生清除时，加载结果只返回给调用方，不写入索引（避免缓存提交前读到的数据）
+ * - 其他实例的写入通过水位校验发现：索引超过 revalidate-ms 未校验时，先查询该家庭记录和账户的
+ *   条数、最大ID、最近更新时间，与加载时不同则重新加载
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AccountBalanceIndexService {
+
+    private final AssetRecordRepository assetRecordRepository;
+    private final LiabilityRecordRepository liabilityRecordRepository;
+    private final UserRepository userRepository;
+
+    @Value("${analysis.balance-index.revalidate-ms:30000}")
+    private long revalidateMs = 30_000;
+
+    // familyId -> 家庭索引（accountId -> 余额序列）
+    private final Map<Long, FamilyIndex> assetIndex = new ConcurrentHashMap<>();
+    private final Map<Long, FamilyIndex> liabilityIndex = new ConcurrentHashMap<>();
+
+    /** 每次清除加一；加载前后版本号不同时，加载结果不写入索引 */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 某账户在指定日期（含）之前最近一条记录的余额
+     */
+    public record BalancePoint(Long accountId, LocalDate recordDate, BigDecimal amount, String currency) {
+    }
+
+    /**
+     * 查询资产账户截至指定日期的余额；asOfDate 为 null 时返回最新记录
+     */
+    public Optional<BalancePoint> getAssetBalanceAsOf(Long familyId, Long accountId, LocalDate asOfDate) {
+        Map<Long, BalanceSeries> family = family(assetIndex, familyId, this::loadAssetFamily,
+            assetRecordRepository::getBalanceIndexWatermark);
+        BalanceSeries series = family.get(accountId);
+        return series == null ? Optional.empty() : series.asOf(accountId, asOfDate);
+    }
+
+    /**
+     * 查询负债账户截至指定日期的余额；asOfDate 为 null 时返回最新记录
+     */
+    public Optional<BalancePoint> getLiabilityBalanceAsOf(Long familyId, Long accountId, LocalDate asOfDate) {
+        Map<Long, BalanceSeries> family = family(liabilityIndex, familyId, this::loadLiabilityFamily,
+            liabilityRecordRepository::getBalanceIndexWatermark);
+        BalanceSeries series = family.get(accountId);
+        return series == null ? Optional.empty() : series.asOf(accountId, asOfDate);
+    }
+
+    /**
+     * 资产/负债记录发生变更（新增/修改/删除）或账户、成员变更后调用，清除该用户所属家庭的索引
+     */
+    public void invalidateFamilyOfUser(Long userId) {
+        invalidateFamily(resolveFamilyId(userId));
+    }
+
+    /**
+     * 立即清除家庭索引，并在事务结束后（提交或回滚）再清除一次
+     */
+    public void invalidateFamily(Long familyId) {
+        if (familyId == null) {
+            return;
+        }
+        evict(familyId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(familyId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 清空全部索引（数据恢复等批量变更后使用）
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        assetIndex.clear();
+        liabilityIndex.clear();
+    }
+
+    private void evict(Long familyId) {
+        version.incrementAndGet();
+        assetIndex.remove(familyId);
+        liabilityIndex.remove(familyId);
+    }
+
+    private Map<Long, BalanceSeries> family(Map<Long, FamilyIndex> index, Long familyId,
+                                            Function<Long, Map<Long, BalanceSeries>> loader,
+                                            Function<Long, List<Object[]>> watermarkQuery) {
+        long now = System.currentTimeMillis();
+        long loadVersion = version.get();
+        FamilyIndex cached = index.get(familyId);
+        if (cached != null && now - cached.checkedAt < revalidateMs) {
+            return cached.accounts;
+        }
+        // 先取水位再加载：加载期间提交的写入会在下次校验时发现
+        String watermark = watermark(watermarkQuery.apply(familyId));
+        if (cached != null) {
+            if (watermark.equals(cached.watermark)) {
+                cached.checkedAt = now;
+                return cached.accounts;
+            }
+            log.debug("余额索引水位变化，重新加载: familyId={}", familyId);
+        }
+
+        FamilyIndex loaded = new FamilyIndex(loader.apply(familyId), watermark, now);
+        index.compute(familyId, (key, existing) -> version.get() == loadVersion ? loaded : existing);
+        return loaded.accounts;
+    }
+
+    private Map<Long, BalanceSeries> loadAssetFamily(Long familyId) {
+        List<AssetRecord> records = assetRecordRepository.findAllByFamilyIdOrderByAccountAndDate(familyId);
+        Map<Long, List<AssetRecord>> byAccount = new HashMap<>();
+        for (AssetRecord record : records) {
+            byAccount.computeIfAbsent(record.getAccountId(), k -> new ArrayList<>()).add(record);
+        }
+        Map<Long, BalanceSeries> family = new HashMap<>();
+        byAccount.forEach((accountId, list) -> family.put(accountId, BalanceSeries.fromAssetRecords(list)));
+        log.debug("加载家庭资产余额索引: familyId={}, 账户数={}, 记录数={}", familyId, family.size(), records.size());
+        return family;
+    }
+
+    private Map<Long, BalanceSeries> loadLiabilityFamily(Long familyId) {
+        List<LiabilityRecord> records = liabilityRecordRepository.findAllByFamilyIdOrderByAccountAndDate(familyId);
+        Map<Long, List<LiabilityRecord>> byAccount = new HashMap<>();
+        for (LiabilityRecord record : records) {
+            byAccount.computeIfAbsent(record.getAccountId(), k -> new ArrayList<>()).add(record);
+        }
+        Map<Long, BalanceSeries> family = new HashMap<>();
+        byAccount.forEach((accountId, list) -> family.put(accountId, BalanceSeries.fromLiabilityRecords(list)));
+        log.debug("加载家庭负债余额索引: familyId={}, 账户数={}, 记录数={}", familyId, family.size(), records.size());
+        return family;
+    }
+
+    private Long resolveFamilyId(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return userRepository.findById(userId).map(User::getFamilyId).orElse(null);
+    }
+
+    /**
+     * 水位查询只返回一行 [条数, 最大ID, 最近更新时间...]
+     */
+    private static String watermark(List<Object[]> rows) {
+        return rows.isEmpty() ? "" : Arrays.toString(rows.get(0));
+    }
+
+    /**
+     * 一个家庭的索引：加载后不再修改，checkedAt 为最近一次水位校验的时间
+     */
+    private static final class FamilyIndex {
+        private final Map<Long, BalanceSeries> accounts;
+        private final String watermark;
+        private volatile long checkedAt;
+
+        private FamilyIndex(Map<Long, BalanceSeries> accounts, String watermark, long checkedAt) {
+            this.accounts = accounts;
+            this.watermark = watermark;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    /**
+     * 单个账户的余额序列：记录日期升序排列，三个数组按下标一一对应
+     */
+    static final class BalanceSeries {
+        private final int[] epochDays;
+        private final long[] amountCents;
+        private final String[] currencies;
+
+        private BalanceSeries(int[] epochDays, long[] amountCents, String[] currencies) {
+            this.epochDays = epochDays;
+            this.amountCents = amountCents;
+            this.currencies = currencies;
+        }
+
+        /**
+         * @param records 按记录日期升序排列的资产记录
+         */
+        static BalanceSeries fromAssetRecords(List<AssetRecord> records) {
+            if (records.isEmpty()) {
+                return null;
+            }
+            int n = records.size();
+            int[] days = new int[n];
+            long[] cents = new long[n];
+            String[] currencies = new String[n];
+            for (int i = 0; i < n; i++) {
+                AssetRecord record = records.get(i);
+                days[i] = (int) record.getRecordDate().toEpochDay();
+                cents[i] = toCents(record.getAmount());
+                currencies[i] = record.getCurrency();
+            }
+            return new BalanceSeries(days, cents, currencies);
+        }
+
+        /**
+         * @param records 按记录日期升序排列的负债记录
+         */
+        static BalanceSeries fromLiabilityRecords(List<LiabilityRecord> records) {
+            if (records.isEmpty()) {
+                return null;
+            }
+            int n = records.size();
+            int[] days = new int[n];
+            long[] cents = new long[n];
+            String[] currencies = new String[n];
+            for (int i = 0; i < n; i++) {
+                LiabilityRecord record = records.get(i);
+                days[i] = (int) record.getRecordDate().toEpochDay();
+                cents[i] = toCents(record.getOutstandingBalance());
+                currencies[i] = record.getCurrency();
+            }
+            return new BalanceSeries(days, cents, currencies);
+        }
+
+        Optional<BalancePoint> asOf(Long accountId, LocalDate asOfDate) {
+            int idx = asOfDate == null ? epochDays.length - 1 : floorIndex((int) asOfDate.toEpochDay());
+            if (idx < 0) {
+                return Optional.empty();
+            }
+            return Optional.of(new BalancePoint(
+                accountId,
+                LocalDate.ofEpochDay(epochDays[idx]),
+                BigDecimal.valueOf(amountCents[idx], 2),
+                currencies[idx]
+            ));
+        }
+
+        // 返回日期 <= day 的最后一个下标，不存在返回 -1
+        private int floorIndex(int day) {
+            int pos = Arrays.binarySearch(epochDays, day);
+            return pos >= 0 ? pos : -pos - 2;
+        }
+
+        private static long toCents(BigDecimal amount) {
+            if (amount == null) {
+                return 0L;
+            }
+            return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AssetAccountLatest;
+import com.finance.app.model.LiabilityAccountLatest;
+import com.finance.app.repository.AssetAccountLatestRepository;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.LiabilityAccountLatestRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 维护 asset_account_latest / liability_account_latest 最新记录投影
+ *
+ * 记录写入与投影更新处于同一事务中：每次写入后按 (account_id, record_date) 索引取该账户最新一条记录，
+ * 覆盖或删除投影行。findLatestByAccountId / findLatestByAccountIds 等"当前余额"查询均基于该投影。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AccountLatestRecordService {
+
+    private final AssetRecordRepository assetRecordRepository;
+    private final LiabilityRecordRepository liabilityRecordRepository;
+    private final AssetAccountLatestRepository assetLatestRepository;
+    private final LiabilityAccountLatestRepository liabilityLatestRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * 资产记录新增/修改/删除后刷新该账户的最新记录
+     */
+    @Transactional
+    public void refreshAssetAccount(Long accountId) {
+        assetRecordRepository.findFirstByAccountIdOrderByRecordDateDesc(accountId).ifPresentOrElse(record -> {
+            AssetAccountLatest latest = assetLatestRepository.findById(accountId).orElseGet(AssetAccountLatest::new);
+            latest.setAccountId(accountId);
+            latest.setRecordId(record.getId());
+            latest.setRecordDate(record.getRecordDate());
+            latest.setAmount(record.getAmount());
+            latest.setCurrency(record.getCurrency());
+            assetLatestRepository.save(latest);
+        }, () -> {
+            if (assetLatestRepository.existsById(accountId)) {
+                assetLatestRepository.deleteById(accountId);
+            }
+        });
+    }
+
+    /**
+     * 负债记录新增/修改/删除后刷新该账户的最新记录
+     */
+    @Transactional
+    public void refreshLiabilityAccount(Long accountId) {
+        liabilityRecordRepository.findFirstByAccountIdOrderByRecordDateDesc(accountId).ifPresentOrElse(record -> {
+            LiabilityAccountLatest latest = liabilityLatestRepository.findById(accountId).orElseGet(LiabilityAccountLatest::new);
+            latest.setAccountId(accountId);
+            latest.setRecordId(record.getId());
+            latest.setRecordDate(record.getRecordDate());
+            latest.setOutstandingBalance(record.getOutstandingBalance());
+            latest.setCurrency(record.getCurrency());
+            liabilityLatestRepository.save(latest);
+        }, () -> {
+            if (liabilityLatestRepository.existsById(accountId)) {
+                liabilityLatestRepository.deleteById(accountId);
+            }
+        });
+    }
+
+    /**
+     * 启动时只补建空的投影（V1.18 迁移已回填，正常启动不扫描记录表）
+     *
+     * 每张投影表在各自的事务中检查并重建；多个实例同时启动时，后插入的实例主键冲突回滚，只记录日志。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        rebuildIfEmpty("资产", assetLatestRepository::count, assetLatestRepository::rebuildFromRecords);
+        rebuildIfEmpty("负债", liabilityLatestRepository::count, liabilityLatestRepository::rebuildFromRecords);
+    }
+
+    private void rebuildIfEmpty(String kind, LongSupplier count, IntSupplier rebuild) {
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                if (count.getAsLong() == 0) {
+                    log.info("{}账户最新记录投影为空，重建: 账户数={}", kind, rebuild.getAsInt());
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.warn("{}账户最新记录投影已由其他实例重建: {}", kind, e.getMessage());
+        }
+    }
+
+    /**
+     * 全量重建投影：数据恢复后调用
+     */
+    @Transactional
+    public void rebuildAll() {
+        assetLatestRepository.deleteAllRows();
+        int assetCount = assetLatestRepository.rebuildFromRecords();
+        liabilityLatestRepository.deleteAllRows();
+        int liabilityCount = liabilityLatestRepository.rebuildFromRecords();
+        log.info("重建账户最新记录投影: 资产账户={}, 负债账户={}", assetCount, liabilityCount);
+    }
+}
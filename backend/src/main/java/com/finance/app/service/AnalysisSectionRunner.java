@@ -0,0 +1,64 @@
+package com.finance.app.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 分析接口的分段并行执行
+ *
+ * 各分段在 analysisSectionExecutor 上并发运行，每段单独计时；超时或异常的分段返回降级结果，
+ * 并把分段名称记录到 unavailable 列表，由调用方写入响应，整体耗时接近最慢的单个分段。
+ * 每段在只读事务中执行，分段线程内可以正常加载懒加载关联。
+ * 分段应只写入自己创建的对象：超时后任务仍可能在后台继续执行。
+ */
+@Component
+@Slf4j
+public class AnalysisSectionRunner {
+
+    private final Executor sectionExecutor;
+    private final TransactionTemplate readOnlyTransaction;
+    private final long sectionTimeoutMs;
+
+    public AnalysisSectionRunner(@Qualifier("analysisSectionExecutor") Executor sectionExecutor,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${analysis.section-timeout-ms:5000}") long sectionTimeoutMs) {
+        this.sectionExecutor = sectionExecutor;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.sectionTimeoutMs = sectionTimeoutMs;
+    }
+
+    /**
+     * 提交一个分段
+     *
+     * @param name        分段名称（降级时写入 unavailable）
+     * @param section     分段计算
+     * @param fallback    超时或失败时的降级结果
+     * @param unavailable 降级分段列表，需线程安全
+     */
+    public <T> CompletableFuture<T> submit(String name, Supplier<T> section, Supplier<T> fallback, List<String> unavailable) {
+        return CompletableFuture.supplyAsync(() -> readOnlyTransaction.execute(status -> section.get()), sectionExecutor)
+            .orTimeout(sectionTimeoutMs, TimeUnit.MILLISECONDS)
+            .exceptionally(ex -> {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof TimeoutException) {
+                    log.warn("分析分段超时，使用降级结果: section={}, timeout={}ms", name, sectionTimeoutMs);
+                } else {
+                    log.warn("分析分段失败，使用降级结果: section={}, error={}", name, cause.getMessage());
+                }
+                unavailable.add(name);
+                return fallback.get();
+            });
+    }
+}
@@ -13,22 +13,22 @@ import com.finance.app.model.AssetAccount;
 import com.finance.app.model.AssetRecord;
 import com.finance.app.model.LiabilityAccount;
 import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.NetWorthSnapshotCube;
 import com.finance.app.model.User;
 import com.finance.app.repository.AssetAccountRepository;
 import com.finance.app.repository.AssetRecordRepository;
 import com.finance.app.repository.LiabilityAccountRepository;
 import com.finance.app.repository.LiabilityRecordRepository;
-import com.finance.app.repository.NetAssetCategoryRepository;
-import com.finance.app.repository.NetAssetCategoryAssetTypeMappingRepository;
-import com.finance.app.repository.NetAssetCategoryLiabilityTypeMappingRepository;
 import com.finance.app.repository.UserProfileRepository;
 import com.finance.app.repository.UserRepository;
 import com.finance.app.model.NetAssetCategory;
 import com.finance.app.model.NetAssetCategoryAssetTypeMapping;
 import com.finance.app.model.NetAssetCategoryLiabilityTypeMapping;
 import com.finance.app.model.UserProfile;
+import com.finance.app.service.AccountBalanceIndexService.BalancePoint;
 import com.finance.app.service.asset.AssetAnalysisService;
 import com.finance.app.service.liability.LiabilityAnalysisService;
+import com.finance.app.util.MoneyAccumulator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -36,6 +36,9 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.util.Map.entry;
@@ -48,12 +51,13 @@ public class AnalysisService {
     private final AssetRecordRepository recordRepository;
     private final LiabilityAccountRepository liabilityAccountRepository;
     private final LiabilityRecordRepository liabilityRecordRepository;
-    private final NetAssetCategoryRepository netAssetCategoryRepository;
-    private final NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository;
-    private final NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final UserProfileRepository userProfileRepository;
     private final UserRepository userRepository;
     private final ExchangeRateService exchangeRateService;
+    private final AccountBalanceIndexService balanceIndexService;
+    private final NetWorthCubeService netWorthCubeService;
+    private final AnalysisSectionRunner sectionRunner;
     private final InvestmentAnalysisService investmentAnalysisService;
     private final com.finance.app.service.expense.ExpenseAnalysisService expenseAnalysisService;
     private final com.finance.app.service.income.IncomeAnalysisService incomeAnalysisService;
@@ -62,6 +66,34 @@ public class AnalysisService {
     private final AssetAnalysisService assetAnalysisService;
     private final LiabilityAnalysisService liabilityAnalysisService;
 
+    // ==============================================
+    // Dashboard snapshot - load family data once for all dashboard views
+    // ==============================================
+
+    /**
+     * 加载家庭数据快照：成员、账户（含类型）、每账户最新记录各查询一次，净资产类别映射取自参考数据缓存
+     *
+     * @param asOfDate 查询日期，null 表示当前
+     */
+    public FamilySnapshot loadFamilySnapshot(Long familyId, LocalDate asOfDate) {
+        List<User> users = userRepository.findByFamilyIdAndIsActiveTrue(familyId);
+        List<AssetAccount> assetAccounts = accountRepository.findActiveByFamilyIdWithType(familyId);
+        List<LiabilityAccount> liabilityAccounts = liabilityAccountRepository.findActiveByFamilyIdWithType(familyId);
+
+        return new FamilySnapshot(
+            familyId,
+            asOfDate,
+            users,
+            assetAccounts,
+            liabilityAccounts,
+            loadLatestAssetRecords(assetAccounts, asOfDate),
+            loadLatestLiabilityRecords(liabilityAccounts, asOfDate),
+            referenceDataCache.getNetAssetCategories(),
+            referenceDataCache.getAssetTypeMappings(),
+            referenceDataCache.getLiabilityTypeMappings()
+        );
+    }
+
     // ==============================================
     // Net asset methods - combine asset and liability data
     // ==============================================
@@ -76,6 +108,16 @@ public class AnalysisService {
         return summary;
     }
 
+    /**
+     * 基于仪表盘快照补充负债数据（换算为USD）
+     */
+    public AssetSummaryDTO addLiabilityDataToSummary(AssetSummaryDTO summary, FamilySnapshot snapshot, LocalDate asOfDate) {
+        BigDecimal totalLiabilities = sumLiabilities(snapshot.liabilityAccounts(), snapshot.familyId(), asOfDate, "All");
+        summary.setTotalLiabilities(totalLiabilities);
+        summary.setNetWorth(summary.getTotalAssets().subtract(totalLiabilities));
+        return summary;
+    }
+
     // Helper method to calculate total liabilities
     private BigDecimal calculateTotalLiabilities(Long userId, Long familyId, LocalDate asOfDate, String currency) {
         List<LiabilityAccount> liabilityAccounts;
@@ -87,32 +129,34 @@ public class AnalysisService {
             liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
         }
 
+        return sumLiabilities(liabilityAccounts, familyId, asOfDate, currency);
+    }
+
+    private BigDecimal sumLiabilities(List<LiabilityAccount> liabilityAccounts, Long familyId, LocalDate asOfDate, String currency) {
         if (!"All".equalsIgnoreCase(currency)) {
             liabilityAccounts = liabilityAccounts.stream()
                 .filter(acc -> acc.getCurrency().equalsIgnoreCase(currency))
                 .collect(Collectors.toList());
         }
 
-        BigDecimal totalLiabilities = BigDecimal.ZERO;
+        MoneyAccumulator totalLiabilities = new MoneyAccumulator();
         for (LiabilityAccount account : liabilityAccounts) {
-            Optional<LiabilityRecord> record = getLiabilityRecordAsOfDate(account.getId(), asOfDate);
+            Optional<BalancePoint> record = getLiabilityRecordAsOfDate(familyId, account.getId(), asOfDate);
             if (record.isPresent()) {
-                LiabilityRecord liabilityRecord = record.get();
-                BigDecimal balance;
+                BalancePoint liabilityRecord = record.get();
                 if ("All".equalsIgnoreCase(currency)) {
-                    balance = convertToUSD(
-                        liabilityRecord.getOutstandingBalance(),
-                        liabilityRecord.getCurrency(),
-                        asOfDate != null ? asOfDate : liabilityRecord.getRecordDate()
+                    addUSD(totalLiabilities,
+                        liabilityRecord.amount(),
+                        liabilityRecord.currency(),
+                        asOfDate != null ? asOfDate : liabilityRecord.recordDate()
                     );
                 } else {
-                    balance = liabilityRecord.getOutstandingBalance();
+                    totalLiabilities.add(liabilityRecord.amount());
                 }
-                totalLiabilities = totalLiabilities.add(balance);
             }
         }
 
-        return totalLiabilities;
+        return totalLiabilities.toBigDecimal();
     }
 
     public Map<String, Object> getNetAssetAllocation(Long userId) {
@@ -129,26 +173,47 @@ public class AnalysisService {
 
     public Map<String, Object> getNetAssetAllocation(Long userId, Long familyId, LocalDate asOfDate, String currency) {
         // Get all net asset categories
-        List<NetAssetCategory> netAssetCategories = netAssetCategoryRepository.findAllByOrderByDisplayOrderAsc();
+        List<NetAssetCategory> netAssetCategories = referenceDataCache.getNetAssetCategories();
 
         // Get asset data from AssetAnalysisService
         AssetSummaryDTO summary = assetAnalysisService.getAssetSummary(userId, familyId, asOfDate, false, currency);
-        Map<String, BigDecimal> assetsByType = summary.getAssetsByType();
 
         // Calculate liabilities by type
         Map<String, BigDecimal> liabilitiesByType = calculateLiabilitiesByType(userId, familyId, asOfDate, currency);
 
+        return buildNetAssetAllocation(netAssetCategories, summary.getAssetsByType(), liabilitiesByType,
+            referenceDataCache::getAssetTypeMappings,
+            referenceDataCache::getLiabilityTypeMappings);
+    }
+
+    /**
+     * 基于仪表盘快照计算净资产配置（换算为USD）
+     */
+    public Map<String, Object> getNetAssetAllocation(FamilySnapshot snapshot) {
+        AssetSummaryDTO summary = assetAnalysisService.getAssetSummary(snapshot, snapshot.asOfDate());
+        Map<String, BigDecimal> liabilitiesByType =
+            groupLiabilitiesByType(snapshot.liabilityAccounts(), snapshot.familyId(), snapshot.asOfDate(), "All");
+
+        return buildNetAssetAllocation(snapshot.netAssetCategories(), summary.getAssetsByType(), liabilitiesByType,
+            snapshot::assetMappingsOf, snapshot::liabilityMappingsOf);
+    }
+
+    private Map<String, Object> buildNetAssetAllocation(
+            List<NetAssetCategory> netAssetCategories,
+            Map<String, BigDecimal> assetsByType,
+            Map<String, BigDecimal> liabilitiesByType,
+            Function<Long, List<NetAssetCategoryAssetTypeMapping>> assetMappingLoader,
+            Function<Long, List<NetAssetCategoryLiabilityTypeMapping>> liabilityMappingLoader) {
+
         List<Map<String, Object>> data = new ArrayList<>();
         BigDecimal totalNetAssets = BigDecimal.ZERO;
 
         for (NetAssetCategory netCategory : netAssetCategories) {
             // Get asset type mappings for this net asset category
-            List<NetAssetCategoryAssetTypeMapping> assetMappings =
-                assetTypeMappingRepository.findByNetAssetCategoryId(netCategory.getId());
+            List<NetAssetCategoryAssetTypeMapping> assetMappings = assetMappingLoader.apply(netCategory.getId());
 
             // Get liability type mappings for this net asset category
-            List<NetAssetCategoryLiabilityTypeMapping> liabilityMappings =
-                liabilityTypeMappingRepository.findByNetAssetCategoryId(netCategory.getId());
+            List<NetAssetCategoryLiabilityTypeMapping> liabilityMappings = liabilityMappingLoader.apply(netCategory.getId());
 
             // Calculate total assets for this category
             BigDecimal categoryAssets = BigDecimal.ZERO;
@@ -228,36 +293,39 @@ public class AnalysisService {
             liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
         }
 
+        return groupLiabilitiesByType(liabilityAccounts, familyId, asOfDate, currency);
+    }
+
+    private Map<String, BigDecimal> groupLiabilitiesByType(List<LiabilityAccount> liabilityAccounts, Long familyId,
+                                                           LocalDate asOfDate, String currency) {
         if (!"All".equalsIgnoreCase(currency)) {
             liabilityAccounts = liabilityAccounts.stream()
                 .filter(acc -> acc.getCurrency().equalsIgnoreCase(currency))
                 .collect(Collectors.toList());
         }
 
-        Map<String, BigDecimal> liabilitiesByType = new HashMap<>();
+        Map<String, MoneyAccumulator> liabilitiesByType = new HashMap<>();
 
         for (LiabilityAccount account : liabilityAccounts) {
-            Optional<LiabilityRecord> record = getLiabilityRecordAsOfDate(account.getId(), asOfDate);
+            Optional<BalancePoint> record = getLiabilityRecordAsOfDate(familyId, account.getId(), asOfDate);
             if (record.isPresent()) {
-                LiabilityRecord liabilityRecord = record.get();
-                BigDecimal balance;
+                BalancePoint liabilityRecord = record.get();
+                String typeName = account.getLiabilityType() != null ?
+                    account.getLiabilityType().getType() : "OTHER";
+                MoneyAccumulator total = liabilitiesByType.computeIfAbsent(typeName, k -> new MoneyAccumulator());
                 if ("All".equalsIgnoreCase(currency)) {
-                    balance = convertToUSD(
-                        liabilityRecord.getOutstandingBalance(),
-                        liabilityRecord.getCurrency(),
-                        asOfDate != null ? asOfDate : liabilityRecord.getRecordDate()
+                    addUSD(total,
+                        liabilityRecord.amount(),
+                        liabilityRecord.currency(),
+                        asOfDate != null ? asOfDate : liabilityRecord.recordDate()
                     );
                 } else {
-                    balance = liabilityRecord.getOutstandingBalance();
+                    total.add(liabilityRecord.amount());
                 }
-
-                String typeName = account.getLiabilityType() != null ?
-                    account.getLiabilityType().getType() : "OTHER";
-                liabilitiesByType.merge(typeName, balance, BigDecimal::add);
             }
         }
 
-        return liabilitiesByType;
+        return toAmounts(liabilitiesByType);
     }
 
     // Get overall trend (combines assets and liabilities)
@@ -265,27 +333,19 @@ public class AnalysisService {
         LocalDate startDate = LocalDate.parse(startDateStr);
         LocalDate endDate = LocalDate.parse(endDateStr);
 
-        // Get user IDs once for both asset and liability accounts
-        List<Long> userIds;
+        // 家庭维度直接读取净资产快照汇总
         if (familyId != null) {
-            List<User> familyMembers = userRepository.findByFamilyIdAndIsActiveTrue(familyId);
-            userIds = familyMembers.stream().map(User::getId).collect(Collectors.toList());
-            if (userIds.isEmpty()) {
-                return new ArrayList<>();  // Early return if no users found
-            }
-        } else {
-            userIds = null;
+            return buildOverallTrend(
+                netWorthCubeService.getTotalsByDate(familyId, NetWorthSnapshotCube.KIND_ASSET, null, startDate, endDate),
+                netWorthCubeService.getTotalsByDate(familyId, NetWorthSnapshotCube.KIND_LIABILITY, null, startDate, endDate)
+            );
         }
 
         // Get all asset accounts
-        List<AssetAccount> assetAccounts = (userIds != null)
-            ? accountRepository.findByUserIdInAndIsActiveTrue(userIds)
-            : accountRepository.findByIsActiveTrue();
+        List<AssetAccount> assetAccounts = accountRepository.findByIsActiveTrue();
 
         // Get all liability accounts
-        List<LiabilityAccount> liabilityAccounts = (userIds != null)
-            ? liabilityAccountRepository.findByUserIdInAndIsActiveTrue(userIds)
-            : liabilityAccountRepository.findByIsActiveTrue();
+        List<LiabilityAccount> liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
 
         // Batch query: Get all asset records at once
         List<AssetRecord> allAssetRecords = new ArrayList<>();
@@ -307,55 +367,25 @@ public class AnalysisService {
                 .findByAccountIdInAndRecordDateBetweenOrderByRecordDateDesc(liabilityAccountIds, startDate, endDate);
         }
 
-        // OPTIMIZATION: Pre-fetch all exchange rates to avoid N+1 queries
-        Map<String, BigDecimal> exchangeRateCache = new HashMap<>();
-
-        // Collect unique (currency, date) pairs from asset records
-        for (AssetRecord record : allAssetRecords) {
-            if (record.getCurrency() != null && !record.getCurrency().equalsIgnoreCase("USD")) {
-                String key = record.getCurrency() + "_" + record.getRecordDate();
-                if (!exchangeRateCache.containsKey(key)) {
-                    BigDecimal rate = exchangeRateService.getExchangeRate(record.getCurrency(), record.getRecordDate());
-                    exchangeRateCache.put(key, rate);
-                }
-            }
-        }
-
-        // Collect unique (currency, date) pairs from liability records
-        for (LiabilityRecord record : allLiabilityRecords) {
-            if (record.getCurrency() != null && !record.getCurrency().equalsIgnoreCase("USD")) {
-                String key = record.getCurrency() + "_" + record.getRecordDate();
-                if (!exchangeRateCache.containsKey(key)) {
-                    BigDecimal rate = exchangeRateService.getExchangeRate(record.getCurrency(), record.getRecordDate());
-                    exchangeRateCache.put(key, rate);
-                }
-            }
-        }
-
-        // Process asset records with cached exchange rates
+        // Process asset records (exchange rates come from ExchangeRateService's timeline cache)
         Map<LocalDate, BigDecimal> assetsByDate = new HashMap<>();
         for (AssetRecord record : allAssetRecords) {
-            BigDecimal amount = convertToUSDWithCache(
-                record.getAmount(),
-                record.getCurrency(),
-                record.getRecordDate(),
-                exchangeRateCache
-            );
+            BigDecimal amount = convertToUSD(record.getAmount(), record.getCurrency(), record.getRecordDate());
             assetsByDate.merge(record.getRecordDate(), amount, BigDecimal::add);
         }
 
-        // Process liability records with cached exchange rates
+        // Process liability records
         Map<LocalDate, BigDecimal> liabilitiesByDate = new HashMap<>();
         for (LiabilityRecord record : allLiabilityRecords) {
-            BigDecimal balance = convertToUSDWithCache(
-                record.getOutstandingBalance(),
-                record.getCurrency(),
-                record.getRecordDate(),
-                exchangeRateCache
-            );
+            BigDecimal balance = convertToUSD(record.getOutstandingBalance(), record.getCurrency(), record.getRecordDate());
             liabilitiesByDate.merge(record.getRecordDate(), balance, BigDecimal::add);
         }
 
+        return buildOverallTrend(assetsByDate, liabilitiesByDate);
+    }
+
+    private List<OverallTrendDataPointDTO> buildOverallTrend(Map<LocalDate, BigDecimal> assetsByDate,
+                                                             Map<LocalDate, BigDecimal> liabilitiesByDate) {
         // Merge all dates
         Set<LocalDate> allDates = new HashSet<>();
         allDates.addAll(assetsByDate.keySet());
@@ -390,48 +420,42 @@ public class AnalysisService {
         LocalDate endDate = LocalDate.parse(endDateStr);
 
         // Get net asset category
-        Optional<NetAssetCategory> categoryOpt = netAssetCategoryRepository.findByCode(categoryCode);
+        Optional<NetAssetCategory> categoryOpt = referenceDataCache.findNetAssetCategoryByCode(categoryCode);
         if (categoryOpt.isEmpty()) {
             return new ArrayList<>();
         }
         NetAssetCategory category = categoryOpt.get();
 
         // Get asset type mappings
-        List<NetAssetCategoryAssetTypeMapping> assetMappings = assetTypeMappingRepository.findByNetAssetCategoryId(category.getId());
+        List<NetAssetCategoryAssetTypeMapping> assetMappings = referenceDataCache.getAssetTypeMappings(category.getId());
         Set<String> assetTypes = assetMappings.stream()
             .map(NetAssetCategoryAssetTypeMapping::getAssetType)
             .collect(Collectors.toSet());
 
         // Get liability type mappings
-        List<NetAssetCategoryLiabilityTypeMapping> liabilityMappings = liabilityTypeMappingRepository.findByNetAssetCategoryId(category.getId());
+        List<NetAssetCategoryLiabilityTypeMapping> liabilityMappings = referenceDataCache.getLiabilityTypeMappings(category.getId());
         Set<String> liabilityTypes = liabilityMappings.stream()
             .map(NetAssetCategoryLiabilityTypeMapping::getLiabilityType)
             .collect(Collectors.toSet());
 
-        // Get all asset accounts
-        List<AssetAccount> assetAccounts;
+        // 家庭维度直接读取净资产快照汇总（按分类映射的类型过滤）
         if (familyId != null) {
-            List<User> familyMembers = userRepository.findByFamilyIdAndIsActiveTrue(familyId);
-            List<Long> userIds = familyMembers.stream().map(User::getId).collect(Collectors.toList());
-            assetAccounts = accountRepository.findByUserIdInAndIsActiveTrue(userIds);
-        } else {
-            assetAccounts = accountRepository.findByIsActiveTrue();
+            return buildNetTrend(
+                netWorthCubeService.getTotalsByDate(familyId, NetWorthSnapshotCube.KIND_ASSET, assetTypes, startDate, endDate),
+                netWorthCubeService.getTotalsByDate(familyId, NetWorthSnapshotCube.KIND_LIABILITY, liabilityTypes, startDate, endDate)
+            );
         }
 
+        // Get all asset accounts
+        List<AssetAccount> assetAccounts = accountRepository.findByIsActiveTrue();
+
         // Filter matching asset accounts
         List<AssetAccount> filteredAssetAccounts = assetAccounts.stream()
             .filter(acc -> acc.getAssetType() != null && assetTypes.contains(acc.getAssetType().getType()))
             .collect(Collectors.toList());
 
         // Get all liability accounts
-        List<LiabilityAccount> liabilityAccounts;
-        if (familyId != null) {
-            List<User> familyMembers = userRepository.findByFamilyIdAndIsActiveTrue(familyId);
-            List<Long> userIds = familyMembers.stream().map(User::getId).collect(Collectors.toList());
-            liabilityAccounts = liabilityAccountRepository.findByUserIdInAndIsActiveTrue(userIds);
-        } else {
-            liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
-        }
+        List<LiabilityAccount> liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
 
         // Filter matching liability accounts
         List<LiabilityAccount> filteredLiabilityAccounts = liabilityAccounts.stream()
@@ -468,6 +492,11 @@ public class AnalysisService {
             }
         }
 
+        return buildNetTrend(assetsByDate, liabilitiesByDate);
+    }
+
+    private List<TrendDataPointDTO> buildNetTrend(Map<LocalDate, BigDecimal> assetsByDate,
+                                                  Map<LocalDate, BigDecimal> liabilitiesByDate) {
         // Merge all dates
         Set<LocalDate> allDates = new HashSet<>();
         allDates.addAll(assetsByDate.keySet());
@@ -495,7 +524,7 @@ public class AnalysisService {
     // Get net asset category accounts
     public Map<String, Object> getNetAssetCategoryAccounts(String categoryCode, Long userId, Long familyId, LocalDate asOfDate) {
         // Get net asset category
-        Optional<NetAssetCategory> categoryOpt = netAssetCategoryRepository.findByCode(categoryCode);
+        Optional<NetAssetCategory> categoryOpt = referenceDataCache.findNetAssetCategoryByCode(categoryCode);
         if (categoryOpt.isEmpty()) {
             Map<String, Object> emptyResult = new HashMap<>();
             emptyResult.put("assetAccounts", new ArrayList<>());
@@ -505,13 +534,13 @@ public class AnalysisService {
         NetAssetCategory category = categoryOpt.get();
 
         // Get asset type mappings
-        List<NetAssetCategoryAssetTypeMapping> assetMappings = assetTypeMappingRepository.findByNetAssetCategoryId(category.getId());
+        List<NetAssetCategoryAssetTypeMapping> assetMappings = referenceDataCache.getAssetTypeMappings(category.getId());
         Set<String> assetTypes = assetMappings.stream()
             .map(NetAssetCategoryAssetTypeMapping::getAssetType)
             .collect(Collectors.toSet());
 
         // Get liability type mappings
-        List<NetAssetCategoryLiabilityTypeMapping> liabilityMappings = liabilityTypeMappingRepository.findByNetAssetCategoryId(category.getId());
+        List<NetAssetCategoryLiabilityTypeMapping> liabilityMappings = referenceDataCache.getLiabilityTypeMappings(category.getId());
         Set<String> liabilityTypes = liabilityMappings.stream()
             .map(NetAssetCategoryLiabilityTypeMapping::getLiabilityType)
             .collect(Collectors.toSet());
@@ -530,13 +559,13 @@ public class AnalysisService {
         List<Map<String, Object>> assetAccountsData = new ArrayList<>();
         for (AssetAccount account : assetAccounts) {
             if (account.getAssetType() != null && assetTypes.contains(account.getAssetType().getType())) {
-                Optional<AssetRecord> record = getAssetRecordAsOfDate(account.getId(), asOfDate);
+                Optional<BalancePoint> record = getAssetRecordAsOfDate(familyId, account.getId(), asOfDate);
                 if (record.isPresent()) {
-                    AssetRecord assetRecord = record.get();
+                    BalancePoint assetRecord = record.get();
                     BigDecimal balance = convertToUSD(
-                        assetRecord.getAmount(),
-                        assetRecord.getCurrency(),
-                        asOfDate != null ? asOfDate : assetRecord.getRecordDate()
+                        assetRecord.amount(),
+                        assetRecord.currency(),
+                        asOfDate != null ? asOfDate : assetRecord.recordDate()
                     );
                     Map<String, Object> accountData = new HashMap<>();
                     accountData.put("accountId", account.getId());
@@ -563,13 +592,13 @@ public class AnalysisService {
         List<Map<String, Object>> liabilityAccountsData = new ArrayList<>();
         for (LiabilityAccount account : liabilityAccounts) {
             if (account.getLiabilityType() != null && liabilityTypes.contains(account.getLiabilityType().getType())) {
-                Optional<LiabilityRecord> record = getLiabilityRecordAsOfDate(account.getId(), asOfDate);
+                Optional<BalancePoint> record = getLiabilityRecordAsOfDate(familyId, account.getId(), asOfDate);
                 if (record.isPresent()) {
-                    LiabilityRecord liabilityRecord = record.get();
+                    BalancePoint liabilityRecord = record.get();
                     BigDecimal balance = convertToUSD(
-                        liabilityRecord.getOutstandingBalance(),
-                        liabilityRecord.getCurrency(),
-                        asOfDate != null ? asOfDate : liabilityRecord.getRecordDate()
+                        liabilityRecord.amount(),
+                        liabilityRecord.currency(),
+                        asOfDate != null ? asOfDate : liabilityRecord.recordDate()
                     );
                     Map<String, Object> accountData = new HashMap<>();
                     accountData.put("accountId", account.getId());
@@ -618,64 +647,65 @@ public class AnalysisService {
             liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
         }
 
+        // 未指定日期时直接读取最新记录投影
+        boolean current = asOfDate == null;
         if (asOfDate == null) {
             asOfDate = LocalDate.now();
         }
 
         // OPTIMIZATION: Batch query all records
-        List<Long> assetAccountIds = assetAccounts.stream().map(AssetAccount::getId).collect(Collectors.toList());
-        List<Long> liabilityAccountIds = liabilityAccounts.stream().map(LiabilityAccount::getId).collect(Collectors.toList());
+        Map<Long, AssetRecord> assetRecordMap = loadLatestAssetRecords(assetAccounts, current ? null : asOfDate);
+        Map<Long, LiabilityRecord> liabilityRecordMap = loadLatestLiabilityRecords(liabilityAccounts, current ? null : asOfDate);
 
-        Map<Long, AssetRecord> assetRecordMap = new HashMap<>();
-        if (!assetAccountIds.isEmpty()) {
-            List<AssetRecord> records = recordRepository.findLatestByAccountIdsBeforeOrEqualDate(assetAccountIds, asOfDate);
-            for (AssetRecord record : records) {
-                assetRecordMap.put(record.getAccountId(), record);
-            }
-        }
+        return buildNetWorthByTaxStatus(assetAccounts, liabilityAccounts, assetRecordMap, liabilityRecordMap);
+    }
 
-        Map<Long, LiabilityRecord> liabilityRecordMap = new HashMap<>();
-        if (!liabilityAccountIds.isEmpty()) {
-            List<LiabilityRecord> records = liabilityRecordRepository.findLatestByAccountIdsBeforeOrEqualDate(liabilityAccountIds, asOfDate);
-            for (LiabilityRecord record : records) {
-                liabilityRecordMap.put(record.getAccountId(), record);
-            }
-        }
+    /**
+     * 基于仪表盘快照计算按税收状态的净资产配置
+     */
+    public Map<String, Object> getNetWorthByTaxStatus(FamilySnapshot snapshot) {
+        return buildNetWorthByTaxStatus(snapshot.assetAccounts(), snapshot.liabilityAccounts(),
+            snapshot.assetRecords(), snapshot.liabilityRecords());
+    }
 
+    private Map<String, Object> buildNetWorthByTaxStatus(List<AssetAccount> assetAccounts,
+                                                         List<LiabilityAccount> liabilityAccounts,
+                                                         Map<Long, AssetRecord> assetRecordMap,
+                                                         Map<Long, LiabilityRecord> liabilityRecordMap) {
         // Group assets by tax status
-        Map<String, BigDecimal> assetsByTaxStatus = new HashMap<>();
-        assetsByTaxStatus.put("TAXABLE", BigDecimal.ZERO);
-        assetsByTaxStatus.put("TAX_FREE", BigDecimal.ZERO);
-        assetsByTaxStatus.put("TAX_DEFERRED", BigDecimal.ZERO);
+        Map<String, MoneyAccumulator> taxStatusTotals = new HashMap<>();
+        taxStatusTotals.put("TAXABLE", new MoneyAccumulator());
+        taxStatusTotals.put("TAX_FREE", new MoneyAccumulator());
+        taxStatusTotals.put("TAX_DEFERRED", new MoneyAccumulator());
 
         for (AssetAccount account : assetAccounts) {
             AssetRecord assetRecord = assetRecordMap.get(account.getId());
             if (assetRecord != null) {
-                BigDecimal amount = convertToUSD(
+                String taxStatus = account.getTaxStatus() != null ? account.getTaxStatus().name() : "TAXABLE";
+                addUSD(taxStatusTotals.computeIfAbsent(taxStatus, k -> new MoneyAccumulator()),
                     assetRecord.getAmount(),
                     assetRecord.getCurrency(),
                     assetRecord.getRecordDate()
                 );
-                String taxStatus = account.getTaxStatus() != null ? account.getTaxStatus().name() : "TAXABLE";
-                assetsByTaxStatus.merge(taxStatus, amount, BigDecimal::add);
             }
         }
+        Map<String, BigDecimal> assetsByTaxStatus = new HashMap<>();
+        taxStatusTotals.forEach((taxStatus, total) -> assetsByTaxStatus.put(taxStatus, total.toBigDecimal()));
 
-        BigDecimal totalLiabilities = BigDecimal.ZERO;
+        MoneyAccumulator totalLiabilities = new MoneyAccumulator();
         for (LiabilityAccount account : liabilityAccounts) {
             LiabilityRecord liabilityRecord = liabilityRecordMap.get(account.getId());
             if (liabilityRecord != null) {
-                BigDecimal balance = convertToUSD(
+                addUSD(totalLiabilities,
                     liabilityRecord.getOutstandingBalance(),
                     liabilityRecord.getCurrency(),
                     liabilityRecord.getRecordDate()
                 );
-                totalLiabilities = totalLiabilities.add(balance);
             }
         }
 
         // Deduct liabilities from assets (taxable first, then tax-free, then tax-deferred)
-        BigDecimal remainingLiabilities = totalLiabilities;
+        BigDecimal remainingLiabilities = totalLiabilities.toBigDecimal();
 
         // 1. Deduct from taxable assets first
         BigDecimal taxableAssets = assetsByTaxStatus.get("TAXABLE");
@@ -771,6 +801,8 @@ public class AnalysisService {
                 .collect(Collectors.toList());
         }
 
+        // 未指定日期时直接读取最新记录投影
+        boolean current = asOfDate == null;
         if (asOfDate == null) {
             asOfDate = LocalDate.now();
         }
@@ -786,25 +818,28 @@ public class AnalysisService {
         List<LiabilityAccount> allLiabilityAccounts = liabilityAccountRepository.findByUserIdInAndIsActiveTrue(userIds);
 
         // OPTIMIZATION: Batch query all records
-        List<Long> assetAccountIds = allAssetAccounts.stream().map(AssetAccount::getId).collect(Collectors.toList());
-        List<Long> liabilityAccountIds = allLiabilityAccounts.stream().map(LiabilityAccount::getId).collect(Collectors.toList());
+        Map<Long, AssetRecord> assetRecordMap = loadLatestAssetRecords(allAssetAccounts, current ? null : asOfDate);
+        Map<Long, LiabilityRecord> liabilityRecordMap = loadLatestLiabilityRecords(allLiabilityAccounts, current ? null : asOfDate);
 
-        Map<Long, AssetRecord> assetRecordMap = new HashMap<>();
-        if (!assetAccountIds.isEmpty()) {
-            List<AssetRecord> records = recordRepository.findLatestByAccountIdsBeforeOrEqualDate(assetAccountIds, asOfDate);
-            for (AssetRecord record : records) {
-                assetRecordMap.put(record.getAccountId(), record);
-            }
-        }
+        return buildNetWorthByMember(users, allAssetAccounts, allLiabilityAccounts, assetRecordMap, liabilityRecordMap);
+    }
 
-        Map<Long, LiabilityRecord> liabilityRecordMap = new HashMap<>();
-        if (!liabilityAccountIds.isEmpty()) {
-            List<LiabilityRecord> records = liabilityRecordRepository.findLatestByAccountIdsBeforeOrEqualDate(liabilityAccountIds, asOfDate);
-            for (LiabilityRecord record : records) {
-                liabilityRecordMap.put(record.getAccountId(), record);
-            }
+    /**
+     * 基于仪表盘快照计算按家庭成员的净资产配置
+     */
+    public Map<String, Object> getNetWorthByMember(FamilySnapshot snapshot) {
+        if (snapshot.users().isEmpty()) {
+            return Map.of("total", BigDecimal.ZERO, "data", new ArrayList<>());
         }
+        return buildNetWorthByMember(snapshot.users(), snapshot.assetAccounts(), snapshot.liabilityAccounts(),
+            snapshot.assetRecords(), snapshot.liabilityRecords());
+    }
 
+    private Map<String, Object> buildNetWorthByMember(List<User> users,
+                                                      List<AssetAccount> allAssetAccounts,
+                                                      List<LiabilityAccount> allLiabilityAccounts,
+                                                      Map<Long, AssetRecord> assetRecordMap,
+                                                      Map<Long, LiabilityRecord> liabilityRecordMap) {
         // Group accounts by user
         Map<Long, List<AssetAccount>> assetAccountsByUser = allAssetAccounts.stream()
             .collect(Collectors.groupingBy(AssetAccount::getUserId));
@@ -817,20 +852,15 @@ public class AnalysisService {
 
         // Calculate net worth for each member
         for (User user : users) {
-            BigDecimal userTotalAssets = BigDecimal.ZERO;
-            BigDecimal userTotalLiabilities = BigDecimal.ZERO;
+            MoneyAccumulator assetTotal = new MoneyAccumulator();
+            MoneyAccumulator liabilityTotal = new MoneyAccumulator();
 
             // Calculate assets
             List<AssetAccount> userAssets = assetAccountsByUser.getOrDefault(user.getId(), Collections.emptyList());
             for (AssetAccount account : userAssets) {
                 AssetRecord record = assetRecordMap.get(account.getId());
                 if (record != null) {
-                    BigDecimal value = convertToUSD(
-                        record.getAmount(),
-                        record.getCurrency(),
-                        record.getRecordDate()
-                    );
-                    userTotalAssets = userTotalAssets.add(value);
+                    addUSD(assetTotal, record.getAmount(), record.getCurrency(), record.getRecordDate());
                 }
             }
 
@@ -839,15 +869,13 @@ public class AnalysisService {
             for (LiabilityAccount account : userLiabilities) {
                 LiabilityRecord record = liabilityRecordMap.get(account.getId());
                 if (record != null) {
-                    BigDecimal value = convertToUSD(
-                        record.getOutstandingBalance(),
-                        record.getCurrency(),
-                        record.getRecordDate()
-                    );
-                    userTotalLiabilities = userTotalLiabilities.add(value);
+                    addUSD(liabilityTotal, record.getOutstandingBalance(), record.getCurrency(), record.getRecordDate());
                 }
             }
 
+            BigDecimal userTotalAssets = assetTotal.toBigDecimal();
+            BigDecimal userTotalLiabilities = liabilityTotal.toBigDecimal();
+
             BigDecimal userNetWorth = userTotalAssets.subtract(userTotalLiabilities);
 
             // Only add members with non-zero net worth
@@ -909,51 +937,54 @@ public class AnalysisService {
             liabilityAccounts = liabilityAccountRepository.findByIsActiveTrue();
         }
 
+        // 未指定日期时直接读取最新记录投影
+        boolean current = asOfDate == null;
         if (asOfDate == null) {
             asOfDate = LocalDate.now();
         }
 
         // OPTIMIZATION: Batch query all records
-        List<Long> assetAccountIds = assetAccounts.stream().map(AssetAccount::getId).collect(Collectors.toList());
-        List<Long> liabilityAccountIds = liabilityAccounts.stream().map(LiabilityAccount::getId).collect(Collectors.toList());
+        Map<Long, AssetRecord> assetRecordMap = loadLatestAssetRecords(assetAccounts, current ? null : asOfDate);
+        Map<Long, LiabilityRecord> liabilityRecordMap = loadLatestLiabilityRecords(liabilityAccounts, current ? null : asOfDate);
 
-        Map<Long, AssetRecord> assetRecordMap = new HashMap<>();
-        if (!assetAccountIds.isEmpty()) {
-            List<AssetRecord> records = recordRepository.findLatestByAccountIdsBeforeOrEqualDate(assetAccountIds, asOfDate);
-            for (AssetRecord record : records) {
-                assetRecordMap.put(record.getAccountId(), record);
-            }
-        }
+        return buildNetWorthByCurrency(assetAccounts, liabilityAccounts, assetRecordMap, liabilityRecordMap, asOfDate);
+    }
 
-        Map<Long, LiabilityRecord> liabilityRecordMap = new HashMap<>();
-        if (!liabilityAccountIds.isEmpty()) {
-            List<LiabilityRecord> records = liabilityRecordRepository.findLatestByAccountIdsBeforeOrEqualDate(liabilityAccountIds, asOfDate);
-            for (LiabilityRecord record : records) {
-                liabilityRecordMap.put(record.getAccountId(), record);
-            }
-        }
+    /**
+     * 基于仪表盘快照计算按货币的净资产配置
+     */
+    public Map<String, Object> getNetWorthByCurrency(FamilySnapshot snapshot) {
+        LocalDate asOfDate = snapshot.asOfDate() != null ? snapshot.asOfDate() : LocalDate.now();
+        return buildNetWorthByCurrency(snapshot.assetAccounts(), snapshot.liabilityAccounts(),
+            snapshot.assetRecords(), snapshot.liabilityRecords(), asOfDate);
+    }
 
+    private Map<String, Object> buildNetWorthByCurrency(List<AssetAccount> assetAccounts,
+                                                        List<LiabilityAccount> liabilityAccounts,
+                                                        Map<Long, AssetRecord> assetRecordMap,
+                                                        Map<Long, LiabilityRecord> liabilityRecordMap,
+                                                        LocalDate asOfDate) {
         // Group assets by currency (without conversion)
-        Map<String, BigDecimal> assetsByCurrency = new HashMap<>();
+        Map<String, MoneyAccumulator> assetTotals = new HashMap<>();
         for (AssetAccount account : assetAccounts) {
             AssetRecord assetRecord = assetRecordMap.get(account.getId());
             if (assetRecord != null) {
-                String currency = assetRecord.getCurrency();
-                BigDecimal amount = assetRecord.getAmount();
-                assetsByCurrency.merge(currency, amount, BigDecimal::add);
+                assetTotals.computeIfAbsent(assetRecord.getCurrency(), k -> new MoneyAccumulator())
+                    .add(assetRecord.getAmount());
             }
         }
 
         // Group liabilities by currency (without conversion)
-        Map<String, BigDecimal> liabilitiesByCurrency = new HashMap<>();
+        Map<String, MoneyAccumulator> liabilityTotals = new HashMap<>();
         for (LiabilityAccount account : liabilityAccounts) {
             LiabilityRecord liabilityRecord = liabilityRecordMap.get(account.getId());
             if (liabilityRecord != null) {
-                String currency = liabilityRecord.getCurrency();
-                BigDecimal balance = liabilityRecord.getOutstandingBalance();
-                liabilitiesByCurrency.merge(currency, balance, BigDecimal::add);
+                liabilityTotals.computeIfAbsent(liabilityRecord.getCurrency(), k -> new MoneyAccumulator())
+                    .add(liabilityRecord.getOutstandingBalance());
             }
         }
+        Map<String, BigDecimal> assetsByCurrency = toAmounts(assetTotals);
+        Map<String, BigDecimal> liabilitiesByCurrency = toAmounts(liabilityTotals);
 
         // Calculate net worth per currency
         Set<String> allCurrencies = new HashSet<>();
@@ -1015,22 +1046,58 @@ public class AnalysisService {
     // Helper methods (kept private in AnalysisService)
     // ==============================================
 
-    private Optional<AssetRecord> getAssetRecordAsOfDate(Long accountId, LocalDate asOfDate) {
-        if (asOfDate == null) {
-            return recordRepository.findLatestByAccountId(accountId);
-        } else {
-            List<AssetRecord> records = recordRepository.findByAccountIdAndRecordDateBeforeOrEqual(accountId, asOfDate);
-            return records.isEmpty() ? Optional.empty() : Optional.of(records.get(0));
+    // 批量读取每个账户截至 asOfDate 的最新记录；asOfDate 为 null 时读取最新记录投影
+    private Map<Long, AssetRecord> loadLatestAssetRecords(List<AssetAccount> accounts, LocalDate asOfDate) {
+        Map<Long, AssetRecord> recordMap = new HashMap<>();
+        if (accounts.isEmpty()) {
+            return recordMap;
         }
+        List<Long> accountIds = accounts.stream().map(AssetAccount::getId).collect(Collectors.toList());
+        List<AssetRecord> records = asOfDate == null
+                ? recordRepository.findLatestByAccountIds(accountIds)
+                : recordRepository.findLatestByAccountIdsBeforeOrEqualDate(accountIds, asOfDate);
+        for (AssetRecord record : records) {
+            recordMap.put(record.getAccountId(), record);
+        }
+        return recordMap;
     }
 
-    private Optional<LiabilityRecord> getLiabilityRecordAsOfDate(Long accountId, LocalDate asOfDate) {
-        if (asOfDate == null) {
-            return liabilityRecordRepository.findLatestByAccountId(accountId);
-        } else {
-            List<LiabilityRecord> records = liabilityRecordRepository.findByAccountIdAndRecordDateBeforeOrEqual(accountId, asOfDate);
-            return records.isEmpty() ? Optional.empty() : Optional.of(records.get(0));
+    private Map<Long, LiabilityRecord> loadLatestLiabilityRecords(List<LiabilityAccount> accounts, LocalDate asOfDate) {
+        Map<Long, LiabilityRecord> recordMap = new HashMap<>();
+        if (accounts.isEmpty()) {
+            return recordMap;
+        }
+        List<Long> accountIds = accounts.stream().map(LiabilityAccount::getId).collect(Collectors.toList());
+        List<LiabilityRecord> records = asOfDate == null
+                ? liabilityRecordRepository.findLatestByAccountIds(accountIds)
+                : liabilityRecordRepository.findLatestByAccountIdsBeforeOrEqualDate(accountIds, asOfDate);
+        for (LiabilityRecord record : records) {
+            recordMap.put(record.getAccountId(), record);
+        }
+        return recordMap;
+    }
+
+    // 有familyId时走家庭余额索引（内存二分查找），否则回退到逐账户查询
+    private Optional<BalancePoint> getAssetRecordAsOfDate(Long familyId, Long accountId, LocalDate asOfDate) {
+        if (familyId != null) {
+            return balanceIndexService.getAssetBalanceAsOf(familyId, accountId, asOfDate);
         }
+        Optional<AssetRecord> record = asOfDate == null
+            ? recordRepository.findLatestByAccountId(accountId)
+            : recordRepository.findLatestByAccountIdBeforeOrOnDate(accountId, asOfDate);
+        return record.map(r -> new BalancePoint(
+            r.getAccountId(), r.getRecordDate(), r.getAmount(), r.getCurrency()));
+    }
+
+    private Optional<BalancePoint> getLiabilityRecordAsOfDate(Long familyId, Long accountId, LocalDate asOfDate) {
+        if (familyId != null) {
+            return balanceIndexService.getLiabilityBalanceAsOf(familyId, accountId, asOfDate);
+        }
+        Optional<LiabilityRecord> record = asOfDate == null
+            ? liabilityRecordRepository.findLatestByAccountId(accountId)
+            : liabilityRecordRepository.findLatestByAccountIdBeforeOrOnDate(accountId, asOfDate);
+        return record.map(r -> new BalancePoint(
+            r.getAccountId(), r.getRecordDate(), r.getOutstandingBalance(), r.getCurrency()));
     }
 
     private BigDecimal convertToBaseCurrency(BigDecimal amount, String currency, LocalDate asOfDate, String baseCurrency) {
@@ -1060,28 +1127,31 @@ public class AnalysisService {
         return convertToBaseCurrency(amount, currency, asOfDate, "USD");
     }
 
-    /**
-     * Convert amount to USD using pre-fetched exchange rate cache
-     * Eliminates N+1 query problem for batch conversions
-     */
-    private BigDecimal convertToUSDWithCache(BigDecimal amount, String currency, LocalDate asOfDate, Map<String, BigDecimal> exchangeRateCache) {
-        if (amount == null) {
-            return BigDecimal.ZERO;
-        }
-
+    // 与 convertToUSD 后再相加的结果一致，循环内不逐条创建 BigDecimal
+    private void addUSD(MoneyAccumulator total, BigDecimal amount, String currency, LocalDate asOfDate) {
         if (currency == null || currency.equalsIgnoreCase("USD")) {
-            return amount;
+            total.add(amount);
+        } else if (amount != null) {
+            LocalDate conversionDate = (asOfDate != null) ? asOfDate : LocalDate.now();
+            total.addConverted(amount, exchangeRateService.getExchangeRate(currency, conversionDate));
         }
+    }
 
-        String key = currency + "_" + asOfDate;
-        BigDecimal rate = exchangeRateCache.get(key);
+    private static <K> Map<K, BigDecimal> toAmounts(Map<K, MoneyAccumulator> totals) {
+        Map<K, BigDecimal> amounts = new HashMap<>();
+        totals.forEach((key, total) -> amounts.put(key, total.toBigDecimal()));
+        return amounts;
+    }
 
-        if (rate == null) {
-            // Fallback to direct lookup if not in cache (shouldn't happen if cache is properly initialized)
-            rate = exchangeRateService.getExchangeRate(currency, asOfDate);
-        }
+    // 指定日期的资产负债总览（USD，不含自住房）
+    private AssetSummaryDTO netWorthSummary(Long userId, Long familyId, LocalDate date) {
+        AssetSummaryDTO summary = assetAnalysisService.getAssetSummary(userId, familyId, date);
+        return addLiabilityDataToSummary(summary, userId, familyId, date, "All");
+    }
 
-        return amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+    private AssetSummaryDTO netWorthSummary(FamilySnapshot snapshot, LocalDate date) {
+        AssetSummaryDTO summary = assetAnalysisService.getAssetSummary(snapshot, date);
+        return addLiabilityDataToSummary(summary, snapshot, date);
     }
 
     private String getCurrencyName(String currencyCode) {
@@ -1242,13 +1312,22 @@ public class AnalysisService {
     public RiskAssessmentDTO getRiskAssessment(Long userId, Long familyId, LocalDate asOfDate) {
         // 如果没有指定日期,使用当前日期
         LocalDate targetDate = (asOfDate != null) ? asOfDate : LocalDate.now();
+        return buildRiskAssessment(targetDate, netWorthSummary(userId, familyId, targetDate));
+    }
+
+    /**
+     * 基于仪表盘快照计算风险评估
+     */
+    public RiskAssessmentDTO getRiskAssessment(FamilySnapshot snapshot) {
+        LocalDate targetDate = (snapshot.asOfDate() != null) ? snapshot.asOfDate() : LocalDate.now();
+        return buildRiskAssessment(targetDate, netWorthSummary(snapshot, targetDate));
+    }
 
+    private RiskAssessmentDTO buildRiskAssessment(LocalDate targetDate, AssetSummaryDTO summary) {
         RiskAssessmentDTO assessment = new RiskAssessmentDTO();
         assessment.setAsOfDate(targetDate);
 
         // 1. 获取基础财务数据
-        AssetSummaryDTO summary = assetAnalysisService.getAssetSummary(userId, familyId, targetDate);
-        summary = addLiabilityDataToSummary(summary, userId, familyId, targetDate, "All");
         BigDecimal totalAssets = summary.getTotalAssets();
         BigDecimal totalLiabilities = summary.getTotalLiabilities();
         BigDecimal netWorth = summary.getNetWorth();
@@ -1659,36 +1738,43 @@ public class AnalysisService {
         // 如果没有指定日期,使用当前日期
         LocalDate targetDate = (asOfDate != null) ? asOfDate : LocalDate.now();
 
-        // 获取基础数据
-        AssetSummaryDTO summary = assetAnalysisService.getAssetSummary(userId, familyId, targetDate);
-        summary = addLiabilityDataToSummary(summary, userId, familyId, targetDate, "All");
-        RiskAssessmentDTO riskAssessment = getRiskAssessment(userId, familyId, targetDate);
-        FinancialMetricsDTO metrics = getFinancialMetrics(userId, familyId, targetDate);
+        // 财务指标和税务分析各自查询数据，与基础数据并行计算；超时或失败的分段降级
+        List<String> unavailable = new CopyOnWriteArrayList<>();
+        CompletableFuture<FinancialMetricsDTO> metricsFuture = sectionRunner.submit("metrics",
+            () -> getFinancialMetrics(userId, familyId, targetDate), () -> null, unavailable);
+        CompletableFuture<OptimizationRecommendationDTO.TaxOptimization> taxFuture = sectionRunner.submit("tax",
+            () -> generateTaxOptimization(userId, familyId, targetDate),
+            () -> unavailableTaxOptimization(), unavailable);
+
+        // 获取基础数据（风险评估基于同一份资产负债总览，不再重复查询）
+        AssetSummaryDTO summary = netWorthSummary(userId, familyId, targetDate);
+        RiskAssessmentDTO riskAssessment = buildRiskAssessment(targetDate, summary);
+
+        CompletableFuture<OptimizationRecommendationDTO.LiquidityOptimization> liquidityFuture = sectionRunner.submit("liquidity",
+            () -> generateLiquidityOptimization(summary, riskAssessment, userId),
+            () -> unavailableLiquidityOptimization(summary), unavailable);
 
         OptimizationRecommendationDTO optimization = new OptimizationRecommendationDTO();
         optimization.setAsOfDate(targetDate);
 
-        // 1. 计算综合评分
-        double overallScore = calculateOverallHealthScore(summary, riskAssessment, metrics);
-        optimization.setOverallScore(overallScore);
-        optimization.setHealthLevel(getHealthLevel(overallScore));
-
-        // 2. 生成各维度优化建议
+        // 1. 生成各维度优化建议（资产配置、债务、风险为纯计算，直接在当前线程执行）
         optimization.setAssetAllocationOptimization(
             generateAssetAllocationOptimization(summary, riskAssessment, userId, targetDate)
         );
         optimization.setDebtManagementOptimization(
             generateDebtManagementOptimization(summary, riskAssessment, userId, targetDate)
         );
-        optimization.setLiquidityOptimization(
-            generateLiquidityOptimization(summary, riskAssessment, userId)
-        );
         optimization.setRiskOptimization(
             generateRiskOptimization(riskAssessment)
         );
-        optimization.setTaxOptimization(
-            generateTaxOptimization(userId, familyId, targetDate)
-        );
+        optimization.setLiquidityOptimization(liquidityFuture.join());
+        optimization.setTaxOptimization(taxFuture.join());
+
+        // 2. 计算综合评分
+        double overallScore = calculateOverallHealthScore(summary, riskAssessment, metricsFuture.join());
+        optimization.setOverallScore(overallScore);
+        optimization.setHealthLevel(getHealthLevel(overallScore));
+        optimization.setUnavailableSections(new ArrayList<>(unavailable));
 
         // 3. 生成优先行动计划
         optimization.setPrioritizedActions(
@@ -1713,6 +1799,11 @@ public class AnalysisService {
         // 风险评分影响 (-40分)
         score -= (riskAssessment.getOverallRiskScore() * 0.4);
 
+        // 财务指标分段降级时只按风险评分计算
+        if (metrics == null) {
+            return Math.max(0, Math.min(100, score));
+        }
+
         // 资产负债率影响 (-20分)
         if (metrics.getDebtToAssetRatio().compareTo(BigDecimal.ZERO) > 0) {
             double debtRatio = metrics.getDebtToAssetRatio().doubleValue();
@@ -2201,6 +2292,28 @@ public class AnalysisService {
         return optimization;
     }
 
+    // 税务分段降级：不给出评分和建议
+    private OptimizationRecommendationDTO.TaxOptimization unavailableTaxOptimization() {
+        OptimizationRecommendationDTO.TaxOptimization optimization = new OptimizationRecommendationDTO.TaxOptimization();
+        optimization.setPriority("LOW");
+        optimization.setStatus("UNAVAILABLE");
+        optimization.setSummary("税务数据加载超时，暂无法评估");
+        optimization.setOptimizationPotential(0.0);
+        optimization.setSuggestions(new ArrayList<>());
+        return optimization;
+    }
+
+    // 流动性分段降级：保留现金金额，不给出评分和建议
+    private OptimizationRecommendationDTO.LiquidityOptimization unavailableLiquidityOptimization(AssetSummaryDTO summary) {
+        OptimizationRecommendationDTO.LiquidityOptimization optimization = new OptimizationRecommendationDTO.LiquidityOptimization();
+        optimization.setPriority("LOW");
+        optimization.setStatus("UNAVAILABLE");
+        optimization.setSummary("流动性数据加载超时，暂无法评估");
+        optimization.setCurrentCash(summary.getAssetsByType().getOrDefault("CASH", BigDecimal.ZERO).doubleValue());
+        optimization.setSuggestions(new ArrayList<>());
+        return optimization;
+    }
+
     private String generateTaxSummary(double taxablePercentage) {
         if (taxablePercentage > 70) {
             return "税务优化空间较大,建议增加税收优惠账户配置";
@@ -2290,14 +2403,17 @@ public class AnalysisService {
 
         OptimizationRecommendationDTO.ExpectedImpact impact = new OptimizationRecommendationDTO.ExpectedImpact();
 
-        // 基于各维度的改善空间估算
-        double avgScore = (
-            optimization.getAssetAllocationOptimization().getCurrentScore() +
-            optimization.getDebtManagementOptimization().getCurrentScore() +
-            optimization.getLiquidityOptimization().getCurrentScore() +
-            optimization.getRiskOptimization().getCurrentScore() +
-            optimization.getTaxOptimization().getCurrentScore()
-        ) / 5.0;
+        // 基于各维度的改善空间估算（降级的维度没有评分，不参与平均）
+        double avgScore = java.util.stream.Stream.of(
+                optimization.getAssetAllocationOptimization().getCurrentScore(),
+                optimization.getDebtManagementOptimization().getCurrentScore(),
+                optimization.getLiquidityOptimization().getCurrentScore(),
+                optimization.getRiskOptimization().getCurrentScore(),
+                optimization.getTaxOptimization().getCurrentScore())
+            .filter(Objects::nonNull)
+            .mapToDouble(Double::doubleValue)
+            .average()
+            .orElse(100.0);
 
         // 改善潜力 = (100 - 当前平均分) * 0.7 (假设可以改善70%的差距)
         double improvementPotential = (100 - avgScore) * 0.7;
@@ -2341,6 +2457,19 @@ public class AnalysisService {
      */
     public EnhancedFinancialMetricsDTO getEnhancedFinancialMetrics(Long userId, Long familyId, LocalDate asOfDate) {
         LocalDate targetDate = (asOfDate != null) ? asOfDate : LocalDate.now();
+        return buildEnhancedFinancialMetrics(familyId, targetDate, date -> netWorthSummary(userId, familyId, date));
+    }
+
+    /**
+     * 基于仪表盘快照计算增强的财务指标
+     */
+    public EnhancedFinancialMetricsDTO getEnhancedFinancialMetrics(FamilySnapshot snapshot) {
+        LocalDate targetDate = (snapshot.asOfDate() != null) ? snapshot.asOfDate() : LocalDate.now();
+        return buildEnhancedFinancialMetrics(snapshot.familyId(), targetDate, date -> netWorthSummary(snapshot, date));
+    }
+
+    private EnhancedFinancialMetricsDTO buildEnhancedFinancialMetrics(Long familyId, LocalDate targetDate,
+                                                                      Function<LocalDate, AssetSummaryDTO> summaryLoader) {
         Integer currentYear = targetDate.getYear();
 
         EnhancedFinancialMetricsDTO metrics = new EnhancedFinancialMetricsDTO();
@@ -2348,8 +2477,7 @@ public class AnalysisService {
         metrics.setYear(currentYear);
 
         // 1. 获取基础资产负债数据(复用现有方法)
-        AssetSummaryDTO currentSummary = assetAnalysisService.getAssetSummary(userId, familyId, targetDate);
-        currentSummary = addLiabilityDataToSummary(currentSummary, userId, familyId, targetDate, "All");
+        AssetSummaryDTO currentSummary = summaryLoader.apply(targetDate);
         metrics.setTotalAssets(currentSummary.getTotalAssets());
         metrics.setTotalLiabilities(currentSummary.getTotalLiabilities());
         metrics.setNetWorth(currentSummary.getNetWorth());
@@ -2375,14 +2503,34 @@ public class AnalysisService {
             metrics.setLiquidityRatio(BigDecimal.ZERO);
         }
 
-        // 3. 计算月度和年度变化
-        calculateAssetChanges(metrics, userId, familyId, targetDate);
+        // 3-5. 月度/年度变化、现金流、投资收益三段互不依赖，并行计算
+        // 每段写入各自的对象，完成后合并；超时或失败的分段降级为默认值
+        List<String> unavailable = new CopyOnWriteArrayList<>();
+        BigDecimal netWorth = metrics.getNetWorth();
+
+        CompletableFuture<EnhancedFinancialMetricsDTO> assetChanges = sectionRunner.submit("assetChanges", () -> {
+            EnhancedFinancialMetricsDTO part = new EnhancedFinancialMetricsDTO();
+            part.setNetWorth(netWorth);
+            calculateAssetChanges(part, targetDate, summaryLoader);
+            return part;
+        }, () -> defaultAssetChanges(targetDate), unavailable);
 
-        // 4. 计算现金流指标
-        calculateCashFlowMetrics(metrics, familyId, currentYear);
+        CompletableFuture<EnhancedFinancialMetricsDTO> cashFlow = sectionRunner.submit("cashFlow", () -> {
+            EnhancedFinancialMetricsDTO part = new EnhancedFinancialMetricsDTO();
+            calculateCashFlowMetrics(part, familyId, currentYear);
+            return part;
+        }, this::defaultCashFlowMetrics, unavailable);
 
-        // 5. 计算投资收益指标
-        calculateInvestmentMetrics(metrics, familyId, currentYear);
+        CompletableFuture<EnhancedFinancialMetricsDTO> investment = sectionRunner.submit("investment", () -> {
+            EnhancedFinancialMetricsDTO part = new EnhancedFinancialMetricsDTO();
+            calculateInvestmentMetrics(part, familyId, currentYear);
+            return part;
+        }, this::defaultInvestmentMetrics, unavailable);
+
+        mergeAssetChanges(metrics, assetChanges.join());
+        mergeCashFlowMetrics(metrics, cashFlow.join());
+        mergeInvestmentMetrics(metrics, investment.join());
+        metrics.setUnavailableSections(new ArrayList<>(unavailable));
 
         // 6. 计算财务健康评分
         EnhancedFinancialMetricsDTO.HealthScoreDTO healthScore = calculateHealthScore(metrics);
@@ -2394,12 +2542,12 @@ public class AnalysisService {
     /**
      * 计算资产变化(月度和年度)
      */
-    private void calculateAssetChanges(EnhancedFinancialMetricsDTO metrics, Long userId, Long familyId, LocalDate targetDate) {
+    private void calculateAssetChanges(EnhancedFinancialMetricsDTO metrics, LocalDate targetDate,
+                                       Function<LocalDate, AssetSummaryDTO> summaryLoader) {
         // 月度变化
         LocalDate previousMonth = targetDate.minusMonths(1);
         metrics.setPreviousMonthDate(previousMonth);
-        AssetSummaryDTO previousMonthSummary = assetAnalysisService.getAssetSummary(userId, familyId, previousMonth);
-        previousMonthSummary = addLiabilityDataToSummary(previousMonthSummary, userId, familyId, previousMonth, "All");
+        AssetSummaryDTO previousMonthSummary = summaryLoader.apply(previousMonth);
         metrics.setPreviousMonthNetWorth(previousMonthSummary.getNetWorth());
         BigDecimal monthlyChange = metrics.getNetWorth().subtract(previousMonthSummary.getNetWorth());
         metrics.setMonthlyChange(monthlyChange);
@@ -2416,8 +2564,7 @@ public class AnalysisService {
         // 年度变化
         LocalDate previousYear = LocalDate.of(targetDate.getYear() - 1, 12, 31);
         metrics.setPreviousYearDate(previousYear);
-        AssetSummaryDTO previousYearSummary = assetAnalysisService.getAssetSummary(userId, familyId, previousYear);
-        previousYearSummary = addLiabilityDataToSummary(previousYearSummary, userId, familyId, previousYear, "All");
+        AssetSummaryDTO previousYearSummary = summaryLoader.apply(previousYear);
         metrics.setPreviousYearNetWorth(previousYearSummary.getNetWorth());
         BigDecimal yearlyChange = metrics.getNetWorth().subtract(previousYearSummary.getNetWorth());
         metrics.setYearlyChange(yearlyChange);
@@ -2470,10 +2617,12 @@ public class AnalysisService {
             metrics.setAnnualOtherIncome(BigDecimal.ZERO);
         }
 
+        // 本年和去年的大类支出汇总一次查出（总计行由大类汇总中的 majorCategoryId == 0 行提供）
+        Map<Integer, List<com.finance.app.dto.expense.AnnualExpenseSummaryDTO>> expenseSummaries = null;
         try {
             // 2. 获取年度支出汇总
-            List<com.finance.app.dto.expense.AnnualExpenseSummaryDTO> expenseSummary =
-                expenseAnalysisService.getAnnualExpenseSummaryWithAdjustments(familyId, year, "USD", true);
+            expenseSummaries = expenseAnalysisService.getAnnualMajorCategorySummaries(familyId, List.of(year, year - 1));
+            List<com.finance.app.dto.expense.AnnualExpenseSummaryDTO> expenseSummary = expenseSummaries.get(year);
 
             // 查找总计行 (majorCategoryId == 0)
             com.finance.app.dto.expense.AnnualExpenseSummaryDTO totalRow = expenseSummary.stream()
@@ -2534,8 +2683,8 @@ public class AnalysisService {
         }
 
         try {
-            List<com.finance.app.dto.expense.AnnualExpenseSummaryDTO> lastYearExpense =
-                expenseAnalysisService.getAnnualExpenseSummaryWithAdjustments(familyId, year - 1, "USD", true);
+            // 汇总查询失败时 expenseSummaries 为 null，落入 catch 置零
+            List<com.finance.app.dto.expense.AnnualExpenseSummaryDTO> lastYearExpense = expenseSummaries.get(year - 1);
 
             com.finance.app.dto.expense.AnnualExpenseSummaryDTO lastYearTotal = lastYearExpense.stream()
                 .filter(item -> item.getMajorCategoryId() != null && item.getMajorCategoryId() == 0L)
@@ -2619,6 +2768,78 @@ public class AnalysisService {
         }
     }
 
+    private EnhancedFinancialMetricsDTO defaultAssetChanges(LocalDate targetDate) {
+        EnhancedFinancialMetricsDTO part = new EnhancedFinancialMetricsDTO();
+        part.setPreviousMonthDate(targetDate.minusMonths(1));
+        part.setPreviousYearDate(LocalDate.of(targetDate.getYear() - 1, 12, 31));
+        part.setMonthlyChange(BigDecimal.ZERO);
+        part.setMonthlyChangeRate(BigDecimal.ZERO);
+        part.setYearlyChange(BigDecimal.ZERO);
+        part.setYearlyChangeRate(BigDecimal.ZERO);
+        return part;
+    }
+
+    private EnhancedFinancialMetricsDTO defaultCashFlowMetrics() {
+        EnhancedFinancialMetricsDTO part = new EnhancedFinancialMetricsDTO();
+        part.setAnnualTotalIncome(BigDecimal.ZERO);
+        part.setAnnualWorkIncome(BigDecimal.ZERO);
+        part.setAnnualInvestmentIncome(BigDecimal.ZERO);
+        part.setAnnualOtherIncome(BigDecimal.ZERO);
+        part.setAnnualTotalExpense(BigDecimal.ZERO);
+        part.setNetCashFlow(BigDecimal.ZERO);
+        part.setSavingsRate(BigDecimal.ZERO);
+        part.setExpenseRatio(BigDecimal.ZERO);
+        part.setLastYearTotalIncome(BigDecimal.ZERO);
+        part.setIncomeGrowthRate(BigDecimal.ZERO);
+        part.setLastYearTotalExpense(BigDecimal.ZERO);
+        part.setExpenseGrowthRate(BigDecimal.ZERO);
+        return part;
+    }
+
+    private EnhancedFinancialMetricsDTO defaultInvestmentMetrics() {
+        EnhancedFinancialMetricsDTO part = new EnhancedFinancialMetricsDTO();
+        part.setTotalInvested(BigDecimal.ZERO);
+        part.setCurrentInvestmentValue(BigDecimal.ZERO);
+        part.setTotalInvestmentReturn(BigDecimal.ZERO);
+        part.setInvestmentReturnRate(BigDecimal.ZERO);
+        part.setTopCategories(new ArrayList<>());
+        return part;
+    }
+
+    private void mergeAssetChanges(EnhancedFinancialMetricsDTO metrics, EnhancedFinancialMetricsDTO part) {
+        metrics.setPreviousMonthDate(part.getPreviousMonthDate());
+        metrics.setPreviousMonthNetWorth(part.getPreviousMonthNetWorth());
+        metrics.setMonthlyChange(part.getMonthlyChange());
+        metrics.setMonthlyChangeRate(part.getMonthlyChangeRate());
+        metrics.setPreviousYearDate(part.getPreviousYearDate());
+        metrics.setPreviousYearNetWorth(part.getPreviousYearNetWorth());
+        metrics.setYearlyChange(part.getYearlyChange());
+        metrics.setYearlyChangeRate(part.getYearlyChangeRate());
+    }
+
+    private void mergeCashFlowMetrics(EnhancedFinancialMetricsDTO metrics, EnhancedFinancialMetricsDTO part) {
+        metrics.setAnnualTotalIncome(part.getAnnualTotalIncome());
+        metrics.setAnnualWorkIncome(part.getAnnualWorkIncome());
+        metrics.setAnnualInvestmentIncome(part.getAnnualInvestmentIncome());
+        metrics.setAnnualOtherIncome(part.getAnnualOtherIncome());
+        metrics.setAnnualTotalExpense(part.getAnnualTotalExpense());
+        metrics.setNetCashFlow(part.getNetCashFlow());
+        metrics.setSavingsRate(part.getSavingsRate());
+        metrics.setExpenseRatio(part.getExpenseRatio());
+        metrics.setLastYearTotalIncome(part.getLastYearTotalIncome());
+        metrics.setIncomeGrowthRate(part.getIncomeGrowthRate());
+        metrics.setLastYearTotalExpense(part.getLastYearTotalExpense());
+        metrics.setExpenseGrowthRate(part.getExpenseGrowthRate());
+    }
+
+    private void mergeInvestmentMetrics(EnhancedFinancialMetricsDTO metrics, EnhancedFinancialMetricsDTO part) {
+        metrics.setTotalInvested(part.getTotalInvested());
+        metrics.setCurrentInvestmentValue(part.getCurrentInvestmentValue());
+        metrics.setTotalInvestmentReturn(part.getTotalInvestmentReturn());
+        metrics.setInvestmentReturnRate(part.getInvestmentReturnRate());
+        metrics.setTopCategories(part.getTopCategories());
+    }
+
     /**
      * 计算财务健康评分
      */
@@ -0,0 +1,113 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.LiabilityAccount;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.User;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 家庭年度导出数据集：一次导出只加载一次，各工作表构建时共享读取
+ *
+ * 包含活跃账户及其所属成员、年末与去年年末的每账户最新记录、本年度资产记录、
+ * 当年和上一年的支出记录与预算、支出分类、净资产配置结果，以及加载时固定的汇率时间线。
+ * 加载后只读，工作表构建不再访问数据库和汇率缓存，可在多个线程间共享。
+ *
+ * @param expenseBudgets 货币 → 小类ID → 当年预算
+ * @param expenseAmounts 期间|货币 → 小类ID → 支出金额（当年及上一年）
+ * @param familyNetAllocations 货币@日期 → 家庭净资产配置（AnalysisService.getNetAssetAllocation 的结果）
+ * @param memberNetAllocations 成员ID → 该成员年末的净资产配置（All货币）
+ * @param rateTimelines 货币（大写）→ 汇率时间线
+ */
+record AnnualExportDataset(
+        Long familyId,
+        Integer year,
+        String familyName,
+        Map<Long, User> users,
+        List<AssetAccount> assetAccounts,
+        List<LiabilityAccount> liabilityAccounts,
+        List<AssetRecord> assetRecordsAtYearEnd,
+        List<AssetRecord> assetRecordsAtLastYearEnd,
+        List<LiabilityRecord> liabilityRecordsAtYearEnd,
+        List<LiabilityRecord> liabilityRecordsAtLastYearEnd,
+        List<AssetRecord> assetRecordsInYear,
+        List<ExpenseCategoryMajor> expenseMajorCategories,
+        Map<Long, List<ExpenseCategoryMinor>> expenseMinorCategories,
+        Map<String, Map<Long, BigDecimal>> expenseBudgets,
+        Map<String, Map<Long, BigDecimal>> expenseAmounts,
+        Map<String, Map<String, Object>> familyNetAllocations,
+        Map<Long, Map<String, Object>> memberNetAllocations,
+        Map<String, ExchangeRateService.RateTimeline> rateTimelines) {
+
+    LocalDate yearEnd() {
+        return LocalDate.of(year, 12, 31);
+    }
+
+    LocalDate lastYearEnd() {
+        return LocalDate.of(year - 1, 12, 31);
+    }
+
+    /**
+     * 指定ID的成员（按传入顺序，不存在的ID跳过）
+     */
+    List<User> usersOf(Collection<Long> userIds) {
+        return userIds.stream().map(users::get).filter(Objects::nonNull).toList();
+    }
+
+    List<ExpenseCategoryMinor> minorCategoriesOf(Long majorCategoryId) {
+        return expenseMinorCategories.getOrDefault(majorCategoryId, List.of());
+    }
+
+    Map<Long, BigDecimal> budgetsOf(String currency) {
+        return expenseBudgets.getOrDefault(currency, Map.of());
+    }
+
+    Map<Long, BigDecimal> expensesOf(String period, String currency) {
+        return expenseAmounts.getOrDefault(expenseKey(period, currency), Map.of());
+    }
+
+    Map<String, Object> familyNetAllocation(String currency, LocalDate date) {
+        return familyNetAllocations.get(allocationKey(currency, date));
+    }
+
+    Map<String, Object> memberNetAllocation(Long userId) {
+        return memberNetAllocations.get(userId);
+    }
+
+    /**
+     * 货币转换为USD，与 ExchangeRateService.getExchangeRate 的取值规则一致（找不到汇率按 1 计）
+     */
+    BigDecimal toUsd(BigDecimal amount, String currency, LocalDate date) {
+        if ("USD".equals(currency)) {
+            return amount;
+        }
+        return amount.multiply(rateToUsd(currency, date)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private BigDecimal rateToUsd(String currency, LocalDate date) {
+        if (currency == null || currency.equalsIgnoreCase("USD") || date == null) {
+            return BigDecimal.ONE;
+        }
+        ExchangeRateService.RateTimeline timeline = rateTimelines.get(currency.toUpperCase());
+        BigDecimal rate = timeline != null ? timeline.floor(date) : null;
+        return rate != null ? rate : BigDecimal.ONE;
+    }
+
+    static String expenseKey(String period, String currency) {
+        return period + "|" + currency;
+    }
+
+    static String allocationKey(String currency, LocalDate date) {
+        return currency + "@" + date;
+    }
+}
@@ -3,12 +3,14 @@ package com.finance.app.service;
 import com.finance.app.dto.AnnualFinancialSummaryDTO;
 import com.finance.app.model.AnnualFinancialSummary;
 import com.finance.app.repository.AnnualFinancialSummaryRepository;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Optional;
@@ -23,6 +25,8 @@ import java.util.stream.Collectors;
 public class AnnualFinancialSummaryService {
 
     private final AnnualFinancialSummaryRepository summaryRepository;
+    private final AnnualExpenseSummaryService annualExpenseSummaryService;
+    private final TransactionTemplate transactionTemplate;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -93,6 +97,8 @@ public class AnnualFinancialSummaryService {
 
             if (summary.isPresent()) {
                 log.info("成功计算家庭 {} 的 {} 年度财务摘要", familyId, year);
+                // 下一年度支出汇总的资产/负债调整以本年分类数据为基数
+                annualExpenseSummaryService.onFinancialSummaryChanged(familyId, year);
                 return convertToDTO(summary.get());
             } else {
                 log.warn("计算家庭 {} 的 {} 年度财务摘要后未找到结果", familyId, year);
@@ -106,13 +112,14 @@ public class AnnualFinancialSummaryService {
 
     /**
      * 批量刷新多个年份的摘要
+     * 年份按升序刷新（同比数据依赖上一年度的结果），每个年份各自一个事务，已完成的年份不随后续失败回滚
      */
-    @Transactional
     public List<AnnualFinancialSummaryDTO> batchRefreshSummaries(Long familyId, List<Integer> years) {
         log.info("批量刷新家庭 {} 的年度财务摘要，年份: {}", familyId, years);
 
         return years.stream()
-                .map(year -> calculateAndRefreshSummary(familyId, year))
+                .sorted()
+                .map(year -> transactionTemplate.execute(status -> calculateAndRefreshSummary(familyId, year)))
                 .collect(Collectors.toList());
     }
 
@@ -123,6 +130,7 @@ public class AnnualFinancialSummaryService {
     public void deleteSummary(Long familyId, Integer year) {
         log.info("删除家庭 {} 的 {} 年度财务摘要", familyId, year);
         summaryRepository.deleteByFamilyIdAndYear(familyId, year);
+        annualExpenseSummaryService.onFinancialSummaryChanged(familyId, year);
     }
 
     /**
@@ -143,6 +151,7 @@ public class AnnualFinancialSummaryService {
         }
 
         AnnualFinancialSummary saved = summaryRepository.save(summary);
+        annualExpenseSummaryService.onFinancialSummaryChanged(saved.getFamilyId(), saved.getYear());
         return convertToDTO(saved);
     }
 
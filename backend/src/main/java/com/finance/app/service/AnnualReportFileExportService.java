@@ -0,0 +1,100 @@
+package com.finance.app.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 年度报表本地文件导出（CSV 压缩包 / XLSX）
+ *
+ * 工作表内容与 Google Sheets 导出一致（复用 GoogleSheetsExportService 的工作表构建逻辑），
+ * 但不访问 Google API，直接写入输出流。每个 家庭 × 年份 在单独的只读事务中生成，
+ * 生成完即释放数据集和持久化上下文，内存占用只与单个报表中最大的工作表有关。
+ */
+@Service
+@Slf4j
+public class AnnualReportFileExportService {
+
+    /** 单次导出最多包含的 家庭 × 年份 数 */
+    public static final int MAX_REPORTS_PER_EXPORT = 50;
+
+    private final GoogleSheetsExportService googleSheetsExportService;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public AnnualReportFileExportService(GoogleSheetsExportService googleSheetsExportService,
+                                         PlatformTransactionManager transactionManager) {
+        this.googleSheetsExportService = googleSheetsExportService;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * 导出为 ZIP 压缩包，每个工作表一个 CSV 文件
+     * 单个家庭时按 年份/工作表.csv 组织，多个家庭时按 family-{家庭ID}/年份/工作表.csv 组织
+     */
+    public void writeCsvZip(OutputStream out, List<Long> familyIds, List<Integer> years) throws IOException {
+        long start = System.currentTimeMillis();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        CsvZipReportWriter writer = new CsvZipReportWriter(zip);
+        for (Long familyId : familyIds) {
+            for (Integer year : years) {
+                String folder = (familyIds.size() > 1 ? "family-" + familyId + "/" : "") + year + "/";
+                writer.beginReport(folder);
+                render(writer, familyId, year);
+            }
+        }
+        zip.finish();
+        log.info("年度报表CSV导出完成: familyIds={}, years={}, 耗时{}ms",
+            familyIds, years, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 导出为一个 XLSX 工作簿
+     * 包含多个家庭或年份时，工作表名称加上 "家庭ID-年份 " 或 "年份 " 前缀
+     */
+    public void writeXlsx(OutputStream out, List<Long> familyIds, List<Integer> years) throws IOException {
+        long start = System.currentTimeMillis();
+        XlsxReportWriter writer = new XlsxReportWriter(out);
+        for (Long familyId : familyIds) {
+            for (Integer year : years) {
+                String prefix;
+                if (familyIds.size() > 1) {
+                    prefix = familyId + "-" + year + " ";
+                } else if (years.size() > 1) {
+                    prefix = year + " ";
+                } else {
+                    prefix = "";
+                }
+                writer.beginReport(prefix);
+                render(writer, familyId, year);
+            }
+        }
+        writer.finish();
+        log.info("年度报表XLSX导出完成: familyIds={}, years={}, 耗时{}ms",
+            familyIds, years, System.currentTimeMillis() - start);
+    }
+
+    private void render(ReportSheetWriter writer, Long familyId, Integer year) throws IOException {
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try {
+                    googleSheetsExportService.renderAnnualReport(writer, familyId, year);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
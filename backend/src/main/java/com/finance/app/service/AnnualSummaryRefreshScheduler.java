@@ -0,0 +1,348 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AnnualFinancialSummary;
+import com.finance.app.model.User;
+import com.finance.app.repository.AnnualFinancialSummaryRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.income.IncomeAnalysisService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 年度汇总写后刷新（write-behind）
+ *
+ * 资产/负债/收入记录写入后标记受影响的 家庭 × 年份，事务提交后加入待刷新集合，由后台线程合并执行存储过程：
+ * - 合并：同一事务内的标记先在事务内去重（每个用户只解析一次所属家庭），批量保存只产生一组标记
+ * - 防抖：家庭最后一次标记后静默 debounce-ms 才刷新，连续写入只触发一次刷新；最长等待 max-delay-ms
+ * - 按家庭串行：一个家庭的年份在同一线程中按升序刷新（同比数据依赖上一年度的结果），不同家庭由 workers 个线程并行
+ * - 短事务：每个年份的每次存储过程调用各自一个事务，不再在一个长事务里跑完所有年份
+ * - 刷新期间产生的新标记留在待刷新集合中，当前刷新结束后再调度
+ *
+ * 待刷新集合只保存在内存中，实例重启时丢失的标记可通过手动刷新接口补算。
+ */
+@Service
+@Slf4j
+public class AnnualSummaryRefreshScheduler {
+
+    /** 收入汇总按币种分别保存，前端可切换的币种都需要刷新 */
+    private static final List<String> INCOME_SUMMARY_CURRENCIES = List.of("All", "CNY", "USD");
+
+    /** 需要刷新的汇总 */
+    enum Target {
+        /** 年度财务摘要 sp_calculate_annual_summary（资产/负债年末余额） */
+        FINANCIAL,
+        /** 年度收入汇总 sp_refresh_annual_income_summary */
+        INCOME
+    }
+
+    private final AnnualFinancialSummaryService annualFinancialSummaryService;
+    private final IncomeAnalysisService incomeAnalysisService;
+    private final AnnualFinancialSummaryRepository financialSummaryRepository;
+    private final UserRepository userRepository;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final boolean enabled;
+    private final long debounceMs;
+    private final long maxDelayMs;
+    private final int workerCount;
+
+    private final Map<Long, PendingFamily> pending = new ConcurrentHashMap<>();
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+    private ExecutorService workers;
+    private ScheduledExecutorService dispatcher;
+
+    public AnnualSummaryRefreshScheduler(AnnualFinancialSummaryService annualFinancialSummaryService,
+                                         IncomeAnalysisService incomeAnalysisService,
+                                         AnnualFinancialSummaryRepository financialSummaryRepository,
+                                         UserRepository userRepository,
+                                         ObjectProvider<MeterRegistry> meterRegistry,
+                                         @Value("${annual-summary.refresh.enabled:true}") boolean enabled,
+                                         @Value("${annual-summary.refresh.debounce-ms:2000}") long debounceMs,
+                                         @Value("${annual-summary.refresh.max-delay-ms:30000}") long maxDelayMs,
+                                         @Value("${annual-summary.refresh.workers:2}") int workerCount) {
+        this.annualFinancialSummaryService = annualFinancialSummaryService;
+        this.incomeAnalysisService = incomeAnalysisService;
+        this.financialSummaryRepository = financialSummaryRepository;
+        this.userRepository = userRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.debounceMs = debounceMs;
+        this.maxDelayMs = maxDelayMs;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * 资产/负债记录写入后调用：记录日期所在年份起（至今年）的年末余额都可能变化
+     */
+    public void onBalanceRecordChanged(Long userId, LocalDate... recordDates) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        LocalDate earliest = null;
+        for (LocalDate date : recordDates) {
+            if (date != null && (earliest == null || date.isBefore(earliest))) {
+                earliest = date;
+            }
+        }
+        if (earliest == null) {
+            return;
+        }
+        LocalDate from = earliest;
+        afterCommit(marks -> marks.balanceChanges.merge(userId, from, (a, b) -> a.isBefore(b) ? a : b));
+    }
+
+    /**
+     * 账户类型、启用状态、归属成员变化后调用：该家庭已生成的各年度财务摘要都需要重算
+     */
+    public void onAccountChanged(Long userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        afterCommit(marks -> marks.accountChanges.add(userId));
+    }
+
+    /**
+     * 收入记录写入后调用
+     * @param periods 收入期间（yyyy-MM）
+     */
+    public void onIncomeRecordsChanged(Long familyId, String... periods) {
+        if (!enabled || familyId == null) {
+            return;
+        }
+        afterCommit(marks -> {
+            for (String period : periods) {
+                if (period != null && period.length() >= 4) {
+                    marks.mark(familyId, Integer.valueOf(period.substring(0, 4)), Target.INCOME);
+                }
+            }
+        });
+    }
+
+    /**
+     * 应用启动后开始调度
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("年度汇总写后刷新已关闭");
+            return;
+        }
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("annual.summary.refresh.pending", pending, Map::size)
+                .description("等待刷新年度汇总的家庭数")
+                .register(registry);
+        }
+
+        workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("annual-summary-"));
+        dispatcher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("annual-summary-dispatcher-"));
+        long tickMs = Math.max(100, debounceMs / 4);
+        dispatcher.scheduleWithFixedDelay(this::dispatchDue, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        log.info("年度汇总写后刷新已启动: 防抖{}ms, 最长等待{}ms, 工作线程{}个", debounceMs, maxDelayMs, workerCount);
+    }
+
+    /**
+     * 停止调度，等待刷新中的家庭完成（未开始的标记丢弃，可通过手动刷新补算）
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (workers == null) {
+            return;
+        }
+        dispatcher.shutdownNow();
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            log.warn("年度汇总刷新停止时仍有{}个家庭未完成", running.size());
+        }
+        if (!pending.isEmpty()) {
+            log.warn("年度汇总刷新停止时丢弃{}个家庭的待刷新标记", pending.size());
+        }
+    }
+
+    /**
+     * 在当前事务内记录标记，提交后统一加入待刷新集合；没有事务时立即加入
+     */
+    private void afterCommit(Consumer<TransactionMarks> action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionMarks marks = new TransactionMarks();
+            action.accept(marks);
+            submit(marks);
+            return;
+        }
+        TransactionMarks marks = (TransactionMarks) TransactionSynchronizationManager.getResource(this);
+        if (marks == null) {
+            TransactionMarks created = new TransactionMarks();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(AnnualSummaryRefreshScheduler.this);
+                }
+            });
+            marks = created;
+        }
+        action.accept(marks);
+    }
+
+    private void submit(TransactionMarks marks) {
+        int currentYear = LocalDate.now().getYear();
+        Map<Long, Long> familyIds = new HashMap<>();
+        marks.balanceChanges.forEach((userId, from) -> {
+            Long familyId = familyIds.computeIfAbsent(userId, this::resolveFamilyId);
+            if (familyId == null) {
+                return;
+            }
+            for (int year = from.getYear(); year <= Math.max(from.getYear(), currentYear); year++) {
+                marks.mark(familyId, year, Target.FINANCIAL);
+            }
+        });
+        for (Long userId : marks.accountChanges) {
+            Long familyId = familyIds.computeIfAbsent(userId, this::resolveFamilyId);
+            if (familyId == null) {
+                continue;
+            }
+            for (AnnualFinancialSummary summary : financialSummaryRepository.findByFamilyIdOrderByYearDesc(familyId)) {
+                marks.mark(familyId, summary.getYear(), Target.FINANCIAL);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        marks.years.forEach((familyId, years) -> pending.compute(familyId, (id, family) -> {
+            PendingFamily target = family != null ? family : new PendingFamily(now);
+            target.lastMarkedAt = now;
+            years.forEach((year, targets) ->
+                target.years.computeIfAbsent(year, y -> EnumSet.noneOf(Target.class)).addAll(targets));
+            return target;
+        }));
+    }
+
+    private Long resolveFamilyId(Long userId) {
+        return userRepository.findById(userId).map(User::getFamilyId).orElse(null);
+    }
+
+    /**
+     * 调度已到期的家庭：静默超过防抖时间，或首次标记后已等待超过最长时间
+     */
+    private void dispatchDue() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Long, PendingFamily> entry : pending.entrySet()) {
+                Long familyId = entry.getKey();
+                PendingFamily family = entry.getValue();
+                boolean due = now - family.lastMarkedAt >= debounceMs || now - family.firstMarkedAt >= maxDelayMs;
+                if (!due || running.contains(familyId)) {
+                    continue;
+                }
+                PendingFamily work = pending.remove(familyId);
+                if (work != null) {
+                    running.add(familyId);
+                    workers.execute(() -> refresh(familyId, work));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("年度汇总刷新调度失败: {}", e.getMessage());
+        }
+    }
+
+    private void refresh(Long familyId, PendingFamily work) {
+        long start = System.nanoTime();
+        int failures = 0;
+        try {
+            for (Map.Entry<Integer, EnumSet<Target>> entry : work.years.entrySet()) {
+                Integer year = entry.getKey();
+                if (entry.getValue().contains(Target.FINANCIAL)) {
+                    try {
+                        annualFinancialSummaryService.calculateAndRefreshSummary(familyId, year);
+                    } catch (Exception e) {
+                        failures++;
+                        log.warn("写后刷新年度财务摘要失败: familyId={}, year={}, {}", familyId, year, e.getMessage());
+                    }
+                }
+                if (entry.getValue().contains(Target.INCOME)) {
+                    for (String currency : INCOME_SUMMARY_CURRENCIES) {
+                        try {
+                            incomeAnalysisService.refreshAnnualIncomeSummary(familyId, year, currency);
+                        } catch (Exception e) {
+                            failures++;
+                            log.warn("写后刷新年度收入汇总失败: familyId={}, year={}, currency={}, {}",
+                                familyId, year, currency, e.getMessage());
+                        }
+                    }
+                }
+            }
+        } finally {
+            running.remove(familyId);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        log.debug("写后刷新年度汇总: familyId={}, 年份{}个, 失败{}次, 耗时{}ms",
+            familyId, work.years.size(), failures, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Timer.builder("annual.summary.refresh")
+                .description("单个家庭年度汇总写后刷新耗时")
+                .tag("status", failures == 0 ? "COMPLETED" : "FAILED")
+                .register(registry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 单个事务内的标记：资产/负债按用户记录最早日期和账户变更，提交后再解析所属家庭
+     */
+    private static final class TransactionMarks {
+        private final Map<Long, LocalDate> balanceChanges = new HashMap<>();
+        private final Set<Long> accountChanges = new HashSet<>();
+        private final Map<Long, Map<Integer, EnumSet<Target>>> years = new HashMap<>();
+
+        private void mark(Long familyId, Integer year, Target target) {
+            years.computeIfAbsent(familyId, id -> new HashMap<>())
+                .computeIfAbsent(year, y -> EnumSet.noneOf(Target.class))
+                .add(target);
+        }
+    }
+
+    /**
+     * 等待刷新的家庭：年份按升序排列
+     */
+    private static final class PendingFamily {
+        private final long firstMarkedAt;
+        private volatile long lastMarkedAt;
+        private final Map<Integer, EnumSet<Target>> years = new TreeMap<>();
+
+        private PendingFamily(long firstMarkedAt) {
+            this.firstMarkedAt = firstMarkedAt;
+            this.lastMarkedAt = firstMarkedAt;
+        }
+    }
+}
@@ -27,10 +27,22 @@ public class BackupService {
 
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
-
-    public BackupService(RestTemplate restTemplate, ObjectMapper objectMapper) {
+    private final AccountBalanceIndexService balanceIndexService;
+    private final AccountLatestRecordService latestRecordService;
+    private final NetWorthCubeService netWorthCubeService;
+    private final ReferenceDataCache referenceDataCache;
+
+    public BackupService(RestTemplate restTemplate, ObjectMapper objectMapper,
+                         AccountBalanceIndexService balanceIndexService,
+                         AccountLatestRecordService latestRecordService,
+                         NetWorthCubeService netWorthCubeService,
+                         ReferenceDataCache referenceDataCache) {
         this.restTemplate = restTemplate;
         this.objectMapper = objectMapper;
+        this.balanceIndexService = balanceIndexService;
+        this.latestRecordService = latestRecordService;
+        this.netWorthCubeService = netWorthCubeService;
+        this.referenceDataCache = referenceDataCache;
     }
 
     /**
@@ -108,6 +120,10 @@ public class BackupService {
 
             if (response.getStatusCode() == HttpStatus.OK) {
                 log.warn("Database restored from backup: {}", request.getFilename());
+                balanceIndexService.invalidateAll();
+                latestRecordService.rebuildAll();
+                netWorthCubeService.invalidateAll();
+                referenceDataCache.invalidate();
                 return response.getBody();
             } else {
                 log.error("Failed to restore backup: {}", response.getStatusCode());
@@ -0,0 +1,103 @@
+package com.finance.app.service;
+
+import com.google.api.services.sheets.v4.model.Request;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 把年度报表写成 ZIP 中的 CSV 文件（每个工作表一个文件）
+ *
+ * writeData 直接把行写入当前 ZIP 条目并关闭条目，不在内存中保留已写出的工作表。
+ * CSV 使用 UTF-8（带 BOM，Excel 可直接识别中文），字段按 RFC 4180 加引号；格式请求被忽略。
+ * 一个实例对应一个 ZIP 输出，不是线程安全的。
+ */
+public class CsvZipReportWriter implements ReportSheetWriter {
+
+    private static final String BOM = "\uFEFF";
+
+    private final ZipOutputStream zip;
+    private String folder = "";
+    private int nextSheetId = 1;
+
+    public CsvZipReportWriter(ZipOutputStream zip) {
+        this.zip = zip;
+    }
+
+    /**
+     * 之后写入的工作表放在指定目录下（例如 "2024/"，空字符串表示根目录）
+     */
+    public void beginReport(String folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public Integer addSheet(String title) {
+        return nextSheetId++;
+    }
+
+    @Override
+    public void writeData(String title, List<List<Object>> values) throws IOException {
+        zip.putNextEntry(new ZipEntry(folder + fileName(title) + ".csv"));
+        // 不关闭 writer：关闭会连带关闭 ZIP 输出流
+        Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+        writer.write(BOM);
+        for (List<Object> row : values) {
+            for (int i = 0; i < row.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(quote(cellText(row.get(i))));
+            }
+            writer.write("\r\n");
+        }
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    @Override
+    public void formatCells(List<Request> requests) {
+        // CSV 没有格式
+    }
+
+    /**
+     * 单元格的文本值：数字按普通记数法输出（不使用科学计数法），null 为空
+     */
+    static String cellText(Object value) {
+        if (value == null) {
+            return "";
+        }
+        if (value instanceof Double d && (d.isNaN() || d.isInfinite())) {
+            return d.toString();
+        }
+        if (value instanceof Float f && (f.isNaN() || f.isInfinite())) {
+            return f.toString();
+        }
+        if (value instanceof BigDecimal || value instanceof Double || value instanceof Float) {
+            BigDecimal decimal = value instanceof BigDecimal bd ? bd : new BigDecimal(value.toString());
+            return decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toPlainString();
+        }
+        return value.toString();
+    }
+
+    private static String quote(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * 文件名中去掉路径分隔符等不可用字符
+     */
+    private static String fileName(String title) {
+        return title.replaceAll("[\\\\/:*?\"<>|]", "_");
+    }
+}
@@ -0,0 +1,90 @@
+package com.finance.app.service;
+
+import com.finance.app.dto.AssetSummaryDTO;
+import com.finance.app.dto.DashboardDTO;
+import com.finance.app.dto.EnhancedFinancialMetricsDTO;
+import com.finance.app.dto.RiskAssessmentDTO;
+import com.finance.app.service.asset.AssetAnalysisService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * 仪表盘聚合服务
+ *
+ * 一次加载家庭数据快照（FamilySnapshot），在 analysisExecutor 上并行计算仪表盘的各个视图，
+ * 取代前端分别调用 summary / allocation / metrics / risk 等 7 个接口时各自重复查询账户和记录。
+ */
+@Service
+@Slf4j
+public class DashboardService {
+
+    private final AnalysisService analysisService;
+    private final AssetAnalysisService assetAnalysisService;
+    private final Executor analysisExecutor;
+
+    public DashboardService(AnalysisService analysisService,
+                            AssetAnalysisService assetAnalysisService,
+                            @Qualifier("analysisExecutor") Executor analysisExecutor) {
+        this.analysisService = analysisService;
+        this.assetAnalysisService = assetAnalysisService;
+        this.analysisExecutor = analysisExecutor;
+    }
+
+    /**
+     * 获取仪表盘数据
+     *
+     * @param asOfDate 查询日期，null 表示当前
+     */
+    public DashboardDTO getDashboard(Long familyId, LocalDate asOfDate) {
+        if (familyId == null) {
+            throw new IllegalArgumentException("家庭ID不能为空");
+        }
+        long start = System.currentTimeMillis();
+        FamilySnapshot snapshot = analysisService.loadFamilySnapshot(familyId, asOfDate);
+
+        CompletableFuture<AssetSummaryDTO> summary = submit(() -> analysisService.addLiabilityDataToSummary(
+            assetAnalysisService.getAssetSummary(snapshot, asOfDate), snapshot, asOfDate));
+        CompletableFuture<Map<String, Object>> netAllocation = submit(() -> analysisService.getNetAssetAllocation(snapshot));
+        CompletableFuture<Map<String, Object>> byTaxStatus = submit(() -> analysisService.getNetWorthByTaxStatus(snapshot));
+        CompletableFuture<Map<String, Object>> byMember = submit(() -> analysisService.getNetWorthByMember(snapshot));
+        CompletableFuture<Map<String, Object>> byCurrency = submit(() -> analysisService.getNetWorthByCurrency(snapshot));
+        CompletableFuture<EnhancedFinancialMetricsDTO> enhancedMetrics =
+            submit(() -> analysisService.getEnhancedFinancialMetrics(snapshot));
+        CompletableFuture<RiskAssessmentDTO> riskAssessment = submit(() -> analysisService.getRiskAssessment(snapshot));
+
+        try {
+            CompletableFuture.allOf(summary, netAllocation, byTaxStatus, byMember, byCurrency,
+                enhancedMetrics, riskAssessment).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+
+        DashboardDTO dashboard = new DashboardDTO(
+            asOfDate,
+            summary.join(),
+            netAllocation.join(),
+            byTaxStatus.join(),
+            byMember.join(),
+            byCurrency.join(),
+            enhancedMetrics.join(),
+            riskAssessment.join()
+        );
+        log.debug("仪表盘数据计算完成: familyId={}, 耗时={}ms", familyId, System.currentTimeMillis() - start);
+        return dashboard;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> section) {
+        return CompletableFuture.supplyAsync(section, analysisExecutor);
+    }
+}
@@ -0,0 +1,295 @@
+package com.finance.app.service;
+
+import com.google.api.services.sheets.v4.model.AddSheetRequest;
+import com.google.api.services.sheets.v4.model.EmbeddedObjectPosition;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 试运行用的 GoogleSheetsService：不访问网络，把 API 调用应用到内存中的表格模型
+ *
+ * 新建的电子表格与 Google 一致带有一个默认工作表（"工作表1"，ID 0）。
+ * 数据写入按 A1 区域落到各工作表的行上，格式请求按请求中的 sheetId 归属到工作表（图表单独计数），
+ * 每次调用按 API 方法计数，得到正式导出会发出的请求数。
+ * 各种 create*Format 辅助方法沿用父类实现。一个实例只对应一次试运行，不是线程安全的。
+ */
+public class DryRunSheetsService extends GoogleSheetsService {
+
+    static final String DEFAULT_SHEET_TITLE = "工作表1";
+
+    private final Map<String, Integer> apiRequests = new LinkedHashMap<>();
+    private final Map<Integer, SheetModel> sheets = new LinkedHashMap<>();
+
+    public DryRunSheetsService() {
+        super(null);
+    }
+
+    @Override
+    public String createSpreadsheet(String title) {
+        count("spreadsheets.create");
+        sheets.clear();
+        sheets.put(0, new SheetModel(DEFAULT_SHEET_TITLE));
+        return "dry-run";
+    }
+
+    @Override
+    public Integer addSheet(String spreadsheetId, String sheetTitle) {
+        count("spreadsheets.get");
+        Integer existing = sheetId(sheetTitle);
+        if (existing != null) {
+            return existing;
+        }
+        count("spreadsheets.batchUpdate");
+        int sheetId = sheets.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+        sheets.put(sheetId, new SheetModel(sheetTitle));
+        return sheetId;
+    }
+
+    @Override
+    public void writeData(String spreadsheetId, String sheetName, List<List<Object>> values) {
+        count("values.update");
+        write(sheetName + "!A1", values);
+    }
+
+    @Override
+    public void batchWriteData(String spreadsheetId, List<ValueRange> data) {
+        count("values.batchUpdate");
+        for (ValueRange range : data) {
+            write(range.getRange(), range.getValues());
+        }
+    }
+
+    @Override
+    public void batchClear(String spreadsheetId, List<String> ranges) {
+        count("values.batchClear");
+        for (String range : ranges) {
+            SheetModel sheet = sheetByTitle(unquote(range));
+            if (sheet != null) {
+                sheet.rows.clear();
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getSheetIds(String spreadsheetId) {
+        count("spreadsheets.get");
+        Map<String, Integer> sheetIds = new LinkedHashMap<>();
+        sheets.forEach((id, sheet) -> sheetIds.put(sheet.title, id));
+        return sheetIds;
+    }
+
+    @Override
+    public void formatCells(String spreadsheetId, List<Request> requests) {
+        count("spreadsheets.batchUpdate");
+        for (Request request : requests) {
+            if (request == null) {
+                continue;
+            }
+            if (request.getAddSheet() != null) {
+                AddSheetRequest addSheet = request.getAddSheet();
+                sheets.put(addSheet.getProperties().getSheetId(), new SheetModel(addSheet.getProperties().getTitle()));
+            } else if (request.getDeleteSheet() != null) {
+                sheets.remove(request.getDeleteSheet().getSheetId());
+            } else {
+                SheetModel sheet = sheets.get(sheetIdOf(request));
+                if (sheet == null) {
+                    continue;
+                }
+                if (request.getAddChart() != null) {
+                    sheet.charts++;
+                } else {
+                    sheet.formatRequests++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String setPermissions(String spreadsheetId, String role) {
+        count("permissions.create");
+        return getSpreadsheetUrl(spreadsheetId);
+    }
+
+    @Override
+    public boolean sheetExists(String spreadsheetId, String sheetName) {
+        count("spreadsheets.get");
+        return sheetId(sheetName) != null;
+    }
+
+    @Override
+    public void clearSheet(String spreadsheetId, String sheetName) {
+        count("values.clear");
+        SheetModel sheet = sheetByTitle(sheetName);
+        if (sheet != null) {
+            sheet.rows.clear();
+        }
+    }
+
+    @Override
+    public void deleteSheetByTitle(String spreadsheetId, String sheetTitle) {
+        count("spreadsheets.get");
+        Integer sheetId = sheetId(sheetTitle);
+        if (sheetId != null) {
+            count("spreadsheets.batchUpdate");
+            sheets.remove(sheetId);
+        }
+    }
+
+    /**
+     * 各 API 方法的调用次数（按首次调用的顺序）
+     */
+    public Map<String, Integer> getApiRequests() {
+        return new LinkedHashMap<>(apiRequests);
+    }
+
+    public int getTotalApiRequests() {
+        return apiRequests.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * 表格中当前的工作表标题（按工作表顺序）
+     */
+    public List<String> getSheetTitles() {
+        return sheets.values().stream().map(sheet -> sheet.title).toList();
+    }
+
+    /**
+     * 工作表中有数据的行数（不存在时为 0）
+     */
+    public int getRowCount(String title) {
+        SheetModel sheet = sheetByTitle(title);
+        return sheet != null ? sheet.rows.size() : 0;
+    }
+
+    public long getCellCount(String title) {
+        SheetModel sheet = sheetByTitle(title);
+        return sheet != null ? sheet.rows.values().stream().mapToLong(List::size).sum() : 0;
+    }
+
+    public int getFormatRequestCount(String title) {
+        SheetModel sheet = sheetByTitle(title);
+        return sheet != null ? sheet.formatRequests : 0;
+    }
+
+    public int getChartCount(String title) {
+        SheetModel sheet = sheetByTitle(title);
+        return sheet != null ? sheet.charts : 0;
+    }
+
+    /**
+     * 工作表第 row 行（从 0 开始）的单元格值，不存在时为空列表
+     */
+    public List<Object> getRow(String title, int row) {
+        SheetModel sheet = sheetByTitle(title);
+        return sheet != null ? sheet.rows.getOrDefault(row, List.of()) : List.of();
+    }
+
+    private void count(String method) {
+        apiRequests.merge(method, 1, Integer::sum);
+    }
+
+    /**
+     * 按 "'标题'!A{行号}" 形式的区域写入（导出只从 A 列开始写入整行）
+     */
+    private void write(String range, List<List<Object>> values) {
+        int separator = range.lastIndexOf('!');
+        String title = unquote(separator >= 0 ? range.substring(0, separator) : range);
+        int startRow = 0;
+        if (separator >= 0) {
+            String cell = range.substring(separator + 1).replaceAll("[^0-9]", "");
+            startRow = cell.isEmpty() ? 0 : Integer.parseInt(cell) - 1;
+        }
+        SheetModel sheet = sheetByTitle(title);
+        if (sheet == null) {
+            throw new IllegalStateException("写入了不存在的工作表: " + title);
+        }
+        for (int i = 0; i < values.size(); i++) {
+            sheet.rows.put(startRow + i, new ArrayList<>(values.get(i)));
+        }
+    }
+
+    private Integer sheetId(String title) {
+        for (Map.Entry<Integer, SheetModel> entry : sheets.entrySet()) {
+            if (entry.getValue().title.equals(title)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private SheetModel sheetByTitle(String title) {
+        Integer sheetId = sheetId(title);
+        return sheetId != null ? sheets.get(sheetId) : null;
+    }
+
+    private static String unquote(String title) {
+        if (title.length() >= 2 && title.startsWith("'") && title.endsWith("'")) {
+            return title.substring(1, title.length() - 1).replace("''", "'");
+        }
+        return title;
+    }
+
+    /**
+     * 请求所属的工作表ID：导出用到的请求类型直接读取范围或图表锚点，
+     * 其他类型在请求中查找第一个 sheetId 字段（按字段反射遍历，较慢）
+     */
+    private static Integer sheetIdOf(Request request) {
+        if (request.getRepeatCell() != null && request.getRepeatCell().getRange() != null) {
+            return request.getRepeatCell().getRange().getSheetId();
+        }
+        if (request.getMergeCells() != null && request.getMergeCells().getRange() != null) {
+            return request.getMergeCells().getRange().getSheetId();
+        }
+        if (request.getUpdateDimensionProperties() != null && request.getUpdateDimensionProperties().getRange() != null) {
+            return request.getUpdateDimensionProperties().getRange().getSheetId();
+        }
+        if (request.getAddChart() != null) {
+            EmbeddedObjectPosition position = request.getAddChart().getChart().getPosition();
+            if (position != null && position.getOverlayPosition() != null) {
+                return position.getOverlayPosition().getAnchorCell().getSheetId();
+            }
+            return position != null ? position.getSheetId() : null;
+        }
+        return findSheetId(request);
+    }
+
+    private static Integer findSheetId(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Object sheetId = map.get("sheetId");
+            if (sheetId instanceof Number number) {
+                return number.intValue();
+            }
+            return findSheetId(map.values());
+        }
+        if (value instanceof Collection<?> values) {
+            for (Object item : values) {
+                Integer sheetId = findSheetId(item);
+                if (sheetId != null) {
+                    return sheetId;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 内存中的工作表：行号 → 单元格值，以及归属于该工作表的格式请求数和图表数
+     */
+    private static class SheetModel {
+        final String title;
+        final TreeMap<Integer, List<Object>> rows = new TreeMap<>();
+        int formatRequests;
+        int charts;
+
+        SheetModel(String title) {
+            this.title = title;
+        }
+    }
+}
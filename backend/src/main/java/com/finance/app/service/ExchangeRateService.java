@@ -3,15 +3,23 @@ package com.finance.app.service;
 import com.finance.app.model.ExchangeRate;
 import com.finance.app.repository.ExchangeRateRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class ExchangeRateService {
@@ -22,6 +30,34 @@ public class ExchangeRateService {
     @Autowired
     private ExchangeRateAPIService exchangeRateAPIService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // 缓存的货币数量上限，超出时整体清空（防止传入异常货币代码导致缓存无限增长）
+    private static final int MAX_CACHED_CURRENCIES = 64;
+
+    // 货币 -> 汇率时间线（生效日期升序），汇率增删改时清空
+    private final Map<String, RateTimeline> rateTimelines = new ConcurrentHashMap<>();
+
+    private volatile List<String> activeCurrencies;
+
+    // 缓存失效计数：加载期间发生失效时不写入缓存，避免把失效前读到的旧数据放回去
+    private final AtomicLong version = new AtomicLong();
+
+    // 多副本部署时其他实例的汇率修改不会通知本实例，超过该间隔后用水位查询校验一次缓存
+    @Value("${exchange-rate.cache.revalidate-ms:30000}")
+    private long revalidateMs = 30_000;
+
+    private volatile String cacheWatermark;
+
+    private volatile long nextRevalidateAt;
+
+    /**
+     * 汇率变更事件：某币种自 effectiveDate 起的汇率可能发生了变化
+     */
+    public record ExchangeRateChangedEvent(String currency, LocalDate effectiveDate) {
+    }
+
     /**
      * 获取所有启用的汇率，按生效日期降序排列
      */
@@ -47,21 +83,61 @@ public class ExchangeRateService {
      * 获取特定货币在指定日期或之前的最新汇率
      */
     public BigDecimal getExchangeRate(String currency, LocalDate date) {
+        BigDecimal rate = findExchangeRate(currency, date);
+
+        // 如果没有找到指定日期的汇率，返回默认值1.0
+        return rate != null ? rate : BigDecimal.ONE;
+    }
+
+    /**
+     * 获取特定货币在指定日期或之前的最新汇率，找不到时返回 null
+     */
+    public BigDecimal findExchangeRate(String currency, LocalDate date) {
         if (currency == null || currency.equalsIgnoreCase("USD")) {
             return BigDecimal.ONE;
         }
+        if (date == null) {
+            return null;
+        }
+        return getTimeline(currency.toUpperCase()).floor(date);
+    }
 
-        List<ExchangeRate> rates = exchangeRateRepository.findLatestRateByCurrencyAndDate(
-            currency.toUpperCase(),
-            date
-        );
+    /**
+     * 获取所有货币在指定日期或之前的最新汇率（不含找不到汇率的货币），USD 固定为 1
+     */
+    public Map<String, BigDecimal> getExchangeRatesAsOf(LocalDate date) {
+        revalidate();
+        List<String> currencies = activeCurrencies;
+        if (currencies == null) {
+            long loadVersion = version.get();
+            currencies = exchangeRateRepository.findActiveCurrencies();
+            synchronized (rateTimelines) {
+                if (version.get() == loadVersion) {
+                    activeCurrencies = currencies;
+                }
+            }
+        }
 
-        if (!rates.isEmpty()) {
-            return rates.get(0).getRateToUsd();
+        Map<String, BigDecimal> rateMap = new HashMap<>();
+        for (String currency : currencies) {
+            BigDecimal rate = findExchangeRate(currency, date);
+            if (rate != null) {
+                rateMap.put(currency, rate);
+            }
         }
+        rateMap.put("USD", BigDecimal.ONE);
+        return rateMap;
+    }
 
-        // 如果没有找到指定日期的汇率，返回默认值1.0
-        return BigDecimal.ONE;
+    /**
+     * 清空汇率时间线缓存
+     */
+    public void invalidateCache() {
+        synchronized (rateTimelines) {
+            version.incrementAndGet();
+            rateTimelines.clear();
+            activeCurrencies = null;
+        }
     }
 
     /**
@@ -95,7 +171,10 @@ public class ExchangeRateService {
             );
         }
 
-        return exchangeRateRepository.save(exchangeRate);
+        invalidateCacheAfterCommit();
+        ExchangeRate saved = exchangeRateRepository.save(exchangeRate);
+        publishRateChanged(saved.getCurrency(), saved.getEffectiveDate());
+        return saved;
     }
 
     /**
@@ -122,6 +201,9 @@ public class ExchangeRateService {
             }
         }
 
+        String previousCurrency = existingRate.getCurrency();
+        LocalDate previousDate = existingRate.getEffectiveDate();
+
         existingRate.setCurrency(updatedRate.getCurrency());
         existingRate.setRateToUsd(updatedRate.getRateToUsd());
         existingRate.setEffectiveDate(updatedRate.getEffectiveDate());
@@ -129,7 +211,15 @@ public class ExchangeRateService {
         existingRate.setNotes(updatedRate.getNotes());
         existingRate.setIsActive(updatedRate.getIsActive());
 
-        return exchangeRateRepository.save(existingRate);
+        invalidateCacheAfterCommit();
+        ExchangeRate saved = exchangeRateRepository.save(existingRate);
+        if (previousCurrency.equals(saved.getCurrency())) {
+            publishRateChanged(saved.getCurrency(), earlier(previousDate, saved.getEffectiveDate()));
+        } else {
+            publishRateChanged(previousCurrency, previousDate);
+            publishRateChanged(saved.getCurrency(), saved.getEffectiveDate());
+        }
+        return saved;
     }
 
     /**
@@ -141,6 +231,8 @@ public class ExchangeRateService {
             .orElseThrow(() -> new IllegalArgumentException("汇率记录不存在: " + id));
 
         exchangeRateRepository.delete(exchangeRate);
+        invalidateCacheAfterCommit();
+        publishRateChanged(exchangeRate.getCurrency(), exchangeRate.getEffectiveDate());
     }
 
     /**
@@ -152,7 +244,10 @@ public class ExchangeRateService {
             .orElseThrow(() -> new IllegalArgumentException("汇率记录不存在: " + id));
 
         exchangeRate.setIsActive(false);
-        return exchangeRateRepository.save(exchangeRate);
+        invalidateCacheAfterCommit();
+        ExchangeRate saved = exchangeRateRepository.save(exchangeRate);
+        publishRateChanged(saved.getCurrency(), saved.getEffectiveDate());
+        return saved;
     }
 
     /**
@@ -185,6 +280,8 @@ public class ExchangeRateService {
         exchangeRate.setSource(source);
         exchangeRate.setIsActive(true);
         exchangeRateRepository.save(exchangeRate);
+        invalidateCacheAfterCommit();
+        publishRateChanged(currency, date);
     }
 
     /**
@@ -232,6 +329,8 @@ public class ExchangeRateService {
             throw new RuntimeException("从API获取汇率失败: " + e.getMessage(), e);
         }
 
+        invalidateCacheAfterCommit();
+        savedRates.forEach(rate -> publishRateChanged(rate.getCurrency(), rate.getEffectiveDate()));
         return savedRates;
     }
 
@@ -241,4 +340,120 @@ public class ExchangeRateService {
     public List<ExchangeRate> getRatesByCurrencyAndDateRange(String currency, LocalDate startDate, LocalDate endDate) {
         return exchangeRateRepository.findByCurrencyAndDateRange(currency, startDate, endDate);
     }
+
+    /**
+     * 获取某货币的汇率时间线（供导出数据集在加载时固定一份汇率快照）
+     */
+    RateTimeline getRateTimeline(String currency) {
+        return getTimeline(currency.toUpperCase());
+    }
+
+    private RateTimeline getTimeline(String currency) {
+        revalidate();
+        RateTimeline timeline = rateTimelines.get(currency);
+        if (timeline != null) {
+            return timeline;
+        }
+        long loadVersion = version.get();
+        RateTimeline loaded = RateTimeline.of(
+            exchangeRateRepository.findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc(currency));
+        synchronized (rateTimelines) {
+            if (version.get() != loadVersion) {
+                return loaded;
+            }
+            if (rateTimelines.size() >= MAX_CACHED_CURRENCIES) {
+                rateTimelines.clear();
+            }
+            RateTimeline existing = rateTimelines.putIfAbsent(currency, loaded);
+            return existing != null ? existing : loaded;
+        }
+    }
+
+    /**
+     * 距上次校验超过 revalidateMs 时查询汇率表水位（行数、最大 ID、最后修改时间），
+     * 与缓存加载时的水位不同说明其他实例修改过汇率，清空本地缓存
+     */
+    private void revalidate() {
+        long now = System.currentTimeMillis();
+        if (now < nextRevalidateAt) {
+            return;
+        }
+        String watermark = exchangeRateRepository.getCacheWatermark().stream()
+            .findFirst()
+            .map(Arrays::toString)
+            .orElse("");
+        synchronized (rateTimelines) {
+            if (!watermark.equals(cacheWatermark)) {
+                invalidateCache();
+                cacheWatermark = watermark;
+            }
+            nextRevalidateAt = now + revalidateMs;
+        }
+    }
+
+    private void publishRateChanged(String currency, LocalDate effectiveDate) {
+        if (currency != null && effectiveDate != null) {
+            eventPublisher.publishEvent(new ExchangeRateChangedEvent(currency.toUpperCase(), effectiveDate));
+        }
+    }
+
+    private static LocalDate earlier(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /**
+     * 立即清空缓存，并在事务结束后（提交或回滚）再清空一次：
+     * 既避免并发读取在提交前重新加载到旧数据，也避免事务内读到的未提交汇率在回滚后留在缓存中。
+     * 提交后也立即清空一次，使随后注册的提交后监听（如净资产快照重算）读到已提交的汇率
+     */
+    private void invalidateCacheAfterCommit() {
+        invalidateCache();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateCache();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    invalidateCache();
+                }
+            });
+        }
+    }
+
+    /**
+     * 单个货币的汇率时间线：生效日期（epochDay）升序，与汇率按下标一一对应
+     */
+    static final class RateTimeline {
+        private final int[] epochDays;
+        private final BigDecimal[] rates;
+
+        private RateTimeline(int[] epochDays, BigDecimal[] rates) {
+            this.epochDays = epochDays;
+            this.rates = rates;
+        }
+
+        /**
+         * @param rates 按生效日期升序排列的汇率
+         */
+        static RateTimeline of(List<ExchangeRate> rates) {
+            int n = rates.size();
+            int[] days = new int[n];
+            BigDecimal[] values = new BigDecimal[n];
+            for (int i = 0; i < n; i++) {
+                days[i] = (int) rates.get(i).getEffectiveDate().toEpochDay();
+                values[i] = rates.get(i).getRateToUsd();
+            }
+            return new RateTimeline(days, values);
+        }
+
+        // 返回生效日期 <= date 的最后一个汇率，不存在返回 null
+        BigDecimal floor(LocalDate date) {
+            int pos = Arrays.binarySearch(epochDays, (int) date.toEpochDay());
+            int idx = pos >= 0 ? pos : -pos - 2;
+            return idx >= 0 ? rates[idx] : null;
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package com.finance.app.service;
+
+import com.finance.app.repository.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 导出数据水位服务
+ *
+ * 对年度报表用到的每类源数据做一次聚合查询（条数、最大ID、最近更新时间、金额合计），
+ * 得到一个代表"当前数据版本"的签名。新增、修改、删除（包括批量导入等绕过Service的写入）
+ * 都会改变签名，因此无需在各个写入路径上埋点。
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportWatermarkService {
+
+    /**
+     * 工作表依赖的源数据
+     */
+    public enum ExportSource {
+        /** 资产账户及截至年末的资产记录 */
+        ASSET,
+        /** 负债账户及截至年末的负债记录 */
+        LIABILITY,
+        /** 当年及上一年的支出记录、预算和支出分类 */
+        EXPENSE,
+        /** 截至年末生效的汇率 */
+        EXCHANGE_RATE,
+        /** 家庭成员（工作表中的成员名称和分组） */
+        MEMBER,
+        /** 资产/负债类型和净资产类别及其类型映射 */
+        REFERENCE
+    }
+
+    private final AssetRecordRepository assetRecordRepository;
+    private final AssetAccountRepository assetAccountRepository;
+    private final LiabilityRecordRepository liabilityRecordRepository;
+    private final LiabilityAccountRepository liabilityAccountRepository;
+    private final ExpenseRecordRepository expenseRecordRepository;
+    private final ExpenseBudgetRepository expenseBudgetRepository;
+    private final ExpenseCategoryMajorRepository expenseCategoryMajorRepository;
+    private final ExpenseCategoryMinorRepository expenseCategoryMinorRepository;
+    private final ExchangeRateRepository exchangeRateRepository;
+    private final UserRepository userRepository;
+    private final AssetTypeRepository assetTypeRepository;
+    private final LiabilityTypeRepository liabilityTypeRepository;
+    private final NetAssetCategoryRepository netAssetCategoryRepository;
+    private final NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository;
+    private final NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository;
+
+    /**
+     * 计算一组源数据的水位
+     * 同一次导出中各源只查询一次，结果缓存在 cache 中供多个工作表复用
+     */
+    public String watermark(Long familyId, Integer year, Set<ExportSource> sources,
+                            Map<ExportSource, String> cache) {
+        StringBuilder signature = new StringBuilder();
+        for (ExportSource source : new TreeSet<>(sources)) {
+            String value = cache.computeIfAbsent(source, s -> signature(s, familyId, year));
+            signature.append(source).append('=').append(value).append(';');
+        }
+        return sha256(signature.toString());
+    }
+
+    private String signature(ExportSource source, Long familyId, Integer year) {
+        LocalDate yearEnd = LocalDate.of(year, 12, 31);
+        return switch (source) {
+            case ASSET -> format(assetAccountRepository.getExportWatermark(familyId))
+                + "|" + format(assetRecordRepository.getExportWatermark(familyId, yearEnd));
+            case LIABILITY -> format(liabilityAccountRepository.getExportWatermark(familyId))
+                + "|" + format(liabilityRecordRepository.getExportWatermark(familyId, yearEnd));
+            case EXPENSE -> format(expenseRecordRepository.getExportWatermark(
+                    familyId, (year - 1) + "-01", year + "-12"))
+                + "|" + format(expenseBudgetRepository.getExportWatermark(familyId, year - 1, year))
+                + "|" + format(expenseCategoryMajorRepository.getExportWatermark())
+                + "|" + format(expenseCategoryMinorRepository.getExportWatermark());
+            case EXCHANGE_RATE -> format(exchangeRateRepository.getExportWatermark(yearEnd));
+            case MEMBER -> formatRows(userRepository.getExportWatermark(familyId));
+            case REFERENCE -> format(assetTypeRepository.getExportWatermark())
+                + "|" + format(liabilityTypeRepository.getExportWatermark())
+                + "|" + format(netAssetCategoryRepository.getExportWatermark())
+                + "|" + formatRows(assetTypeMappingRepository.getExportWatermark())
+                + "|" + formatRows(liabilityTypeMappingRepository.getExportWatermark());
+        };
+    }
+
+    /**
+     * 聚合查询只返回一行；金额按数值比较，避免 1.0 与 1.00 被视为不同
+     */
+    private static String format(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return "";
+        }
+        StringJoiner joiner = new StringJoiner(",");
+        for (Object value : rows.get(0)) {
+            if (value instanceof BigDecimal decimal) {
+                joiner.add(decimal.stripTrailingZeros().toPlainString());
+            } else {
+                joiner.add(String.valueOf(value));
+            }
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * 没有更新时间的小表按行比较：每行一段，行内按列拼接
+     */
+    private static String formatRows(List<Object[]> rows) {
+        StringJoiner joiner = new StringJoiner("/");
+        for (Object[] row : rows) {
+            joiner.add(format(List.<Object[]>of(row)));
+        }
+        return joiner.toString();
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+}
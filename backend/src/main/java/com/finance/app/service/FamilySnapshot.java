@@ -0,0 +1,43 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.LiabilityAccount;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.NetAssetCategory;
+import com.finance.app.model.NetAssetCategoryAssetTypeMapping;
+import com.finance.app.model.NetAssetCategoryLiabilityTypeMapping;
+import com.finance.app.model.User;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 家庭数据快照：仪表盘一次加载，各分析视图共享读取
+ *
+ * 包含活跃成员、活跃账户（已加载类型）、净资产类别及映射，以及截至 asOfDate 的每账户最新记录；
+ * 历史时点余额通过 AccountBalanceIndexService 读取。加载后只读，可在多个线程间共享。
+ *
+ * @param asOfDate 查询日期，null 表示当前（最新记录）
+ */
+public record FamilySnapshot(
+        Long familyId,
+        LocalDate asOfDate,
+        List<User> users,
+        List<AssetAccount> assetAccounts,
+        List<LiabilityAccount> liabilityAccounts,
+        Map<Long, AssetRecord> assetRecords,
+        Map<Long, LiabilityRecord> liabilityRecords,
+        List<NetAssetCategory> netAssetCategories,
+        Map<Long, List<NetAssetCategoryAssetTypeMapping>> assetTypeMappings,
+        Map<Long, List<NetAssetCategoryLiabilityTypeMapping>> liabilityTypeMappings) {
+
+    public List<NetAssetCategoryAssetTypeMapping> assetMappingsOf(Long netAssetCategoryId) {
+        return assetTypeMappings.getOrDefault(netAssetCategoryId, List.of());
+    }
+
+    public List<NetAssetCategoryLiabilityTypeMapping> liabilityMappingsOf(Long netAssetCategoryId) {
+        return liabilityTypeMappings.getOrDefault(netAssetCategoryId, List.of());
+    }
+}
@@ -0,0 +1,135 @@
+package com.finance.app.service;
+
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.sheets.v4.Sheets;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 长期复用的 Google Sheets / Drive 客户端
+ *
+ * 所有请求共用一个带连接池的 HTTP 传输（keep-alive），导出过程中不再为每次 API 调用重新建立 TLS 连接。
+ * 客户端每次发请求时从 GoogleOAuthService 取当前凭证，令牌刷新、重新授权后无需重建客户端。
+ * 配额限流和 429/5xx 重试由 GoogleApiRequestThrottle 在每个请求上配置。
+ */
+@Component
+@Slf4j
+public class GoogleApiClientProvider {
+
+    private static final String APPLICATION_NAME = "Personal Finance Management";
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
+
+    // 连接池大小：导出是串行调用，少量连接即可；空闲连接 60 秒后回收
+    private static final int MAX_CONNECTIONS = 10;
+    private static final long IDLE_EVICT_SECONDS = 60;
+
+    private final HttpTransport httpTransport;
+    private final Sheets sheets;
+    private final Drive drive;
+
+    @Autowired
+    public GoogleApiClientProvider(GoogleOAuthService googleOAuthService, GoogleApiRequestThrottle requestThrottle) {
+        this(googleOAuthService, createPooledTransport(), null, requestThrottle);
+    }
+
+    /**
+     * @param rootUrl API 根地址，为 null 时使用 Google 默认地址（测试中可指向本地替身服务器）
+     */
+    public GoogleApiClientProvider(GoogleOAuthService googleOAuthService, HttpTransport httpTransport, String rootUrl) {
+        this(googleOAuthService, httpTransport, rootUrl, null);
+    }
+
+    /**
+     * @param requestThrottle 请求限流与重试，为 null 时不限流、不重试
+     */
+    public GoogleApiClientProvider(GoogleOAuthService googleOAuthService, HttpTransport httpTransport, String rootUrl,
+                                   GoogleApiRequestThrottle requestThrottle) {
+        this.httpTransport = httpTransport;
+
+        // 每个请求使用当前凭证初始化（Authorization 头 + 401 时刷新令牌），再加上限流和重试
+        HttpRequestInitializer initializer = request -> {
+            try {
+                googleOAuthService.getSavedCredential().initialize(request);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("加载OAuth凭证失败", e);
+            }
+            if (requestThrottle != null) {
+                requestThrottle.configure(request);
+            }
+        };
+
+        Sheets.Builder sheetsBuilder = new Sheets.Builder(httpTransport, JSON_FACTORY, initializer)
+            .setApplicationName(APPLICATION_NAME);
+        Drive.Builder driveBuilder = new Drive.Builder(httpTransport, JSON_FACTORY, initializer)
+            .setApplicationName(APPLICATION_NAME);
+        if (rootUrl != null) {
+            sheetsBuilder.setRootUrl(rootUrl);
+            driveBuilder.setRootUrl(rootUrl);
+        }
+        this.sheets = sheetsBuilder.build();
+        this.drive = driveBuilder.build();
+    }
+
+    public Sheets getSheets() {
+        return sheets;
+    }
+
+    public Drive getDrive() {
+        return drive;
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        httpTransport.shutdown();
+    }
+
+    /**
+     * 创建带连接池的 HTTP 传输（信任所有证书，与原先的 NetHttpTransport 配置一致）
+     * 注意：这在生产环境中不推荐，但对于个人应用和开发环境是可以接受的
+     */
+    static HttpTransport createPooledTransport() {
+        HttpClientBuilder builder = ApacheHttpTransport.newDefaultHttpClientBuilder()
+            .setMaxConnTotal(MAX_CONNECTIONS)
+            .setMaxConnPerRoute(MAX_CONNECTIONS)
+            .evictIdleConnections(IDLE_EVICT_SECONDS, TimeUnit.SECONDS);
+        try {
+            TrustManager[] trustAllCerts = new TrustManager[]{
+                new X509TrustManager() {
+                    public X509Certificate[] getAcceptedIssuers() {
+                        return null;
+                    }
+                    public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                    }
+                    public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                    }
+                }
+            };
+
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustAllCerts, new SecureRandom());
+            builder.setSSLSocketFactory(new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE));
+        } catch (Exception e) {
+            log.warn("无法创建自定义SSL传输，回退到默认传输", e);
+        }
+        return new ApacheHttpTransport(builder.build());
+    }
+}
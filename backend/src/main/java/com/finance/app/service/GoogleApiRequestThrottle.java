@@ -0,0 +1,221 @@
+package com.finance.app.service;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.NanoClock;
+import com.google.api.client.util.Sleeper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Google API 请求限流与重试
+ *
+ * 每次发出请求（包括重试）前，先从 OAuth 账户和目标电子表格两个令牌桶中各取一个令牌，
+ * 令牌不足时等待，而不是超出每分钟配额后收到 429。
+ * 遇到 429 时按带随机抖动的指数退避重试（有 Retry-After 时至少等待该时长）：429 表示请求未被执行，任何请求都可以重发。
+ * 5xx 和网络异常时服务端可能已经执行了请求，只重试幂等请求（GET、PUT 以及 values:batchUpdate / values:batchClear），
+ * 新建电子表格、共享权限、增删工作表等 POST 请求直接抛出，避免重复创建。
+ * 其他错误直接抛出。凭证原有的拦截器和 401 刷新处理保持不变。
+ */
+@Component
+@Slf4j
+public class GoogleApiRequestThrottle {
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final int spreadsheetPerMinute;
+    private final int maxAttempts;
+    private final int initialBackoffMs;
+    private final int maxBackoffMs;
+    private final NanoClock clock;
+    private final Sleeper sleeper;
+
+    // 应用只保存一个 Google 账户的凭证，所有请求共用账户级配额
+    private final TokenBucket accountBucket;
+    private final Map<String, TokenBucket> spreadsheetBuckets = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GoogleApiRequestThrottle(@Value("${google-sheets.rate-limit.account-per-minute:60}") int accountPerMinute,
+                                    @Value("${google-sheets.rate-limit.spreadsheet-per-minute:60}") int spreadsheetPerMinute,
+                                    @Value("${google-sheets.retry.max-attempts:5}") int maxAttempts,
+                                    @Value("${google-sheets.retry.initial-backoff-ms:1000}") int initialBackoffMs,
+                                    @Value("${google-sheets.retry.max-backoff-ms:32000}") int maxBackoffMs) {
+        this(accountPerMinute, spreadsheetPerMinute, maxAttempts, initialBackoffMs, maxBackoffMs,
+            NanoClock.SYSTEM, Sleeper.DEFAULT);
+    }
+
+    /**
+     * @param clock 令牌桶和退避使用的时钟（测试中可替换）
+     * @param sleeper 等待令牌和退避使用的休眠（测试中可替换）
+     */
+    public GoogleApiRequestThrottle(int accountPerMinute, int spreadsheetPerMinute, int maxAttempts,
+                                    int initialBackoffMs, int maxBackoffMs, NanoClock clock, Sleeper sleeper) {
+        this.spreadsheetPerMinute = spreadsheetPerMinute;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.accountBucket = new TokenBucket(accountPerMinute);
+    }
+
+    /**
+     * 为单个请求加上限流和重试（在凭证初始化请求之后调用）
+     */
+    public void configure(HttpRequest request) {
+        HttpExecuteInterceptor credentialInterceptor = request.getInterceptor();
+        request.setInterceptor(r -> {
+            acquire(r.getUrl());
+            if (credentialInterceptor != null) {
+                credentialInterceptor.intercept(r);
+            }
+        });
+
+        ExponentialBackOff backOff = new ExponentialBackOff.Builder()
+            .setInitialIntervalMillis(initialBackoffMs)
+            .setMaxIntervalMillis(maxBackoffMs)
+            .setMultiplier(2.0)
+            .setRandomizationFactor(0.5)
+            .setMaxElapsedTimeMillis(Integer.MAX_VALUE)
+            .setNanoClock(clock)
+            .build();
+
+        HttpUnsuccessfulResponseHandler credentialHandler = request.getUnsuccessfulResponseHandler();
+        request.setUnsuccessfulResponseHandler((r, response, supportsRetry) -> {
+            if (credentialHandler != null && credentialHandler.handleResponse(r, response, supportsRetry)) {
+                return true;
+            }
+            int status = response.getStatusCode();
+            if (!supportsRetry || !isRetryable(status, isIdempotent(r))) {
+                return false;
+            }
+            return backOff(r, backOff, retryAfterMillis(response.getHeaders().getRetryAfter()), "HTTP " + status);
+        });
+        request.setIOExceptionHandler((r, supportsRetry) ->
+            supportsRetry && isIdempotent(r) && backOff(r, backOff, 0, "网络异常"));
+        request.setNumberOfRetries(maxAttempts - 1);
+    }
+
+    static boolean isRetryable(int status, boolean idempotent) {
+        return status == 429 || (idempotent && status >= 500);
+    }
+
+    /**
+     * 重复执行结果不变的请求：GET、PUT（values.update），以及按范围整体覆盖/清空的 values:batchUpdate、values:batchClear
+     */
+    static boolean isIdempotent(HttpRequest request) {
+        String method = request.getRequestMethod();
+        if ("GET".equals(method) || "PUT".equals(method)) {
+            return true;
+        }
+        String path = request.getUrl().getRawPath();
+        return path != null && (path.endsWith("/values:batchUpdate") || path.endsWith("/values:batchClear"));
+    }
+
+    /**
+     * 请求目标电子表格ID（Sheets: /v4/spreadsheets/{id}...，Drive: /drive/v3/files/{id}/...）
+     */
+    static String spreadsheetId(GenericUrl url) {
+        List<String> parts = url.getPathParts();
+        if (parts == null) {
+            return null;
+        }
+        for (int i = 0; i < parts.size() - 1; i++) {
+            String part = parts.get(i);
+            if ("spreadsheets".equals(part) || "files".equals(part)) {
+                String id = parts.get(i + 1);
+                int colon = id.indexOf(':');
+                id = colon >= 0 ? id.substring(0, colon) : id;
+                return id.isEmpty() ? null : id;
+            }
+        }
+        return null;
+    }
+
+    private void acquire(GenericUrl url) throws IOException {
+        long waitNanos = accountBucket.reserve();
+        String spreadsheetId = spreadsheetId(url);
+        if (spreadsheetId != null) {
+            TokenBucket bucket = spreadsheetBuckets.computeIfAbsent(spreadsheetId, id -> new TokenBucket(spreadsheetPerMinute));
+            waitNanos = Math.max(waitNanos, bucket.reserve());
+        }
+        if (waitNanos > 0) {
+            log.debug("Google API 请求限流，等待{}ms: {}", TimeUnit.NANOSECONDS.toMillis(waitNanos), spreadsheetId);
+            sleep(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        }
+    }
+
+    private boolean backOff(HttpRequest request, ExponentialBackOff backOff, long retryAfterMs, String reason)
+            throws IOException {
+        long delay = backOff.nextBackOffMillis();
+        if (delay == ExponentialBackOff.STOP) {
+            return false;
+        }
+        delay = Math.max(delay, Math.min(retryAfterMs, maxBackoffMs));
+        log.warn("Google API 请求失败（{}），{}ms 后重试（剩余{}次）: {} {}",
+            reason, delay, request.getNumberOfRetries(), request.getRequestMethod(), request.getUrl().getRawPath());
+        sleep(delay);
+        return true;
+    }
+
+    private void sleep(long millis) throws InterruptedIOException {
+        try {
+            sleeper.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待 Google API 配额时被中断");
+        }
+    }
+
+    /**
+     * Retry-After 头（秒数）转为毫秒，缺失或无法解析时为 0
+     */
+    private static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 令牌桶：容量为每分钟配额（允许短时突发），按配额匀速补充。
+     * reserve() 立即扣除一个令牌（可以透支），返回需要等待的时长，并发请求按到达顺序排队。
+     */
+    private class TokenBucket {
+        private final double capacity;
+        private final double nanosPerToken;
+        private double tokens;
+        private long refilledAt;
+
+        TokenBucket(int perMinute) {
+            this.capacity = Math.max(1, perMinute);
+            this.nanosPerToken = (double) NANOS_PER_MINUTE / capacity;
+            this.tokens = capacity;
+            this.refilledAt = clock.nanoTime();
+        }
+
+        synchronized long reserve() {
+            long now = clock.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) / nanosPerToken);
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * nanosPerToken);
+        }
+    }
+}
@@ -43,6 +43,9 @@ public class GoogleOAuthService {
         "https://www.googleapis.com/auth/drive.file"
     );
 
+    // 已加载的凭证，供 Sheets/Drive 客户端复用；令牌过期时由 Credential 自行刷新并写回 tokens 目录
+    private volatile Credential savedCredential;
+
     /**
      * 创建信任所有证书的HTTP传输
      */
@@ -100,6 +103,7 @@ public class GoogleOAuthService {
 
         try {
             Credential credential = new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
+            savedCredential = credential;
             log.info("OAuth 2.0 认证成功");
             return credential;
         } finally {
@@ -128,6 +132,7 @@ public class GoogleOAuthService {
      * 清除已保存的令牌（用于重新授权）
      */
     public void clearTokens() {
+        savedCredential = null;
         try {
             java.io.File tokenDir = new java.io.File(TOKENS_DIRECTORY_PATH);
             if (tokenDir.exists()) {
@@ -190,6 +195,19 @@ public class GoogleOAuthService {
      * 如果没有已保存的凭证，抛出异常
      */
     public Credential getSavedCredential() throws IOException, GeneralSecurityException {
+        Credential cached = savedCredential;
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (this) {
+            if (savedCredential == null) {
+                savedCredential = loadSavedCredential();
+            }
+            return savedCredential;
+        }
+    }
+
+    private Credential loadSavedCredential() throws IOException, GeneralSecurityException {
         NetHttpTransport httpTransport = createTrustAllTransport();
 
         // 加载 OAuth 客户端凭证
@@ -245,6 +263,7 @@ public class GoogleOAuthService {
 
         // 保存凭证
         Credential credential = flow.createAndStoreCredential(response, "user");
+        savedCredential = credential;
 
         log.info("OAuth令牌获取成功，access_token前缀: {}...",
             credential.getAccessToken().substring(0, Math.min(10, credential.getAccessToken().length())));
@@ -0,0 +1,543 @@
+package com.finance.app.service;
+
+import com.finance.app.model.GoogleSheetsSync;
+import com.finance.app.repository.GoogleSheetsSyncRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Google Sheets 导出任务队列
+ *
+ * 任务保存在 google_sheets_sync 表中（每个 家庭 × 年份 一行），重启不会丢失：
+ * - 排队：已结束的记录重置为 PENDING；已在排队或执行中的请求直接返回现有任务，同一家庭年份不会并发导出
+ * - 领取：固定数量的工作线程按排队顺序用条件更新领取任务，并持有一段时间的租约；执行中每个进度节点续租，
+ *   失去租约的执行者停止执行，最终状态只由仍持有租约的执行者写入
+ * - 恢复：租约过期或心跳超时仍未完成的任务重新排队（超过领取次数上限则标记失败）。执行实例定期为本实例
+ *   执行中的任务写入心跳，实例崩溃或以新的名称重启（Deployment 的 Pod 名称会变化）后，任务在心跳超时后即被恢复；
+ *   实例启动时，本实例上次领取的任务（实例ID不变时）立即视为过期
+ * - 取消：排队中的任务直接取消；执行中的任务在下一个进度节点停止
+ * - 批量：一次请求排队的多个年份共用一个批次ID，领取其中一个时同时领取其余年份，一起执行以共享数据加载
+ * - 进度转发：SSE 事件流只在接受订阅的实例内存中，任务却可能由其他实例领取；本实例有订阅者但任务不在本实例执行时，
+ *   定期读取同步记录的状态和进度，变化时推送到本地事件流
+ *
+ * 队列深度、执行中任务数和各结果的任务耗时通过 Micrometer 暴露在 /actuator/metrics 中。
+ */
+@Service
+@Slf4j
+public class GoogleSheetsExportQueue {
+
+    /** 每次查询的候选任务数（领取失败时依次尝试下一个） */
+    private static final int CLAIM_CANDIDATES = 10;
+
+    private final GoogleSheetsSyncRepository googleSheetsSyncRepository;
+    private final GoogleSheetsExportService googleSheetsExportService;
+    private final SseEmitterManager sseEmitterManager;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final int workerCount;
+    private final long leaseMinutes;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final int maxBatchYears;
+    private final long heartbeatTimeoutMs;
+    private final long relayIntervalMs;
+    private final String instanceId;
+
+    private final Semaphore wakeups = new Semaphore(0);
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    /** 本实例正在执行的任务和批次：进度由执行线程直接推送，不需要转发 */
+    private final Set<Long> localJobs = ConcurrentHashMap.newKeySet();
+    private final Set<String> localBatches = ConcurrentHashMap.newKeySet();
+    /** 已转发的状态（事件流 -> 状态），只在转发线程中访问；未变化时不重复推送 */
+    private final Map<String, String> relayedStates = new HashMap<>();
+    private volatile boolean stopped;
+    private ExecutorService workers;
+    private ScheduledExecutorService sweeper;
+
+    public GoogleSheetsExportQueue(GoogleSheetsSyncRepository googleSheetsSyncRepository,
+                                   GoogleSheetsExportService googleSheetsExportService,
+                                   SseEmitterManager sseEmitterManager,
+                                   ObjectProvider<MeterRegistry> meterRegistry,
+                                   @Value("${google-sheets.export.workers:2}") int workerCount,
+                                   @Value("${google-sheets.export.lease-minutes:30}") long leaseMinutes,
+                                   @Value("${google-sheets.export.poll-interval-ms:5000}") long pollIntervalMs,
+                                   @Value("${google-sheets.export.max-attempts:3}") int maxAttempts,
+                                   @Value("${google-sheets.export.max-batch-years:20}") int maxBatchYears,
+                                   @Value("${google-sheets.export.heartbeat-timeout-ms:60000}") long heartbeatTimeoutMs,
+                                   @Value("${google-sheets.export.relay-interval-ms:1000}") long relayIntervalMs,
+                                   @Value("${google-sheets.export.instance-id:}") String instanceId) {
+        this.googleSheetsSyncRepository = googleSheetsSyncRepository;
+        this.googleSheetsExportService = googleSheetsExportService;
+        this.sseEmitterManager = sseEmitterManager;
+        this.meterRegistry = meterRegistry;
+        this.workerCount = workerCount;
+        this.leaseMinutes = leaseMinutes;
+        this.pollIntervalMs = pollIntervalMs;
+        this.maxAttempts = maxAttempts;
+        this.maxBatchYears = maxBatchYears;
+        this.heartbeatTimeoutMs = heartbeatTimeoutMs;
+        this.relayIntervalMs = relayIntervalMs;
+        this.instanceId = instanceId.isEmpty() ? defaultInstanceId() : instanceId;
+    }
+
+    /**
+     * 创建或更新年度财务报表任务（立即返回，由工作线程异步执行）
+     * @param familyId 家庭ID
+     * @param year 年份
+     * @param permissionRole 权限：reader或writer
+     * @return Map包含任务ID和状态 {syncId, status, progress, message}
+     */
+    public Map<String, Object> enqueue(Long familyId, Integer year, String permissionRole) {
+        Map<String, Object> result = enqueue(familyId, year, permissionRole, null);
+        wakeUp();
+        return result;
+    }
+
+    /**
+     * 批量创建或更新多个年份的年度报表任务（同一批次由一个工作线程一起执行，共享数据加载）
+     * 已在排队或执行中的年份返回现有任务，不加入本批次
+     * @param fromYear 起始年份
+     * @param toYear 结束年份（含）
+     * @return Map包含批次ID和各年份任务 {batchId, years, tasks, message}
+     */
+    public Map<String, Object> enqueueRange(Long familyId, Integer fromYear, Integer toYear, String permissionRole) {
+        if (fromYear > toYear) {
+            throw new IllegalArgumentException("起始年份不能晚于结束年份");
+        }
+        if (toYear - fromYear + 1 > maxBatchYears) {
+            throw new IllegalArgumentException("一次最多批量导出" + maxBatchYears + "个年份");
+        }
+
+        String batchId = UUID.randomUUID().toString();
+        log.info("开始创建批量导出任务: familyId={}, years={}-{}, batchId={}", familyId, fromYear, toYear, batchId);
+        sseEmitterManager.reset(SseEmitterManager.batchStream(batchId));
+
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        List<Integer> batchYears = new ArrayList<>();
+        for (int year = fromYear; year <= toYear; year++) {
+            Map<String, Object> task = enqueue(familyId, year, permissionRole, batchId);
+            task.put("year", year);
+            if (batchId.equals(task.get("batchId"))) {
+                batchYears.add(year);
+            }
+            tasks.add(task);
+        }
+        wakeUp();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("batchId", batchYears.isEmpty() ? null : batchId);
+        result.put("years", batchYears);
+        result.put("tasks", tasks);
+        result.put("message", batchYears.isEmpty()
+            ? "所有年份均已有正在进行的同步任务"
+            : "批量导出任务已加入队列：" + batchYears.size() + "个年份");
+        return result;
+    }
+
+    private Map<String, Object> enqueue(Long familyId, Integer year, String permissionRole, String batchId) {
+        log.info("开始创建Google Sheets年度报表任务: familyId={}, year={}", familyId, year);
+
+        Optional<GoogleSheetsSync> existingSync = googleSheetsSyncRepository.findByFamilyIdAndYear(familyId, year);
+        GoogleSheetsSync sync;
+
+        if (existingSync.isPresent()) {
+            sync = existingSync.get();
+            if (googleSheetsSyncRepository.requeue(sync.getId(), permissionRole, batchId, LocalDateTime.now()) == 0) {
+                return existingTask(sync.getId());
+            }
+            log.info("重新排队同步任务: syncId={}, spreadsheetId={}", sync.getId(), sync.getSpreadsheetId());
+        } else {
+            // 创建新的同步记录
+            sync = new GoogleSheetsSync();
+            sync.setFamilyId(familyId);
+            sync.setYear(year);
+            sync.setSpreadsheetId(""); // 稍后在导出任务中设置
+            sync.setShareUrl(""); // 稍后在导出任务中设置
+            sync.setPermission(permissionRole);
+            sync.setRequestedPermission(permissionRole);
+            sync.setBatchId(batchId);
+            sync.setStatus("PENDING");
+            sync.setProgress(0);
+            sync.setQueuedAt(LocalDateTime.now());
+            try {
+                sync = googleSheetsSyncRepository.saveAndFlush(sync);
+            } catch (DataIntegrityViolationException e) {
+                // 并发请求已经为同一家庭年份创建了任务 (uk_family_year)
+                return googleSheetsSyncRepository.findByFamilyIdAndYear(familyId, year)
+                    .map(existing -> existingTask(existing.getId()))
+                    .orElseThrow(() -> e);
+            }
+            log.info("创建新的同步任务记录: syncId={}", sync.getId());
+        }
+
+        // 清除上一次执行留下的最终事件，之后订阅的客户端只接收本次执行的进度
+        sseEmitterManager.reset(sync.getId());
+        queueDepth.incrementAndGet();
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("syncId", sync.getId());
+        result.put("status", "PENDING");
+        result.put("progress", 0);
+        result.put("message", "报表生成任务已加入队列，请稍后查询状态");
+        if (batchId != null) {
+            result.put("batchId", batchId);
+        }
+        return result;
+    }
+
+    /**
+     * 已在排队或执行中的任务（重复请求不再创建新任务）
+     */
+    private Map<String, Object> existingTask(Long syncId) {
+        GoogleSheetsSync sync = googleSheetsSyncRepository.findById(syncId)
+            .orElseThrow(() -> new RuntimeException("同步记录不存在: " + syncId));
+        log.info("已有进行中的任务: syncId={}, status={}", syncId, sync.getStatus());
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Counter.builder("google.sheets.export.deduplicated")
+                .description("合并到已有任务的重复导出请求数")
+                .register(registry)
+                .increment();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("syncId", sync.getId());
+        result.put("status", sync.getStatus());
+        result.put("progress", sync.getProgress());
+        result.put("message", "已有正在进行的同步任务");
+        return result;
+    }
+
+    /**
+     * 取消任务
+     * @return 取消后的状态：CANCELLED（排队中的任务已取消）、CANCELLING（执行中的任务将在下一个进度节点停止），
+     *         任务已结束时返回 null
+     */
+    public String cancel(Long syncId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (googleSheetsSyncRepository.cancelQueued(syncId, "同步任务已取消", now) == 1) {
+            log.info("已取消排队中的任务: syncId={}", syncId);
+            queueDepth.updateAndGet(depth -> Math.max(0, depth - 1));
+            sseEmitterManager.sendError(syncId, "同步任务已取消");
+            return "CANCELLED";
+        }
+        if (googleSheetsSyncRepository.requestCancel(syncId, now) == 1) {
+            log.info("已请求取消执行中的任务: syncId={}", syncId);
+            return "CANCELLING";
+        }
+        return null;
+    }
+
+    /**
+     * 应用启动后恢复中断的任务并启动工作线程
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        int expired = googleSheetsSyncRepository.expireLeases(instanceId, LocalDateTime.now());
+        if (expired > 0) {
+            log.info("上次运行中断的导出任务: {}个", expired);
+        }
+        recoverExpiredLeases();
+        queueDepth.set(googleSheetsSyncRepository.countByStatus("PENDING"));
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("google.sheets.export.queue.depth", queueDepth, AtomicLong::get)
+                .description("排队中的导出任务数")
+                .register(registry);
+            Gauge.builder("google.sheets.export.running", runningJobs, AtomicInteger::get)
+                .description("执行中的导出任务数")
+                .register(registry);
+        }
+
+        workers = Executors.newFixedThreadPool(workerCount, new CustomizableThreadFactory("google-sheets-"));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::workLoop);
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("google-sheets-sweeper-"));
+        sweeper.scheduleWithFixedDelay(this::sweep, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        sweeper.scheduleWithFixedDelay(this::relayRemoteProgress, relayIntervalMs, relayIntervalMs, TimeUnit.MILLISECONDS);
+
+        log.info("导出队列已启动: instanceId={}, 工作线程{}个, 排队任务{}个", instanceId, workerCount, queueDepth.get());
+    }
+
+    /**
+     * 停止领取新任务，等待执行中的任务完成（未完成的任务在租约过期或下次启动时重新排队）
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        stopped = true;
+        if (workers == null) {
+            return;
+        }
+        sweeper.shutdownNow();
+        wakeups.release(workerCount);
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            log.warn("导出队列停止时仍有{}个任务未完成", runningJobs.get());
+        }
+    }
+
+    private void wakeUp() {
+        if (wakeups.availablePermits() < workerCount) {
+            wakeups.release();
+        }
+    }
+
+    private void workLoop() {
+        while (!stopped) {
+            try {
+                Long syncId = claimNext();
+                if (syncId == null) {
+                    wakeups.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                runJob(syncId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("导出队列工作线程异常", e);
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 按排队顺序领取一个任务，没有可领取的任务时返回 null
+     */
+    private Long claimNext() {
+        List<Long> candidates = googleSheetsSyncRepository.findQueuedIds(PageRequest.of(0, CLAIM_CANDIDATES));
+        for (Long syncId : candidates) {
+            LocalDateTime now = LocalDateTime.now();
+            if (googleSheetsSyncRepository.claim(syncId, instanceId, now, now.plusMinutes(leaseMinutes)) == 1) {
+                queueDepth.updateAndGet(depth -> Math.max(0, depth - 1));
+                return syncId;
+            }
+        }
+        return null;
+    }
+
+    private void runJob(Long syncId) {
+        log.info("领取导出任务: syncId={}, worker={}", syncId, Thread.currentThread().getName());
+        String batchId = googleSheetsSyncRepository.findById(syncId).map(GoogleSheetsSync::getBatchId).orElse(null);
+        List<Long> syncIds = batchId != null ? claimBatch(syncId, batchId) : List.of(syncId);
+
+        runningJobs.addAndGet(syncIds.size());
+        localJobs.addAll(syncIds);
+        if (batchId != null) {
+            localBatches.add(batchId);
+        }
+        long start = System.nanoTime();
+        try {
+            if (batchId != null) {
+                googleSheetsExportService.executeBatch(batchId, syncIds, instanceId, leaseMinutes);
+            } else {
+                googleSheetsExportService.executeExport(syncId, instanceId, leaseMinutes);
+            }
+        } finally {
+            runningJobs.addAndGet(-syncIds.size());
+            syncIds.forEach(localJobs::remove);
+            if (batchId != null) {
+                localBatches.remove(batchId);
+            }
+        }
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            // 批量导出的各年份按平均耗时记录
+            long elapsed = (System.nanoTime() - start) / syncIds.size();
+            for (Long id : syncIds) {
+                String status = googleSheetsSyncRepository.findById(id).map(GoogleSheetsSync::getStatus).orElse("UNKNOWN");
+                Timer.builder("google.sheets.export.jobs")
+                    .description("导出任务执行耗时（按结果统计，计数即吞吐量）")
+                    .tag("status", status)
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * 领取同一批次中其余排队的年份，并按年份数延长整个批次的租约
+     */
+    private List<Long> claimBatch(Long syncId, String batchId) {
+        List<Long> syncIds = new ArrayList<>();
+        syncIds.add(syncId);
+        for (Long siblingId : googleSheetsSyncRepository.findQueuedIdsInBatch(batchId)) {
+            LocalDateTime now = LocalDateTime.now();
+            if (googleSheetsSyncRepository.claim(siblingId, instanceId, now, now.plusMinutes(leaseMinutes)) == 1) {
+                queueDepth.updateAndGet(depth -> Math.max(0, depth - 1));
+                syncIds.add(siblingId);
+            }
+        }
+        if (syncIds.size() > 1) {
+            googleSheetsSyncRepository.extendLease(syncIds, instanceId,
+                LocalDateTime.now().plusMinutes(leaseMinutes * syncIds.size()));
+        }
+        log.info("领取批量导出任务: batchId={}, 年份{}个", batchId, syncIds.size());
+        return syncIds;
+    }
+
+    private void sweep() {
+        try {
+            // 心跳与进度节点无关：单个步骤耗时较长（例如等待 API 配额）时任务也不会被误判为中断
+            if (!localJobs.isEmpty()) {
+                googleSheetsSyncRepository.heartbeat(List.copyOf(localJobs), instanceId, LocalDateTime.now());
+            }
+            recoverExpiredLeases();
+            queueDepth.set(googleSheetsSyncRepository.countByStatus("PENDING"));
+        } catch (Exception e) {
+            log.warn("导出队列维护失败: {}", e.getMessage());
+        }
+    }
+
+    private void recoverExpiredLeases() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime staleBefore = now.minusNanos(TimeUnit.MILLISECONDS.toNanos(heartbeatTimeoutMs));
+        int failed = googleSheetsSyncRepository.failExpired(now, staleBefore, maxAttempts,
+            "任务多次中断（超过" + maxAttempts + "次未完成）");
+        int requeued = googleSheetsSyncRepository.requeueExpired(now, staleBefore, maxAttempts);
+        if (failed > 0 || requeued > 0) {
+            log.warn("租约过期的导出任务: 重新排队{}个, 标记失败{}个", requeued, failed);
+            wakeUp();
+        }
+    }
+
+    /**
+     * 把其他实例执行的任务进度转发给本实例的 SSE 订阅者（只处理本实例有订阅者、且不在本实例执行的事件流）
+     */
+    private void relayRemoteProgress() {
+        try {
+            List<String> activeStreams = sseEmitterManager.activeStreams();
+            relayedStates.keySet().retainAll(activeStreams);
+
+            List<Long> syncIds = new ArrayList<>();
+            List<String> batchIds = new ArrayList<>();
+            for (String key : activeStreams) {
+                String batchId = SseEmitterManager.batchIdOf(key);
+                if (batchId == null) {
+                    Long syncId = Long.valueOf(key);
+                    if (!localJobs.contains(syncId)) {
+                        syncIds.add(syncId);
+                    }
+                } else if (!localBatches.contains(batchId)) {
+                    batchIds.add(batchId);
+                }
+            }
+            if (!syncIds.isEmpty()) {
+                googleSheetsSyncRepository.findAllById(syncIds).forEach(this::relaySync);
+            }
+            for (String batchId : batchIds) {
+                relayBatch(batchId, googleSheetsSyncRepository.findByBatchIdOrderByYear(batchId));
+            }
+        } catch (Exception e) {
+            log.warn("转发导出进度失败: {}", e.getMessage());
+        }
+    }
+
+    private void relaySync(GoogleSheetsSync sync) {
+        String state = sync.getStatus() + ":" + sync.getProgress();
+        if (state.equals(relayedStates.put(String.valueOf(sync.getId()), state))) {
+            return;
+        }
+        switch (sync.getStatus()) {
+            case "COMPLETED" -> sseEmitterManager.sendSuccess(sync.getId(), sync.getShareUrl(), sync.getSpreadsheetId());
+            case "FAILED", "CANCELLED" -> sseEmitterManager.sendError(sync.getId(), sync.getErrorMessage());
+            case "IN_PROGRESS" -> {
+                int progress = sync.getProgress() != null ? sync.getProgress() : 0;
+                sseEmitterManager.sendProgress(sync.getId(), progress, "IN_PROGRESS",
+                    GoogleSheetsExportService.getProgressMessage(progress));
+            }
+            default -> {
+                // PENDING：仍在排队，等待领取
+            }
+        }
+    }
+
+    /**
+     * 批次汇总进度：已结束的年份按 100 计；全部年份结束后推送最终结果
+     */
+    private void relayBatch(String batchId, List<GoogleSheetsSync> syncs) {
+        if (syncs.isEmpty()) {
+            return;
+        }
+        int progressSum = 0;
+        Map<Long, String> errors = new HashMap<>();
+        int finished = 0;
+        for (GoogleSheetsSync sync : syncs) {
+            boolean running = "PENDING".equals(sync.getStatus()) || "IN_PROGRESS".equals(sync.getStatus());
+            if (running) {
+                progressSum += sync.getProgress() != null ? sync.getProgress() : 0;
+                continue;
+            }
+            finished++;
+            progressSum += 100;
+            if (!"COMPLETED".equals(sync.getStatus())) {
+                errors.put(sync.getId(), sync.getErrorMessage());
+            }
+        }
+        int progress = progressSum / syncs.size();
+        String key = SseEmitterManager.batchStream(batchId);
+        if ((finished + ":" + progress).equals(relayedStates.put(key, finished + ":" + progress))) {
+            return;
+        }
+
+        if (finished == syncs.size()) {
+            Map<String, Object> data = GoogleSheetsExportService.batchResult(batchId, syncs, errors);
+            sseEmitterManager.finish(key, errors.size() < syncs.size() ? "complete" : "error", data);
+            return;
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("batchId", batchId);
+        data.put("progress", progress);
+        data.put("status", "IN_PROGRESS");
+        data.put("message", "批量同步中：" + finished + "/" + syncs.size() + "个年份已结束");
+        data.put("timestamp", System.currentTimeMillis());
+        sseEmitterManager.sendProgress(key, data);
+    }
+
+    private static String defaultInstanceId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+}
@@ -1,22 +1,30 @@
 package com.finance.app.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.finance.app.model.*;
 import com.finance.app.repository.*;
+import com.finance.app.service.ExportWatermarkService.ExportSource;
 import com.google.api.services.sheets.v4.model.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.security.GeneralSecurityException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.Comparator;
 
 /**
@@ -43,247 +51,373 @@ public class GoogleSheetsExportService {
     private final ExchangeRateService exchangeRateService;
     private final UserRepository userRepository;
     private final SseEmitterManager sseEmitterManager;
-    private final ApplicationContext applicationContext;
+    private final PlatformTransactionManager transactionManager;
     private final AnalysisService analysisService;
     private final FamilyRepository familyRepository;
+    private final ExportWatermarkService exportWatermarkService;
+    private final ObjectMapper objectMapper;
 
     private static final String RETIREMENT_FUND_TYPE = "RETIREMENT_FUND";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
-    // 汇率缓存 ThreadLocal（每个导出任务独立）
-    private static final ThreadLocal<Map<String, BigDecimal>> EXCHANGE_RATE_CACHE = ThreadLocal.withInitial(HashMap::new);
-
     /**
-     * 创建或更新年度财务报表Google Sheets（同步方法，立即启动异步任务）
-     * @param familyId 家庭ID
-     * @param year 年份
-     * @param permissionRole 权限：reader或writer
-     * @return Map包含任务ID和状态 {syncId, status}
+     * 报表版式版本，修改工作表生成逻辑时递增，使已保存的指纹全部失效
      */
-    public Map<String, Object> createOrUpdateAnnualReport(Long familyId, Integer year, String permissionRole) {
-        log.info("开始创建Google Sheets年度报表任务: familyId={}, year={}", familyId, year);
-
-        // 查询是否已存在同步记录
-        Optional<GoogleSheetsSync> existingSync = googleSheetsSyncRepository.findByFamilyIdAndYear(familyId, year);
-
-        GoogleSheetsSync sync;
-        boolean isNew;
-
-        if (existingSync.isPresent()) {
-            sync = existingSync.get();
-            isNew = false;
-
-            // 检查是否有正在进行的任务
-            if ("IN_PROGRESS".equals(sync.getStatus()) || "PENDING".equals(sync.getStatus())) {
-                // 检查任务是否超时（超过1小时视为超时）
-                long minutesSinceUpdate = java.time.Duration.between(
-                    sync.getUpdatedAt().atZone(java.time.ZoneId.systemDefault()).toInstant(),
-                    java.time.Instant.now()
-                ).toMinutes();
-
-                if (minutesSinceUpdate < 60) {
-                    // 任务未超时，返回现有任务
-                    log.info("已有进行中的任务: syncId={}, 已运行{}分钟", sync.getId(), minutesSinceUpdate);
-                    Map<String, Object> result = new HashMap<>();
-                    result.put("syncId", sync.getId());
-                    result.put("status", sync.getStatus());
-                    result.put("progress", sync.getProgress());
-                    result.put("message", "已有正在进行的同步任务");
-                    return result;
-                } else {
-                    // 任务超时，标记为失败并继续创建新任务
-                    log.warn("检测到超时任务: syncId={}, 已运行{}分钟，将重置并重新启动", sync.getId(), minutesSinceUpdate);
-                    sync.setStatus("FAILED");
-                    sync.setErrorMessage("任务超时（超过1小时未完成）");
-                    googleSheetsSyncRepository.save(sync);
-                }
-            }
+    private static final String EXPORT_LAYOUT_VERSION = "1";
 
-            // 检查是否需要重新创建电子表格（spreadsheetId为空或无效）
-            if (sync.getSpreadsheetId() == null || sync.getSpreadsheetId().isEmpty()) {
-                log.info("电子表格ID为空，需要重新创建");
-                isNew = true;
-            }
-
-            // 重置状态以开始新的同步
-            sync.setStatus("PENDING");
-            sync.setProgress(0);
-            sync.setErrorMessage(null);
-            sync.setPermission(permissionRole);
-            googleSheetsSyncRepository.save(sync);
-
-            log.info("重新启动同步任务: syncId={}, spreadsheetId={}, isNew={}", sync.getId(), sync.getSpreadsheetId(), isNew);
-
-        } else {
-            // 创建新的同步记录
-            sync = new GoogleSheetsSync();
-            sync.setFamilyId(familyId);
-            sync.setYear(year);
-            sync.setSpreadsheetId(""); // 稍后在异步任务中设置
-            sync.setShareUrl(""); // 稍后在异步任务中设置
-            sync.setPermission(permissionRole);
-            sync.setStatus("PENDING");
-            sync.setProgress(0);
-            sync = googleSheetsSyncRepository.save(sync);
-            isNew = true;
-
-            log.info("创建新的同步任务记录: syncId={}", sync.getId());
-        }
-
-        // 异步执行导出任务（通过Spring代理调用以启用@Async）
-        // 通过ApplicationContext获取代理对象来触发@Async
-        applicationContext.getBean(GoogleSheetsExportService.class)
-            .executeAsyncExport(sync.getId(), familyId, year, permissionRole, isNew);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("syncId", sync.getId());
-        result.put("status", "PENDING");
-        result.put("progress", 0);
-        result.put("message", "报表生成任务已启动，请稍后查询状态");
-
-        return result;
+    /**
+     * 执行一个已被导出队列领取的任务（由 GoogleSheetsExportQueue 的工作线程调用）
+     *
+     * 不在一个大事务中执行：同步记录的进度和状态以短事务写入，不会长时间锁住该行，
+     * 取消请求和轮询接口都能立即生效；只有读取数据、生成工作表的部分在只读事务中进行。
+     * 每个进度节点检查取消标记，取消发生在写入 Google Sheets 之前，表格保持原样。
+     * 每个进度节点同时续租；租约已被重新排队的任务在下一个进度节点停止，最终状态也只在仍持有租约时写入。
+     * @param leaseOwner 领取任务的实例ID
+     * @param leaseMinutes 每次续租的时长
+     */
+    public void executeExport(Long syncId, String leaseOwner, long leaseMinutes) {
+        executeExports(List.of(syncId), null, leaseOwner, leaseMinutes);
     }
 
     /**
-     * 异步执行报表导出
+     * 执行同一批次中已被领取的多个年份（同一家庭）
+     *
+     * 所有年份的工作表在一个只读事务中依次生成，共用一份数据缓存：账户、成员、支出分类和汇率时间线只加载一次，
+     * 年度资产记录和支出记录按整个年份范围各查询一次，相邻年份共用的年末余额和净资产配置只计算一次。
+     * 生成完成后逐个年份写入 Google Sheets；单个年份失败或取消不影响其他年份。
+     * 各年份的进度照常推送到各自的事件流，同时汇总推送到批次事件流。
      */
-    @Async("googleSheetsExecutor")
-    @Transactional
-    public void executeAsyncExport(Long syncId, Long familyId, Integer year, String permissionRole, boolean isNew) {
-        log.info("开始异步执行报表导出: syncId={}, familyId={}, year={}", syncId, familyId, year);
+    public void executeBatch(String batchId, List<Long> syncIds, String leaseOwner, long leaseMinutes) {
+        executeExports(syncIds, batchId, leaseOwner, leaseMinutes);
+    }
 
-        // 等待500ms，确保客户端有时间建立SSE连接
-        try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("等待SSE连接时被中断", e);
+    private void executeExports(List<Long> syncIds, String batchId, String leaseOwner, long leaseMinutes) {
+        ExportLease lease = new ExportLease(leaseOwner, leaseMinutes, syncIds);
+        List<ExportRun> runs = new ArrayList<>();
+        for (Long syncId : syncIds) {
+            GoogleSheetsSync sync = googleSheetsSyncRepository.findById(syncId)
+                .orElseThrow(() -> new RuntimeException("同步记录不存在: " + syncId));
+            runs.add(new ExportRun(sync, batchId, lease));
+        }
+        runs.sort(Comparator.comparing(run -> run.sync.getYear()));
+        for (int i = 0; i < runs.size(); i++) {
+            runs.get(i).position = i;
+            runs.get(i).batchSize = runs.size();
+        }
+
+        // 准备电子表格（新建的表格先创建，已有的表格读取现有工作表）
+        for (ExportRun run : runs) {
+            try {
+                prepareSpreadsheet(run);
+            } catch (Exception e) {
+                run.failure = e;
+            }
+        }
+
+        // 生成各年份的工作表（暂存在内存中，每个Sheet更新进度）
+        List<ExportRun> building = runs.stream().filter(run -> run.failure == null).toList();
+        if (!building.isEmpty()) {
+            Map<Long, ExportDataCache> caches = new HashMap<>();
+            try {
+                inReadOnlyTransaction(() -> {
+                    for (ExportRun run : building) {
+                        ExportDataCache cache = caches.computeIfAbsent(run.sync.getFamilyId(), familyId ->
+                            new ExportDataCache(familyId, building.get(0).sync.getYear(),
+                                building.get(building.size() - 1).sync.getYear()));
+                        try {
+                            run.fingerprints = exportTabs(run, cache);
+                            if (run.isNew) {
+                                // 删除默认的"Sheet1"
+                                deleteDefaultSheet(run.writer);
+                            }
+                        } catch (Exception e) {
+                            run.failure = e;
+                        }
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                building.stream().filter(run -> run.failure == null).forEach(run -> run.failure = e);
+            }
         }
 
-        GoogleSheetsSync sync = googleSheetsSyncRepository.findById(syncId)
-            .orElseThrow(() -> new RuntimeException("同步记录不存在: " + syncId));
+        // 批量提交各年份的数据和格式，设置权限并记录结果
+        for (ExportRun run : runs) {
+            if (run.failure == null) {
+                try {
+                    writeSpreadsheet(run);
+                } catch (Exception e) {
+                    run.failure = e;
+                }
+            }
+            if (run.failure == null) {
+                completeRun(run);
+            } else {
+                failRun(run);
+            }
+        }
 
-        try {
-            // 更新状态为进行中
-            sync.setStatus("IN_PROGRESS");
-            googleSheetsSyncRepository.save(sync);
+        if (batchId != null) {
+            finishBatch(batchId, runs);
+        }
+    }
 
-            // 发送初始进度
-            updateProgress(syncId, 5, "正在启动任务...");
+    private void prepareSpreadsheet(ExportRun run) throws IOException, GeneralSecurityException {
+        GoogleSheetsSync sync = run.sync;
+        log.info("开始执行报表导出: syncId={}, familyId={}, year={}, isNew={}, batchId={}",
+            sync.getId(), sync.getFamilyId(), sync.getYear(), run.isNew, run.batchId);
 
-            // 预加载汇率数据（优化性能）
-            preloadExchangeRates(year);
+        // 发送初始进度
+        updateProgress(run, 5, "正在启动任务...");
+
+        if (run.isNew) {
+            // 创建新的电子表格（包含家庭名称）
+            String familyName = getFamilyName(sync.getFamilyId());
+            String title = sync.getYear() + "年" + familyName + "家庭财务报表";
+            String spreadsheetId = googleSheetsService.createSpreadsheet(title);
+            sync.setSpreadsheetId(spreadsheetId);
+            if (googleSheetsSyncRepository.recordSpreadsheet(sync.getId(), run.lease.owner(), spreadsheetId,
+                    LocalDateTime.now()) == 0) {
+                throw new LeaseLostException(sync.getId());
+            }
+            updateProgress(run, 10, "正在创建电子表格...");
 
-            String spreadsheetId;
-            String shareUrl;
+            log.info("创建新的报表: {}", spreadsheetId);
+            run.previous = Collections.emptyMap();
+        } else {
+            // 更新已存在的电子表格：只重新导出源数据有变化的Sheet
+            log.info("更新已存在的报表: {}", sync.getSpreadsheetId());
+            run.previous = readFingerprints(sync.getTabFingerprints());
+            log.info("增量更新工作表: 已有指纹{}个", run.previous.size());
+        }
+        run.writer = new StagedSheetsWriter(googleSheetsService, sync.getSpreadsheetId());
+    }
 
-            if (isNew) {
-                // 创建新的电子表格（包含家庭名称）
-                String familyName = getFamilyName(familyId);
-                String title = year + "年" + familyName + "家庭财务报表";
-                spreadsheetId = googleSheetsService.createSpreadsheet(title);
-                sync.setSpreadsheetId(spreadsheetId);
-                googleSheetsSyncRepository.save(sync);
-                updateProgress(syncId, 10, "正在创建电子表格...");
+    private void writeSpreadsheet(ExportRun run) throws IOException, GeneralSecurityException {
+        GoogleSheetsSync sync = run.sync;
+        String spreadsheetId = sync.getSpreadsheetId();
 
-                log.info("创建新的报表: {}", spreadsheetId);
+        // 批量提交所有工作表的清空、数据和格式
+        updateProgress(run, 95, "正在写入Google Sheets...");
+        run.writer.flush();
+        sync.setTabFingerprints(writeFingerprints(run.fingerprints));
 
-                // 导出各个Sheet（每个Sheet更新进度）
-                exportBalanceSheet(spreadsheetId, familyId, year);
-                updateProgress(syncId, 25, "正在导出资产负债表...");
+        // 设置权限（已有表格只在权限变化时更新）
+        if (run.isNew || !run.permissionRole.equals(sync.getPermission())) {
+            sync.setShareUrl(googleSheetsService.setPermissions(spreadsheetId, run.permissionRole));
+            sync.setPermission(run.permissionRole);
+        }
+    }
 
-                exportBalanceSheetDetail(spreadsheetId, familyId, year);
-                updateProgress(syncId, 35, "正在导出资产负债表明细...");
+    private void completeRun(ExportRun run) {
+        GoogleSheetsSync sync = run.sync;
 
-                exportExpenseSheet(spreadsheetId, familyId, year, "USD");
-                updateProgress(syncId, 50, "正在导出USD开支表...");
+        // 标记为完成
+        sync.setStatus("COMPLETED");
+        sync.setProgress(100);
+        sync.setErrorMessage(null);
+        if (!finishRun(run)) {
+            return;
+        }
 
-                exportExpenseSheet(spreadsheetId, familyId, year, "CNY");
-                updateProgress(syncId, 65, "正在导出CNY开支表...");
+        // 通过SSE推送完成消息
+        sseEmitterManager.sendSuccess(sync.getId(), sync.getShareUrl(), sync.getSpreadsheetId());
 
-                exportInvestmentAccountSheet(spreadsheetId, familyId, year);
-                updateProgress(syncId, 80, "正在导出投资账户明细...");
+        log.info("年度报表生成完成: syncId={}, shareUrl={}", sync.getId(), sync.getShareUrl());
+    }
 
-                exportRetirementAccountSheet(spreadsheetId, familyId, year);
-                updateProgress(syncId, 90, "正在导出退休账户明细...");
+    private void failRun(ExportRun run) {
+        GoogleSheetsSync sync = run.sync;
+        Exception e = run.failure;
 
-                // 删除默认的"Sheet1"
-                deleteDefaultSheet(spreadsheetId);
+        if (e instanceof LeaseLostException) {
+            // 任务已由其他执行者重新领取，不再写入状态或推送事件
+            log.warn("导出任务租约已失效，停止执行: syncId={}", sync.getId());
+            return;
+        }
+        if (e instanceof CancellationException) {
+            log.info("报表生成已取消: syncId={}", sync.getId());
 
-                // 设置权限
-                shareUrl = googleSheetsService.setPermissions(spreadsheetId, permissionRole);
-                sync.setShareUrl(shareUrl);
+            // 取消发生在写入之前，表格和指纹保持上次导出的状态
+            sync.setStatus("CANCELLED");
+        } else {
+            log.error("报表生成失败: syncId={}", sync.getId(), e);
 
-            } else {
-                // 更新已存在的电子表格
-                spreadsheetId = sync.getSpreadsheetId();
-                log.info("更新已存在的报表: {}", spreadsheetId);
+            // 标记为失败（表格可能只写入了一部分，清除指纹使下次全部重新导出）
+            sync.setStatus("FAILED");
+            sync.setTabFingerprints(null);
+        }
+        sync.setErrorMessage(e.getMessage());
+        if (!finishRun(run)) {
+            return;
+        }
 
-                // 清空并重新导出所有Sheet（带进度更新）
-                clearAndExportAllSheets(spreadsheetId, familyId, year, syncId);
+        // 通过SSE推送错误消息
+        sseEmitterManager.sendError(sync.getId(), e.getMessage());
+    }
 
-                // 更新权限（如果需要）
-                if (!permissionRole.equals(sync.getPermission())) {
-                    shareUrl = googleSheetsService.setPermissions(spreadsheetId, permissionRole);
-                    sync.setPermission(permissionRole);
-                } else {
-                    shareUrl = sync.getShareUrl();
-                }
-                sync.setShareUrl(shareUrl);
+    /**
+     * 推送批次的最终结果：至少一个年份完成时为 complete（部分失败时状态为 PARTIAL），全部失败时为 error
+     */
+    private void finishBatch(String batchId, List<ExportRun> runs) {
+        List<GoogleSheetsSync> syncs = new ArrayList<>();
+        Map<Long, String> errors = new HashMap<>();
+        for (ExportRun run : runs) {
+            syncs.add(run.sync);
+            if (run.failure != null) {
+                errors.put(run.sync.getId(), run.failure.getMessage());
             }
+        }
+        Map<String, Object> data = batchResult(batchId, syncs, errors);
+        long completed = (long) data.get("completed");
+        sseEmitterManager.finish(SseEmitterManager.batchStream(batchId), completed > 0 ? "complete" : "error", data);
 
-            // 标记为完成
-            sync.setStatus("COMPLETED");
-            sync.setProgress(100);
-            sync.setErrorMessage(null);
-            googleSheetsSyncRepository.save(sync);
+        log.info("批量导出完成: batchId={}, 成功{}/{}", batchId, completed, runs.size());
+    }
 
-            // 通过SSE推送完成消息
-            sseEmitterManager.sendSuccess(syncId, shareUrl, spreadsheetId);
+    /**
+     * 批次最终事件的内容（导出队列转发其他实例执行的批次结果时也使用）
+     * @param errors 失败年份的错误信息（syncId -> 错误信息），不在其中的年份视为成功
+     */
+    static Map<String, Object> batchResult(String batchId, List<GoogleSheetsSync> syncs, Map<Long, String> errors) {
+        List<Map<String, Object>> tasks = new ArrayList<>();
+        for (GoogleSheetsSync sync : syncs) {
+            Map<String, Object> task = new HashMap<>();
+            task.put("syncId", sync.getId());
+            task.put("year", sync.getYear());
+            task.put("status", sync.getStatus());
+            if (errors.containsKey(sync.getId())) {
+                task.put("errorMessage", errors.get(sync.getId()));
+            } else {
+                task.put("shareUrl", sync.getShareUrl());
+                task.put("spreadsheetId", sync.getSpreadsheetId());
+            }
+            tasks.add(task);
+        }
+        long completed = syncs.size() - errors.size();
+        String status = completed == syncs.size() ? "COMPLETED" : completed > 0 ? "PARTIAL" : "FAILED";
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("batchId", batchId);
+        data.put("status", status);
+        data.put("progress", 100);
+        data.put("completed", completed);
+        data.put("total", syncs.size());
+        data.put("tasks", tasks);
+        data.put("message", "批量同步完成：" + completed + "/" + syncs.size() + "个年份成功");
+        data.put("timestamp", System.currentTimeMillis());
+        return data;
+    }
 
-            log.info("年度报表生成完成: syncId={}, shareUrl={}", syncId, shareUrl);
+    /**
+     * 写入最终状态并释放租约；租约已失效（任务已重新排队）时不写入，返回 false
+     */
+    private boolean finishRun(ExportRun run) {
+        GoogleSheetsSync sync = run.sync;
+        int updated = googleSheetsSyncRepository.finishRun(sync.getId(), run.lease.owner(), sync.getStatus(),
+            sync.getProgress(), sync.getErrorMessage(), sync.getSpreadsheetId(), sync.getShareUrl(),
+            sync.getPermission(), sync.getTabFingerprints(), LocalDateTime.now());
+        if (updated == 0) {
+            log.warn("导出任务租约已失效，不写入结果: syncId={}, status={}", sync.getId(), sync.getStatus());
+            return false;
+        }
+        sync.setLeaseOwner(null);
+        sync.setLeaseExpiresAt(null);
+        sync.setCancelRequested(false);
+        return true;
+    }
 
-        } catch (Exception e) {
-            log.error("报表生成失败: syncId={}", syncId, e);
+    /**
+     * 更新任务进度并指定消息，同时续租；已请求取消时抛出 CancellationException，已失去租约时抛出 LeaseLostException
+     * 批量导出时同时续租同一批次的其他年份，并向批次事件流推送汇总进度（已完成的年份 + 当前年份的进度）
+     */
+    private void updateProgress(ExportRun run, int progress, String message) {
+        Long syncId = run.sync.getId();
+        if (googleSheetsSyncRepository.existsByIdAndCancelRequestedTrue(syncId)) {
+            throw new CancellationException("同步任务已取消");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime leaseExpiresAt = now.plusMinutes(run.lease.minutes());
+        if (googleSheetsSyncRepository.updateProgress(syncId, run.lease.owner(), progress, now, leaseExpiresAt) == 0) {
+            throw new LeaseLostException(syncId);
+        }
+        if (run.lease.syncIds().size() > 1) {
+            googleSheetsSyncRepository.extendLease(run.lease.syncIds(), run.lease.owner(), leaseExpiresAt);
+        }
+
+        // 通过SSE推送进度更新
+        String statusMessage = message != null ? message : getProgressMessage(progress);
+        sseEmitterManager.sendProgress(syncId, progress, "IN_PROGRESS", statusMessage);
+
+        if (run.batchId != null) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("batchId", run.batchId);
+            data.put("syncId", syncId);
+            data.put("year", run.sync.getYear());
+            data.put("progress", (run.position * 100 + progress) / run.batchSize);
+            data.put("yearProgress", progress);
+            data.put("status", "IN_PROGRESS");
+            data.put("message", run.sync.getYear() + "年：" + statusMessage);
+            data.put("timestamp", System.currentTimeMillis());
+            sseEmitterManager.sendProgress(SseEmitterManager.batchStream(run.batchId), data);
+        }
+    }
 
-            // 标记为失败
-            sync.setStatus("FAILED");
-            sync.setErrorMessage(e.getMessage());
-            googleSheetsSyncRepository.save(sync);
+    /**
+     * 在只读事务中执行（读取数据集、生成工作表时需要加载懒加载关联）
+     */
+    private <T> T inReadOnlyTransaction(ExportStep<T> step) throws IOException, GeneralSecurityException {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        try {
+            return transaction.execute(status -> {
+                try {
+                    return step.run();
+                } catch (IOException | GeneralSecurityException e) {
+                    throw new ExportStepException(e);
+                }
+            });
+        } catch (ExportStepException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw (GeneralSecurityException) e.getCause();
+        }
+    }
 
-            // 通过SSE推送错误消息
-            sseEmitterManager.sendError(syncId, e.getMessage());
-        } finally {
-            // 清理汇率缓存
-            clearExchangeRateCache();
+    @FunctionalInterface
+    private interface ExportStep<T> {
+        T run() throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * 执行中的任务租约已过期并被重新排队（可能已由其他工作线程领取）
+     */
+    private static class LeaseLostException extends RuntimeException {
+        LeaseLostException(Long syncId) {
+            super("导出任务租约已失效: syncId=" + syncId);
         }
     }
 
     /**
-     * 更新任务进度（同时推送到SSE）
+     * 本次执行持有的租约：领取任务的实例、续租时长和一起领取的任务
      */
-    private void updateProgress(Long syncId, int progress) {
-        updateProgress(syncId, progress, null);
+    private record ExportLease(String owner, long minutes, List<Long> syncIds) {
     }
 
     /**
-     * 更新任务进度并指定消息
+     * 在事务回调中传递受检异常
      */
-    private void updateProgress(Long syncId, int progress, String message) {
-        googleSheetsSyncRepository.findById(syncId).ifPresent(sync -> {
-            sync.setProgress(progress);
-            googleSheetsSyncRepository.save(sync);
-
-            // 通过SSE推送进度更新
-            String statusMessage = message != null ? message : getProgressMessage(progress);
-            sseEmitterManager.sendProgress(syncId, progress, sync.getStatus(), statusMessage);
-        });
+    private static class ExportStepException extends RuntimeException {
+        ExportStepException(Exception cause) {
+            super(cause);
+        }
     }
 
     /**
-     * 根据进度百分比获取状态消息
+     * 根据进度百分比获取状态消息（导出队列转发其他实例的进度时也使用）
      */
-    private String getProgressMessage(int progress) {
+    static String getProgressMessage(int progress) {
         if (progress <= 10) return "正在创建电子表格...";
         if (progress <= 25) return "正在导出资产负债表...";
         if (progress <= 35) return "正在导出资产负债表明细...";
@@ -291,64 +425,490 @@ public class GoogleSheetsExportService {
         if (progress <= 65) return "正在导出CNY开支表...";
         if (progress <= 80) return "正在导出投资账户明细...";
         if (progress <= 90) return "正在导出退休账户明细...";
+        if (progress <= 95) return "正在写入Google Sheets...";
         return "正在完成...";
     }
 
     /**
-     * 清空并重新导出所有工作表
+     * 依次生成报表的各个工作表并推送进度
+     *
+     * 已存在的工作表如果源数据水位与上次导出一致则不再生成；
+     * 重新生成后内容指纹仍与上次一致的，撤回暂存的写入。被跳过的工作表通过SSE进度消息告知前端。
+     *
+     * 上次成功导出时的指纹（新建表格时为空）保存在 run.previous 中；数据集从 cache 加载（批量导出时各年份共享）
+     * @return 本次导出后各工作表的指纹
+     */
+    private Map<String, TabFingerprint> exportTabs(ExportRun run, ExportDataCache cache)
+            throws IOException, GeneralSecurityException {
+        StagedSheetsWriter writer = run.writer;
+        Long familyId = run.sync.getFamilyId();
+        Integer year = run.sync.getYear();
+        Map<String, TabFingerprint> previous = run.previous;
+        List<ExportTab> tabs = annualReportTabs();
+        Map<ExportSource, String> watermarkCache = new EnumMap<>(ExportSource.class);
+        Map<String, String> watermarks = new HashMap<>();
+        for (ExportTab tab : tabs) {
+            watermarks.put(tab.title(), EXPORT_LAYOUT_VERSION + ":"
+                + exportWatermarkService.watermark(familyId, year, tab.sources(), watermarkCache));
+        }
+
+        // 至少有一个工作表需要重新生成时才加载数据集
+        AnnualExportDataset data = null;
+        Map<String, TabFingerprint> fingerprints = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+
+        for (ExportTab tab : tabs) {
+            String title = tab.title();
+            String watermark = watermarks.get(title);
+            TabFingerprint last = writer.hasSheet(title) ? previous.get(title) : null;
+
+            if (last != null && watermark.equals(last.watermark())) {
+                fingerprints.put(title, last);
+                skipped.add(title);
+                updateProgress(run, tab.progress(), "数据未变化，跳过" + title);
+                continue;
+            }
+
+            if (data == null) {
+                data = loadExportDataset(familyId, year, cache);
+            }
+            if (writer.hasSheet(title)) {
+                writer.clearSheet(title);
+            }
+            tab.builder().build(writer, data);
+            String content = writer.contentFingerprint(title);
+
+            if (last != null && content.equals(last.content())) {
+                // 源数据有变动但不影响该工作表的内容（例如只改了其他年份的记录）
+                writer.discardTab(title);
+                skipped.add(title);
+                updateProgress(run, tab.progress(), "内容未变化，跳过" + title);
+            } else {
+                updateProgress(run, tab.progress(), tab.message());
+            }
+            fingerprints.put(title, new TabFingerprint(watermark, content));
+        }
+
+        if (!skipped.isEmpty()) {
+            log.info("跳过未变化的工作表: {}", skipped);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * 按导出顺序生成全部工作表（不清空、不推送进度）
+     * 用于基准测试等不经过同步任务的场景，工作表的内容与正式导出一致
+     */
+    public void exportAllSheets(String spreadsheetId, Long familyId, Integer year)
+            throws IOException, GeneralSecurityException {
+        StagedSheetsWriter writer = new StagedSheetsWriter(googleSheetsService, spreadsheetId);
+        renderAnnualReport(writer, familyId, year);
+        writer.flush();
+    }
+
+    /**
+     * 把年度报表的全部工作表按导出顺序写入指定目标，不访问 Google API
+     * 数据集只加载一次；调用方需要在事务中调用（工作表构建会读取账户的懒加载关联）
      */
-    private void clearAndExportAllSheets(String spreadsheetId, Long familyId, Integer year, Long syncId)
+    public void renderAnnualReport(ReportSheetWriter writer, Long familyId, Integer year)
             throws IOException, GeneralSecurityException {
-        log.info("清空并重新导出所有工作表");
-
-        // 清空并更新资产负债表
-        googleSheetsService.clearSheet(spreadsheetId, "资产负债表");
-        exportBalanceSheet(spreadsheetId, familyId, year);
-        updateProgress(syncId, 25, "正在导出资产负债表...");
-
-        // 清空并更新资产负债表明细
-        googleSheetsService.clearSheet(spreadsheetId, "资产负债表明细");
-        exportBalanceSheetDetail(spreadsheetId, familyId, year);
-        updateProgress(syncId, 35, "正在导出资产负债表明细...");
-
-        // 清空并更新开支表-USD
-        googleSheetsService.clearSheet(spreadsheetId, "开支表-USD");
-        exportExpenseSheet(spreadsheetId, familyId, year, "USD");
-        updateProgress(syncId, 50, "正在导出USD开支表...");
-
-        // 清空并更新开支表-CNY
-        googleSheetsService.clearSheet(spreadsheetId, "开支表-CNY");
-        exportExpenseSheet(spreadsheetId, familyId, year, "CNY");
-        updateProgress(syncId, 65, "正在导出CNY开支表...");
-
-        // 清空并更新投资账户明细
-        googleSheetsService.clearSheet(spreadsheetId, "投资账户明细");
-        exportInvestmentAccountSheet(spreadsheetId, familyId, year);
-        updateProgress(syncId, 80, "正在导出投资账户明细...");
-
-        // 清空并更新退休账户明细
-        googleSheetsService.clearSheet(spreadsheetId, "退休账户明细");
-        exportRetirementAccountSheet(spreadsheetId, familyId, year);
-        updateProgress(syncId, 90, "正在导出退休账户明细...");
-
-        log.info("所有工作表更新完成");
+        AnnualExportDataset data = loadExportDataset(familyId, year, new ExportDataCache(familyId, year, year));
+        for (ExportTab tab : annualReportTabs()) {
+            tab.builder().build(writer, data);
+        }
+    }
+
+    /**
+     * 试运行新建年度报表的完整导出：工作表数据、格式和图表写入内存中的表格模型，不访问 Google API
+     *
+     * 与正式导出走同一条路径（新建表格 → 分阶段写入 → 删除默认工作表 → 批量提交 → 设置权限），
+     * 返回数据集加载和各工作表的构建耗时、行数、单元格数，以及正式导出会发出的 API 请求数，
+     * 用于本地性能分析和 CI 中的回归检查。
+     */
+    @Transactional(readOnly = true)
+    public DryRunReport dryRunAnnualReport(Long familyId, Integer year) throws IOException, GeneralSecurityException {
+        long start = System.nanoTime();
+        DryRunSheetsService dryRunSheets = new DryRunSheetsService();
+        String spreadsheetId = dryRunSheets.createSpreadsheet(year + "年" + getFamilyName(familyId) + "家庭财务报表");
+        StagedSheetsWriter writer = new StagedSheetsWriter(dryRunSheets, spreadsheetId);
+
+        long loadStart = System.nanoTime();
+        AnnualExportDataset data = loadExportDataset(familyId, year, new ExportDataCache(familyId, year, year));
+        double datasetLoadMs = elapsedMillis(loadStart);
+
+        Map<String, Double> buildMs = new LinkedHashMap<>();
+        for (ExportTab tab : annualReportTabs()) {
+            long tabStart = System.nanoTime();
+            tab.builder().build(writer, data);
+            buildMs.put(tab.title(), elapsedMillis(tabStart));
+        }
+        deleteDefaultSheet(writer);
+        writer.flush();
+        dryRunSheets.setPermissions(spreadsheetId, "reader");
+
+        List<DryRunTab> tabs = new ArrayList<>();
+        for (String title : dryRunSheets.getSheetTitles()) {
+            tabs.add(new DryRunTab(title, buildMs.getOrDefault(title, 0.0),
+                dryRunSheets.getRowCount(title), dryRunSheets.getCellCount(title),
+                dryRunSheets.getFormatRequestCount(title), dryRunSheets.getChartCount(title)));
+        }
+        DryRunReport report = new DryRunReport(familyId, year, datasetLoadMs, elapsedMillis(start), tabs,
+            dryRunSheets.getApiRequests(), dryRunSheets.getTotalApiRequests());
+        log.info("年度报表试运行完成: familyId={}, year={}, 耗时{}ms, API请求{}次",
+            familyId, year, Math.round(report.totalMs()), report.totalApiRequests());
+        return report;
+    }
+
+    private static double elapsedMillis(long startNanos) {
+        return Math.round((System.nanoTime() - startNanos) / 1_000.0) / 1_000.0;
+    }
+
+    /**
+     * 试运行结果：耗时单位为毫秒，apiRequests 为各 API 方法的调用次数
+     */
+    public record DryRunReport(Long familyId, Integer year, double datasetLoadMs, double totalMs,
+                               List<DryRunTab> tabs, Map<String, Integer> apiRequests, int totalApiRequests) {
+    }
+
+    /**
+     * 试运行中一个工作表的构建耗时和输出规模
+     */
+    public record DryRunTab(String title, double buildMs, int rows, long cells, int formatRequests, int charts) {
+    }
+
+    /**
+     * 年度报表的工作表（按导出顺序），以及各工作表依赖的源数据
+     */
+    private List<ExportTab> annualReportTabs() {
+        Set<ExportSource> balanceSources = EnumSet.of(ExportSource.ASSET, ExportSource.LIABILITY, ExportSource.EXCHANGE_RATE,
+            ExportSource.MEMBER, ExportSource.REFERENCE);
+        Set<ExportSource> accountSources = EnumSet.of(ExportSource.ASSET, ExportSource.EXCHANGE_RATE,
+            ExportSource.MEMBER, ExportSource.REFERENCE);
+        Set<ExportSource> expenseSources = EnumSet.of(ExportSource.EXPENSE);
+        return List.of(
+            new ExportTab("资产负债表", 25, "正在导出资产负债表...", balanceSources, this::exportBalanceSheet),
+            new ExportTab("资产负债表明细", 35, "正在导出资产负债表明细...", balanceSources, this::exportBalanceSheetDetail),
+            new ExportTab("开支表-USD", 50, "正在导出USD开支表...", expenseSources,
+                (writer, data) -> exportExpenseSheet(writer, data, "USD")),
+            new ExportTab("开支表-CNY", 65, "正在导出CNY开支表...", expenseSources,
+                (writer, data) -> exportExpenseSheet(writer, data, "CNY")),
+            new ExportTab("投资账户明细", 80, "正在导出投资账户明细...", accountSources, this::exportInvestmentAccountSheet),
+            new ExportTab("退休账户明细", 90, "正在导出退休账户明细...", accountSources, this::exportRetirementAccountSheet)
+        );
+    }
+
+    private Map<String, TabFingerprint> readFingerprints(String json) {
+        if (json == null || json.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, TabFingerprint>>() {});
+        } catch (JsonProcessingException e) {
+            log.warn("工作表指纹解析失败，将全部重新导出: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    private String writeFingerprints(Map<String, TabFingerprint> fingerprints) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(fingerprints);
+    }
+
+    /**
+     * 加载家庭年度导出所需的全部数据
+     * 账户、成员、记录和支出各用一到两次批量查询；净资产配置按 货币 × 日期 和 成员 各计算一次；
+     * 汇率时间线在加载时固定，整个导出使用同一份汇率。
+     * 数据经由 cache 读取：批量导出多个年份时，与年份无关的数据和相邻年份重叠的数据只加载一次
+     */
+    private AnnualExportDataset loadExportDataset(Long familyId, Integer year, ExportDataCache cache) {
+        LocalDate yearEnd = LocalDate.of(year, 12, 31);
+        LocalDate lastYearEnd = LocalDate.of(year - 1, 12, 31);
+
+        List<AssetAccount> assetAccounts = cache.assetAccounts();
+        List<LiabilityAccount> liabilityAccounts = cache.liabilityAccounts();
+
+        List<AssetRecord> assetRecordsAtYearEnd = cache.assetRecordsAt(yearEnd);
+        List<AssetRecord> assetRecordsAtLastYearEnd = cache.assetRecordsAt(lastYearEnd);
+        List<LiabilityRecord> liabilityRecordsAtYearEnd = cache.liabilityRecordsAt(yearEnd);
+        List<LiabilityRecord> liabilityRecordsAtLastYearEnd = cache.liabilityRecordsAt(lastYearEnd);
+        List<AssetRecord> assetRecordsInYear = cache.assetRecordsIn(year);
+
+        Map<String, Map<Long, BigDecimal>> budgets = new HashMap<>();
+        for (ExpenseBudget budget : expenseBudgetRepository.findByFamilyIdAndBudgetYear(familyId, year)) {
+            budgets.computeIfAbsent(budget.getCurrency(), c -> new HashMap<>())
+                .put(budget.getMinorCategoryId(), budget.getBudgetAmount());
+        }
+        Map<String, Map<Long, BigDecimal>> expenses = new HashMap<>();
+        for (ExpenseRecord record : cache.expenseRecordsIn(year - 1, year)) {
+            expenses.computeIfAbsent(AnnualExportDataset.expenseKey(record.getExpensePeriod(), record.getCurrency()),
+                k -> new HashMap<>()).put(record.getMinorCategoryId(), record.getAmount());
+        }
+
+        Map<String, Map<String, Object>> familyAllocations = new HashMap<>();
+        for (String currency : Arrays.asList("USD", "CNY", "All")) {
+            for (LocalDate date : Arrays.asList(yearEnd, lastYearEnd)) {
+                familyAllocations.put(AnnualExportDataset.allocationKey(currency, date),
+                    cache.familyNetAllocation(currency, date));
+            }
+        }
+        // 成员净资产：只传入userId，获取该成员自己的净资产数据
+        Set<Long> ownerIds = new TreeSet<>();
+        assetAccounts.forEach(account -> ownerIds.add(account.getUserId()));
+        liabilityAccounts.forEach(account -> ownerIds.add(account.getUserId()));
+        Map<Long, Map<String, Object>> memberAllocations = new HashMap<>();
+        for (Long userId : ownerIds) {
+            memberAllocations.put(userId, cache.memberNetAllocation(userId, yearEnd));
+        }
+
+        // 固定本次导出涉及货币的汇率时间线
+        Set<String> currencies = new TreeSet<>();
+        Stream.of(assetRecordsAtYearEnd, assetRecordsAtLastYearEnd, assetRecordsInYear)
+            .flatMap(List::stream).map(AssetRecord::getCurrency).filter(Objects::nonNull).forEach(currencies::add);
+        Stream.of(liabilityRecordsAtYearEnd, liabilityRecordsAtLastYearEnd)
+            .flatMap(List::stream).map(LiabilityRecord::getCurrency).filter(Objects::nonNull).forEach(currencies::add);
+        Map<String, ExchangeRateService.RateTimeline> rateTimelines = new HashMap<>();
+        for (String currency : currencies) {
+            if (!currency.equalsIgnoreCase("USD")) {
+                rateTimelines.put(currency.toUpperCase(), cache.rateTimeline(currency.toUpperCase()));
+            }
+        }
+
+        log.info("导出数据集加载完成: familyId={}, year={}, 资产账户{}个, 负债账户{}个, 本年度资产记录{}条",
+            familyId, year, assetAccounts.size(), liabilityAccounts.size(), assetRecordsInYear.size());
+
+        return new AnnualExportDataset(
+            familyId,
+            year,
+            cache.familyName(),
+            cache.users(),
+            assetAccounts,
+            liabilityAccounts,
+            assetRecordsAtYearEnd,
+            assetRecordsAtLastYearEnd,
+            liabilityRecordsAtYearEnd,
+            liabilityRecordsAtLastYearEnd,
+            assetRecordsInYear,
+            cache.expenseMajorCategories(),
+            cache.expenseMinorCategories(),
+            unmodifiableNested(budgets),
+            unmodifiableNested(expenses),
+            familyAllocations,
+            memberAllocations,
+            rateTimelines);
+    }
+
+    /**
+     * 一个家庭在一段年份范围内的导出数据缓存（只在同一个只读事务中使用）
+     *
+     * 与年份无关的数据（账户、成员、支出分类、家庭名称、汇率时间线）只加载一次；
+     * 年末最新记录和净资产配置按日期缓存，上一年的年末即下一年的"去年年末"，只查询一次；
+     * 年度资产记录和支出记录在首次使用时按整个年份范围各查询一次，再按年份切分。
+     * 单年份导出时范围只有一年，查询与逐项加载相同。
+     */
+    private class ExportDataCache {
+        private final Long familyId;
+        private final int fromYear;
+        private final int toYear;
+
+        private List<AssetAccount> assetAccounts;
+        private List<LiabilityAccount> liabilityAccounts;
+        private Map<Long, User> users;
+        private String familyName;
+        private List<ExpenseCategoryMajor> majorCategories;
+        private Map<Long, List<ExpenseCategoryMinor>> minorCategories;
+        private Map<Integer, List<AssetRecord>> assetRecordsByYear;
+        private Map<Integer, List<ExpenseRecord>> expenseRecordsByYear;
+        private final Map<LocalDate, List<AssetRecord>> assetRecordsAt = new HashMap<>();
+        private final Map<LocalDate, List<LiabilityRecord>> liabilityRecordsAt = new HashMap<>();
+        private final Map<String, Map<String, Object>> familyAllocations = new HashMap<>();
+        private final Map<String, Map<String, Object>> memberAllocations = new HashMap<>();
+        private final Map<String, ExchangeRateService.RateTimeline> rateTimelines = new HashMap<>();
+
+        ExportDataCache(Long familyId, int fromYear, int toYear) {
+            this.familyId = familyId;
+            this.fromYear = fromYear;
+            this.toYear = toYear;
+        }
+
+        List<AssetAccount> assetAccounts() {
+            if (assetAccounts == null) {
+                assetAccounts = List.copyOf(assetAccountRepository.findByFamilyIdAndIsActiveTrue(familyId));
+            }
+            return assetAccounts;
+        }
+
+        List<LiabilityAccount> liabilityAccounts() {
+            if (liabilityAccounts == null) {
+                liabilityAccounts = List.copyOf(liabilityAccountRepository.findByFamilyIdAndIsActiveTrue(familyId));
+            }
+            return liabilityAccounts;
+        }
+
+        Map<Long, User> users() {
+            if (users == null) {
+                Map<Long, User> loaded = new LinkedHashMap<>();
+                userRepository.findByFamilyId(familyId).forEach(user -> loaded.put(user.getId(), user));
+                users = Collections.unmodifiableMap(loaded);
+            }
+            return users;
+        }
+
+        String familyName() {
+            if (familyName == null) {
+                familyName = getFamilyName(familyId);
+            }
+            return familyName;
+        }
+
+        List<ExpenseCategoryMajor> expenseMajorCategories() {
+            if (majorCategories == null) {
+                majorCategories = List.copyOf(expenseCategoryMajorRepository.findAll());
+            }
+            return majorCategories;
+        }
+
+        /**
+         * 支出小类按大类分组，组内按排序号排列
+         */
+        Map<Long, List<ExpenseCategoryMinor>> expenseMinorCategories() {
+            if (minorCategories == null) {
+                minorCategories = Collections.unmodifiableMap(expenseCategoryMinorRepository.findAll().stream()
+                    .sorted(Comparator.comparing(ExpenseCategoryMinor::getSortOrder, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(ExpenseCategoryMinor::getId))
+                    .collect(Collectors.groupingBy(ExpenseCategoryMinor::getMajorCategoryId,
+                        Collectors.collectingAndThen(Collectors.toList(), Collections::unmodifiableList))));
+            }
+            return minorCategories;
+        }
+
+        List<AssetRecord> assetRecordsAt(LocalDate date) {
+            return assetRecordsAt.computeIfAbsent(date,
+                d -> List.copyOf(assetRecordRepository.findLatestRecordsByFamilyAndDate(familyId, d)));
+        }
+
+        List<LiabilityRecord> liabilityRecordsAt(LocalDate date) {
+            return liabilityRecordsAt.computeIfAbsent(date,
+                d -> List.copyOf(liabilityRecordRepository.findLatestRecordsByFamilyAndDate(familyId, d)));
+        }
+
+        /**
+         * 指定年份内活跃资产账户的全部记录（按日期倒序）
+         */
+        List<AssetRecord> assetRecordsIn(int year) {
+            if (assetRecordsByYear == null) {
+                assetRecordsByYear = new HashMap<>();
+                if (!assetAccounts().isEmpty()) {
+                    for (AssetRecord record : assetRecordRepository.findByAccountIdInAndRecordDateBetweenOrderByRecordDateDesc(
+                            assetAccounts().stream().map(AssetAccount::getId).collect(Collectors.toList()),
+                            LocalDate.of(fromYear, 1, 1), LocalDate.of(toYear, 12, 31))) {
+                        assetRecordsByYear.computeIfAbsent(record.getRecordDate().getYear(), y -> new ArrayList<>()).add(record);
+                    }
+                }
+            }
+            return List.copyOf(assetRecordsByYear.getOrDefault(year, List.of()));
+        }
+
+        /**
+         * 指定年份范围内的支出记录（范围需在缓存覆盖的年份内，最早可到 fromYear 的上一年）
+         */
+        List<ExpenseRecord> expenseRecordsIn(int firstYear, int lastYear) {
+            if (expenseRecordsByYear == null) {
+                expenseRecordsByYear = new HashMap<>();
+                for (ExpenseRecord record : expenseRecordRepository.findByFamilyIdAndPeriodRange(
+                        familyId, String.format("%d-01", fromYear - 1), String.format("%d-12", toYear))) {
+                    int recordYear = Integer.parseInt(record.getExpensePeriod().substring(0, 4));
+                    expenseRecordsByYear.computeIfAbsent(recordYear, y -> new ArrayList<>()).add(record);
+                }
+            }
+            // 与范围查询的顺序一致（期间倒序）
+            List<ExpenseRecord> records = new ArrayList<>();
+            for (int y = lastYear; y >= firstYear; y--) {
+                records.addAll(expenseRecordsByYear.getOrDefault(y, List.of()));
+            }
+            return records;
+        }
+
+        Map<String, Object> familyNetAllocation(String currency, LocalDate date) {
+            return familyAllocations.computeIfAbsent(AnnualExportDataset.allocationKey(currency, date),
+                key -> Collections.unmodifiableMap(analysisService.getNetAssetAllocation(null, familyId, date, currency)));
+        }
+
+        Map<String, Object> memberNetAllocation(Long userId, LocalDate date) {
+            return memberAllocations.computeIfAbsent(userId + "@" + date,
+                key -> Collections.unmodifiableMap(analysisService.getNetAssetAllocation(userId, null, date, "All")));
+        }
+
+        ExchangeRateService.RateTimeline rateTimeline(String currency) {
+            return rateTimelines.computeIfAbsent(currency, exchangeRateService::getRateTimeline);
+        }
+    }
+
+    /**
+     * 一个同步任务（一个年份）在本次执行中的状态
+     */
+    private static class ExportRun {
+        final GoogleSheetsSync sync;
+        final String batchId;
+        final ExportLease lease;
+        final String permissionRole;
+        final boolean isNew;
+        int position;
+        int batchSize = 1;
+        StagedSheetsWriter writer;
+        Map<String, TabFingerprint> previous;
+        Map<String, TabFingerprint> fingerprints;
+        Exception failure;
+
+        ExportRun(GoogleSheetsSync sync, String batchId, ExportLease lease) {
+            this.sync = sync;
+            this.batchId = batchId;
+            this.lease = lease;
+            this.permissionRole = sync.getRequestedPermission() != null ? sync.getRequestedPermission() : sync.getPermission();
+            this.isNew = sync.getSpreadsheetId() == null || sync.getSpreadsheetId().isEmpty();
+        }
+    }
+
+    private static <K, V> Map<String, Map<K, V>> unmodifiableNested(Map<String, Map<K, V>> map) {
+        map.replaceAll((key, inner) -> Collections.unmodifiableMap(inner));
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static <T> Map<Long, T> byAccountId(List<T> records, Function<T, Long> accountId) {
+        Map<Long, T> result = new HashMap<>();
+        records.forEach(record -> result.put(accountId.apply(record), record));
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface TabBuilder {
+        void build(ReportSheetWriter writer, AnnualExportDataset data) throws IOException, GeneralSecurityException;
+    }
+
+    private record ExportTab(String title, int progress, String message, Set<ExportSource> sources,
+                             TabBuilder builder) {
+    }
+
+    /**
+     * 工作表指纹：watermark 为生成时的源数据水位，content 为写入内容的摘要
+     */
+    record TabFingerprint(String watermark, String content) {
     }
 
     /**
      * 导出资产负债表
      */
-    private void exportBalanceSheet(String spreadsheetId, Long familyId, Integer year)
+    private void exportBalanceSheet(ReportSheetWriter writer, AnnualExportDataset data)
             throws IOException, GeneralSecurityException {
+        Integer year = data.year();
         log.info("导出资产负债表");
 
-        Integer sheetId = googleSheetsService.addSheet(spreadsheetId, "资产负债表");
+        Integer sheetId = writer.addSheet("资产负债表");
         LocalDate asOfDate = LocalDate.of(year, 12, 31);
         LocalDate lastYearEndDate = LocalDate.of(year - 1, 12, 31);
 
         List<List<Object>> rows = new ArrayList<>();
 
         // 标题行（包含家庭名称）
-        String familyName = getFamilyName(familyId);
+        String familyName = data.familyName();
         rows.add(Arrays.asList(year + "年" + familyName + "家庭资产负债表"));
         rows.add(Arrays.asList()); // 空行
 
@@ -374,8 +934,7 @@ public class GoogleSheetsExportService {
             BigDecimal currencyTotalAssetsCurrent = BigDecimal.ZERO;
             BigDecimal currencyTotalAssetsLastYear = BigDecimal.ZERO;
 
-            List<AssetRecord> currentAssetRecords = assetRecordRepository
-                .findLatestRecordsByFamilyAndDate(familyId, asOfDate).stream()
+            List<AssetRecord> currentAssetRecords = data.assetRecordsAtYearEnd().stream()
                 .filter(r -> currency.equals(r.getCurrency()))
                 .collect(Collectors.toList());
 
@@ -385,8 +944,7 @@ public class GoogleSheetsExportService {
                 currencyTotalAssetsCurrent = currencyTotalAssetsCurrent.add(record.getAmount());
             }
 
-            List<AssetRecord> lastYearAssetRecords = assetRecordRepository
-                .findLatestRecordsByFamilyAndDate(familyId, lastYearEndDate).stream()
+            List<AssetRecord> lastYearAssetRecords = data.assetRecordsAtLastYearEnd().stream()
                 .filter(r -> currency.equals(r.getCurrency()))
                 .collect(Collectors.toList());
 
@@ -401,8 +959,7 @@ public class GoogleSheetsExportService {
             BigDecimal currencyTotalLiabilitiesCurrent = BigDecimal.ZERO;
             BigDecimal currencyTotalLiabilitiesLastYear = BigDecimal.ZERO;
 
-            List<LiabilityRecord> currentLiabilityRecords = liabilityRecordRepository
-                .findLatestRecordsByFamilyAndDate(familyId, asOfDate).stream()
+            List<LiabilityRecord> currentLiabilityRecords = data.liabilityRecordsAtYearEnd().stream()
                 .filter(r -> currency.equals(r.getCurrency()))
                 .collect(Collectors.toList());
 
@@ -412,8 +969,7 @@ public class GoogleSheetsExportService {
                 currencyTotalLiabilitiesCurrent = currencyTotalLiabilitiesCurrent.add(record.getOutstandingBalance());
             }
 
-            List<LiabilityRecord> lastYearLiabilityRecords = liabilityRecordRepository
-                .findLatestRecordsByFamilyAndDate(familyId, lastYearEndDate).stream()
+            List<LiabilityRecord> lastYearLiabilityRecords = data.liabilityRecordsAtLastYearEnd().stream()
                 .filter(r -> currency.equals(r.getCurrency()))
                 .collect(Collectors.toList());
 
@@ -424,10 +980,10 @@ public class GoogleSheetsExportService {
             }
 
             // 准备净资产数据（从AnalysisService获取）
-            Map<String, Object> netAllocationCurrent = analysisService.getNetAssetAllocation(null, familyId, asOfDate, currency);
+            Map<String, Object> netAllocationCurrent = data.familyNetAllocation(currency, asOfDate);
             List<Map<String, Object>> netCategoriesCurrent = (List<Map<String, Object>>) netAllocationCurrent.get("data");
 
-            Map<String, Object> netAllocationLastYear = analysisService.getNetAssetAllocation(null, familyId, lastYearEndDate, currency);
+            Map<String, Object> netAllocationLastYear = data.familyNetAllocation(currency, lastYearEndDate);
             List<Map<String, Object>> netCategoriesLastYear = (List<Map<String, Object>>) netAllocationLastYear.get("data");
 
             // 构建净资产类别的Map
@@ -584,10 +1140,10 @@ public class GoogleSheetsExportService {
             "净资产类型", "当前年值", "去年年底", "同比%"
         )); // 表头
 
-        List<AssetRecord> allCurrentAssetRecords = assetRecordRepository.findLatestRecordsByFamilyAndDate(familyId, asOfDate);
-        List<LiabilityRecord> allCurrentLiabilityRecords = liabilityRecordRepository.findLatestRecordsByFamilyAndDate(familyId, asOfDate);
-        List<AssetRecord> allLastYearAssetRecords = assetRecordRepository.findLatestRecordsByFamilyAndDate(familyId, lastYearEndDate);
-        List<LiabilityRecord> allLastYearLiabilityRecords = liabilityRecordRepository.findLatestRecordsByFamilyAndDate(familyId, lastYearEndDate);
+        List<AssetRecord> allCurrentAssetRecords = data.assetRecordsAtYearEnd();
+        List<LiabilityRecord> allCurrentLiabilityRecords = data.liabilityRecordsAtYearEnd();
+        List<AssetRecord> allLastYearAssetRecords = data.assetRecordsAtLastYearEnd();
+        List<LiabilityRecord> allLastYearLiabilityRecords = data.liabilityRecordsAtLastYearEnd();
 
         // 按资产类型汇总（折算为USD）
         Map<String, BigDecimal> totalAssetTypeCurrentAmounts = new HashMap<>();
@@ -597,14 +1153,14 @@ public class GoogleSheetsExportService {
 
         for (AssetRecord record : allCurrentAssetRecords) {
             String typeName = record.getAccount().getAssetType().getChineseName();
-            BigDecimal amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), asOfDate);
+            BigDecimal amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), asOfDate);
             totalAssetTypeCurrentAmounts.merge(typeName, amountUSD, BigDecimal::add);
             totalAssetsCurrent = totalAssetsCurrent.add(amountUSD);
         }
 
         for (AssetRecord record : allLastYearAssetRecords) {
             String typeName = record.getAccount().getAssetType().getChineseName();
-            BigDecimal amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), lastYearEndDate);
+            BigDecimal amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), lastYearEndDate);
             totalAssetTypeLastYearAmounts.merge(typeName, amountUSD, BigDecimal::add);
             totalAssetsLastYear = totalAssetsLastYear.add(amountUSD);
         }
@@ -617,23 +1173,23 @@ public class GoogleSheetsExportService {
 
         for (LiabilityRecord record : allCurrentLiabilityRecords) {
             String typeName = record.getAccount().getLiabilityType().getChineseName();
-            BigDecimal amountUSD = convertToUSD(record.getOutstandingBalance(), record.getCurrency(), asOfDate);
+            BigDecimal amountUSD = data.toUsd(record.getOutstandingBalance(), record.getCurrency(), asOfDate);
             totalLiabilityTypeCurrentAmounts.merge(typeName, amountUSD, BigDecimal::add);
             totalLiabilitiesCurrent = totalLiabilitiesCurrent.add(amountUSD);
         }
 
         for (LiabilityRecord record : allLastYearLiabilityRecords) {
             String typeName = record.getAccount().getLiabilityType().getChineseName();
-            BigDecimal amountUSD = convertToUSD(record.getOutstandingBalance(), record.getCurrency(), lastYearEndDate);
+            BigDecimal amountUSD = data.toUsd(record.getOutstandingBalance(), record.getCurrency(), lastYearEndDate);
             totalLiabilityTypeLastYearAmounts.merge(typeName, amountUSD, BigDecimal::add);
             totalLiabilitiesLastYear = totalLiabilitiesLastYear.add(amountUSD);
         }
 
         // 净资产类别（折算为USD All货币）
-        Map<String, Object> netAllocationCurrent = analysisService.getNetAssetAllocation(null, familyId, asOfDate, "All");
+        Map<String, Object> netAllocationCurrent = data.familyNetAllocation("All", asOfDate);
         List<Map<String, Object>> netCategoriesCurrent = (List<Map<String, Object>>) netAllocationCurrent.get("data");
 
-        Map<String, Object> netAllocationLastYear = analysisService.getNetAssetAllocation(null, familyId, lastYearEndDate, "All");
+        Map<String, Object> netAllocationLastYear = data.familyNetAllocation("All", lastYearEndDate);
         List<Map<String, Object>> netCategoriesLastYear = (List<Map<String, Object>>) netAllocationLastYear.get("data");
 
         // 构建净资产类别的Map
@@ -779,7 +1335,7 @@ public class GoogleSheetsExportService {
         int totalSectionSubtotalRow = rows.size() - 1; // 记录USD总计小计行位置
 
         // 写入数据
-        googleSheetsService.writeData(spreadsheetId, "资产负债表", rows);
+        writer.writeData("资产负债表", rows);
 
         // 应用格式化
         List<Request> formatRequests = new ArrayList<>();
@@ -999,7 +1555,7 @@ public class GoogleSheetsExportService {
             10 // 第10列开始
         ));
 
-        googleSheetsService.formatCells(spreadsheetId, formatRequests);
+        writer.formatCells(formatRequests);
     }
 
     /**
@@ -1045,12 +1601,13 @@ public class GoogleSheetsExportService {
     /**
      * 导出开支表
      */
-    private void exportExpenseSheet(String spreadsheetId, Long familyId, Integer year, String currency)
+    private void exportExpenseSheet(ReportSheetWriter writer, AnnualExportDataset data, String currency)
             throws IOException, GeneralSecurityException {
+        Integer year = data.year();
         log.info("导出开支表: {}", currency);
 
         String sheetName = "开支表-" + currency;
-        Integer sheetId = googleSheetsService.addSheet(spreadsheetId, sheetName);
+        Integer sheetId = writer.addSheet(sheetName);
 
         List<List<Object>> rows = new ArrayList<>();
 
@@ -1059,25 +1616,25 @@ public class GoogleSheetsExportService {
         rows.add(Arrays.asList()); // 空行
 
         // 日常开支（上半年）
-        addExpenseHalfYear(rows, familyId, year, currency, 1, 6, "日常开支 - 上半年 (1-6月)", false);
+        addExpenseHalfYear(rows, data, currency, 1, 6, "日常开支 - 上半年 (1-6月)", false);
         rows.add(Arrays.asList()); // 空行
         rows.add(Arrays.asList()); // 空行
 
         // 大项开支（上半年）
-        addExpenseHalfYear(rows, familyId, year, currency, 1, 6, "大项开支 - 上半年 (1-6月)", true);
+        addExpenseHalfYear(rows, data, currency, 1, 6, "大项开支 - 上半年 (1-6月)", true);
         rows.add(Arrays.asList()); // 空行
         rows.add(Arrays.asList()); // 空行
 
         // 日常开支（下半年）
-        addExpenseHalfYear(rows, familyId, year, currency, 7, 12, "日常开支 - 下半年 (7-12月)", false);
+        addExpenseHalfYear(rows, data, currency, 7, 12, "日常开支 - 下半年 (7-12月)", false);
         rows.add(Arrays.asList()); // 空行
         rows.add(Arrays.asList()); // 空行
 
         // 大项开支（下半年）
-        addExpenseHalfYear(rows, familyId, year, currency, 7, 12, "大项开支 - 下半年 (7-12月)", true);
+        addExpenseHalfYear(rows, data, currency, 7, 12, "大项开支 - 下半年 (7-12月)", true);
 
         // 写入数据
-        googleSheetsService.writeData(spreadsheetId, sheetName, rows);
+        writer.writeData(sheetName, rows);
 
         // 应用格式化
         List<Request> formatRequests = new ArrayList<>();
@@ -1150,16 +1707,17 @@ public class GoogleSheetsExportService {
 
         // 6. 添加剩余预算列的条件颜色格式（基于预算百分比）
         // 这个方法会为剩余预算列(col 12)同时设置货币格式和背景色
-        addBudgetColorFormatting(formatRequests, sheetId, rows, currency, familyId, year);
+        addBudgetColorFormatting(formatRequests, sheetId, rows, currency, data.familyId(), year);
 
-        googleSheetsService.formatCells(spreadsheetId, formatRequests);
+        writer.formatCells(formatRequests);
     }
 
     /**
      * 添加半年支出数据（优化版：消除重复查询）
      */
-    private void addExpenseHalfYear(List<List<Object>> rows, Long familyId, Integer year, String currency,
+    private void addExpenseHalfYear(List<List<Object>> rows, AnnualExportDataset data, String currency,
                                    int startMonth, int endMonth, String title, boolean isMajorItems) {
+        Integer year = data.year();
         Set<String> majorItemCodes = new HashSet<>(Arrays.asList("HOUSING", "TRANSPORTATION", "BUSINESS"));
 
         // 小标题
@@ -1180,68 +1738,50 @@ public class GoogleSheetsExportService {
         rows.add(headerRow);
 
         // 获取所有大类
-        List<ExpenseCategoryMajor> majorCategories = expenseCategoryMajorRepository.findAll();
+        List<ExpenseCategoryMajor> majorCategories = data.expenseMajorCategories();
 
-        // 🚀 优化：收集所有需要的小类ID，批量预加载数据
+        // 收集本组（日常/大项）的小类ID
         List<Long> allMinorIds = new ArrayList<>();
         for (ExpenseCategoryMajor major : majorCategories) {
             if (major.getId() == 0) continue;
             boolean isMajor = majorItemCodes.contains(major.getCode());
             if (isMajorItems != isMajor) continue;
 
-            List<ExpenseCategoryMinor> minorCategories = expenseCategoryMinorRepository
-                .findByMajorCategoryIdOrderBySortOrder(major.getId());
+            List<ExpenseCategoryMinor> minorCategories = data.minorCategoriesOf(major.getId());
             minorCategories.forEach(minor -> allMinorIds.add(minor.getId()));
         }
 
-        // 🚀 批量加载预算数据（一次查询）
+        // 从数据集中取出本组小类的预算和各月支出
+        Set<Long> minorIdSet = new HashSet<>(allMinorIds);
         Map<Long, BigDecimal> budgetMap = new HashMap<>();
         if (!allMinorIds.isEmpty()) {
-            List<ExpenseBudget> budgets = expenseBudgetRepository
-                .findByFamilyIdAndBudgetYearAndCurrencyAndMinorCategoryIdIn(
-                    familyId, year, currency, allMinorIds);
-            budgets.forEach(b -> budgetMap.put(b.getMinorCategoryId(), b.getBudgetAmount()));
+            budgetMap = onlyMinors(data.budgetsOf(currency), minorIdSet);
         }
 
-        // 🚀 批量加载去年的开支记录（12-72次查询 -> 1次）
+        // 去年同期的开支记录
         Map<String, Map<Long, BigDecimal>> lastYearRecordsMap = new HashMap<>();
         for (int month = startMonth; month <= endMonth; month++) {
             String period = String.format("%d-%02d", year - 1, month);
             if (!allMinorIds.isEmpty()) {
-                List<ExpenseRecord> records = expenseRecordRepository
-                    .findByFamilyIdAndExpensePeriodAndCurrencyAndMinorCategoryIdIn(
-                        familyId, period, currency, allMinorIds);
-                Map<Long, BigDecimal> monthMap = new HashMap<>();
-                records.forEach(r -> monthMap.put(r.getMinorCategoryId(), r.getAmount()));
-                lastYearRecordsMap.put(period, monthMap);
+                lastYearRecordsMap.put(period, onlyMinors(data.expensesOf(period, currency), minorIdSet));
             }
         }
 
-        // 🚀 批量加载今年的开支记录（12-72次查询 -> 1次）
+        // 今年的开支记录
         Map<String, Map<Long, BigDecimal>> currentYearRecordsMap = new HashMap<>();
         for (int month = startMonth; month <= endMonth; month++) {
             String period = String.format("%d-%02d", year, month);
             if (!allMinorIds.isEmpty()) {
-                List<ExpenseRecord> records = expenseRecordRepository
-                    .findByFamilyIdAndExpensePeriodAndCurrencyAndMinorCategoryIdIn(
-                        familyId, period, currency, allMinorIds);
-                Map<Long, BigDecimal> monthMap = new HashMap<>();
-                records.forEach(r -> monthMap.put(r.getMinorCategoryId(), r.getAmount()));
-                currentYearRecordsMap.put(period, monthMap);
+                currentYearRecordsMap.put(period, onlyMinors(data.expensesOf(period, currency), minorIdSet));
             }
         }
 
-        // 🚀 批量加载上半年数据（如果是下半年）
+        // 上半年数据（如果是下半年）
         Map<String, Map<Long, BigDecimal>> firstHalfRecordsMap = new HashMap<>();
         if (startMonth >= 7 && !allMinorIds.isEmpty()) {
             for (int month = 1; month <= 6; month++) {
                 String period = String.format("%d-%02d", year, month);
-                List<ExpenseRecord> records = expenseRecordRepository
-                    .findByFamilyIdAndExpensePeriodAndCurrencyAndMinorCategoryIdIn(
-                        familyId, period, currency, allMinorIds);
-                Map<Long, BigDecimal> monthMap = new HashMap<>();
-                records.forEach(r -> monthMap.put(r.getMinorCategoryId(), r.getAmount()));
-                firstHalfRecordsMap.put(period, monthMap);
+                firstHalfRecordsMap.put(period, onlyMinors(data.expensesOf(period, currency), minorIdSet));
             }
         }
 
@@ -1261,8 +1801,7 @@ public class GoogleSheetsExportService {
             boolean isMajor = majorItemCodes.contains(major.getCode());
             if (isMajorItems != isMajor) continue;
 
-            List<ExpenseCategoryMinor> minorCategories = expenseCategoryMinorRepository
-                .findByMajorCategoryIdOrderBySortOrder(major.getId());
+            List<ExpenseCategoryMinor> minorCategories = data.minorCategoriesOf(major.getId());
 
             if (minorCategories.isEmpty()) continue;
 
@@ -1376,22 +1915,35 @@ public class GoogleSheetsExportService {
         rows.add(totalRow);
     }
 
+    /**
+     * 只保留指定小类的金额
+     */
+    private static Map<Long, BigDecimal> onlyMinors(Map<Long, BigDecimal> amounts, Set<Long> minorIds) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        amounts.forEach((minorId, amount) -> {
+            if (minorIds.contains(minorId)) {
+                result.put(minorId, amount);
+            }
+        });
+        return result;
+    }
+
     /**
      * 导出投资账户明细
      */
-    private void exportInvestmentAccountSheet(String spreadsheetId, Long familyId, Integer year)
+    private void exportInvestmentAccountSheet(ReportSheetWriter writer, AnnualExportDataset data)
             throws IOException, GeneralSecurityException {
+        Integer year = data.year();
         log.info("导出投资账户明细");
 
-        Integer sheetId = googleSheetsService.addSheet(spreadsheetId, "投资账户明细");
+        Integer sheetId = writer.addSheet("投资账户明细");
 
         List<List<Object>> rows = new ArrayList<>();
         rows.add(Arrays.asList(year + "年投资账户明细"));
         rows.add(Arrays.asList()); // 空行
 
         // 获取投资账户（排除退休基金和房产类）
-        List<AssetAccount> investmentAccounts = assetAccountRepository
-            .findByFamilyIdAndIsActiveTrue(familyId).stream()
+        List<AssetAccount> investmentAccounts = data.assetAccounts().stream()
             .filter(account -> account.getAssetType() != null &&
                              Boolean.TRUE.equals(account.getAssetType().getIsInvestment()) &&
                              !RETIREMENT_FUND_TYPE.equals(account.getAssetType().getType()) &&
@@ -1400,7 +1952,7 @@ public class GoogleSheetsExportService {
 
         if (investmentAccounts.isEmpty()) {
             rows.add(Arrays.asList("暂无投资账户数据"));
-            googleSheetsService.writeData(spreadsheetId, "投资账户明细", rows);
+            writer.writeData("投资账户明细", rows);
             return;
         }
 
@@ -1418,15 +1970,16 @@ public class GoogleSheetsExportService {
         List<Object> lastYearRow = new ArrayList<>();
         lastYearRow.add(lastYearEnd.format(DATE_FORMATTER) + " (去年年底)");
 
+        // 一次加载所有账户的记录，按日期顺推出每个日期各账户的最新记录
+        AccountRecordMatrix matrix = loadAccountRecordMatrix(data, investmentAccounts);
+
         BigDecimal lastYearTotal = BigDecimal.ZERO;
         List<BigDecimal> lastYearAccountValues = new ArrayList<>();
-        for (AssetAccount account : investmentAccounts) {
-            Optional<AssetRecord> recordOpt = assetRecordRepository
-                .findLatestByAccountAndDate(account.getId(), lastYearEnd);
+        for (int i = 0; i < investmentAccounts.size(); i++) {
+            AssetRecord record = matrix.lastYearEnd()[i];
             BigDecimal amountUSD = BigDecimal.ZERO;
-            if (recordOpt.isPresent()) {
-                AssetRecord record = recordOpt.get();
-                amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), lastYearEnd);
+            if (record != null) {
+                amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), lastYearEnd);
                 lastYearRow.add(amountUSD.doubleValue());
                 lastYearTotal = lastYearTotal.add(amountUSD);
             } else {
@@ -1437,33 +1990,21 @@ public class GoogleSheetsExportService {
         lastYearRow.add(lastYearTotal.doubleValue());
         rows.add(lastYearRow);
 
-        // 本年度数据
-        LocalDate startDate = LocalDate.of(year, 1, 1);
-        LocalDate endDate = LocalDate.of(year, 12, 31);
-
-        Set<LocalDate> allDates = new TreeSet<>();
-        for (AssetAccount account : investmentAccounts) {
-            List<AssetRecord> records = assetRecordRepository
-                .findByAccountIdAndRecordDateBetweenOrderByRecordDateDesc(account.getId(), startDate, endDate);
-            records.forEach(r -> allDates.add(r.getRecordDate()));
-        }
-
+        // 本年度数据（有记录的每个日期一行）
         // 存储最新的一行数据用于计算同比
         List<BigDecimal> latestAccountValues = null;
         BigDecimal latestTotal = null;
 
-        for (LocalDate date : allDates) {
+        for (Map.Entry<LocalDate, AssetRecord[]> entry : matrix.byDate().entrySet()) {
+            LocalDate date = entry.getKey();
             List<Object> row = new ArrayList<>();
             row.add(date.format(DATE_FORMATTER));
 
             BigDecimal dateTotal = BigDecimal.ZERO;
             List<BigDecimal> currentValues = new ArrayList<>();
-            for (AssetAccount account : investmentAccounts) {
-                Optional<AssetRecord> recordOpt = assetRecordRepository
-                    .findLatestByAccountAndDate(account.getId(), date);
-                if (recordOpt.isPresent()) {
-                    AssetRecord record = recordOpt.get();
-                    BigDecimal amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), date);
+            for (AssetRecord record : entry.getValue()) {
+                if (record != null) {
+                    BigDecimal amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), date);
                     row.add(amountUSD.doubleValue());
                     dateTotal = dateTotal.add(amountUSD);
                     currentValues.add(amountUSD);
@@ -1503,7 +2044,7 @@ public class GoogleSheetsExportService {
             rows.add(changeRow);
         }
 
-        googleSheetsService.writeData(spreadsheetId, "投资账户明细", rows);
+        writer.writeData("投资账户明细", rows);
 
         // 应用格式化
         List<Request> formatRequests = new ArrayList<>();
@@ -1549,31 +2090,77 @@ public class GoogleSheetsExportService {
             }
         }
 
-        googleSheetsService.formatCells(spreadsheetId, formatRequests);
+        writer.formatCells(formatRequests);
+    }
+
+    /**
+     * 账户明细表的日期 × 账户矩阵，列顺序与传入的账户列表一致
+     * @param lastYearEnd 去年年底各账户的最新记录（没有记录为 null）
+     * @param byDate 本年度有记录的每个日期 → 各账户在该日期或之前的最新记录
+     */
+    private record AccountRecordMatrix(AssetRecord[] lastYearEnd, TreeMap<LocalDate, AssetRecord[]> byDate) {
+    }
+
+    /**
+     * 从数据集构建账户明细表所需的记录矩阵
+     * 以去年年底的最新记录为起点，把本年度记录按日期升序顺推，
+     * 结果与逐个日期、逐个账户查询 findLatestByAccountAndDate 相同
+     */
+    private AccountRecordMatrix loadAccountRecordMatrix(AnnualExportDataset data, List<AssetAccount> accounts) {
+        Map<Long, Integer> columnByAccountId = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            columnByAccountId.put(accounts.get(i).getId(), i);
+        }
+
+        AssetRecord[] carry = new AssetRecord[accounts.size()];
+        for (AssetRecord record : data.assetRecordsAtLastYearEnd()) {
+            Integer column = columnByAccountId.get(record.getAccountId());
+            if (column != null) {
+                carry[column] = record;
+            }
+        }
+        AssetRecord[] lastYearRow = carry.clone();
+
+        // 本年度记录按日期分组（升序）
+        TreeMap<LocalDate, List<AssetRecord>> recordsByDate = new TreeMap<>();
+        for (AssetRecord record : data.assetRecordsInYear()) {
+            if (columnByAccountId.containsKey(record.getAccountId())) {
+                recordsByDate.computeIfAbsent(record.getRecordDate(), d -> new ArrayList<>()).add(record);
+            }
+        }
+
+        TreeMap<LocalDate, AssetRecord[]> byDate = new TreeMap<>();
+        for (Map.Entry<LocalDate, List<AssetRecord>> entry : recordsByDate.entrySet()) {
+            for (AssetRecord record : entry.getValue()) {
+                carry[columnByAccountId.get(record.getAccountId())] = record;
+            }
+            byDate.put(entry.getKey(), carry.clone());
+        }
+        return new AccountRecordMatrix(lastYearRow, byDate);
     }
 
     /**
      * 导出退休账户明细
      */
-    private void exportRetirementAccountSheet(String spreadsheetId, Long familyId, Integer year)
+    private void exportRetirementAccountSheet(ReportSheetWriter writer, AnnualExportDataset data)
             throws IOException, GeneralSecurityException {
+        Integer year = data.year();
         log.info("导出退休账户明细");
 
-        Integer sheetId = googleSheetsService.addSheet(spreadsheetId, "退休账户明细");
+        Integer sheetId = writer.addSheet("退休账户明细");
 
         List<List<Object>> rows = new ArrayList<>();
         rows.add(Arrays.asList(year + "年退休账户明细"));
         rows.add(Arrays.asList()); // 空行
 
-        List<AssetAccount> retirementAccounts = assetAccountRepository
-            .findByFamilyIdAndIsActiveTrue(familyId).stream()
+        List<AssetAccount> retirementAccounts = data.assetAccounts().stream()
             .filter(account -> account.getAssetType() != null &&
                              RETIREMENT_FUND_TYPE.equals(account.getAssetType().getType()))
             .collect(Collectors.toList());
 
         if (retirementAccounts.isEmpty()) {
             rows.add(Arrays.asList("暂无退休账户数据"));
-            googleSheetsService.writeData(spreadsheetId, "退休账户明细", rows);
+            writer.writeData("退休账户明细", rows);
             return;
         }
 
@@ -1591,15 +2178,16 @@ public class GoogleSheetsExportService {
         List<Object> lastYearRow = new ArrayList<>();
         lastYearRow.add(lastYearEnd.format(DATE_FORMATTER) + " (去年年底)");
 
+        // 一次加载所有账户的记录，按日期顺推出每个日期各账户的最新记录
+        AccountRecordMatrix matrix = loadAccountRecordMatrix(data, retirementAccounts);
+
         BigDecimal lastYearTotal = BigDecimal.ZERO;
         List<BigDecimal> lastYearAccountValues = new ArrayList<>();
-        for (AssetAccount account : retirementAccounts) {
-            Optional<AssetRecord> recordOpt = assetRecordRepository
-                .findLatestByAccountAndDate(account.getId(), lastYearEnd);
+        for (int i = 0; i < retirementAccounts.size(); i++) {
+            AssetRecord record = matrix.lastYearEnd()[i];
             BigDecimal amountUSD = BigDecimal.ZERO;
-            if (recordOpt.isPresent()) {
-                AssetRecord record = recordOpt.get();
-                amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), lastYearEnd);
+            if (record != null) {
+                amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), lastYearEnd);
                 lastYearRow.add(amountUSD.doubleValue());
                 lastYearTotal = lastYearTotal.add(amountUSD);
             } else {
@@ -1610,33 +2198,21 @@ public class GoogleSheetsExportService {
         lastYearRow.add(lastYearTotal.doubleValue());
         rows.add(lastYearRow);
 
-        // 本年度数据
-        LocalDate startDate = LocalDate.of(year, 1, 1);
-        LocalDate endDate = LocalDate.of(year, 12, 31);
-
-        Set<LocalDate> allDates = new TreeSet<>();
-        for (AssetAccount account : retirementAccounts) {
-            List<AssetRecord> records = assetRecordRepository
-                .findByAccountIdAndRecordDateBetweenOrderByRecordDateDesc(account.getId(), startDate, endDate);
-            records.forEach(r -> allDates.add(r.getRecordDate()));
-        }
-
+        // 本年度数据（有记录的每个日期一行）
         // 存储最新的一行数据用于计算同比
         List<BigDecimal> latestAccountValues = null;
         BigDecimal latestTotal = null;
 
-        for (LocalDate date : allDates) {
+        for (Map.Entry<LocalDate, AssetRecord[]> entry : matrix.byDate().entrySet()) {
+            LocalDate date = entry.getKey();
             List<Object> row = new ArrayList<>();
             row.add(date.format(DATE_FORMATTER));
 
             BigDecimal dateTotal = BigDecimal.ZERO;
             List<BigDecimal> currentValues = new ArrayList<>();
-            for (AssetAccount account : retirementAccounts) {
-                Optional<AssetRecord> recordOpt = assetRecordRepository
-                    .findLatestByAccountAndDate(account.getId(), date);
-                if (recordOpt.isPresent()) {
-                    AssetRecord record = recordOpt.get();
-                    BigDecimal amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), date);
+            for (AssetRecord record : entry.getValue()) {
+                if (record != null) {
+                    BigDecimal amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), date);
                     row.add(amountUSD.doubleValue());
                     dateTotal = dateTotal.add(amountUSD);
                     currentValues.add(amountUSD);
@@ -1676,7 +2252,7 @@ public class GoogleSheetsExportService {
             rows.add(changeRow);
         }
 
-        googleSheetsService.writeData(spreadsheetId, "退休账户明细", rows);
+        writer.writeData("退休账户明细", rows);
 
         // 应用格式化
         List<Request> formatRequests = new ArrayList<>();
@@ -1722,7 +2298,7 @@ public class GoogleSheetsExportService {
             }
         }
 
-        googleSheetsService.formatCells(spreadsheetId, formatRequests);
+        writer.formatCells(formatRequests);
     }
 
     /**
@@ -1843,23 +2419,24 @@ public class GoogleSheetsExportService {
      * 导出资产负债表明细Sheet
      * 显示所有资产、负债账户的最新值，资产和负债在同一行显示，中间有空列间隔
      */
-    private void exportBalanceSheetDetail(String spreadsheetId, Long familyId, Integer year)
+    private void exportBalanceSheetDetail(ReportSheetWriter writer, AnnualExportDataset data)
             throws IOException, GeneralSecurityException {
+        Integer year = data.year();
         log.info("导出资产负债表明细");
 
-        Integer sheetId = googleSheetsService.addSheet(spreadsheetId, "资产负债表明细");
+        Integer sheetId = writer.addSheet("资产负债表明细");
         LocalDate asOfDate = LocalDate.of(year, 12, 31);
 
         List<List<Object>> rows = new ArrayList<>();
 
         // 标题行（包含家庭名称）
-        String familyName = getFamilyName(familyId);
+        String familyName = data.familyName();
         rows.add(Arrays.asList(year + "年" + familyName + "家庭资产负债表明细"));
         rows.add(Arrays.asList()); // 空行
 
         // 预加载资产和负债数据（在循环外部，避免重复查询）
-        List<AssetAccount> allAssetAccounts = assetAccountRepository.findByFamilyIdAndIsActiveTrue(familyId);
-        List<LiabilityAccount> allLiabilityAccounts = liabilityAccountRepository.findByFamilyIdAndIsActiveTrue(familyId);
+        List<AssetAccount> allAssetAccounts = data.assetAccounts();
+        List<LiabilityAccount> allLiabilityAccounts = data.liabilityAccounts();
 
         // 按货币分组
         List<String> currencies = Arrays.asList("USD", "CNY");
@@ -1868,21 +2445,9 @@ public class GoogleSheetsExportService {
             // 货币标题
             rows.add(Arrays.asList(currency + " 账户明细"));
 
-            // 预加载所有资产记录
-            Map<Long, AssetRecord> assetRecordMap = new HashMap<>();
-            for (AssetAccount account : allAssetAccounts) {
-                Optional<AssetRecord> recordOpt = assetRecordRepository
-                    .findLatestByAccountAndDate(account.getId(), asOfDate);
-                recordOpt.ifPresent(record -> assetRecordMap.put(account.getId(), record));
-            }
-
-            // 预加载所有负债记录
-            Map<Long, LiabilityRecord> liabilityRecordMap = new HashMap<>();
-            for (LiabilityAccount account : allLiabilityAccounts) {
-                Optional<LiabilityRecord> recordOpt = liabilityRecordRepository
-                    .findLatestByAccountIdBeforeOrOnDate(account.getId(), asOfDate);
-                recordOpt.ifPresent(record -> liabilityRecordMap.put(account.getId(), record));
-            }
+            // 各账户年末的最新记录
+            Map<Long, AssetRecord> assetRecordMap = byAccountId(data.assetRecordsAtYearEnd(), AssetRecord::getAccountId);
+            Map<Long, LiabilityRecord> liabilityRecordMap = byAccountId(data.liabilityRecordsAtYearEnd(), LiabilityRecord::getAccountId);
 
             // 过滤出该货币的资产账户
             List<AssetAccount> assetAccounts = allAssetAccounts.stream()
@@ -1911,7 +2476,7 @@ public class GoogleSheetsExportService {
             assetAccounts.forEach(acc -> allUserIds.add(acc.getUserId()));
             liabilityAccounts.forEach(acc -> allUserIds.add(acc.getUserId()));
 
-            List<User> users = userRepository.findAllById(allUserIds);
+            List<User> users = data.usersOf(allUserIds);
             Map<Long, String> userIdToName = users.stream()
                 .collect(Collectors.toMap(User::getId, User::getUsername));
             List<String> userNames = new ArrayList<>(new LinkedHashSet<>(userIdToName.values())); // 去重并保持顺序
@@ -2073,7 +2638,7 @@ public class GoogleSheetsExportService {
         allLiabilityAccounts.forEach(acc -> familyUserIds.add(acc.getUserId()));
 
         // 获取用户信息
-        List<User> familyUsers = userRepository.findAllById(familyUserIds);
+        List<User> familyUsers = data.usersOf(familyUserIds);
         Map<Long, String> userIdToNameMap = familyUsers.stream()
             .collect(Collectors.toMap(User::getId, User::getUsername));
 
@@ -2105,7 +2670,7 @@ public class GoogleSheetsExportService {
         for (Long userId : sortedUserIds) {
             log.info("收集用户净资产数据: userId={}, userName={}", userId, userIdToNameMap.get(userId));
             // 重要：不传入familyId，只传入userId，这样才能获取该用户自己的净资产数据
-            Map<String, Object> netAllocation = analysisService.getNetAssetAllocation(userId, null, asOfDate, "All");
+            Map<String, Object> netAllocation = data.memberNetAllocation(userId);
             List<Map<String, Object>> netCategories = (List<Map<String, Object>>) netAllocation.get("data");
             log.info("用户{}的净资产类别数: {}", userIdToNameMap.get(userId), netCategories != null ? netCategories.size() : 0);
             userNetAssetData.put(userId, netCategories);
@@ -2201,7 +2766,7 @@ public class GoogleSheetsExportService {
 
 
         // 写入数据
-        googleSheetsService.writeData(spreadsheetId, "资产负债表明细", rows);
+        writer.writeData("资产负债表明细", rows);
 
         // 应用格式化
         List<Request> formatRequests = new ArrayList<>();
@@ -2345,39 +2910,40 @@ public class GoogleSheetsExportService {
             4                           // 图表锚点列（第4列开始）
         ));
 
-        googleSheetsService.formatCells(spreadsheetId, formatRequests);
+        writer.formatCells(formatRequests);
     }
 
     /**
      * 导出折算为USD基准货币净资产总计表
      * 显示净资产类型，每种类型不同用户的值，最后有总计
      */
-    private void exportNetAssetSummarySheet(String spreadsheetId, Long familyId, Integer year)
+    private void exportNetAssetSummarySheet(ReportSheetWriter writer, AnnualExportDataset data)
             throws IOException, GeneralSecurityException {
+        Integer year = data.year();
         log.info("导出折算为USD基准货币净资产总计表");
 
-        Integer sheetId = googleSheetsService.addSheet(spreadsheetId, "净资产总计");
+        Integer sheetId = writer.addSheet("净资产总计");
         LocalDate asOfDate = LocalDate.of(year, 12, 31);
 
         List<List<Object>> rows = new ArrayList<>();
 
         // 标题行（包含家庭名称）
-        String familyName = getFamilyName(familyId);
+        String familyName = data.familyName();
         rows.add(Arrays.asList(year + "年" + familyName + "家庭折算为USD基准货币净资产总计"));
         rows.add(Arrays.asList()); // 空行
 
         // 获取净资产配置数据（All货币，已经折算为USD）
-        Map<String, Object> netAllocation = analysisService.getNetAssetAllocation(null, familyId, asOfDate, "All");
+        Map<String, Object> netAllocation = data.familyNetAllocation("All", asOfDate);
         List<Map<String, Object>> netCategories = (List<Map<String, Object>>) netAllocation.get("data");
 
         if (netCategories == null || netCategories.isEmpty()) {
             rows.add(Arrays.asList("暂无净资产数据"));
-            googleSheetsService.writeData(spreadsheetId, "净资产总计", rows);
+            writer.writeData("净资产总计", rows);
             return;
         }
 
-        // 获取所有用户
-        List<User> allUsers = userRepository.findAll();
+        // 获取家庭成员
+        List<User> allUsers = new ArrayList<>(data.users().values());
         Map<Long, String> userIdToName = allUsers.stream()
             .collect(Collectors.toMap(User::getId, User::getUsername));
         List<String> userNames = new ArrayList<>(new LinkedHashSet<>(userIdToName.values()));
@@ -2393,23 +2959,12 @@ public class GoogleSheetsExportService {
 
         // 按用户统计净资产（需要重新计算，因为analysisService返回的是汇总数据）
         // 先获取所有资产和负债账户
-        List<AssetAccount> allAssetAccounts = assetAccountRepository.findByFamilyIdAndIsActiveTrue(familyId);
-        List<LiabilityAccount> allLiabilityAccounts = liabilityAccountRepository.findByFamilyIdAndIsActiveTrue(familyId);
+        List<AssetAccount> allAssetAccounts = data.assetAccounts();
+        List<LiabilityAccount> allLiabilityAccounts = data.liabilityAccounts();
 
-        // 预加载记录
-        Map<Long, AssetRecord> assetRecordMap = new HashMap<>();
-        for (AssetAccount account : allAssetAccounts) {
-            Optional<AssetRecord> recordOpt = assetRecordRepository
-                .findLatestByAccountAndDate(account.getId(), asOfDate);
-            recordOpt.ifPresent(record -> assetRecordMap.put(account.getId(), record));
-        }
-
-        Map<Long, LiabilityRecord> liabilityRecordMap = new HashMap<>();
-        for (LiabilityAccount account : allLiabilityAccounts) {
-            Optional<LiabilityRecord> recordOpt = liabilityRecordRepository
-                .findLatestByAccountIdBeforeOrOnDate(account.getId(), asOfDate);
-            recordOpt.ifPresent(record -> liabilityRecordMap.put(account.getId(), record));
-        }
+        // 各账户年末的最新记录
+        Map<Long, AssetRecord> assetRecordMap = byAccountId(data.assetRecordsAtYearEnd(), AssetRecord::getAccountId);
+        Map<Long, LiabilityRecord> liabilityRecordMap = byAccountId(data.liabilityRecordsAtYearEnd(), LiabilityRecord::getAccountId);
 
         // 按资产类型统计每个用户的净资产
         Map<String, Map<String, BigDecimal>> netAssetByTypeAndUser = new LinkedHashMap<>();
@@ -2427,7 +2982,7 @@ public class GoogleSheetsExportService {
             String userName = userIdToName.get(account.getUserId());
             if (userName == null) continue;
 
-            BigDecimal amountUSD = convertToUSD(record.getAmount(), record.getCurrency(), asOfDate);
+            BigDecimal amountUSD = data.toUsd(record.getAmount(), record.getCurrency(), asOfDate);
 
             netAssetByTypeAndUser.putIfAbsent(typeName, new HashMap<>());
             Map<String, BigDecimal> userMap = netAssetByTypeAndUser.get(typeName);
@@ -2444,7 +2999,7 @@ public class GoogleSheetsExportService {
             String userName = userIdToName.get(account.getUserId());
             if (userName == null) continue;
 
-            BigDecimal amountUSD = convertToUSD(record.getOutstandingBalance(), record.getCurrency(), asOfDate);
+            BigDecimal amountUSD = data.toUsd(record.getOutstandingBalance(), record.getCurrency(), asOfDate);
 
             // 负债类型显示为负数
             String liabilityTypeName = "负债-" + typeName;
@@ -2484,7 +3039,7 @@ public class GoogleSheetsExportService {
         rows.add(totalRow);
 
         // 写入数据
-        googleSheetsService.writeData(spreadsheetId, "净资产总计", rows);
+        writer.writeData("净资产总计", rows);
 
         // 应用格式化
         List<Request> formatRequests = new ArrayList<>();
@@ -2513,60 +3068,15 @@ public class GoogleSheetsExportService {
             formatRequests.add(googleSheetsService.createCurrencyFormat(sheetId, rows.size() - 1, rows.size(), 1, colCount, "USD"));
         }
 
-        googleSheetsService.formatCells(spreadsheetId, formatRequests);
+        writer.formatCells(formatRequests);
     }
 
     /**
      * 删除默认的Sheet1
      */
-    private void deleteDefaultSheet(String spreadsheetId) throws IOException, GeneralSecurityException {
+    private void deleteDefaultSheet(StagedSheetsWriter writer) {
         log.info("删除默认Sheet1");
-        googleSheetsService.deleteSheetByTitle(spreadsheetId, "工作表1");
-    }
-
-    /**
-     * 预加载指定年份所需的汇率到缓存
-     */
-    private void preloadExchangeRates(Integer year) {
-        log.info("预加载{}年汇率数据", year);
-        Map<String, BigDecimal> cache = EXCHANGE_RATE_CACHE.get();
-        cache.clear(); // 清空之前的缓存
-
-        // 需要加载的日期：年初、年底、去年年底，以及每月月底（用于月度趋势）
-        List<LocalDate> datesToLoad = new ArrayList<>();
-        datesToLoad.add(LocalDate.of(year - 1, 12, 31));  // 去年年底
-        datesToLoad.add(LocalDate.of(year, 12, 31));       // 今年年底
-
-        // 添加每月月底
-        for (int month = 1; month <= 12; month++) {
-            datesToLoad.add(LocalDate.of(year, month, 1).with(java.time.temporal.TemporalAdjusters.lastDayOfMonth()));
-        }
-
-        // 支持的货币（除USD外）
-        List<String> currencies = Arrays.asList("CNY", "EUR", "GBP", "JPY");
-
-        // 批量加载汇率
-        for (LocalDate date : datesToLoad) {
-            for (String currency : currencies) {
-                String cacheKey = currency + "_" + date.toString();
-                try {
-                    BigDecimal rate = exchangeRateService.getExchangeRate(currency, date);
-                    cache.put(cacheKey, rate);
-                } catch (Exception e) {
-                    log.warn("加载汇率失败: {} on {}, 使用默认值1.0", currency, date, e);
-                    cache.put(cacheKey, BigDecimal.ONE);
-                }
-            }
-        }
-
-        log.info("汇率缓存加载完成，共{}条", cache.size());
-    }
-
-    /**
-     * 清理汇率缓存
-     */
-    private void clearExchangeRateCache() {
-        EXCHANGE_RATE_CACHE.remove();
+        writer.deleteSheet("工作表1");
     }
 
     /**
@@ -2578,29 +3088,6 @@ public class GoogleSheetsExportService {
             .orElse("默认");
     }
 
-    /**
-     * 货币转换为USD（使用缓存）
-     */
-    private BigDecimal convertToUSD(BigDecimal amount, String currency, LocalDate date) {
-        if ("USD".equals(currency)) {
-            return amount;
-        }
-
-        // 尝试从缓存获取
-        String cacheKey = currency + "_" + date.toString();
-        Map<String, BigDecimal> cache = EXCHANGE_RATE_CACHE.get();
-        BigDecimal rate = cache.get(cacheKey);
-
-        // 如果缓存中没有，从服务获取（fallback）
-        if (rate == null) {
-            log.debug("汇率缓存未命中: {}, 从服务获取", cacheKey);
-            rate = exchangeRateService.getExchangeRate(currency, date);
-            cache.put(cacheKey, rate);
-        }
-
-        return amount.multiply(rate).setScale(2, BigDecimal.ROUND_HALF_UP);
-    }
-
     /**
      * 测试Google Sheets API连接
      * @return 测试表格的ID
@@ -1,10 +1,5 @@
 package com.finance.app.service;
 
-import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.JsonFactory;
-import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.Permission;
 import com.google.api.services.sheets.v4.Sheets;
@@ -13,13 +8,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import javax.net.ssl.*;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.security.GeneralSecurityException;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -33,67 +25,20 @@ import java.util.*;
 @Slf4j
 public class GoogleSheetsService {
 
-    private static final String APPLICATION_NAME = "Personal Finance Management";
-    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
-
-    private final GoogleOAuthService googleOAuthService;
+    private final GoogleApiClientProvider googleApiClientProvider;
 
     /**
-     * 创建信任所有证书的HTTP传输（用于解决SSL证书验证问题）
-     * 注意：这在生产环境中不推荐，但对于个人应用和开发环境是可以接受的
+     * 获取Google Sheets服务实例（复用连接池，凭证在每次请求时加载）
      */
-    private NetHttpTransport createTrustAllTransport() throws GeneralSecurityException, IOException {
-        try {
-            // 创建信任所有证书的TrustManager
-            TrustManager[] trustAllCerts = new TrustManager[]{
-                new X509TrustManager() {
-                    public X509Certificate[] getAcceptedIssuers() {
-                        return null;
-                    }
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                    }
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) {
-                    }
-                }
-            };
-
-            // 创建SSL上下文
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, trustAllCerts, new SecureRandom());
-
-            // 创建NetHttpTransport
-            return new NetHttpTransport.Builder()
-                .setSslSocketFactory(sslContext.getSocketFactory())
-                .setHostnameVerifier((hostname, session) -> true) // 信任所有主机名
-                .build();
-        } catch (Exception e) {
-            log.warn("无法创建自定义SSL传输，回退到默认传输", e);
-            return GoogleNetHttpTransport.newTrustedTransport();
-        }
-    }
-
-    /**
-     * 获取Google Sheets服务实例（使用已保存的OAuth 2.0凭证）
-     */
-    private Sheets getSheetsService() throws IOException, GeneralSecurityException {
-        NetHttpTransport httpTransport = createTrustAllTransport();
-        Credential credential = googleOAuthService.getSavedCredential();
-
-        return new Sheets.Builder(httpTransport, JSON_FACTORY, credential)
-            .setApplicationName(APPLICATION_NAME)
-            .build();
+    private Sheets getSheetsService() {
+        return googleApiClientProvider.getSheets();
     }
 
     /**
      * 获取Google Drive服务实例（用于权限管理）
      */
-    private Drive getDriveService() throws IOException, GeneralSecurityException {
-        NetHttpTransport httpTransport = createTrustAllTransport();
-        Credential credential = googleOAuthService.getSavedCredential();
-
-        return new Drive.Builder(httpTransport, JSON_FACTORY, credential)
-            .setApplicationName(APPLICATION_NAME)
-            .build();
+    private Drive getDriveService() {
+        return googleApiClientProvider.getDrive();
     }
 
     /**
@@ -190,6 +135,63 @@ public class GoogleSheetsService {
         log.info("数据写入完成");
     }
 
+    /**
+     * 一次请求写入多个区域的数据（values.batchUpdate）
+     * @param spreadsheetId 电子表格ID
+     * @param data 各区域的数据，range 需包含工作表名称
+     */
+    public void batchWriteData(String spreadsheetId, List<ValueRange> data)
+            throws IOException, GeneralSecurityException {
+        log.info("批量写入数据，共{}个区域", data.size());
+
+        Sheets service = getSheetsService();
+
+        BatchUpdateValuesRequest body = new BatchUpdateValuesRequest()
+            .setValueInputOption("USER_ENTERED")
+            .setData(data);
+        service.spreadsheets().values().batchUpdate(spreadsheetId, body).execute();
+
+        log.info("批量写入完成");
+    }
+
+    /**
+     * 一次请求清空多个区域的内容（values.batchClear）
+     * @param spreadsheetId 电子表格ID
+     * @param ranges 区域列表（可以是整个工作表名称）
+     */
+    public void batchClear(String spreadsheetId, List<String> ranges)
+            throws IOException, GeneralSecurityException {
+        log.info("批量清空，共{}个区域", ranges.size());
+
+        Sheets service = getSheetsService();
+
+        BatchClearValuesRequest body = new BatchClearValuesRequest().setRanges(ranges);
+        service.spreadsheets().values().batchClear(spreadsheetId, body).execute();
+    }
+
+    /**
+     * 获取所有工作表的标题和ID
+     * @param spreadsheetId 电子表格ID
+     * @return 标题 → 工作表ID（按工作表顺序）
+     */
+    public Map<String, Integer> getSheetIds(String spreadsheetId)
+            throws IOException, GeneralSecurityException {
+        Sheets service = getSheetsService();
+
+        Spreadsheet spreadsheet = service.spreadsheets()
+            .get(spreadsheetId)
+            .setFields("sheets.properties")
+            .execute();
+
+        Map<String, Integer> sheetIds = new LinkedHashMap<>();
+        if (spreadsheet.getSheets() != null) {
+            for (Sheet sheet : spreadsheet.getSheets()) {
+                sheetIds.put(sheet.getProperties().getTitle(), sheet.getProperties().getSheetId());
+            }
+        }
+        return sheetIds;
+    }
+
     /**
      * 批量格式化单元格
      * @param spreadsheetId 电子表格ID
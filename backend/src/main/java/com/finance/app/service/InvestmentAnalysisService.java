@@ -21,6 +21,7 @@ import com.finance.app.repository.InvestmentTransactionRepository;
 import com.finance.app.repository.LiabilityAccountRepository;
 import com.finance.app.repository.LiabilityRecordRepository;
 import com.finance.app.repository.UserRepository;
+import com.finance.app.util.MoneyAccumulator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -45,6 +46,7 @@ public class InvestmentAnalysisService {
     private final ExpenseRecordRepository expenseRecordRepository;
     private final ExpenseCategoryMajorRepository expenseCategoryMajorRepository;
     private final ExpenseCategoryMinorRepository expenseCategoryMinorRepository;
+    private final AccountBalanceIndexService balanceIndexService;
 
     /**
      * 获取年度大类投资分析
@@ -76,6 +78,9 @@ public class InvestmentAnalysisService {
         }
 
         // 统计每个大类的投入和取出
+        Map<Long, MoneyAccumulator> depositTotals = new HashMap<>();
+        Map<Long, MoneyAccumulator> withdrawalTotals = new HashMap<>();
+
         for (InvestmentTransaction tx : transactions) {
             String accountCurrency = tx.getAccount().getCurrency();
 
@@ -85,30 +90,39 @@ public class InvestmentAnalysisService {
             }
 
             Long assetTypeId = tx.getAccount().getAssetTypeId();
-            InvestmentCategoryAnalysisDTO dto = categoryMap.get(assetTypeId);
+            if (!categoryMap.containsKey(assetTypeId)) {
+                continue;
+            }
 
-            if (dto != null) {
-                BigDecimal amount = tx.getAmount();
+            MoneyAccumulator total;
+            if (InvestmentTransaction.TransactionType.DEPOSIT.equals(tx.getTransactionType())) {
+                total = depositTotals.computeIfAbsent(assetTypeId, k -> new MoneyAccumulator());
+            } else if (InvestmentTransaction.TransactionType.WITHDRAWAL.equals(tx.getTransactionType())) {
+                total = withdrawalTotals.computeIfAbsent(assetTypeId, k -> new MoneyAccumulator());
+            } else {
+                continue;
+            }
 
-                // 只有选择"All"时才进行货币转换（折算为USD）
-                if ("All".equalsIgnoreCase(currency)) {
-                    LocalDate transactionDate = LocalDate.parse(tx.getTransactionPeriod() + "-01");
-                    amount = convertCurrency(amount, accountCurrency, "USD", transactionDate);
-                }
+            // 只有选择"All"时才进行货币转换（折算为USD，与 convertCurrency 一致：乘以汇率后保留两位小数）
+            if ("All".equalsIgnoreCase(currency) && !"USD".equalsIgnoreCase(accountCurrency)) {
+                LocalDate transactionDate = LocalDate.parse(tx.getTransactionPeriod() + "-01");
+                total.addConverted(tx.getAmount(), exchangeRateService.getExchangeRate(accountCurrency, transactionDate));
+            } else {
                 // 选择单一货币时，使用原始金额（不转换）
-
-                if (InvestmentTransaction.TransactionType.DEPOSIT.equals(tx.getTransactionType())) {
-                    dto.setTotalDeposits(dto.getTotalDeposits().add(amount));
-                } else if (InvestmentTransaction.TransactionType.WITHDRAWAL.equals(tx.getTransactionType())) {
-                    dto.setTotalWithdrawals(dto.getTotalWithdrawals().add(amount));
-                }
+                total.add(tx.getAmount());
             }
         }
 
         // 计算净投入
-        categoryMap.values().forEach(dto ->
-            dto.setNetDeposits(dto.getTotalDeposits().subtract(dto.getTotalWithdrawals()))
-        );
+        categoryMap.forEach((assetTypeId, dto) -> {
+            if (depositTotals.containsKey(assetTypeId)) {
+                dto.setTotalDeposits(depositTotals.get(assetTypeId).toBigDecimal());
+            }
+            if (withdrawalTotals.containsKey(assetTypeId)) {
+                dto.setTotalWithdrawals(withdrawalTotals.get(assetTypeId).toBigDecimal());
+            }
+            dto.setNetDeposits(dto.getTotalDeposits().subtract(dto.getTotalWithdrawals()));
+        });
 
         // 计算投资回报率
         calculateReturnRates(familyId, year, currency, categoryMap);
@@ -132,14 +146,8 @@ public class InvestmentAnalysisService {
         LocalDate currentDate = LocalDate.of(year, 12, 31);  // 修复：使用选中年份的年末，而不是今天
         LocalDate lastYearEndDate = LocalDate.of(year - 1, 12, 31);
 
-        // 获取该家庭的所有用户ID
-        List<Long> userIds = getUserIdsByFamilyId(familyId);
-        if (userIds.isEmpty()) {
-            return;
-        }
-
-        // 获取所有投资账户
-        List<AssetAccount> accounts = assetAccountRepository.findByUserIdInAndIsActiveTrue(userIds);
+        // 获取该家庭的所有账户（同时加载资产类型）
+        List<AssetAccount> accounts = assetAccountRepository.findActiveByFamilyIdWithType(familyId);
 
         // 按资产类型分组账户（保留完整账户对象以获取货币信息）
         // 并根据货币筛选条件过滤账户
@@ -177,13 +185,10 @@ public class InvestmentAnalysisService {
                     LiabilityAccount mortgageAccount = liabilityAccountRepository.findById(account.getLinkedLiabilityAccountId()).orElse(null);
                     if (mortgageAccount != null) {
                         // 查询当前房产价值（修复：使用指定日期）
-                        BigDecimal currentRealEstateValue = assetRecordRepository.sumAmountByAccountIdsAsOfDate(List.of(account.getId()), currentDate);
-                        if (currentRealEstateValue == null) currentRealEstateValue = BigDecimal.ZERO;
+                        BigDecimal currentRealEstateValue = assetBalanceAsOf(familyId, account.getId(), currentDate);
 
                         // 查询当前房贷余额（修复：使用指定日期）
-                        BigDecimal currentMortgage = liabilityRecordRepository.findLatestByAccountIdBeforeOrOnDate(mortgageAccount.getId(), currentDate)
-                            .map(LiabilityRecord::getOutstandingBalance)
-                            .orElse(BigDecimal.ZERO);
+                        BigDecimal currentMortgage = liabilityBalanceAsOf(familyId, mortgageAccount.getId(), currentDate);
 
                         // 计算当前净资产
                         BigDecimal currentNetWorth = currentRealEstateValue.subtract(currentMortgage);
@@ -194,13 +199,10 @@ public class InvestmentAnalysisService {
                         currentAssets = currentAssets.add(currentNetWorth);
 
                         // 查询去年年底房产价值
-                        BigDecimal lastYearRealEstateValue = assetRecordRepository.sumAmountByAccountIdsAsOfDate(List.of(account.getId()), lastYearEndDate);
-                        if (lastYearRealEstateValue == null) lastYearRealEstateValue = BigDecimal.ZERO;
+                        BigDecimal lastYearRealEstateValue = assetBalanceAsOf(familyId, account.getId(), lastYearEndDate);
 
                         // 查询去年年底房贷余额
-                        BigDecimal lastYearMortgage = liabilityRecordRepository.findLatestByAccountIdBeforeOrOnDate(mortgageAccount.getId(), lastYearEndDate)
-                            .map(LiabilityRecord::getOutstandingBalance)
-                            .orElse(BigDecimal.ZERO);
+                        BigDecimal lastYearMortgage = liabilityBalanceAsOf(familyId, mortgageAccount.getId(), lastYearEndDate);
 
                         // 计算去年净资产
                         BigDecimal lastYearNetWorth = lastYearRealEstateValue.subtract(lastYearMortgage);
@@ -221,8 +223,8 @@ public class InvestmentAnalysisService {
                 } else {
                     // 普通投资账户：直接使用资产记录
                     // 修复：使用指定日期的资产记录，而不是最新记录
-                    BigDecimal accountCurrentAsset = assetRecordRepository.sumAmountByAccountIdsAsOfDate(List.of(account.getId()), currentDate);
-                    if (accountCurrentAsset != null && accountCurrentAsset.compareTo(BigDecimal.ZERO) > 0) {
+                    BigDecimal accountCurrentAsset = assetBalanceAsOf(familyId, account.getId(), currentDate);
+                    if (accountCurrentAsset.compareTo(BigDecimal.ZERO) > 0) {
                         // 只有选择"All"时才转换为USD
                         BigDecimal convertedAmount = "All".equalsIgnoreCase(targetCurrency)
                             ? convertCurrency(accountCurrentAsset, account.getCurrency(), "USD", currentDate)
@@ -231,8 +233,8 @@ public class InvestmentAnalysisService {
                     }
 
                     // 查询去年年底资产
-                    BigDecimal accountLastYearAsset = assetRecordRepository.sumAmountByAccountIdsAsOfDate(List.of(account.getId()), lastYearEndDate);
-                    if (accountLastYearAsset != null && accountLastYearAsset.compareTo(BigDecimal.ZERO) > 0) {
+                    BigDecimal accountLastYearAsset = assetBalanceAsOf(familyId, account.getId(), lastYearEndDate);
+                    if (accountLastYearAsset.compareTo(BigDecimal.ZERO) > 0) {
                         // 只有选择"All"时才转换为USD
                         BigDecimal convertedAmount = "All".equalsIgnoreCase(targetCurrency)
                             ? convertCurrency(accountLastYearAsset, account.getCurrency(), "USD", lastYearEndDate)
@@ -301,13 +303,30 @@ public class InvestmentAnalysisService {
         return amountInUsd.divide(toRate, 2, RoundingMode.HALF_UP);
     }
 
+    /**
+     * 资产账户截至指定日期的余额（家庭余额索引，一个家庭只加载一次记录）
+     */
+    private BigDecimal assetBalanceAsOf(Long familyId, Long accountId, LocalDate asOfDate) {
+        return balanceIndexService.getAssetBalanceAsOf(familyId, accountId, asOfDate)
+            .map(AccountBalanceIndexService.BalancePoint::amount)
+            .orElse(BigDecimal.ZERO);
+    }
+
+    /**
+     * 负债账户截至指定日期的余额（家庭余额索引）
+     */
+    private BigDecimal liabilityBalanceAsOf(Long familyId, Long accountId, LocalDate asOfDate) {
+        return balanceIndexService.getLiabilityBalanceAsOf(familyId, accountId, asOfDate)
+            .map(AccountBalanceIndexService.BalancePoint::amount)
+            .orElse(BigDecimal.ZERO);
+    }
+
     /**
      * 根据familyId获取所有用户ID
      */
     private List<Long> getUserIdsByFamilyId(Long familyId) {
-        // 直接从users表查询该家庭的所有用户ID
-        return userRepository.findAll().stream()
-            .filter(user -> familyId.equals(user.getFamilyId()))
+        // 只查询该家庭的用户，不再加载整张users表
+        return userRepository.findByFamilyId(familyId).stream()
             .map(User::getId)
             .collect(Collectors.toList());
     }
@@ -0,0 +1,369 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.AssetType;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.LiabilityType;
+import com.finance.app.model.NetWorthCubeBuild;
+import com.finance.app.model.NetWorthSnapshotCube;
+import com.finance.app.model.User;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.NetWorthCubeBuildRepository;
+import com.finance.app.repository.NetWorthSnapshotCubeRepository;
+import com.finance.app.repository.RecordBatchInsertRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.ExchangeRateService.ExchangeRateChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 净资产快照汇总（net_worth_snapshot_cube）维护与查询
+ *
+ * 趋势接口按 家庭 × 快照日期 × 资产/负债 × 类型 × 币种 读取预聚合数据，不再回放全部原始记录：
+ * - 家庭首次查询时全量构建（单元格以 JDBC 批处理一次写入），并写入构建标记
+ * - 资产/负债记录写入后只重算该家庭对应日期的单元格（同一事务内合并，提交后每个日期只重算一次）
+ * - 汇率变更后只重算该币种自生效日期起的单元格（同一事务内按币种合并，提交后重算）
+ * - 账户、成员变更后清空该家庭，下次查询时重建
+ *
+ * 增量重算在原事务提交后的新事务中进行，失败不会回滚用户的记录或汇率保存；失败时清空该家庭，下次查询时重建。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NetWorthCubeService {
+
+    private static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    private final NetWorthSnapshotCubeRepository cubeRepository;
+    private final NetWorthCubeBuildRepository cubeBuildRepository;
+    private final RecordBatchInsertRepository batchInsertRepository;
+    private final AssetRecordRepository assetRecordRepository;
+    private final LiabilityRecordRepository liabilityRecordRepository;
+    private final UserRepository userRepository;
+    private final ExchangeRateService exchangeRateService;
+    private final PlatformTransactionManager transactionManager;
+
+    // 每个家庭一个构建锁，避免并发请求重复构建
+    private final Map<Long, Object> buildLocks = new ConcurrentHashMap<>();
+
+    // 当前事务待重算的汇率变更（币种 -> 最早生效日期）的资源键；记录变更以 this 为键
+    private final Object pendingRateChangesKey = new Object();
+
+    /**
+     * 按日期汇总资产或负债的USD金额；typeCodes 为 null 时不按类型过滤
+     */
+    public Map<LocalDate, BigDecimal> getTotalsByDate(Long familyId, String recordKind, Collection<String> typeCodes,
+                                                      LocalDate startDate, LocalDate endDate) {
+        ensureBuilt(familyId);
+
+        List<Object[]> rows;
+        if (typeCodes == null) {
+            rows = cubeRepository.sumUsdByDate(familyId, recordKind, startDate, endDate);
+        } else if (typeCodes.isEmpty()) {
+            return new HashMap<>();
+        } else {
+            rows = cubeRepository.sumUsdByDateAndTypes(familyId, recordKind, typeCodes, startDate, endDate);
+        }
+
+        Map<LocalDate, BigDecimal> totals = new HashMap<>();
+        for (Object[] row : rows) {
+            totals.put((LocalDate) row[0], (BigDecimal) row[1]);
+        }
+        return totals;
+    }
+
+    /**
+     * 资产/负债记录写入后调用（与记录写入处于同一事务），重算受影响日期的单元格
+     *
+     * 同一事务内的变更按 用户 × 日期 合并，在事务提交后统一重算：批量录入同一日期的多个账户时，
+     * 每个家庭的每个日期只重算一次。没有事务时立即重算。
+     */
+    @Transactional
+    public void onRecordChanged(Long userId, LocalDate... recordDates) {
+        if (userId == null) {
+            return;
+        }
+        Map<Long, Set<LocalDate>> changes = pendingChanges();
+        for (LocalDate date : recordDates) {
+            if (date != null) {
+                changes.computeIfAbsent(userId, k -> new TreeSet<>()).add(date);
+            }
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recomputeChanged(changes);
+        }
+    }
+
+    /**
+     * 账户或成员发生变更（类型、启用状态、归属成员等）后调用，清空该家庭的汇总
+     */
+    @Transactional
+    public void invalidateFamily(Long familyId) {
+        if (familyId != null) {
+            cubeBuildRepository.deleteByFamilyId(familyId);
+            cubeRepository.deleteByFamilyId(familyId);
+        }
+    }
+
+    /**
+     * 账户或成员变更后调用，按用户所属家庭清空汇总
+     */
+    @Transactional
+    public void invalidateFamilyOfUser(Long userId) {
+        invalidateFamily(resolveFamilyId(userId));
+    }
+
+    /**
+     * 清空全部汇总（数据恢复等批量变更后使用）
+     */
+    @Transactional
+    public void invalidateAll() {
+        cubeBuildRepository.deleteAllBuilds();
+        cubeRepository.deleteAllCells();
+    }
+
+    /**
+     * 汇率变更后重算该币种自生效日期起的单元格
+     *
+     * 同一事务内的多次变更（如批量获取汇率）按币种合并为最早生效日期，在汇率事务提交后统一重算，
+     * 重算时读到的是已提交的汇率。没有事务时立即重算。
+     */
+    @EventListener
+    public void onExchangeRateChanged(ExchangeRateChangedEvent event) {
+        if (event.currency() == null || event.effectiveDate() == null) {
+            return;
+        }
+        String currency = event.currency().toUpperCase();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            recomputeForRateChanges(Map.of(currency, event.effectiveDate()));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, LocalDate> changes = (Map<String, LocalDate>) TransactionSynchronizationManager.getResource(pendingRateChangesKey);
+        if (changes == null) {
+            Map<String, LocalDate> created = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(pendingRateChangesKey, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recomputeForRateChanges(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingRateChangesKey);
+                }
+            });
+            changes = created;
+        }
+        changes.merge(currency, event.effectiveDate(), (a, b) -> a.isBefore(b) ? a : b);
+    }
+
+    /**
+     * 当前事务待重算的 用户 -> 记录日期；首次调用时注册在提交后重算。没有事务时返回一次性的集合
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Long, Set<LocalDate>> pendingChanges() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new HashMap<>();
+        }
+        Map<Long, Set<LocalDate>> changes = (Map<Long, Set<LocalDate>>) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            Map<Long, Set<LocalDate>> created = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recomputeChanged(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(NetWorthCubeService.this);
+                }
+            });
+            changes = created;
+        }
+        return changes;
+    }
+
+    /**
+     * 按家庭合并各用户的变更日期后，每个家庭在新事务中逐日重算（尚未构建的家庭跳过，首次查询时会全量构建）
+     */
+    private void recomputeChanged(Map<Long, Set<LocalDate>> changes) {
+        Map<Long, Set<LocalDate>> datesByFamily = new HashMap<>();
+        try {
+            newTransaction().executeWithoutResult(status -> changes.forEach((userId, dates) -> {
+                Long familyId = resolveFamilyId(userId);
+                if (familyId != null) {
+                    datesByFamily.computeIfAbsent(familyId, k -> new TreeSet<>()).addAll(dates);
+                }
+            }));
+        } catch (RuntimeException e) {
+            log.error("记录变更后解析家庭失败，跳过净资产快照重算: changes={}", changes, e);
+        }
+        changes.clear();
+        datesByFamily.forEach((familyId, dates) -> recomputeFamily(familyId, () -> {
+            for (LocalDate date : dates) {
+                recompute(familyId, date, date, null);
+            }
+        }));
+    }
+
+    /**
+     * 按币种查询受影响的家庭，每个家庭在新事务中重算该币种自最早生效日期起的单元格
+     * @param changes 币种 -> 最早生效日期
+     */
+    private void recomputeForRateChanges(Map<String, LocalDate> changes) {
+        changes.forEach((currency, fromDate) -> {
+            List<Long> familyIds;
+            try {
+                familyIds = newTransaction().execute(status -> cubeRepository.findFamilyIdsByCurrencySince(currency, fromDate));
+            } catch (RuntimeException e) {
+                log.error("汇率变更后查询受影响家庭失败: currency={}, from={}", currency, fromDate, e);
+                return;
+            }
+            for (Long familyId : familyIds) {
+                recomputeFamily(familyId, () -> recompute(familyId, fromDate, MAX_DATE, currency));
+            }
+            if (!familyIds.isEmpty()) {
+                log.debug("汇率变更重算净资产快照: currency={}, from={}, 家庭数={}", currency, fromDate, familyIds.size());
+            }
+        });
+    }
+
+    /**
+     * 在新事务中重算已构建的家庭；失败时只记录日志并清空该家庭汇总，下次查询时全量重建
+     */
+    private void recomputeFamily(Long familyId, Runnable recompute) {
+        try {
+            newTransaction().executeWithoutResult(status -> {
+                if (cubeBuildRepository.existsById(familyId)) {
+                    recompute.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("重算净资产快照汇总失败，清空该家庭等待下次查询重建: familyId={}", familyId, e);
+            try {
+                newTransaction().executeWithoutResult(status -> invalidateFamily(familyId));
+            } catch (RuntimeException ex) {
+                log.error("清空家庭净资产快照汇总失败: familyId={}", familyId, ex);
+            }
+        }
+    }
+
+    private void ensureBuilt(Long familyId) {
+        if (cubeBuildRepository.existsById(familyId)) {
+            return;
+        }
+        synchronized (buildLocks.computeIfAbsent(familyId, k -> new Object())) {
+            try {
+                newTransaction().executeWithoutResult(status -> {
+                    if (!cubeBuildRepository.existsById(familyId)) {
+                        int cells = recompute(familyId, MIN_DATE, MAX_DATE, null);
+                        cubeBuildRepository.save(new NetWorthCubeBuild(familyId));
+                        log.debug("构建家庭净资产快照汇总: familyId={}, 单元格数={}", familyId, cells);
+                    }
+                });
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                // 多实例同时构建同一家庭时，后提交的一方违反唯一键或死锁回滚，使用先提交一方的结果
+                log.warn("并发构建家庭净资产快照汇总冲突，使用其他实例的构建结果: familyId={}", familyId);
+            }
+        }
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction;
+    }
+
+    /**
+     * 删除并重算 [startDate, endDate] 内的单元格；currency 不为 null 时只处理该币种
+     */
+    private int recompute(Long familyId, LocalDate startDate, LocalDate endDate, String currency) {
+        cubeRepository.deleteCells(familyId, startDate, endDate, currency);
+
+        Map<CellKey, NetWorthSnapshotCube> cells = new HashMap<>();
+        for (AssetRecord record : assetRecordRepository.findForSnapshotCube(familyId, startDate, endDate, currency)) {
+            AssetType type = record.getAccount().getAssetType();
+            accumulate(cells, familyId, NetWorthSnapshotCube.KIND_ASSET, type != null ? type.getType() : null,
+                record.getRecordDate(), record.getCurrency(), record.getAmount());
+        }
+        for (LiabilityRecord record : liabilityRecordRepository.findForSnapshotCube(familyId, startDate, endDate, currency)) {
+            LiabilityType type = record.getAccount().getLiabilityType();
+            accumulate(cells, familyId, NetWorthSnapshotCube.KIND_LIABILITY, type != null ? type.getType() : null,
+                record.getRecordDate(), record.getCurrency(), record.getOutstandingBalance());
+        }
+
+        batchInsertRepository.insertCubeCells(new ArrayList<>(cells.values()));
+        return cells.size();
+    }
+
+    private void accumulate(Map<CellKey, NetWorthSnapshotCube> cells, Long familyId, String recordKind, String typeCode,
+                            LocalDate date, String currency, BigDecimal amount) {
+        String cellCurrency = currency != null ? currency.toUpperCase() : "USD";
+        String cellType = typeCode != null ? typeCode : NetWorthSnapshotCube.TYPE_NONE;
+        BigDecimal original = amount != null ? amount : BigDecimal.ZERO;
+
+        NetWorthSnapshotCube cell = cells.computeIfAbsent(new CellKey(date, recordKind, cellType, cellCurrency), key -> {
+            NetWorthSnapshotCube c = new NetWorthSnapshotCube();
+            c.setFamilyId(familyId);
+            c.setSnapshotDate(date);
+            c.setRecordKind(recordKind);
+            c.setTypeCode(cellType);
+            c.setCurrency(cellCurrency);
+            c.setAmountOriginal(BigDecimal.ZERO);
+            c.setAmountUsd(BigDecimal.ZERO);
+            c.setRecordCount(0);
+            return c;
+        });
+        cell.setAmountOriginal(cell.getAmountOriginal().add(original));
+        cell.setAmountUsd(cell.getAmountUsd().add(toUsd(original, currency, date)));
+        cell.setRecordCount(cell.getRecordCount() + 1);
+    }
+
+    // 与各分析服务的 convertToUSD 保持一致：逐条按记录日期汇率换算并保留两位小数
+    private BigDecimal toUsd(BigDecimal amount, String currency, LocalDate date) {
+        if (currency == null || currency.equalsIgnoreCase("USD")) {
+            return amount;
+        }
+        BigDecimal rate = exchangeRateService.getExchangeRate(currency, date);
+        return amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private Long resolveFamilyId(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return userRepository.findById(userId).map(User::getFamilyId).orElse(null);
+    }
+
+    private record CellKey(LocalDate date, String recordKind, String typeCode, String currency) {
+    }
+}
@@ -2,10 +2,12 @@ package com.finance.app.service;
 
 import com.finance.app.model.PropertyRecord;
 import com.finance.app.repository.PropertyRecordRepository;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +17,9 @@ public class PropertyRecordService {
     @Autowired
     private PropertyRecordRepository propertyRecordRepository;
 
+    @Autowired
+    private AnnualExpenseSummaryService annualExpenseSummaryService;
+
     /**
      * 创建房产记录
      */
@@ -26,7 +31,9 @@ public class PropertyRecordService {
         if (existing.isPresent()) {
             throw new RuntimeException("该资产账户已存在房产记录");
         }
-        return propertyRecordRepository.save(propertyRecord);
+        PropertyRecord saved = propertyRecordRepository.save(propertyRecord);
+        annualExpenseSummaryService.onPropertyChanged(saved.getAssetAccountId(), saved.getPurchaseDate());
+        return saved;
     }
 
     /**
@@ -36,6 +43,7 @@ public class PropertyRecordService {
     public PropertyRecord update(Long id, PropertyRecord propertyRecord) {
         PropertyRecord existing = propertyRecordRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("房产记录不存在"));
+        LocalDate previousPurchaseDate = existing.getPurchaseDate();
 
         // 更新字段
         existing.setPurchaseDate(propertyRecord.getPurchaseDate());
@@ -46,6 +54,8 @@ public class PropertyRecordService {
         existing.setNotes(propertyRecord.getNotes());
 
         PropertyRecord saved = propertyRecordRepository.save(existing);
+        // 购买年份的住房大类调整依赖房产数据，变更前后的年份都需要重算
+        annualExpenseSummaryService.onPropertyChanged(saved.getAssetAccountId(), previousPurchaseDate, saved.getPurchaseDate());
         // 清除关联对象避免序列化问题
         saved.setAssetAccount(null);
         return saved;
@@ -56,7 +66,9 @@ public class PropertyRecordService {
      */
     @Transactional
     public void delete(Long id) {
+        Optional<PropertyRecord> existing = propertyRecordRepository.findById(id);
         propertyRecordRepository.deleteById(id);
+        existing.ifPresent(pr -> annualExpenseSummaryService.onPropertyChanged(pr.getAssetAccountId(), pr.getPurchaseDate()));
     }
 
     /**
@@ -0,0 +1,329 @@
+package com.finance.app.service;
+
+import com.finance.app.model.AssetType;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.IncomeCategoryMajor;
+import com.finance.app.model.IncomeCategoryMinor;
+import com.finance.app.model.LiabilityType;
+import com.finance.app.model.NetAssetCategory;
+import com.finance.app.model.NetAssetCategoryAssetTypeMapping;
+import com.finance.app.model.NetAssetCategoryLiabilityTypeMapping;
+import com.finance.app.repository.AssetTypeRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.IncomeCategoryMajorRepository;
+import com.finance.app.repository.IncomeCategoryMinorRepository;
+import com.finance.app.repository.LiabilityTypeRepository;
+import com.finance.app.repository.NetAssetCategoryAssetTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryLiabilityTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 参考数据缓存：收支分类、资产/负债类型、净资产类别及其类型映射
+ *
+ * 每张表首次访问时整表加载一次，之后按ID/编码在内存中查找，替代循环中逐条的 findById：
+ * - 每张表加载后是不可变的快照，读取方拿到的要么是旧快照、要么是完整的新快照
+ * - 管理端修改后调用 invalidateAfterCommit()：版本号加一并清空所有表，事务结束后再清空一次；
+ *   加载期间版本号发生变化时，加载结果不写入缓存（避免把修改前读到的数据缓存下来）
+ * - 失效只作用于本实例，多副本部署时其他实例的修改靠快照过期（ttl-ms）生效：各表都很小，过期后直接整表重新加载
+ * - 各表的命中/加载次数和当前版本号通过 Micrometer 暴露在 /actuator/metrics 中
+ *
+ * 缓存的实体与持久化上下文分离，只能读取普通字段，不能访问懒加载关联，也不能修改。
+ */
+@Service
+@Slf4j
+public class ReferenceDataCache {
+
+    /** 缓存的参考数据表 */
+    enum Table {
+        EXPENSE_CATEGORY_MAJOR,
+        EXPENSE_CATEGORY_MINOR,
+        INCOME_CATEGORY_MAJOR,
+        INCOME_CATEGORY_MINOR,
+        ASSET_TYPE,
+        LIABILITY_TYPE,
+        NET_ASSET_CATEGORY,
+        NET_ASSET_CATEGORY_ASSET_TYPE_MAPPING,
+        NET_ASSET_CATEGORY_LIABILITY_TYPE_MAPPING
+    }
+
+    private final ExpenseCategoryMajorRepository expenseCategoryMajorRepository;
+    private final ExpenseCategoryMinorRepository expenseCategoryMinorRepository;
+    private final IncomeCategoryMajorRepository incomeCategoryMajorRepository;
+    private final IncomeCategoryMinorRepository incomeCategoryMinorRepository;
+    private final AssetTypeRepository assetTypeRepository;
+    private final LiabilityTypeRepository liabilityTypeRepository;
+    private final NetAssetCategoryRepository netAssetCategoryRepository;
+    private final NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository;
+    private final NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final Map<Table, Rows<?>> tables = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final Map<Table, LongAdder> hits = new EnumMap<>(Table.class);
+    private final Map<Table, LongAdder> loads = new EnumMap<>(Table.class);
+
+    // 每张表快照的有效期，过期后下次访问时重新加载
+    @Value("${reference-data.cache.ttl-ms:30000}")
+    private long ttlMs = 30_000;
+
+    public ReferenceDataCache(ExpenseCategoryMajorRepository expenseCategoryMajorRepository,
+                              ExpenseCategoryMinorRepository expenseCategoryMinorRepository,
+                              IncomeCategoryMajorRepository incomeCategoryMajorRepository,
+                              IncomeCategoryMinorRepository incomeCategoryMinorRepository,
+                              AssetTypeRepository assetTypeRepository,
+                              LiabilityTypeRepository liabilityTypeRepository,
+                              NetAssetCategoryRepository netAssetCategoryRepository,
+                              NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository,
+                              NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
+        this.expenseCategoryMajorRepository = expenseCategoryMajorRepository;
+        this.expenseCategoryMinorRepository = expenseCategoryMinorRepository;
+        this.incomeCategoryMajorRepository = incomeCategoryMajorRepository;
+        this.incomeCategoryMinorRepository = incomeCategoryMinorRepository;
+        this.assetTypeRepository = assetTypeRepository;
+        this.liabilityTypeRepository = liabilityTypeRepository;
+        this.netAssetCategoryRepository = netAssetCategoryRepository;
+        this.assetTypeMappingRepository = assetTypeMappingRepository;
+        this.liabilityTypeMappingRepository = liabilityTypeMappingRepository;
+        this.meterRegistry = meterRegistry;
+        for (Table table : Table.values()) {
+            hits.put(table, new LongAdder());
+            loads.put(table, new LongAdder());
+        }
+    }
+
+    // ==================== 支出分类 ====================
+
+    public Optional<ExpenseCategoryMajor> findExpenseMajor(Long id) {
+        return Optional.ofNullable(expenseMajors().byId.get(id));
+    }
+
+    public Optional<ExpenseCategoryMajor> findExpenseMajorByCode(String code) {
+        return expenseMajors().all.stream().filter(major -> Objects.equals(major.getCode(), code)).findFirst();
+    }
+
+    public Optional<ExpenseCategoryMinor> findExpenseMinor(Long id) {
+        return Optional.ofNullable(rows(Table.EXPENSE_CATEGORY_MINOR,
+            expenseCategoryMinorRepository::findAll, ExpenseCategoryMinor::getId).byId.get(id));
+    }
+
+    private Rows<ExpenseCategoryMajor> expenseMajors() {
+        return rows(Table.EXPENSE_CATEGORY_MAJOR, expenseCategoryMajorRepository::findAll, ExpenseCategoryMajor::getId);
+    }
+
+    // ==================== 收入分类 ====================
+
+    public Optional<IncomeCategoryMajor> findIncomeMajor(Long id) {
+        return Optional.ofNullable(incomeMajors().byId.get(id));
+    }
+
+    public Optional<IncomeCategoryMajor> findIncomeMajorByName(String name) {
+        return incomeMajors().all.stream().filter(major -> Objects.equals(major.getName(), name)).findFirst();
+    }
+
+    public Optional<IncomeCategoryMinor> findIncomeMinor(Long id) {
+        return Optional.ofNullable(rows(Table.INCOME_CATEGORY_MINOR,
+            incomeCategoryMinorRepository::findAll, IncomeCategoryMinor::getId).byId.get(id));
+    }
+
+    private Rows<IncomeCategoryMajor> incomeMajors() {
+        return rows(Table.INCOME_CATEGORY_MAJOR, incomeCategoryMajorRepository::findAll, IncomeCategoryMajor::getId);
+    }
+
+    // ==================== 资产/负债类型 ====================
+
+    /**
+     * 所有资产类型，按显示顺序排列
+     */
+    public List<AssetType> getAssetTypes() {
+        return rows(Table.ASSET_TYPE, assetTypeRepository::findAllByOrderByDisplayOrderAsc, AssetType::getId).all;
+    }
+
+    /**
+     * 所有负债类型，按显示顺序排列
+     */
+    public List<LiabilityType> getLiabilityTypes() {
+        return rows(Table.LIABILITY_TYPE, liabilityTypeRepository::findAllByOrderByDisplayOrderAsc, LiabilityType::getId).all;
+    }
+
+    // ==================== 净资产类别 ====================
+
+    /**
+     * 所有净资产类别，按显示顺序排列
+     */
+    public List<NetAssetCategory> getNetAssetCategories() {
+        return netAssetCategories().all;
+    }
+
+    public Optional<NetAssetCategory> findNetAssetCategoryByCode(String code) {
+        return netAssetCategories().all.stream().filter(category -> Objects.equals(category.getCode(), code)).findFirst();
+    }
+
+    /**
+     * 净资产类别ID -> 资产类型映射
+     */
+    public Map<Long, List<NetAssetCategoryAssetTypeMapping>> getAssetTypeMappings() {
+        return rows(Table.NET_ASSET_CATEGORY_ASSET_TYPE_MAPPING, assetTypeMappingRepository::findAll,
+            NetAssetCategoryAssetTypeMapping::getId).groupBy(NetAssetCategoryAssetTypeMapping::getNetAssetCategoryId);
+    }
+
+    /**
+     * 净资产类别ID -> 负债类型映射
+     */
+    public Map<Long, List<NetAssetCategoryLiabilityTypeMapping>> getLiabilityTypeMappings() {
+        return rows(Table.NET_ASSET_CATEGORY_LIABILITY_TYPE_MAPPING, liabilityTypeMappingRepository::findAll,
+            NetAssetCategoryLiabilityTypeMapping::getId).groupBy(NetAssetCategoryLiabilityTypeMapping::getNetAssetCategoryId);
+    }
+
+    public List<NetAssetCategoryAssetTypeMapping> getAssetTypeMappings(Long netAssetCategoryId) {
+        return getAssetTypeMappings().getOrDefault(netAssetCategoryId, List.of());
+    }
+
+    public List<NetAssetCategoryLiabilityTypeMapping> getLiabilityTypeMappings(Long netAssetCategoryId) {
+        return getLiabilityTypeMappings().getOrDefault(netAssetCategoryId, List.of());
+    }
+
+    private Rows<NetAssetCategory> netAssetCategories() {
+        return rows(Table.NET_ASSET_CATEGORY, netAssetCategoryRepository::findAllByOrderByDisplayOrderAsc, NetAssetCategory::getId);
+    }
+
+    // ==================== 失效与监控 ====================
+
+    /**
+     * 当前版本号（每次失效加一）
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 清空所有表，下次访问时重新加载
+     */
+    public void invalidate() {
+        synchronized (tables) {
+            version.incrementAndGet();
+            tables.clear();
+        }
+    }
+
+    /**
+     * 立即清空缓存，并在事务结束后再清空一次，避免提交前（或回滚前）重新加载的数据留在缓存中
+     */
+    public void invalidateAfterCommit() {
+        invalidate();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate();
+                }
+            });
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerMetrics() {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return;
+        }
+        for (Table table : Table.values()) {
+            String tableName = table.name().toLowerCase();
+            FunctionCounter.builder("reference.data.cache.requests", hits.get(table), LongAdder::sum)
+                .description("参考数据缓存访问次数（hit：命中缓存，load：从数据库加载）")
+                .tags("table", tableName, "result", "hit")
+                .register(registry);
+            FunctionCounter.builder("reference.data.cache.requests", loads.get(table), LongAdder::sum)
+                .description("参考数据缓存访问次数（hit：命中缓存，load：从数据库加载）")
+                .tags("table", tableName, "result", "load")
+                .register(registry);
+        }
+        Gauge.builder("reference.data.cache.version", version, AtomicLong::get)
+            .description("参考数据缓存版本号（管理端修改后递增）")
+            .register(registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Rows<T> rows(Table table, Supplier<List<T>> loader, Function<T, Long> idOf) {
+        Rows<T> cached = (Rows<T>) tables.get(table);
+        if (cached != null && isFresh(cached)) {
+            hits.get(table).increment();
+            return cached;
+        }
+
+        loads.get(table).increment();
+        long loadVersion = version.get();
+        Rows<T> loaded = new Rows<>(loader.get(), idOf);
+        synchronized (tables) {
+            if (version.get() == loadVersion) {
+                Rows<T> existing = (Rows<T>) tables.get(table);
+                if (existing != null && existing != cached && isFresh(existing)) {
+                    return existing;
+                }
+                tables.put(table, loaded);
+            }
+        }
+        log.debug("加载参考数据: table={}, rows={}, version={}", table, loaded.all.size(), loadVersion);
+        return loaded;
+    }
+
+    private boolean isFresh(Rows<?> rows) {
+        return System.currentTimeMillis() - rows.loadedAt < ttlMs;
+    }
+
+    /**
+     * 单张表的不可变快照：加载顺序的全部行 + 按ID索引（分组索引按需构建一次）
+     */
+    private static final class Rows<T> {
+        private final List<T> all;
+        private final Map<Long, T> byId;
+        private final long loadedAt = System.currentTimeMillis();
+        private volatile Map<Long, List<T>> grouped;
+
+        private Rows(List<T> rows, Function<T, Long> idOf) {
+            this.all = Collections.unmodifiableList(new ArrayList<>(rows));
+            Map<Long, T> index = new HashMap<>();
+            for (T row : rows) {
+                index.put(idOf.apply(row), row);
+            }
+            this.byId = Collections.unmodifiableMap(index);
+        }
+
+        private Map<Long, List<T>> groupBy(Function<T, Long> keyOf) {
+            Map<Long, List<T>> result = grouped;
+            if (result == null) {
+                result = Collections.unmodifiableMap(all.stream().collect(Collectors.groupingBy(keyOf)));
+                grouped = result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.finance.app.service;
+
+import com.google.api.services.sheets.v4.model.Request;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 年度报表工作表的写入目标
+ *
+ * 各工作表的构建逻辑只依赖这三个操作，同一份行数据既可以暂存后提交到 Google Sheets，
+ * 也可以直接写成本地的 CSV / XLSX 文件。
+ */
+public interface ReportSheetWriter {
+
+    /**
+     * 开始一个工作表，返回其ID（格式请求中引用）
+     */
+    Integer addSheet(String title);
+
+    /**
+     * 从 A1 开始写入工作表数据
+     */
+    void writeData(String title, List<List<Object>> values) throws IOException;
+
+    /**
+     * 写入当前工作表的格式请求（不支持格式的目标可以忽略）
+     */
+    void formatCells(List<Request> requests);
+}
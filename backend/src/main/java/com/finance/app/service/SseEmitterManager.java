@@ -1,85 +1,257 @@
 package com.finance.app.service;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SSE连接管理器
  * 管理Google Sheets同步任务的SSE连接
+ *
+ * 每个任务可以有任意多个订阅者（多个浏览器标签页），事件广播给全部订阅者。
+ * 事件流以同步任务ID为标识；批量导出的汇总进度使用独立的批次事件流（见 batchStream）。
+ * 进度事件按最小间隔合并：间隔内的多次更新只发送最后一次；完成/失败事件发送前先补发待合并的进度。
+ * 每个任务保留最近的若干事件（带递增的事件ID），断线重连的客户端按 Last-Event-ID 补发遗漏的事件；
+ * 任务结束后事件保留一段时间，之后才连接的客户端也能收到最终结果。
+ * 所有连接定期收到心跳注释，及时发现已断开的连接，也避免代理因空闲断开长连接。
+ * 事件在 stream 锁内记录并入队（附带当时的订阅者），在锁外按顺序发送：慢连接只拖慢发送，
+ * 不会阻塞同一事件流的进度更新、订阅和心跳。
  */
 @Service
 @Slf4j
 public class SseEmitterManager {
 
-    // syncId -> SseEmitter
-    private final Map<Long, SseEmitter> emitters = new ConcurrentHashMap<>();
+    /** SSE连接超时：60分钟（足够长，避免数据量大时任务未完成就超时） */
+    private static final long EMITTER_TIMEOUT_MS = 60 * 60 * 1000L;
+
+    /** 浏览器断线后重连的等待时间 */
+    private static final long RECONNECT_DELAY_MS = 2000L;
+
+    private static final String BATCH_STREAM_PREFIX = "batch-";
+
+    @Value("${sse.progress-interval-ms:250}")
+    private long progressIntervalMs = 250;
+
+    @Value("${sse.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs = 15000;
+
+    @Value("${sse.replay-buffer-size:32}")
+    private int replayBufferSize = 32;
+
+    @Value("${sse.retention-minutes:10}")
+    private long retentionMinutes = 10;
+
+    // 事件流标识（同步任务ID / 批次） -> 事件流
+    private final Map<String, JobStream> streams = new ConcurrentHashMap<>();
+
+    /** 事件ID：以启动时间为起点递增，重启后新事件的ID仍大于客户端保存的 Last-Event-ID */
+    private final AtomicLong eventSequence = new AtomicLong(System.currentTimeMillis());
+
+    private final ScheduledExecutorService scheduler;
+
+    public SseEmitterManager() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sse-");
+        threadFactory.setDaemon(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.scheduler.scheduleWithFixedDelay(this::heartbeat, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
 
     /**
-     * 创建SSE连接
+     * 订阅任务进度
+     * 先发送 connected 事件，再补发 lastEventId 之后的事件（首次连接且任务已结束时发送最终结果）；
+     * 任务已结束时补发后直接关闭连接
      * @param syncId 同步任务ID
+     * @param lastEventId 客户端最后收到的事件ID（首次连接为 null）
+     * @param connectedData connected 事件的内容（当前状态）
      * @return SseEmitter
      */
-    public SseEmitter createEmitter(Long syncId) {
-        // 60分钟超时（足够长，避免数据量大时任务未完成就超时）
-        SseEmitter emitter = new SseEmitter(60 * 60 * 1000L);
+    public SseEmitter subscribe(Long syncId, String lastEventId, Map<String, Object> connectedData) {
+        return subscribe(String.valueOf(syncId), lastEventId, connectedData);
+    }
 
-        emitter.onCompletion(() -> {
-            log.info("SSE连接完成: syncId={}", syncId);
-            removeEmitter(syncId);
-        });
+    /**
+     * 订阅任意事件流（例如批量导出的汇总进度）
+     * @param key 事件流标识，见 batchStream
+     */
+    public SseEmitter subscribe(String key, String lastEventId, Map<String, Object> connectedData) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        while (true) {
+            JobStream stream = streams.computeIfAbsent(key, id -> new JobStream());
+            synchronized (stream) {
+                if (stream.removed) {
+                    // 事件流刚好被清理，重新创建
+                    continue;
+                }
+                emitter.onCompletion(() -> stream.unsubscribe(emitter));
+                emitter.onTimeout(() -> {
+                    log.debug("SSE连接超时: stream={}", key);
+                    stream.unsubscribe(emitter);
+                });
+                emitter.onError(e -> {
+                    log.debug("SSE连接错误: stream={}, error={}", key, e.getMessage());
+                    stream.unsubscribe(emitter);
+                });
 
-        emitter.onTimeout(() -> {
-            log.warn("SSE连接超时: syncId={}", syncId);
-            removeEmitter(syncId);
-        });
+                try {
+                    emitter.send(SseEmitter.event()
+                        .name("connected")
+                        .reconnectTime(RECONNECT_DELAY_MS)
+                        .data(connectedData));
+                    int replayed = 0;
+                    if (lastEventId != null && !lastEventId.isBlank()) {
+                        long after = parseEventId(lastEventId);
+                        for (StreamEvent event : stream.events) {
+                            if (event.id() > after) {
+                                send(emitter, event);
+                                replayed++;
+                            }
+                        }
+                    } else if (stream.finished && !stream.events.isEmpty()) {
+                        // 首次连接时任务已结束：只发送最终结果
+                        send(emitter, stream.events.peekLast());
+                        replayed++;
+                    }
+                    if (stream.finished) {
+                        emitter.complete();
+                    } else {
+                        stream.subscribers.add(emitter);
+                    }
+                    log.info("订阅SSE进度: stream={}, 补发事件{}个, 当前订阅数={}",
+                        key, replayed, stream.subscribers.size());
+                } catch (IOException | IllegalStateException e) {
+                    log.debug("SSE订阅时连接已断开: stream={}", key);
+                    emitter.completeWithError(e);
+                }
+                return emitter;
+            }
+        }
+    }
 
-        emitter.onError((e) -> {
-            log.error("SSE连接错误: syncId={}", syncId, e);
-            removeEmitter(syncId);
-        });
+    /**
+     * 任务重新排队：清除上一次执行的事件，订阅者等待新的进度
+     */
+    public void reset(Long syncId) {
+        reset(String.valueOf(syncId));
+    }
+
+    public void reset(String key) {
+        JobStream stream = streams.get(key);
+        if (stream != null) {
+            synchronized (stream) {
+                stream.events.clear();
+                stream.pendingProgress = null;
+                stream.finished = false;
+                stream.touch();
+            }
+        }
+    }
+
+    /**
+     * 任务是否已经推送过完成或失败事件（且仍在保留期内）
+     */
+    public boolean isFinished(Long syncId) {
+        return isFinished(String.valueOf(syncId));
+    }
+
+    public boolean isFinished(String key) {
+        JobStream stream = streams.get(key);
+        return stream != null && stream.finished;
+    }
 
-        emitters.put(syncId, emitter);
-        log.info("创建SSE连接: syncId={}, 当前连接数={}", syncId, emitters.size());
+    /**
+     * 批量导出汇总进度的事件流标识（与同步任务ID不会重复）
+     */
+    public static String batchStream(String batchId) {
+        return BATCH_STREAM_PREFIX + batchId;
+    }
 
-        return emitter;
+    /**
+     * 批次事件流对应的批次ID，不是批次事件流时返回 null
+     */
+    public static String batchIdOf(String key) {
+        return key.startsWith(BATCH_STREAM_PREFIX) ? key.substring(BATCH_STREAM_PREFIX.length()) : null;
     }
 
     /**
-     * 发送进度更新
+     * 有订阅者且尚未结束的事件流（导出队列据此把其他实例执行的任务进度转发给本实例的订阅者）
+     */
+    public List<String> activeStreams() {
+        List<String> keys = new ArrayList<>();
+        streams.forEach((key, stream) -> {
+            synchronized (stream) {
+                if (!stream.finished && !stream.subscribers.isEmpty()) {
+                    keys.add(key);
+                }
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * 发送进度更新（按最小间隔合并）
      * @param syncId 同步任务ID
      * @param progress 进度（0-100）
      * @param status 状态
      * @param message 消息
      */
     public void sendProgress(Long syncId, int progress, String status, String message) {
-        SseEmitter emitter = emitters.get(syncId);
-        if (emitter != null) {
-            try {
-                Map<String, Object> data = Map.of(
-                    "syncId", syncId,
-                    "progress", progress,
-                    "status", status,
-                    "message", message,
-                    "timestamp", System.currentTimeMillis()
-                );
-
-                emitter.send(SseEmitter.event()
-                    .name("progress")
-                    .data(data));
-
-                log.info("发送进度更新: syncId={}, progress={}, status={}, message={}", syncId, progress, status, message);
-            } catch (IOException e) {
-                log.error("发送SSE消息失败: syncId={}", syncId, e);
-                removeEmitter(syncId);
+        Map<String, Object> data = Map.of(
+            "syncId", syncId,
+            "progress", progress,
+            "status", status,
+            "message", message,
+            "timestamp", System.currentTimeMillis()
+        );
+
+        sendProgress(String.valueOf(syncId), data);
+    }
+
+    /**
+     * 发送进度事件（按最小间隔合并）
+     * @param key 事件流标识
+     * @param data 事件内容
+     */
+    public void sendProgress(String key, Map<String, Object> data) {
+        JobStream stream = streams.computeIfAbsent(key, id -> new JobStream());
+        synchronized (stream) {
+            if (stream.finished) {
+                return;
             }
-        } else {
-            log.warn("未找到SSE连接，无法发送进度: syncId={}, progress={}", syncId, progress);
+            long now = System.currentTimeMillis();
+            long wait = stream.lastProgressAt + progressIntervalMs - now;
+            if (wait > 0 || stream.pendingProgress != null) {
+                // 间隔内的更新只保留最新一次，到期后统一发送
+                boolean scheduled = stream.pendingProgress != null;
+                stream.pendingProgress = data;
+                if (!scheduled) {
+                    scheduler.schedule(() -> flushProgress(key, stream), Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            stream.lastProgressAt = now;
+            publish(stream, "progress", data, false);
         }
+        deliver(key, stream);
     }
 
     /**
@@ -89,33 +261,16 @@ public class SseEmitterManager {
      * @param spreadsheetId 电子表格ID
      */
     public void sendSuccess(Long syncId, String shareUrl, String spreadsheetId) {
-        SseEmitter emitter = emitters.get(syncId);
-        if (emitter != null) {
-            try {
-                Map<String, Object> data = Map.of(
-                    "syncId", syncId,
-                    "progress", 100,
-                    "status", "COMPLETED",
-                    "shareUrl", shareUrl,
-                    "spreadsheetId", spreadsheetId,
-                    "message", "同步完成",
-                    "timestamp", System.currentTimeMillis()
-                );
-
-                emitter.send(SseEmitter.event()
-                    .name("complete")
-                    .data(data));
-
-                log.info("发送完成消息: syncId={}", syncId);
-
-                // 发送完成后关闭连接
-                emitter.complete();
-            } catch (IOException e) {
-                log.error("发送完成消息失败: syncId={}", syncId, e);
-            } finally {
-                removeEmitter(syncId);
-            }
-        }
+        Map<String, Object> data = Map.of(
+            "syncId", syncId,
+            "progress", 100,
+            "status", "COMPLETED",
+            "shareUrl", shareUrl,
+            "spreadsheetId", spreadsheetId,
+            "message", "同步完成",
+            "timestamp", System.currentTimeMillis()
+        );
+        finish(String.valueOf(syncId), "complete", data);
     }
 
     /**
@@ -124,45 +279,202 @@ public class SseEmitterManager {
      * @param errorMessage 错误信息
      */
     public void sendError(Long syncId, String errorMessage) {
-        SseEmitter emitter = emitters.get(syncId);
-        if (emitter != null) {
-            try {
-                Map<String, Object> data = Map.of(
-                    "syncId", syncId,
-                    "status", "FAILED",
-                    "errorMessage", errorMessage,
-                    "message", "同步失败",
-                    "timestamp", System.currentTimeMillis()
-                );
-
-                emitter.send(SseEmitter.event()
-                    .name("error")
-                    .data(data));
-
-                log.info("发送错误消息: syncId={}, error={}", syncId, errorMessage);
-
-                // 发送错误后关闭连接
-                emitter.complete();
-            } catch (IOException e) {
-                log.error("发送错误消息失败: syncId={}", syncId, e);
-            } finally {
-                removeEmitter(syncId);
+        Map<String, Object> data = Map.of(
+            "syncId", syncId,
+            "status", "FAILED",
+            "errorMessage", errorMessage != null ? errorMessage : "未知错误",
+            "message", "同步失败",
+            "timestamp", System.currentTimeMillis()
+        );
+        finish(String.valueOf(syncId), "error", data);
+    }
+
+    /**
+     * 获取当前连接数
+     */
+    public int getActiveConnectionCount() {
+        return streams.values().stream().mapToInt(stream -> stream.subscribers.size()).sum();
+    }
+
+    /**
+     * 推送最终事件并关闭全部订阅；已结束的事件流不重复推送
+     * @param key 事件流标识
+     * @param name 事件名称（complete / error）
+     */
+    public void finish(String key, String name, Map<String, Object> data) {
+        JobStream stream = streams.computeIfAbsent(key, id -> new JobStream());
+        synchronized (stream) {
+            if (stream.finished) {
+                return;
+            }
+            if (stream.pendingProgress != null) {
+                publish(stream, "progress", stream.pendingProgress, false);
+                stream.pendingProgress = null;
             }
+            // 最终事件发送后关闭这些订阅
+            publish(stream, name, data, true);
+            stream.finished = true;
+            stream.subscribers.clear();
         }
+        deliver(key, stream);
+        log.info("事件流结束: stream={}, event={}", key, name);
+    }
+
+    private void flushProgress(String key, JobStream stream) {
+        synchronized (stream) {
+            if (stream.pendingProgress == null || stream.finished) {
+                return;
+            }
+            stream.lastProgressAt = System.currentTimeMillis();
+            publish(stream, "progress", stream.pendingProgress, false);
+            stream.pendingProgress = null;
+        }
+        deliver(key, stream);
     }
 
     /**
-     * 移除连接
+     * 记录事件，并连同当前订阅者放入待发送队列（调用方持有 stream 锁，释放锁后调用 deliver）
+     * 之后才订阅的连接通过补发收到该事件，不会重复
+     * @param complete 发送后关闭这些订阅（最终事件）
      */
-    private void removeEmitter(Long syncId) {
-        emitters.remove(syncId);
-        log.info("移除SSE连接: syncId={}, 剩余连接数={}", syncId, emitters.size());
+    private void publish(JobStream stream, String name, Map<String, Object> data, boolean complete) {
+        StreamEvent event = new StreamEvent(eventSequence.incrementAndGet(), name, data);
+        stream.events.addLast(event);
+        while (stream.events.size() > replayBufferSize) {
+            stream.events.removeFirst();
+        }
+        stream.touch();
+        stream.outbox.addLast(new Delivery(event, List.copyOf(stream.subscribers), complete));
     }
 
     /**
-     * 获取当前连接数
+     * 在 stream 锁外发送待发送队列中的事件
+     * 同一事件流同时只有一个线程发送，保证事件顺序；其他线程入队后直接返回，由正在发送的线程一并发出
      */
-    public int getActiveConnectionCount() {
-        return emitters.size();
+    private void deliver(String key, JobStream stream) {
+        synchronized (stream) {
+            if (stream.delivering) {
+                return;
+            }
+            stream.delivering = true;
+        }
+        while (true) {
+            Delivery delivery;
+            synchronized (stream) {
+                delivery = stream.outbox.pollFirst();
+                if (delivery == null) {
+                    stream.delivering = false;
+                    return;
+                }
+            }
+            List<SseEmitter> broken = new ArrayList<>();
+            for (SseEmitter emitter : delivery.subscribers()) {
+                try {
+                    send(emitter, delivery.event());
+                    if (delivery.complete()) {
+                        emitter.complete();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    broken.add(emitter);
+                }
+            }
+            if (!broken.isEmpty()) {
+                stream.removeSubscribers(broken);
+                log.debug("移除已断开的SSE连接: stream={}, 数量={}", key, broken.size());
+            }
+            log.debug("发送SSE事件: stream={}, event={}, 订阅数={}",
+                key, delivery.event().name(), delivery.subscribers().size());
+        }
+    }
+
+    private static void send(SseEmitter emitter, StreamEvent event) throws IOException {
+        emitter.send(SseEmitter.event()
+            .id(String.valueOf(event.id()))
+            .name(event.name())
+            .reconnectTime(RECONNECT_DELAY_MS)
+            .data(event.data()));
+    }
+
+    /**
+     * 定时任务：按心跳间隔向所有连接发送注释，并清理超过保留期的事件流
+     */
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        long retentionMs = TimeUnit.MINUTES.toMillis(retentionMinutes);
+        streams.forEach((key, stream) -> {
+            List<SseEmitter> subscribers;
+            synchronized (stream) {
+                if (stream.subscribers.isEmpty()) {
+                    if (now - stream.lastActivityAt > retentionMs) {
+                        stream.removed = true;
+                        streams.remove(key, stream);
+                    }
+                    return;
+                }
+                if (now - stream.lastHeartbeatAt < heartbeatIntervalMs) {
+                    return;
+                }
+                stream.lastHeartbeatAt = now;
+                subscribers = List.copyOf(stream.subscribers);
+            }
+            List<SseEmitter> broken = new ArrayList<>();
+            for (SseEmitter emitter : subscribers) {
+                try {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    broken.add(emitter);
+                }
+            }
+            if (!broken.isEmpty()) {
+                stream.removeSubscribers(broken);
+            }
+        });
+    }
+
+    private static long parseEventId(String lastEventId) {
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            // 无法识别的事件ID：补发缓冲区中的全部事件
+            return 0L;
+        }
+    }
+
+    private record StreamEvent(long id, String name, Map<String, Object> data) {
+    }
+
+    /**
+     * 待发送的事件及入队时的订阅者
+     */
+    private record Delivery(StreamEvent event, List<SseEmitter> subscribers, boolean complete) {
+    }
+
+    /**
+     * 单个任务的订阅者和最近事件（字段在 synchronized(stream) 中访问）
+     */
+    private static class JobStream {
+        final List<SseEmitter> subscribers = new ArrayList<>();
+        final Deque<StreamEvent> events = new ArrayDeque<>();
+        final Deque<Delivery> outbox = new ArrayDeque<>();
+        Map<String, Object> pendingProgress;
+        boolean delivering;
+        boolean finished;
+        boolean removed;
+        long lastProgressAt;
+        long lastHeartbeatAt = System.currentTimeMillis();
+        long lastActivityAt = System.currentTimeMillis();
+
+        void touch() {
+            lastActivityAt = System.currentTimeMillis();
+        }
+
+        synchronized void unsubscribe(SseEmitter emitter) {
+            subscribers.remove(emitter);
+            touch();
+        }
+
+        synchronized void removeSubscribers(List<SseEmitter> broken) {
+            subscribers.removeAll(broken);
+        }
     }
 }
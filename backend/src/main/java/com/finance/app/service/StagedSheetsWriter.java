@@ -0,0 +1,263 @@
+package com.finance.app.service;
+
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.sheets.v4.model.AddSheetRequest;
+import com.google.api.services.sheets.v4.model.DeleteSheetRequest;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.SheetProperties;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分阶段写入的 Google Sheets 导出器
+ *
+ * 各工作表的构建过程只把新增工作表、清空区域、单元格数据和格式请求暂存在内存中，
+ * 最后由 flush() 按 新增工作表 → 批量清空 → values.batchUpdate → spreadsheets.batchUpdate 的顺序提交。
+ * 单次请求超过大小限制时自动拆分，请求次数只随数据量增长，与工作表个数无关。
+ *
+ * 新工作表的ID在本地分配（在已有最大ID之上递增），构建格式请求时无需先调用 API 创建工作表。
+ * 格式请求归属于最近一次 addSheet 的工作表，因此可以按工作表计算内容指纹或整体撤回。
+ * 一个实例只对应一次导出，不是线程安全的。
+ */
+@Slf4j
+public class StagedSheetsWriter implements ReportSheetWriter {
+
+    /** 单次 values.batchUpdate 写入的最大单元格数（控制请求体在 API 建议的 2MB 以内） */
+    static final int MAX_CELLS_PER_VALUES_BATCH = 50_000;
+
+    /** 单次 spreadsheets.batchUpdate 包含的最大请求数 */
+    static final int MAX_REQUESTS_PER_BATCH_UPDATE = 500;
+
+    private final GoogleSheetsService googleSheetsService;
+    private final String spreadsheetId;
+
+    private final Map<String, Integer> sheetIds;
+    private final Set<String> existingTitles;
+    private int nextSheetId;
+    private String currentTitle;
+
+    private final List<Request> addSheetRequests = new ArrayList<>();
+    private final List<String> clearRanges = new ArrayList<>();
+    private final List<StagedValues> stagedValues = new ArrayList<>();
+    private final List<StagedFormat> formatRequests = new ArrayList<>();
+    private final List<Request> deleteSheetRequests = new ArrayList<>();
+
+    public StagedSheetsWriter(GoogleSheetsService googleSheetsService, String spreadsheetId)
+            throws IOException, GeneralSecurityException {
+        this.googleSheetsService = googleSheetsService;
+        this.spreadsheetId = spreadsheetId;
+        this.sheetIds = new HashMap<>(googleSheetsService.getSheetIds(spreadsheetId));
+        this.existingTitles = new HashSet<>(sheetIds.keySet());
+        this.nextSheetId = sheetIds.values().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+    }
+
+    /**
+     * 获取工作表ID，不存在时登记一个新增请求（如果已存在则返回现有的）
+     */
+    @Override
+    public Integer addSheet(String title) {
+        currentTitle = title;
+        Integer existing = sheetIds.get(title);
+        if (existing != null) {
+            return existing;
+        }
+        int sheetId = nextSheetId++;
+        sheetIds.put(title, sheetId);
+        addSheetRequests.add(new Request().setAddSheet(new AddSheetRequest()
+            .setProperties(new SheetProperties().setSheetId(sheetId).setTitle(title))));
+        return sheetId;
+    }
+
+    /**
+     * 清空已存在工作表的内容（不存在时跳过）
+     */
+    public void clearSheet(String title) {
+        if (existingTitles.contains(title)) {
+            clearRanges.add(quote(title));
+        } else {
+            log.warn("工作表不存在，跳过清空: {}", title);
+        }
+    }
+
+    /**
+     * 从 A1 开始写入工作表数据
+     */
+    @Override
+    public void writeData(String title, List<List<Object>> values) {
+        stagedValues.add(new StagedValues(title, values));
+    }
+
+    /**
+     * 暂存格式请求（归属于当前工作表）
+     */
+    @Override
+    public void formatCells(List<Request> requests) {
+        formatRequests.add(new StagedFormat(currentTitle, new ArrayList<>(requests)));
+    }
+
+    /**
+     * 工作表在本次导出开始前是否已存在
+     */
+    public boolean hasSheet(String title) {
+        return existingTitles.contains(title);
+    }
+
+    /**
+     * 已暂存的某个工作表内容（单元格数据 + 格式请求）的 SHA-256 指纹
+     */
+    public String contentFingerprint(String title) {
+        StringBuilder content = new StringBuilder();
+        for (StagedValues staged : stagedValues) {
+            if (!staged.title().equals(title)) {
+                continue;
+            }
+            for (List<Object> row : staged.values()) {
+                for (Object cell : row) {
+                    content.append(cell).append('\t');
+                }
+                content.append('\n');
+            }
+        }
+        try {
+            for (StagedFormat staged : formatRequests) {
+                if (title.equals(staged.title())) {
+                    for (Request request : staged.requests()) {
+                        content.append(GsonFactory.getDefaultInstance().toString(request)).append('\n');
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("格式请求序列化失败: " + title, e);
+        }
+        return ExportWatermarkService.sha256(content.toString());
+    }
+
+    /**
+     * 撤回某个已存在工作表的全部暂存写入（清空、数据、格式），表格中保留原有内容
+     */
+    public void discardTab(String title) {
+        clearRanges.remove(quote(title));
+        stagedValues.removeIf(staged -> staged.title().equals(title));
+        formatRequests.removeIf(staged -> title.equals(staged.title()));
+    }
+
+    /**
+     * 删除已存在的工作表（在所有新增工作表之后执行，保证表格中至少保留一个工作表）
+     */
+    public void deleteSheet(String title) {
+        if (existingTitles.contains(title)) {
+            deleteSheetRequests.add(new Request().setDeleteSheet(new DeleteSheetRequest().setSheetId(sheetIds.get(title))));
+        }
+    }
+
+    /**
+     * 提交所有暂存的写入
+     * @return 实际发出的 API 请求次数
+     */
+    public int flush() throws IOException, GeneralSecurityException {
+        int calls = 0;
+
+        for (List<Request> chunk : partition(addSheetRequests, MAX_REQUESTS_PER_BATCH_UPDATE)) {
+            googleSheetsService.formatCells(spreadsheetId, chunk);
+            calls++;
+        }
+        if (!clearRanges.isEmpty()) {
+            googleSheetsService.batchClear(spreadsheetId, new ArrayList<>(clearRanges));
+            calls++;
+        }
+        for (List<ValueRange> batch : partitionValues()) {
+            googleSheetsService.batchWriteData(spreadsheetId, batch);
+            calls++;
+        }
+        List<Request> requests = new ArrayList<>();
+        formatRequests.forEach(staged -> requests.addAll(staged.requests()));
+        requests.addAll(deleteSheetRequests);
+        for (List<Request> chunk : partition(requests, MAX_REQUESTS_PER_BATCH_UPDATE)) {
+            googleSheetsService.formatCells(spreadsheetId, chunk);
+            calls++;
+        }
+
+        log.info("导出写入完成: 新增工作表{}个, 数据区域{}个, 格式请求{}个, API请求{}次",
+            addSheetRequests.size(), stagedValues.size(), requests.size() - deleteSheetRequests.size(), calls);
+
+        addSheetRequests.clear();
+        clearRanges.clear();
+        stagedValues.clear();
+        formatRequests.clear();
+        deleteSheetRequests.clear();
+        existingTitles.addAll(sheetIds.keySet());
+        return calls;
+    }
+
+    /**
+     * 按单元格数把暂存数据分组；单个工作表超过上限时按行拆成多个区域
+     */
+    private List<List<ValueRange>> partitionValues() {
+        List<List<ValueRange>> batches = new ArrayList<>();
+        List<ValueRange> current = new ArrayList<>();
+        int currentCells = 0;
+
+        for (StagedValues staged : stagedValues) {
+            List<List<Object>> rows = staged.values();
+            int start = 0;
+            while (start < rows.size()) {
+                // 取尽可能多的行放进当前批次（至少一行）
+                int end = start;
+                int cells = 0;
+                while (end < rows.size()) {
+                    int rowCells = Math.max(1, rows.get(end).size());
+                    if (end > start && currentCells + cells + rowCells > MAX_CELLS_PER_VALUES_BATCH) {
+                        break;
+                    }
+                    cells += rowCells;
+                    end++;
+                }
+                if (!current.isEmpty() && currentCells + cells > MAX_CELLS_PER_VALUES_BATCH) {
+                    batches.add(current);
+                    current = new ArrayList<>();
+                    currentCells = 0;
+                    continue;
+                }
+                current.add(new ValueRange()
+                    .setRange(quote(staged.title()) + "!A" + (start + 1))
+                    .setValues(rows.subList(start, end)));
+                currentCells += cells;
+                start = end;
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    private static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) {
+            chunks.add(new ArrayList<>(items.subList(i, Math.min(items.size(), i + size))));
+        }
+        return chunks;
+    }
+
+    /**
+     * A1 表示法中的工作表名称（单引号包裹，内部单引号转义）
+     */
+    private static String quote(String title) {
+        return "'" + title.replace("'", "''") + "'";
+    }
+
+    private record StagedValues(String title, List<List<Object>> values) {
+    }
+
+    private record StagedFormat(String title, List<Request> requests) {
+    }
+}
@@ -17,6 +17,8 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final NetWorthCubeService netWorthCubeService;
+    private final AccountBalanceIndexService balanceIndexService;
 
     public List<User> getAllUsers() {
         return userRepository.findAll();
@@ -82,6 +84,10 @@ public class UserService {
 
         // isActive 只允许管理员修改（通过用户管理页面）
         if (userDetails.getIsActive() != null) {
+            if (!userDetails.getIsActive().equals(user.getIsActive())) {
+                netWorthCubeService.invalidateFamily(user.getFamilyId());
+                balanceIndexService.invalidateFamily(user.getFamilyId());
+            }
             user.setIsActive(userDetails.getIsActive());
         }
 
@@ -99,6 +105,8 @@ public class UserService {
         // 软删除：标记为不活跃
         user.setIsActive(false);
         userRepository.save(user);
+        netWorthCubeService.invalidateFamily(user.getFamilyId());
+        balanceIndexService.invalidateFamily(user.getFamilyId());
     }
 
     /**
@@ -0,0 +1,202 @@
+package com.finance.app.service;
+
+import com.google.api.services.sheets.v4.model.Request;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 把年度报表写成 XLSX 工作簿（每个工作表一个 sheet）
+ *
+ * 直接生成 SpreadsheetML：writeData 把行流式写入 xl/worksheets/sheetN.xml 后立即关闭条目，
+ * 文本使用内联字符串（不需要在内存中汇总共享字符串表），数字写为数值单元格；
+ * 工作簿目录和关系文件在 finish() 时写入。格式请求被忽略。
+ * 一个实例对应一个输出流，不是线程安全的。
+ */
+public class XlsxReportWriter implements ReportSheetWriter {
+
+    /** Excel 工作表名称的最大长度 */
+    static final int MAX_SHEET_NAME_LENGTH = 31;
+
+    private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+    private final ZipOutputStream zip;
+    private final Writer writer;
+    private final List<String> sheetNames = new ArrayList<>();
+    private final Set<String> usedNames = new HashSet<>();
+    private String sheetPrefix = "";
+    private int nextSheetId = 1;
+
+    public XlsxReportWriter(OutputStream out) {
+        this.zip = new ZipOutputStream(out);
+        this.writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 之后写入的工作表名称加上前缀（一个工作簿包含多个家庭或年份时区分同名工作表）
+     */
+    public void beginReport(String sheetPrefix) {
+        this.sheetPrefix = sheetPrefix;
+    }
+
+    @Override
+    public Integer addSheet(String title) {
+        return nextSheetId++;
+    }
+
+    @Override
+    public void writeData(String title, List<List<Object>> values) throws IOException {
+        sheetNames.add(sheetName(sheetPrefix + title));
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        writer.write(XML_HEADER);
+        writer.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>");
+        for (int r = 0; r < values.size(); r++) {
+            List<Object> row = values.get(r);
+            writer.write("<row r=\"" + (r + 1) + "\">");
+            for (int c = 0; c < row.size(); c++) {
+                writeCell(columnName(c) + (r + 1), row.get(c));
+            }
+            writer.write("</row>");
+        }
+        writer.write("</sheetData></worksheet>");
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    @Override
+    public void formatCells(List<Request> requests) {
+        // 只导出数据，不转换 Google Sheets 格式请求
+    }
+
+    /**
+     * 写入工作簿目录并结束 ZIP（不关闭底层输出流）
+     */
+    public void finish() throws IOException {
+        if (sheetNames.isEmpty()) {
+            writeData("Sheet1", List.of());
+        }
+
+        StringBuilder contentTypes = new StringBuilder(XML_HEADER)
+            .append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">")
+            .append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+            .append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+            .append("<Override PartName=\"/xl/workbook.xml\" ")
+            .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+        StringBuilder workbook = new StringBuilder(XML_HEADER)
+            .append("<workbook xmlns=\"").append(MAIN_NS).append("\" xmlns:r=\"").append(REL_NS).append("\"><sheets>");
+        StringBuilder workbookRels = new StringBuilder(XML_HEADER)
+            .append("<Relationships xmlns=\"").append(PACKAGE_REL_NS).append("\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            contentTypes.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ")
+                .append("ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            workbook.append("<sheet name=\"").append(escape(sheetNames.get(i - 1)))
+                .append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+            workbookRels.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(REL_NS)
+                .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+        }
+        contentTypes.append("</Types>");
+        workbook.append("</sheets></workbook>");
+        workbookRels.append("</Relationships>");
+
+        writeEntry("[Content_Types].xml", contentTypes.toString());
+        writeEntry("_rels/.rels", XML_HEADER + "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+            + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+            + "</Relationships>");
+        writeEntry("xl/workbook.xml", workbook.toString());
+        writeEntry("xl/_rels/workbook.xml.rels", workbookRels.toString());
+        zip.finish();
+    }
+
+    private void writeCell(String ref, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Number number) {
+            String text = CsvZipReportWriter.cellText(number);
+            if (!text.equals("NaN") && !text.contains("Infinity")) {
+                writer.write("<c r=\"" + ref + "\"><v>" + text + "</v></c>");
+                return;
+            }
+        }
+        String text = value.toString();
+        if (text.isEmpty()) {
+            return;
+        }
+        writer.write("<c r=\"" + ref + "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+        writer.write(escape(text));
+        writer.write("</t></is></c>");
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        writer.write(content);
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    /**
+     * 合法且不重复的工作表名称：去掉 Excel 不允许的字符，截断到31个字符，重名时追加序号
+     */
+    private String sheetName(String title) {
+        String base = title.replaceAll("[\\\\/?*:\\[\\]]", "_");
+        if (base.isBlank()) {
+            base = "Sheet";
+        }
+        String name = truncate(base, MAX_SHEET_NAME_LENGTH);
+        for (int n = 2; !usedNames.add(name.toLowerCase()); n++) {
+            String suffix = "(" + n + ")";
+            name = truncate(base, MAX_SHEET_NAME_LENGTH - suffix.length()) + suffix;
+        }
+        return name;
+    }
+
+    private static String truncate(String text, int length) {
+        return text.length() <= length ? text : text.substring(0, length);
+    }
+
+    /**
+     * 列号（从0开始）转换为 A、B、…、Z、AA …
+     */
+    static String columnName(int index) {
+        StringBuilder name = new StringBuilder();
+        for (int n = index + 1; n > 0; n = (n - 1) / 26) {
+            name.insert(0, (char) ('A' + (n - 1) % 26));
+        }
+        return name.toString();
+    }
+
+    /**
+     * XML 转义，并去掉 XML 1.0 不允许的控制字符
+     */
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> {
+                    if (ch >= 0x20 || ch == '\t' || ch == '\n' || ch == '\r') {
+                        escaped.append(ch);
+                    }
+                }
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -6,11 +6,16 @@ import com.finance.app.dto.TrendDataDTO;
 import com.finance.app.dto.TrendDataPointDTO;
 import com.finance.app.model.AssetAccount;
 import com.finance.app.model.AssetRecord;
+import com.finance.app.model.NetWorthSnapshotCube;
 import com.finance.app.model.User;
 import com.finance.app.repository.AssetAccountRepository;
 import com.finance.app.repository.AssetRecordRepository;
 import com.finance.app.repository.UserRepository;
+import com.finance.app.service.AccountBalanceIndexService;
+import com.finance.app.service.AccountBalanceIndexService.BalancePoint;
 import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.FamilySnapshot;
+import com.finance.app.service.NetWorthCubeService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -28,6 +33,8 @@ public class AssetAnalysisService {
     private final AssetRecordRepository recordRepository;
     private final UserRepository userRepository;
     private final ExchangeRateService exchangeRateService;
+    private final AccountBalanceIndexService balanceIndexService;
+    private final NetWorthCubeService netWorthCubeService;
 
     // 获取资产总览
     public AssetSummaryDTO getAssetSummary(Long userId) {
@@ -64,6 +71,16 @@ public class AssetAnalysisService {
             accounts = accountRepository.findByIsActiveTrue();
         }
 
+        return summarize(accounts, familyId, asOfDate, includePrimaryResidence, currency);
+    }
+
+    // 基于仪表盘快照计算资产总览（不含自住房，换算为USD）
+    public AssetSummaryDTO getAssetSummary(FamilySnapshot snapshot, LocalDate asOfDate) {
+        return summarize(snapshot.assetAccounts(), snapshot.familyId(), asOfDate, false, "All");
+    }
+
+    private AssetSummaryDTO summarize(List<AssetAccount> accounts, Long familyId, LocalDate asOfDate,
+                                      boolean includePrimaryResidence, String currency) {
         // 货币筛选：如果不是"All"，则只包含指定货币的账户
         if (!"All".equalsIgnoreCase(currency)) {
             accounts = accounts.stream()
@@ -83,26 +100,26 @@ public class AssetAnalysisService {
             }
 
             // 根据asOfDate获取记录
-            Optional<AssetRecord> record = getAssetRecordAsOfDate(account.getId(), asOfDate);
+            Optional<BalancePoint> record = getAssetRecordAsOfDate(familyId, account.getId(), asOfDate);
             if (record.isPresent()) {
                 // 使用查询日期的汇率重新计算金额，而不是使用记录时的amountInBaseCurrency
-                AssetRecord assetRecord = record.get();
+                BalancePoint assetRecord = record.get();
                 BigDecimal amount;
                 if ("All".equalsIgnoreCase(currency)) {
                     // All模式：转换为USD
                     amount = convertToUSD(
-                        assetRecord.getAmount(),
-                        assetRecord.getCurrency(),
-                        asOfDate != null ? asOfDate : assetRecord.getRecordDate()
+                        assetRecord.amount(),
+                        assetRecord.currency(),
+                        asOfDate != null ? asOfDate : assetRecord.recordDate()
                     );
                 } else {
                     // 单货币模式：使用原始金额，不转换
-                    amount = assetRecord.getAmount();
+                    amount = assetRecord.amount();
                 }
                 totalAssets = totalAssets.add(amount);
 
                 // 追踪实际使用的最新数据日期
-                LocalDate recordDate = record.get().getRecordDate();
+                LocalDate recordDate = record.get().recordDate();
                 if (actualDate == null || recordDate.isAfter(actualDate)) {
                     actualDate = recordDate;
                 }
@@ -304,23 +321,32 @@ public class AssetAnalysisService {
         LocalDate startDate = LocalDate.parse(startDateStr);
         LocalDate endDate = LocalDate.parse(endDateStr);
 
-        // 获取该类型的所有资产账户
-        List<AssetAccount> accounts;
-        if (familyId != null) {
-            // 获取该家庭所有成员的账户
-            List<User> familyMembers = userRepository.findByFamilyIdAndIsActiveTrue(familyId);
-            List<Long> userIds = familyMembers.stream().map(User::getId).collect(Collectors.toList());
-            accounts = accountRepository.findByUserIdInAndIsActiveTrue(userIds);
-        } else {
-            accounts = accountRepository.findByIsActiveTrue();
+        // 家庭维度直接读取净资产快照汇总
+        Map<LocalDate, BigDecimal> totalByDate = familyId != null
+            ? netWorthCubeService.getTotalsByDate(familyId, NetWorthSnapshotCube.KIND_ASSET, List.of(categoryType), startDate, endDate)
+            : sumRecordsByDate(categoryType, startDate, endDate);
+
+        // 转换为DTO列表
+        List<TrendDataPointDTO> result = new ArrayList<>();
+        for (Map.Entry<LocalDate, BigDecimal> entry : totalByDate.entrySet()) {
+            TrendDataPointDTO point = new TrendDataPointDTO();
+            point.setDate(entry.getKey().toString());
+            point.setTotal(entry.getValue());
+            result.add(point);
         }
 
-        // 过滤出匹配类型的账户
-        List<AssetAccount> filteredAccounts = accounts.stream()
+        // 按日期排序
+        result.sort(Comparator.comparing(TrendDataPointDTO::getDate));
+
+        return result;
+    }
+
+    // 按记录日期汇总指定类型所有活跃账户的USD金额（未指定家庭时使用）
+    private Map<LocalDate, BigDecimal> sumRecordsByDate(String categoryType, LocalDate startDate, LocalDate endDate) {
+        List<AssetAccount> filteredAccounts = accountRepository.findByIsActiveTrue().stream()
             .filter(acc -> acc.getAssetType() != null && categoryType.equals(acc.getAssetType().getType()))
             .collect(Collectors.toList());
 
-        // 获取日期范围内的记录并按日期汇总
         Map<LocalDate, BigDecimal> totalByDate = new HashMap<>();
         for (AssetAccount account : filteredAccounts) {
             List<AssetRecord> records = recordRepository.findByAccountIdAndRecordDateBetweenOrderByRecordDateDesc(
@@ -335,20 +361,7 @@ public class AssetAnalysisService {
                 totalByDate.merge(record.getRecordDate(), amount, BigDecimal::add);
             }
         }
-
-        // 转换为DTO列表
-        List<TrendDataPointDTO> result = new ArrayList<>();
-        for (Map.Entry<LocalDate, BigDecimal> entry : totalByDate.entrySet()) {
-            TrendDataPointDTO point = new TrendDataPointDTO();
-            point.setDate(entry.getKey().toString());
-            point.setTotal(entry.getValue());
-            result.add(point);
-        }
-
-        // 按日期排序
-        result.sort(Comparator.comparing(TrendDataPointDTO::getDate));
-
-        return result;
+        return totalByDate;
     }
 
     // 获取指定类型和日期的资产账户及其余额
@@ -371,13 +384,13 @@ public class AssetAnalysisService {
         // 获取每个账户在指定日期的余额
         List<Map<String, Object>> result = new ArrayList<>();
         for (AssetAccount account : filteredAccounts) {
-            Optional<AssetRecord> record = getAssetRecordAsOfDate(account.getId(), asOfDate);
+            Optional<BalancePoint> record = getAssetRecordAsOfDate(familyId, account.getId(), asOfDate);
             if (record.isPresent()) {
-                AssetRecord assetRecord = record.get();
+                BalancePoint assetRecord = record.get();
                 BigDecimal balance = convertToUSD(
-                    assetRecord.getAmount(),
-                    assetRecord.getCurrency(),
-                    asOfDate != null ? asOfDate : assetRecord.getRecordDate()
+                    assetRecord.amount(),
+                    assetRecord.currency(),
+                    asOfDate != null ? asOfDate : assetRecord.recordDate()
                 );
                 Map<String, Object> accountData = new HashMap<>();
                 accountData.put("accountName", account.getAccountName());
@@ -450,16 +463,17 @@ public class AssetAnalysisService {
         return result;
     }
 
-    // 获取指定日期或之前最近的资产记录
-    private Optional<AssetRecord> getAssetRecordAsOfDate(Long accountId, LocalDate asOfDate) {
-        if (asOfDate == null) {
+    // 获取指定日期或之前最近的资产记录（有familyId时走家庭余额索引）
+    private Optional<BalancePoint> getAssetRecordAsOfDate(Long familyId, Long accountId, LocalDate asOfDate) {
+        if (familyId != null) {
+            return balanceIndexService.getAssetBalanceAsOf(familyId, accountId, asOfDate);
+        }
+        Optional<AssetRecord> record = asOfDate == null
             // 如果没有指定日期，获取最新记录
-            return recordRepository.findLatestByAccountId(accountId);
-        } else {
+            ? recordRepository.findLatestByAccountId(accountId)
             // 获取指定日期或之前最近的记录
-            List<AssetRecord> records = recordRepository.findByAccountIdAndRecordDateBeforeOrEqual(accountId, asOfDate);
-            return records.isEmpty() ? Optional.empty() : Optional.of(records.get(0));
-        }
+            : recordRepository.findLatestByAccountIdBeforeOrOnDate(accountId, asOfDate);
+        return record.map(r -> new BalancePoint(r.getAccountId(), r.getRecordDate(), r.getAmount(), r.getCurrency()));
     }
 
     /**
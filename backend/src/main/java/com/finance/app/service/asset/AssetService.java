@@ -7,8 +7,13 @@ import com.finance.app.model.AssetAccount;
 import com.finance.app.model.AssetRecord;
 import com.finance.app.repository.AssetAccountRepository;
 import com.finance.app.repository.AssetRecordRepository;
-import com.finance.app.repository.AssetTypeRepository;
+import com.finance.app.service.AccountBalanceIndexService;
+import com.finance.app.service.AccountLatestRecordService;
+import com.finance.app.service.AnnualSummaryRefreshScheduler;
 import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.NetWorthCubeService;
+import com.finance.app.service.ReferenceDataCache;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -28,17 +33,22 @@ import java.util.stream.Collectors;
 public class AssetService {
 
     private final AssetAccountRepository accountRepository;
-    private final AssetTypeRepository assetTypeRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final AssetRecordRepository recordRepository;
     private final com.finance.app.repository.UserRepository userRepository;
     private final com.finance.app.repository.LiabilityAccountRepository liabilityAccountRepository;
     private final ExchangeRateService exchangeRateService;
     private final com.finance.app.service.DataProtectionService dataProtectionService;
+    private final AccountBalanceIndexService balanceIndexService;
+    private final AccountLatestRecordService latestRecordService;
+    private final NetWorthCubeService netWorthCubeService;
+    private final AnnualExpenseSummaryService annualExpenseSummaryService;
+    private final AnnualSummaryRefreshScheduler annualSummaryRefreshScheduler;
 
     // ========== Asset Type Operations ==========
 
     public List<com.finance.app.model.AssetType> getAllAssetTypes() {
-        return assetTypeRepository.findAllByOrderByDisplayOrderAsc();
+        return referenceDataCache.getAssetTypes();
     }
 
     // ========== Account Operations ==========
@@ -67,18 +77,7 @@ public class AssetService {
         Map<Long, AssetRecord> latestRecordMap = recordRepository.findLatestByAccountIds(accountIds)
                 .stream().collect(Collectors.toMap(AssetRecord::getAccountId, r -> r, (a, b) -> a));
 
-        // 3. 批量加载汇率 (按 currency+date 去重)
-        Map<String, BigDecimal> exchangeRateCache = new HashMap<>();
-        latestRecordMap.values().forEach(record -> {
-            String currency = record.getCurrency();
-            LocalDate date = record.getRecordDate();
-            if (currency != null && !currency.equalsIgnoreCase("USD") && date != null) {
-                String key = currency + ":" + date;
-                exchangeRateCache.computeIfAbsent(key, k -> exchangeRateService.getExchangeRate(currency, date));
-            }
-        });
-
-        // 4. 批量加载关联负债账户
+        // 3. 批量加载关联负债账户
         Set<Long> linkedIds = accounts.stream()
                 .map(AssetAccount::getLinkedLiabilityAccountId)
                 .filter(id -> id != null)
@@ -121,8 +120,7 @@ public class AssetService {
                 dto.setLatestAmount(latest.getAmount());
                 dto.setLatestRecordDate(latest.getRecordDate());
                 if (latest.getAmount() != null && latest.getCurrency() != null) {
-                    String key = latest.getCurrency() + ":" + latest.getRecordDate();
-                    BigDecimal rate = exchangeRateCache.getOrDefault(key, BigDecimal.ONE);
+                    BigDecimal rate = exchangeRateService.getExchangeRate(latest.getCurrency(), latest.getRecordDate());
                     dto.setLatestAmountInBaseCurrency(latest.getAmount().multiply(rate));
                 }
             }
@@ -149,6 +147,12 @@ public class AssetService {
     @Transactional
     public AssetAccount updateAccount(Long accountId, AssetAccount accountDetails) {
         AssetAccount account = getAccountById(accountId);
+        // 类型、归属成员变化会影响净资产快照汇总和余额索引，变更前后的家庭都需要重建
+        netWorthCubeService.invalidateFamilyOfUser(account.getUserId());
+        netWorthCubeService.invalidateFamilyOfUser(accountDetails.getUserId());
+        balanceIndexService.invalidateFamilyOfUser(account.getUserId());
+        balanceIndexService.invalidateFamilyOfUser(accountDetails.getUserId());
+        Long previousUserId = account.getUserId();
         account.setUserId(accountDetails.getUserId());
         account.setAssetTypeId(accountDetails.getAssetTypeId());
         account.setAccountName(accountDetails.getAccountName());
@@ -157,7 +161,15 @@ public class AssetService {
         account.setCurrency(accountDetails.getCurrency());
         account.setNotes(accountDetails.getNotes());
         account.setTaxStatus(accountDetails.getTaxStatus());
-        return accountRepository.save(account);
+        AssetAccount saved = accountRepository.save(account);
+        // 类型、币种、归属成员变化会影响年度支出汇总的资产/负债调整
+        annualExpenseSummaryService.onAccountChanged(previousUserId);
+        annualSummaryRefreshScheduler.onAccountChanged(previousUserId);
+        if (!previousUserId.equals(saved.getUserId())) {
+            annualExpenseSummaryService.onAccountChanged(saved.getUserId());
+            annualSummaryRefreshScheduler.onAccountChanged(saved.getUserId());
+        }
+        return saved;
     }
 
     @Transactional
@@ -175,6 +187,10 @@ public class AssetService {
             // 如果有记录，只能标记为inactive（软删除）
             account.setIsActive(false);
             accountRepository.save(account);
+            netWorthCubeService.invalidateFamily(familyId);
+            balanceIndexService.invalidateFamily(familyId);
+            annualExpenseSummaryService.onAccountChanged(account.getUserId());
+            annualSummaryRefreshScheduler.onAccountChanged(account.getUserId());
         } else {
             // 如果没有记录，可以真正删除
             accountRepository.delete(account);
@@ -200,6 +216,11 @@ public class AssetService {
         record.setUserId(account.getUserId());
 
         AssetRecord savedRecord = recordRepository.save(record);
+        latestRecordService.refreshAssetAccount(savedRecord.getAccountId());
+        netWorthCubeService.onRecordChanged(savedRecord.getUserId(), savedRecord.getRecordDate());
+        annualExpenseSummaryService.onBalanceRecordChanged(savedRecord.getUserId(), savedRecord.getRecordDate());
+        annualSummaryRefreshScheduler.onBalanceRecordChanged(savedRecord.getUserId(), savedRecord.getRecordDate());
+        balanceIndexService.invalidateFamilyOfUser(savedRecord.getUserId());
         return convertToRecordDTO(savedRecord);
     }
 
@@ -213,6 +234,7 @@ public class AssetService {
     public AssetRecordDTO updateRecord(Long recordId, AssetRecord recordDetails) {
         AssetRecord record = recordRepository.findById(recordId)
                 .orElseThrow(() -> new RuntimeException("Record not found with id: " + recordId));
+        LocalDate previousDate = record.getRecordDate();
 
         record.setRecordDate(recordDetails.getRecordDate());
         record.setAmount(recordDetails.getAmount());
@@ -221,6 +243,11 @@ public class AssetService {
         record.setNotes(recordDetails.getNotes());
 
         AssetRecord updatedRecord = recordRepository.save(record);
+        latestRecordService.refreshAssetAccount(updatedRecord.getAccountId());
+        netWorthCubeService.onRecordChanged(updatedRecord.getUserId(), previousDate, updatedRecord.getRecordDate());
+        annualExpenseSummaryService.onBalanceRecordChanged(updatedRecord.getUserId(), previousDate, updatedRecord.getRecordDate());
+        annualSummaryRefreshScheduler.onBalanceRecordChanged(updatedRecord.getUserId(), previousDate, updatedRecord.getRecordDate());
+        balanceIndexService.invalidateFamilyOfUser(updatedRecord.getUserId());
         return convertToRecordDTO(updatedRecord);
     }
 
@@ -234,6 +261,11 @@ public class AssetService {
         dataProtectionService.validateDeleteOperation(familyId, "删除资产记录");
 
         recordRepository.deleteById(recordId);
+        latestRecordService.refreshAssetAccount(record.getAccountId());
+        netWorthCubeService.onRecordChanged(record.getUserId(), record.getRecordDate());
+        annualExpenseSummaryService.onBalanceRecordChanged(record.getUserId(), record.getRecordDate());
+        annualSummaryRefreshScheduler.onBalanceRecordChanged(record.getUserId(), record.getRecordDate());
+        balanceIndexService.invalidateFamilyOfUser(record.getUserId());
     }
 
     // 检查哪些账户在指定日期已有记录
@@ -350,6 +382,11 @@ public class AssetService {
 
             // 保存记录
             AssetRecord saved = recordRepository.save(record);
+            latestRecordService.refreshAssetAccount(saved.getAccountId());
+            netWorthCubeService.onRecordChanged(saved.getUserId(), saved.getRecordDate());
+            annualExpenseSummaryService.onBalanceRecordChanged(saved.getUserId(), saved.getRecordDate());
+            annualSummaryRefreshScheduler.onBalanceRecordChanged(saved.getUserId(), saved.getRecordDate());
+            balanceIndexService.invalidateFamilyOfUser(saved.getUserId());
             savedRecords.add(saved);
         }
 
@@ -0,0 +1,996 @@
+package com.finance.app.service.expense;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.finance.app.model.AnnualExpenseSummary;
+import com.finance.app.model.AnnualFinancialSummary;
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.PropertyRecord;
+import com.finance.app.model.User;
+import com.finance.app.repository.AnnualExpenseSummaryRepository;
+import com.finance.app.repository.AnnualFinancialSummaryRepository;
+import com.finance.app.repository.AssetAccountRepository;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.ExpenseRecordRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.PropertyRecordRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.ExchangeRateService.ExchangeRateChangedEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * 年度支出汇总（annual_expense_summary）计算引擎，取代存储过程 calculate_annual_expense_summary_v3
+ *
+ * 计算口径与存储过程一致：
+ * - 支出按记录所在年份年末汇率折算为USD，单笔 >= 10000 USD 计入特殊支出
+ * - 生成小类行、大类小计行（实际支出 = 基础 + 特殊 ± 资产/负债调整）和总计行
+ * - 当年购买房产时住房大类按购房口径调整，其余大类按 expense_category_adjustment_config 配置调整
+ *
+ * 维护方式：
+ * - 支出记录写入后只重算受影响大类的小类行和大类行（保留大类行已有的调整），再汇总总计行
+ * - 资产/负债记录、房产、账户或上年财务摘要变更后只重算受影响年份的调整部分
+ * - 汇率变更在事务提交后合并处理，只全量重算受该币种影响的年份
+ * - rebuild 全量重算某家庭某年；verify 在内存中全量计算并与已存数据逐行比对，用于核对增量结果
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AnnualExpenseSummaryService {
+
+    static final BigDecimal SPECIAL_EXPENSE_THRESHOLD = new BigDecimal("10000");
+
+    private static final String HOUSING_CATEGORY_CODE = "HOUSING";
+    private static final String SUMMARY_CURRENCY = "USD";
+    private static final String PROPERTY_PURCHASE = "PROPERTY_PURCHASE";
+
+    // verify 比较 JSON 时数值按大小比较（100 与 100.00 视为相同）
+    private static final Comparator<JsonNode> NUMERIC_AWARE = (a, b) -> {
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue());
+        }
+        return a.equals(b) ? 0 : 1;
+    };
+
+    private final AnnualExpenseSummaryRepository summaryRepository;
+    private final ExpenseRecordRepository expenseRecordRepository;
+    private final ExpenseCategoryMajorRepository majorCategoryRepository;
+    private final ExpenseCategoryMinorRepository minorCategoryRepository;
+    private final AssetRecordRepository assetRecordRepository;
+    private final LiabilityRecordRepository liabilityRecordRepository;
+    private final AssetAccountRepository assetAccountRepository;
+    private final PropertyRecordRepository propertyRecordRepository;
+    private final AnnualFinancialSummaryRepository financialSummaryRepository;
+    private final UserRepository userRepository;
+    private final ExchangeRateService exchangeRateService;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+
+    /** 事务内待处理变更的资源键：汇率变更（币种 -> 最早年份）、余额变更（用户 -> 最早记录日期） */
+    private final Object pendingRateChangesKey = new Object();
+    private final Object pendingBalanceChangesKey = new Object();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 全量重算某家庭某年的汇总（删除后重新生成）
+     */
+    @Transactional
+    public void rebuild(Long familyId, Integer year) {
+        summaryRepository.deleteByFamilyIdAndSummaryYear(familyId, year);
+        // 先执行删除，避免新行与旧行的唯一键冲突
+        summaryRepository.flush();
+
+        List<AnnualExpenseSummary> rows = compute(familyId, year);
+        summaryRepository.saveAll(rows);
+        log.debug("全量计算年度支出汇总: familyId={}, year={}, 行数={}", familyId, year, rows.size());
+    }
+
+    /**
+     * 在内存中全量计算并与已存的汇总逐行比对，返回差异描述（为空表示一致），不修改数据
+     */
+    @Transactional(readOnly = true)
+    public List<String> verify(Long familyId, Integer year) {
+        Map<String, AnnualExpenseSummary> expected = new TreeMap<>();
+        for (AnnualExpenseSummary row : compute(familyId, year)) {
+            expected.put(rowLabel(row), row);
+        }
+        Map<String, AnnualExpenseSummary> stored = new TreeMap<>();
+        for (AnnualExpenseSummary row : summaryRepository.findByFamilyIdAndSummaryYear(familyId, year)) {
+            stored.put(rowLabel(row), row);
+        }
+
+        List<String> differences = new ArrayList<>();
+        for (Map.Entry<String, AnnualExpenseSummary> entry : expected.entrySet()) {
+            AnnualExpenseSummary actual = stored.remove(entry.getKey());
+            if (actual == null) {
+                differences.add(entry.getKey() + ": 缺少汇总行");
+            } else {
+                compareRow(entry.getKey(), entry.getValue(), actual, differences);
+            }
+        }
+        for (String label : stored.keySet()) {
+            differences.add(label + ": 多余的汇总行");
+        }
+        return differences;
+    }
+
+    /**
+     * 支出记录写入后调用（与记录写入处于同一事务），按大类增量重算该年度汇总
+     */
+    @Transactional
+    public void onExpenseRecordsChanged(Long familyId, Integer year, Collection<Long> majorCategoryIds) {
+        if (familyId == null || year == null || majorCategoryIds.isEmpty()) {
+            return;
+        }
+        List<AnnualExpenseSummary> existing = summaryRepository.findByFamilyIdAndSummaryYear(familyId, year);
+        if (existing.isEmpty()) {
+            // 该年度尚无汇总，直接全量计算（包含调整部分）
+            rebuild(familyId, year);
+            return;
+        }
+
+        Map<Long, AnnualExpenseSummary> majorRows = new TreeMap<>();
+        Map<Long, Map<Long, AnnualExpenseSummary>> minorRows = new HashMap<>();
+        AnnualExpenseSummary totalRow = null;
+        for (AnnualExpenseSummary row : existing) {
+            if (row.getMajorCategoryId() == null) {
+                totalRow = row;
+            } else if (row.getMinorCategoryId() == null) {
+                majorRows.put(row.getMajorCategoryId(), row);
+            } else {
+                minorRows.computeIfAbsent(row.getMajorCategoryId(), k -> new HashMap<>())
+                    .put(row.getMinorCategoryId(), row);
+            }
+        }
+
+        Set<Long> majorIds = new TreeSet<>(majorCategoryIds);
+        Map<Long, List<ExpenseRecord>> recordsByMajor = groupByMajor(
+            expenseRecordRepository.findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(familyId, year, majorIds));
+        Map<String, BigDecimal> rates = exchangeRateService.getExchangeRatesAsOf(yearEnd(year));
+        Long housingCategoryId = housingCategoryId();
+
+        boolean adjustmentsStale = false;
+        for (Long majorId : majorIds) {
+            MajorSlice slice = summarizeMajor(familyId, year, majorId,
+                recordsByMajor.getOrDefault(majorId, List.of()), rates);
+
+            Map<Long, AnnualExpenseSummary> oldMinors = minorRows.getOrDefault(majorId, new HashMap<>());
+            for (AnnualExpenseSummary minor : slice.minorRows()) {
+                AnnualExpenseSummary old = oldMinors.remove(minor.getMinorCategoryId());
+                if (old == null) {
+                    summaryRepository.save(minor);
+                } else {
+                    old.setUserId(minor.getUserId());
+                    old.setBaseExpenseAmount(minor.getBaseExpenseAmount());
+                    old.setActualExpenseAmount(minor.getActualExpenseAmount());
+                }
+            }
+            summaryRepository.deleteAll(oldMinors.values());
+
+            AnnualExpenseSummary oldMajor = majorRows.get(majorId);
+            AnnualExpenseSummary newMajor = slice.majorRow();
+            if (newMajor == null) {
+                if (oldMajor != null) {
+                    summaryRepository.delete(oldMajor);
+                    majorRows.remove(majorId);
+                }
+            } else if (oldMajor == null) {
+                majorRows.put(majorId, summaryRepository.save(newMajor));
+                adjustmentsStale = true; // 新出现的大类需要套用调整配置
+            } else {
+                // 已有调整对实际支出的影响保持不变
+                BigDecimal adjustmentEffect = oldMajor.getActualExpenseAmount()
+                    .subtract(oldMajor.getBaseExpenseAmount())
+                    .subtract(nullToZero(oldMajor.getSpecialExpenseAmount()));
+                oldMajor.setUserId(newMajor.getUserId());
+                oldMajor.setBaseExpenseAmount(newMajor.getBaseExpenseAmount());
+                oldMajor.setSpecialExpenseAmount(newMajor.getSpecialExpenseAmount());
+                oldMajor.setSpecialExpenseDetails(newMajor.getSpecialExpenseDetails());
+                oldMajor.setActualExpenseAmount(newMajor.getActualExpenseAmount().add(adjustmentEffect));
+            }
+
+            // 购房年份的住房调整依赖当年房贷支出合计
+            if (majorId.equals(housingCategoryId) && majorRows.containsKey(majorId)) {
+                adjustmentsStale = true;
+            }
+        }
+
+        if (adjustmentsStale) {
+            applyAdjustments(familyId, year, majorRows);
+        }
+        saveTotal(familyId, year, totalRow, majorRows.values());
+    }
+
+    /**
+     * 资产/负债记录写入后调用，重算记录日期所在年份及以后已有汇总的调整部分
+     *
+     * 同一事务内的多次变更（如批量录入多个账户）按用户合并为最早记录日期，事务提交后在新事务中每个家庭只重算一次，
+     * 重算失败不会回滚用户的记录保存。没有事务时立即重算。
+     */
+    @Transactional
+    public void onBalanceRecordChanged(Long userId, LocalDate... recordDates) {
+        LocalDate earliest = null;
+        for (LocalDate date : recordDates) {
+            if (date != null && (earliest == null || date.isBefore(earliest))) {
+                earliest = date;
+            }
+        }
+        if (userId == null || earliest == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            refreshForBalanceChanges(Map.of(userId, earliest));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<Long, LocalDate> changes = (Map<Long, LocalDate>) TransactionSynchronizationManager.getResource(pendingBalanceChangesKey);
+        if (changes == null) {
+            Map<Long, LocalDate> created = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(pendingBalanceChangesKey, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refreshForBalanceChanges(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingBalanceChangesKey);
+                }
+            });
+            changes = created;
+        }
+        changes.merge(userId, earliest, (a, b) -> a.isBefore(b) ? a : b);
+    }
+
+    /**
+     * 在新事务中按家庭合并各用户的最早记录日期后重算调整部分（记录已提交，重算失败只记录日志，可通过 rebuild 补算）
+     * @param changes 用户 -> 最早记录日期
+     */
+    private void refreshForBalanceChanges(Map<Long, LocalDate> changes) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transaction.executeWithoutResult(status -> {
+                Map<Long, Integer> fromYearByFamily = new HashMap<>();
+                changes.forEach((userId, earliest) -> {
+                    Long familyId = resolveFamilyId(userId);
+                    if (familyId != null) {
+                        fromYearByFamily.merge(familyId, earliest.getYear(), Math::min);
+                    }
+                });
+                fromYearByFamily.forEach(this::refreshAdjustmentsFrom);
+            });
+        } catch (RuntimeException e) {
+            log.error("资产/负债记录变更后重算年度支出汇总调整失败: changes={}", changes, e);
+        }
+    }
+
+    /**
+     * 账户变更（类型、币种、启用状态、归属成员等）后调用，重算该家庭全部年份的调整部分
+     */
+    @Transactional
+    public void onAccountChanged(Long userId) {
+        Long familyId = resolveFamilyId(userId);
+        if (familyId != null) {
+            refreshAdjustmentsFrom(familyId, Integer.MIN_VALUE);
+        }
+    }
+
+    /**
+     * 房产记录写入后调用，重算购买年份的调整部分
+     */
+    @Transactional
+    public void onPropertyChanged(Long assetAccountId, LocalDate... purchaseDates) {
+        Long familyId = assetAccountRepository.findById(assetAccountId)
+            .map(account -> resolveFamilyId(account.getUserId()))
+            .orElse(null);
+        if (familyId == null) {
+            return;
+        }
+        Set<Integer> years = new TreeSet<>();
+        for (LocalDate date : purchaseDates) {
+            if (date != null) {
+                years.add(date.getYear());
+            }
+        }
+        for (Integer year : years) {
+            refreshAdjustments(familyId, year);
+        }
+    }
+
+    /**
+     * 年度财务摘要更新后调用：下一年的调整以该年资产/负债分类数据为基数
+     */
+    @Transactional
+    public void onFinancialSummaryChanged(Long familyId, Integer year) {
+        refreshAdjustments(familyId, year + 1);
+    }
+
+    /**
+     * 汇率变更后调用（折算使用各年年末汇率）
+     *
+     * 同一事务内的多次变更（如批量获取汇率）先按币种合并为最早生效年份，事务提交后统一处理：
+     * 只重算受该币种影响的已有汇总（当年有该币种支出记录，或家庭有该币种的调整账户、房产），
+     * 每个 家庭 × 年份 只全量重算一次。没有事务时立即处理。
+     */
+    @EventListener
+    public void onExchangeRateChanged(ExchangeRateChangedEvent event) {
+        if (event.currency() == null || event.effectiveDate() == null) {
+            return;
+        }
+        String currency = event.currency().toUpperCase();
+        int fromYear = event.effectiveDate().getYear();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rebuildForRateChanges(Map.of(currency, fromYear));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Integer> changes = (Map<String, Integer>) TransactionSynchronizationManager.getResource(pendingRateChangesKey);
+        if (changes == null) {
+            Map<String, Integer> created = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(pendingRateChangesKey, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rebuildForRateChanges(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(pendingRateChangesKey);
+                }
+            });
+            changes = created;
+        }
+        changes.merge(currency, fromYear, Math::min);
+    }
+
+    /**
+     * 在新事务中重算受汇率变更影响的 家庭 × 年份（汇率已提交，重算失败只记录日志，可通过 rebuild 补算）
+     * @param changes 币种 -> 最早生效年份
+     */
+    private void rebuildForRateChanges(Map<String, Integer> changes) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transaction.executeWithoutResult(status -> {
+                Set<String> assetTypes = new TreeSet<>();
+                Set<String> liabilityTypes = new TreeSet<>();
+                for (AdjustmentConfig config : loadAdjustmentConfigs()) {
+                    if ("ASSET".equals(config.adjustmentType()) && config.assetTypeCode() != null) {
+                        assetTypes.add(config.assetTypeCode());
+                    } else if ("LIABILITY".equals(config.adjustmentType()) && config.liabilityType() != null) {
+                        liabilityTypes.add(config.liabilityType());
+                    }
+                }
+
+                Map<Long, Set<Integer>> familyYears = new TreeMap<>();
+                changes.forEach((currency, fromYear) -> {
+                    for (Object[] familyYear : summaryRepository.findFamilyYearsAffectedByCurrency(
+                            fromYear, currency, assetTypes, liabilityTypes)) {
+                        familyYears.computeIfAbsent((Long) familyYear[0], k -> new TreeSet<>()).add((Integer) familyYear[1]);
+                    }
+                });
+                familyYears.forEach((familyId, years) -> years.forEach(year -> rebuild(familyId, year)));
+                if (!familyYears.isEmpty()) {
+                    log.debug("汇率变更重算年度支出汇总: changes={}, 家庭数={}, 年份数={}", changes, familyYears.size(),
+                        familyYears.values().stream().mapToInt(Set::size).sum());
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("汇率变更后重算年度支出汇总失败: changes={}", changes, e);
+        }
+    }
+
+    // ========== 计算 ==========
+
+    /**
+     * 在内存中计算某家庭某年的全部汇总行（小类行、大类行、总计行），不访问汇总表
+     */
+    private List<AnnualExpenseSummary> compute(Long familyId, Integer year) {
+        Map<String, BigDecimal> rates = exchangeRateService.getExchangeRatesAsOf(yearEnd(year));
+        Map<Long, List<ExpenseRecord>> recordsByMajor = groupByMajor(
+            expenseRecordRepository.findByFamilyIdAndExpenseYear(familyId, year));
+
+        List<AnnualExpenseSummary> rows = new ArrayList<>();
+        Map<Long, AnnualExpenseSummary> majorRows = new TreeMap<>();
+        for (Map.Entry<Long, List<ExpenseRecord>> entry : recordsByMajor.entrySet()) {
+            MajorSlice slice = summarizeMajor(familyId, year, entry.getKey(), entry.getValue(), rates);
+            rows.addAll(slice.minorRows());
+            if (slice.majorRow() != null) {
+                majorRows.put(entry.getKey(), slice.majorRow());
+            }
+        }
+
+        applyAdjustments(familyId, year, majorRows);
+        rows.addAll(majorRows.values());
+
+        if (!majorRows.isEmpty()) {
+            AnnualExpenseSummary total = newRow(familyId, year, null, null, null);
+            fillTotal(total, majorRows.values());
+            rows.add(total);
+        }
+        return rows;
+    }
+
+    /**
+     * 汇总一个大类的支出记录：小类行只统计非特殊支出，大类行另记特殊支出及其明细
+     */
+    private MajorSlice summarizeMajor(Long familyId, Integer year, Long majorCategoryId,
+                                      List<ExpenseRecord> records, Map<String, BigDecimal> rates) {
+        Map<Long, MinorTotals> minors = new TreeMap<>();
+        for (ExpenseRecord record : records) {
+            BigDecimal usd = toUsd(record.getAmount(), record.getCurrency(), rates);
+            MinorTotals totals = minors.computeIfAbsent(record.getMinorCategoryId(), k -> new MinorTotals());
+            if (usd.compareTo(SPECIAL_EXPENSE_THRESHOLD) >= 0) {
+                totals.special = totals.special.add(usd);
+                totals.specialUserId = max(totals.specialUserId, record.getUserId());
+            } else {
+                totals.base = totals.base.add(usd);
+                totals.baseUserId = max(totals.baseUserId, record.getUserId());
+            }
+        }
+        if (minors.isEmpty()) {
+            return new MajorSlice(List.of(), null);
+        }
+
+        List<AnnualExpenseSummary> minorRows = new ArrayList<>();
+        BigDecimal majorBase = BigDecimal.ZERO;
+        Long majorUserId = null;
+        Long specialUserId = null;
+        Map<Long, BigDecimal> specialByMinor = new TreeMap<>();
+        for (Map.Entry<Long, MinorTotals> entry : minors.entrySet()) {
+            MinorTotals totals = entry.getValue();
+            if (totals.baseUserId != null) {
+                BigDecimal base = round(totals.base);
+                AnnualExpenseSummary row = newRow(familyId, year, totals.baseUserId, majorCategoryId, entry.getKey());
+                row.setBaseExpenseAmount(base);
+                row.setActualExpenseAmount(base);
+                minorRows.add(row);
+                majorBase = majorBase.add(totals.base);
+                majorUserId = max(majorUserId, totals.baseUserId);
+            }
+            if (totals.specialUserId != null) {
+                specialByMinor.put(entry.getKey(), round(totals.special));
+                specialUserId = max(specialUserId, totals.specialUserId);
+            }
+        }
+
+        AnnualExpenseSummary majorRow = newRow(familyId, year,
+            majorUserId != null ? majorUserId : specialUserId, majorCategoryId, null);
+        majorRow.setBaseExpenseAmount(round(majorBase));
+        BigDecimal special = BigDecimal.ZERO;
+        if (!specialByMinor.isEmpty()) {
+            Map<Long, String> minorNames = new HashMap<>();
+            for (ExpenseCategoryMinor minor : minorCategoryRepository.findAllById(specialByMinor.keySet())) {
+                minorNames.put(minor.getId(), minor.getName());
+            }
+            List<Map<String, Object>> details = new ArrayList<>();
+            for (Map.Entry<Long, BigDecimal> entry : specialByMinor.entrySet()) {
+                Map<String, Object> detail = new LinkedHashMap<>();
+                detail.put("minorCategoryId", entry.getKey());
+                detail.put("minorCategoryName", minorNames.get(entry.getKey()));
+                detail.put("amount", entry.getValue());
+                details.add(detail);
+                special = special.add(entry.getValue());
+            }
+            majorRow.setSpecialExpenseDetails(toJson(details));
+        }
+        majorRow.setSpecialExpenseAmount(special);
+        majorRow.setActualExpenseAmount(majorRow.getBaseExpenseAmount().add(special));
+        return new MajorSlice(minorRows, majorRow);
+    }
+
+    /**
+     * 清空大类行已有的调整后重新套用：先处理当年购买的房产，再按配置表顺序调整（后者覆盖前者）
+     */
+    private void applyAdjustments(Long familyId, Integer year, Map<Long, AnnualExpenseSummary> majorRows) {
+        for (AnnualExpenseSummary row : majorRows.values()) {
+            row.setAssetAdjustment(BigDecimal.ZERO);
+            row.setLiabilityAdjustment(BigDecimal.ZERO);
+            row.setAdjustmentDetails(null);
+            row.setActualExpenseAmount(row.getBaseExpenseAmount().add(nullToZero(row.getSpecialExpenseAmount())));
+        }
+        if (majorRows.isEmpty()) {
+            return;
+        }
+
+        BalanceSnapshots balances = new BalanceSnapshots(familyId);
+        LocalDate endDate = endDate(year);
+        LocalDate previousYearEnd = yearEnd(year - 1);
+        Long housingCategoryId = housingCategoryId();
+
+        AnnualExpenseSummary housingRow = housingCategoryId != null ? majorRows.get(housingCategoryId) : null;
+        if (housingRow != null) {
+            for (PropertyRecord property : propertyRecordRepository.findByFamilyIdAndPurchaseYear(familyId, year)) {
+                applyPropertyPurchase(housingRow, property, familyId, year, housingCategoryId);
+            }
+        }
+
+        Map<String, BigDecimal> previousAssets = Map.of();
+        Map<String, BigDecimal> previousLiabilities = Map.of();
+        AnnualFinancialSummary previousSummary =
+            financialSummaryRepository.findByFamilyIdAndYear(familyId, year - 1).orElse(null);
+        if (previousSummary != null) {
+            previousAssets = previousSummary.getAssetBreakdown() != null ? previousSummary.getAssetBreakdown() : Map.of();
+            previousLiabilities = previousSummary.getLiabilityBreakdown() != null
+                ? previousSummary.getLiabilityBreakdown() : Map.of();
+        }
+
+        for (AdjustmentConfig config : loadAdjustmentConfigs()) {
+            AnnualExpenseSummary row = majorRows.get(config.majorCategoryId());
+            if (row == null) {
+                continue;
+            }
+            // 购房年份的住房大类已按购房口径计算，不再套用房贷余额调整
+            if (config.majorCategoryId().equals(housingCategoryId)
+                    && "LIABILITY".equals(config.adjustmentType())
+                    && "MORTGAGE".equals(config.liabilityType())
+                    && PROPERTY_PURCHASE.equals(firstAdjustmentType(row))) {
+                continue;
+            }
+
+            BigDecimal baseAndSpecial = row.getBaseExpenseAmount().add(nullToZero(row.getSpecialExpenseAmount()));
+            if ("ASSET".equals(config.adjustmentType())) {
+                String code = config.assetTypeCode();
+                BigDecimal current = balances.assetTotal(code, endDate);
+                BigDecimal value = BigDecimal.ZERO;
+                if (current != null) {
+                    BigDecimal previous = previousAssets.get(code);
+                    if (previous == null) {
+                        previous = nullToZero(balances.assetTotal(code, previousYearEnd));
+                    }
+                    value = round(current.subtract(previous));
+                }
+                boolean subtract = "SUBTRACT".equals(config.adjustmentDirection());
+                row.setAssetAdjustment(subtract ? value : value.negate());
+                row.setActualExpenseAmount(subtract ? baseAndSpecial.subtract(value) : baseAndSpecial.add(value));
+
+                Map<String, Object> detail = new LinkedHashMap<>();
+                detail.put("type", "ASSET");
+                detail.put("code", code);
+                detail.put("amount", value);
+                detail.put("direction", config.adjustmentDirection());
+                row.setAdjustmentDetails(toJson(List.of(detail)));
+            } else if ("LIABILITY".equals(config.adjustmentType())) {
+                String code = config.liabilityType();
+                BigDecimal current = balances.liabilityTotal(code, endDate);
+                BigDecimal value = BigDecimal.ZERO;
+                if (current != null) {
+                    BigDecimal previous = previousLiabilities.get(code);
+                    if (previous == null) {
+                        previous = nullToZero(balances.liabilityTotal(code, previousYearEnd));
+                    }
+                    value = round(previous.subtract(current));
+                }
+                row.setLiabilityAdjustment(value);
+                row.setActualExpenseAmount(baseAndSpecial.subtract(value));
+
+                Map<String, Object> detail = new LinkedHashMap<>();
+                detail.put("type", "LIABILITY");
+                detail.put("code", code);
+                detail.put("amount", value);
+                row.setAdjustmentDetails(toJson(List.of(detail)));
+            }
+        }
+    }
+
+    /**
+     * 购房年份的住房大类调整：支出按 (房贷 - 房产价值) - 已还本金 调整，资产调整记投资回报
+     */
+    private void applyPropertyPurchase(AnnualExpenseSummary housingRow, PropertyRecord property,
+                                       Long familyId, Integer year, Long housingCategoryId) {
+        LocalDate endDate = endDate(year);
+        LocalDate previousYearEnd = yearEnd(year - 1);
+        int purchaseYear = property.getPurchaseDate().getYear();
+
+        BigDecimal rate = exchangeRateService.getExchangeRate(property.getCurrency(), yearEnd(purchaseYear))
+            .setScale(6, RoundingMode.HALF_UP);
+        BigDecimal downPayment = round(property.getDownPayment().multiply(rate));
+        BigDecimal mortgageAmount = round(property.getMortgageAmount().multiply(rate));
+        BigDecimal initialValue = round(property.getPropertyValue().multiply(rate));
+        BigDecimal purchaseCost = downPayment.add(mortgageAmount).subtract(initialValue);
+
+        Long liabilityAccountId = assetAccountRepository.findById(property.getAssetAccountId())
+            .map(AssetAccount::getLinkedLiabilityAccountId)
+            .orElse(null);
+        BigDecimal currentMortgageBalance = mortgageBalance(liabilityAccountId, endDate);
+        BigDecimal previousMortgageBalance = mortgageBalance(liabilityAccountId, previousYearEnd);
+
+        Map<String, BigDecimal> rates = exchangeRateService.getExchangeRatesAsOf(yearEnd(year));
+        Map<Long, String> minorNames = new HashMap<>();
+        for (ExpenseCategoryMinor minor : minorCategoryRepository.findByMajorCategoryIdOrderBySortOrder(housingCategoryId)) {
+            minorNames.put(minor.getId(), minor.getName());
+        }
+        BigDecimal mortgageExpense = BigDecimal.ZERO;
+        for (ExpenseRecord record : expenseRecordRepository.findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(
+                familyId, year, List.of(housingCategoryId))) {
+            String name = minorNames.get(record.getMinorCategoryId());
+            if (name != null && (name.contains("房贷") || name.equals("租房还贷"))) {
+                mortgageExpense = mortgageExpense.add(toUsd(record.getAmount(), record.getCurrency(), rates));
+            }
+        }
+        mortgageExpense = round(mortgageExpense);
+
+        BigDecimal principalPaid = mortgageAmount.subtract(currentMortgageBalance).add(previousMortgageBalance);
+        BigDecimal accumulatedInterest = mortgageExpense.subtract(principalPaid);
+        BigDecimal adjustedExpense = mortgageAmount.subtract(initialValue).subtract(principalPaid);
+        BigDecimal currentValue = assetRecordRepository
+            .findLatestByAccountIdBeforeOrOnDate(property.getAssetAccountId(), endDate)
+            .map(record -> round(record.getAmount().multiply(
+                exchangeRateService.getExchangeRate(record.getAccount().getCurrency(), endDate))))
+            .orElse(initialValue);
+        BigDecimal investmentReturn = currentValue.subtract(initialValue);
+
+        housingRow.setAssetAdjustment(investmentReturn);
+        housingRow.setLiabilityAdjustment(adjustedExpense);
+        housingRow.setActualExpenseAmount(housingRow.getBaseExpenseAmount()
+            .add(nullToZero(housingRow.getSpecialExpenseAmount()))
+            .add(adjustedExpense));
+
+        Map<String, Object> detail = new LinkedHashMap<>();
+        detail.put("type", PROPERTY_PURCHASE);
+        detail.put("property_record_id", property.getId());
+        detail.put("asset_account_id", property.getAssetAccountId());
+        detail.put("purchase_year", purchaseYear);
+        detail.put("down_payment", downPayment);
+        detail.put("mortgage_amount", mortgageAmount);
+        detail.put("initial_property_value", initialValue);
+        detail.put("current_property_value", currentValue);
+        detail.put("current_mortgage_balance", currentMortgageBalance);
+        detail.put("previous_year_mortgage_balance", previousMortgageBalance);
+        detail.put("total_mortgage_expense", mortgageExpense);
+        detail.put("mortgage_principal_paid", principalPaid);
+        detail.put("accumulated_interest", accumulatedInterest);
+        detail.put("purchase_cost", purchaseCost);
+        detail.put("adjusted_expense", adjustedExpense);
+        detail.put("investment_return", investmentReturn);
+        housingRow.setAdjustmentDetails(toJson(List.of(detail)));
+    }
+
+    /**
+     * 关联负债账户在指定日期的最新余额（USD，按该日期汇率折算），没有记录时为 0
+     */
+    private BigDecimal mortgageBalance(Long liabilityAccountId, LocalDate asOfDate) {
+        if (liabilityAccountId == null) {
+            return BigDecimal.ZERO;
+        }
+        return liabilityRecordRepository.findLatestByAccountIdBeforeOrOnDate(liabilityAccountId, asOfDate)
+            .map(record -> round(record.getOutstandingBalance().multiply(
+                exchangeRateService.getExchangeRate(record.getAccount().getCurrency(), asOfDate))))
+            .orElse(BigDecimal.ZERO);
+    }
+
+    /**
+     * 重算某年已有汇总的调整部分及总计行（支出部分不变）
+     */
+    private void refreshAdjustments(Long familyId, Integer year) {
+        List<AnnualExpenseSummary> rows = summaryRepository.findByFamilyIdAndSummaryYear(familyId, year);
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<Long, AnnualExpenseSummary> majorRows = new TreeMap<>();
+        AnnualExpenseSummary totalRow = null;
+        for (AnnualExpenseSummary row : rows) {
+            if (row.getMajorCategoryId() == null) {
+                totalRow = row;
+            } else if (row.getMinorCategoryId() == null) {
+                majorRows.put(row.getMajorCategoryId(), row);
+            }
+        }
+        applyAdjustments(familyId, year, majorRows);
+        saveTotal(familyId, year, totalRow, majorRows.values());
+    }
+
+    private void refreshAdjustmentsFrom(Long familyId, int fromYear) {
+        for (Integer year : summaryRepository.findSummaryYearsFrom(familyId, fromYear)) {
+            refreshAdjustments(familyId, year);
+        }
+    }
+
+    /**
+     * 按大类行更新总计行；没有大类行时删除总计行
+     */
+    private void saveTotal(Long familyId, Integer year, AnnualExpenseSummary totalRow,
+                           Collection<AnnualExpenseSummary> majorRows) {
+        if (majorRows.isEmpty()) {
+            if (totalRow != null) {
+                summaryRepository.delete(totalRow);
+            }
+            return;
+        }
+        if (totalRow == null) {
+            totalRow = newRow(familyId, year, null, null, null);
+        }
+        fillTotal(totalRow, majorRows);
+        summaryRepository.save(totalRow);
+    }
+
+    /**
+     * 总计行：各大类行金额合计，调整详情取各大类调整详情的第一项
+     */
+    private void fillTotal(AnnualExpenseSummary total, Collection<AnnualExpenseSummary> majorRows) {
+        BigDecimal base = BigDecimal.ZERO;
+        BigDecimal special = BigDecimal.ZERO;
+        BigDecimal asset = BigDecimal.ZERO;
+        BigDecimal liability = BigDecimal.ZERO;
+        BigDecimal actual = BigDecimal.ZERO;
+        ArrayNode details = objectMapper.createArrayNode();
+        for (AnnualExpenseSummary row : majorRows) {
+            base = base.add(row.getBaseExpenseAmount());
+            special = special.add(nullToZero(row.getSpecialExpenseAmount()));
+            asset = asset.add(nullToZero(row.getAssetAdjustment()));
+            liability = liability.add(nullToZero(row.getLiabilityAdjustment()));
+            actual = actual.add(row.getActualExpenseAmount());
+            JsonNode rowDetails = readJson(row.getAdjustmentDetails());
+            if (rowDetails != null && rowDetails.isArray() && !rowDetails.isEmpty()) {
+                details.add(rowDetails.get(0));
+            }
+        }
+        total.setBaseExpenseAmount(base);
+        total.setSpecialExpenseAmount(special);
+        total.setAssetAdjustment(asset);
+        total.setLiabilityAdjustment(liability);
+        total.setActualExpenseAmount(actual);
+        total.setAdjustmentDetails(details.isEmpty() ? null : details.toString());
+    }
+
+    /**
+     * 启用的调整配置（按ID顺序，后面的配置覆盖前面的）
+     */
+    @SuppressWarnings("unchecked")
+    private List<AdjustmentConfig> loadAdjustmentConfigs() {
+        List<Object[]> rows = entityManager.createNativeQuery(
+                "SELECT major_category_id, adjustment_type, asset_type_code, liability_type, adjustment_direction " +
+                "FROM expense_category_adjustment_config WHERE is_active = 1 ORDER BY id")
+            .getResultList();
+        List<AdjustmentConfig> configs = new ArrayList<>();
+        for (Object[] row : rows) {
+            configs.add(new AdjustmentConfig(((Number) row[0]).longValue(), (String) row[1],
+                (String) row[2], (String) row[3], (String) row[4]));
+        }
+        return configs;
+    }
+
+    // ========== 辅助方法 ==========
+
+    private Long housingCategoryId() {
+        return majorCategoryRepository.findByCode(HOUSING_CATEGORY_CODE)
+            .map(ExpenseCategoryMajor::getId)
+            .orElse(null);
+    }
+
+    private Long resolveFamilyId(Long userId) {
+        if (userId == null) {
+            return null;
+        }
+        return userRepository.findById(userId).map(User::getFamilyId).orElse(null);
+    }
+
+    private static Map<Long, List<ExpenseRecord>> groupByMajor(List<ExpenseRecord> records) {
+        Map<Long, List<ExpenseRecord>> grouped = new TreeMap<>();
+        for (ExpenseRecord record : records) {
+            grouped.computeIfAbsent(record.getMajorCategoryId(), k -> new ArrayList<>()).add(record);
+        }
+        return grouped;
+    }
+
+    private static AnnualExpenseSummary newRow(Long familyId, Integer year, Long userId,
+                                               Long majorCategoryId, Long minorCategoryId) {
+        AnnualExpenseSummary row = new AnnualExpenseSummary();
+        row.setFamilyId(familyId);
+        row.setSummaryYear(year);
+        row.setUserId(userId);
+        row.setMajorCategoryId(majorCategoryId);
+        row.setMinorCategoryId(minorCategoryId);
+        row.setCurrency(SUMMARY_CURRENCY);
+        return row;
+    }
+
+    /**
+     * 汇总截止日：往年为年末，当年为今天
+     */
+    private static LocalDate endDate(int year) {
+        LocalDate today = LocalDate.now();
+        return year < today.getYear() ? yearEnd(year) : today;
+    }
+
+    private static LocalDate yearEnd(int year) {
+        return LocalDate.of(year, 12, 31);
+    }
+
+    private static BigDecimal toUsd(BigDecimal amount, String currency, Map<String, BigDecimal> rates) {
+        if (amount == null) {
+            return BigDecimal.ZERO;
+        }
+        if (currency == null || "USD".equalsIgnoreCase(currency)) {
+            return amount;
+        }
+        return amount.multiply(rates.getOrDefault(currency.toUpperCase(), BigDecimal.ONE));
+    }
+
+    private static BigDecimal round(BigDecimal value) {
+        return value.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal nullToZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private static Long max(Long current, Long candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return current == null || candidate > current ? candidate : current;
+    }
+
+    private String firstAdjustmentType(AnnualExpenseSummary row) {
+        JsonNode details = readJson(row.getAdjustmentDetails());
+        return details != null && details.isArray() && !details.isEmpty()
+            ? details.get(0).path("type").asText(null) : null;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化汇总详情失败", e);
+        }
+    }
+
+    private JsonNode readJson(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            log.warn("无法解析汇总详情: {}", json);
+            return null;
+        }
+    }
+
+    private static String rowLabel(AnnualExpenseSummary row) {
+        if (row.getMajorCategoryId() == null) {
+            return "总计";
+        }
+        return row.getMinorCategoryId() == null
+            ? String.format("大类 %d", row.getMajorCategoryId())
+            : String.format("大类 %d / 小类 %d", row.getMajorCategoryId(), row.getMinorCategoryId());
+    }
+
+    private void compareRow(String label, AnnualExpenseSummary expected, AnnualExpenseSummary actual,
+                            List<String> differences) {
+        compareAmount(label, "基础支出", expected, actual, AnnualExpenseSummary::getBaseExpenseAmount, differences);
+        compareAmount(label, "特殊支出", expected, actual, AnnualExpenseSummary::getSpecialExpenseAmount, differences);
+        compareAmount(label, "资产调整", expected, actual, AnnualExpenseSummary::getAssetAdjustment, differences);
+        compareAmount(label, "负债调整", expected, actual, AnnualExpenseSummary::getLiabilityAdjustment, differences);
+        compareAmount(label, "实际支出", expected, actual, AnnualExpenseSummary::getActualExpenseAmount, differences);
+        compareJson(label, "特殊支出详情", expected.getSpecialExpenseDetails(), actual.getSpecialExpenseDetails(), differences);
+        compareJson(label, "调整详情", expected.getAdjustmentDetails(), actual.getAdjustmentDetails(), differences);
+    }
+
+    private static void compareAmount(String label, String field, AnnualExpenseSummary expected,
+                                      AnnualExpenseSummary actual, Function<AnnualExpenseSummary, BigDecimal> getter,
+                                      List<String> differences) {
+        BigDecimal expectedValue = nullToZero(getter.apply(expected));
+        BigDecimal actualValue = nullToZero(getter.apply(actual));
+        if (expectedValue.compareTo(actualValue) != 0) {
+            differences.add(String.format("%s: %s 应为 %s，实际为 %s", label, field, expectedValue, actualValue));
+        }
+    }
+
+    private void compareJson(String label, String field, String expected, String actual, List<String> differences) {
+        JsonNode expectedNode = readJson(expected);
+        JsonNode actualNode = readJson(actual);
+        boolean equal = expectedNode == null || actualNode == null
+            ? Objects.equals(expectedNode, actualNode)
+            : expectedNode.equals(NUMERIC_AWARE, actualNode);
+        if (!equal) {
+            differences.add(String.format("%s: %s 应为 %s，实际为 %s", label, field, expected, actual));
+        }
+    }
+
+    /**
+     * 一个大类的计算结果：小类行（只含非特殊支出）和大类行（没有记录时为 null）
+     */
+    private record MajorSlice(List<AnnualExpenseSummary> minorRows, AnnualExpenseSummary majorRow) {
+    }
+
+    private record AdjustmentConfig(Long majorCategoryId, String adjustmentType, String assetTypeCode,
+                                    String liabilityType, String adjustmentDirection) {
+    }
+
+    private static class MinorTotals {
+        BigDecimal base = BigDecimal.ZERO;
+        BigDecimal special = BigDecimal.ZERO;
+        Long baseUserId;
+        Long specialUserId;
+    }
+
+    /**
+     * 一次调整计算内按日期缓存家庭的最新资产/负债记录，并按类型汇总为USD（账户币种、该日期汇率）
+     */
+    private class BalanceSnapshots {
+        private final Long familyId;
+        private final Map<LocalDate, List<AssetRecord>> assets = new HashMap<>();
+        private final Map<LocalDate, List<LiabilityRecord>> liabilities = new HashMap<>();
+
+        BalanceSnapshots(Long familyId) {
+            this.familyId = familyId;
+        }
+
+        /**
+         * 该类型资产在指定日期的合计，没有任何记录时为 null
+         */
+        BigDecimal assetTotal(String typeCode, LocalDate asOfDate) {
+            BigDecimal total = null;
+            for (AssetRecord record : assets.computeIfAbsent(asOfDate,
+                    date -> assetRecordRepository.findLatestRecordsByFamilyAndDate(familyId, date))) {
+                if (record.getAmount() != null && typeCode != null
+                        && typeCode.equals(record.getAccount().getAssetType().getType())) {
+                    BigDecimal usd = record.getAmount().multiply(
+                        exchangeRateService.getExchangeRate(record.getAccount().getCurrency(), asOfDate));
+                    total = total == null ? usd : total.add(usd);
+                }
+            }
+            return total;
+        }
+
+        /**
+         * 该类型负债在指定日期的合计，没有任何记录时为 null
+         */
+        BigDecimal liabilityTotal(String typeCode, LocalDate asOfDate) {
+            BigDecimal total = null;
+            for (LiabilityRecord record : liabilities.computeIfAbsent(asOfDate,
+                    date -> liabilityRecordRepository.findLatestRecordsByFamilyAndDate(familyId, date))) {
+                if (record.getOutstandingBalance() != null && typeCode != null
+                        && typeCode.equals(record.getAccount().getLiabilityType().getType())) {
+                    BigDecimal usd = record.getOutstandingBalance().multiply(
+                        exchangeRateService.getExchangeRate(record.getAccount().getCurrency(), asOfDate));
+                    total = total == null ? usd : total.add(usd);
+                }
+            }
+            return total;
+        }
+    }
+}
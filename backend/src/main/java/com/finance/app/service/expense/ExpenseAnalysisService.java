@@ -6,20 +6,18 @@ import com.finance.app.dto.expense.ExpenseAnnualMajorCategoryDTO;
 import com.finance.app.dto.expense.ExpenseAnnualMinorCategoryDTO;
 import com.finance.app.dto.expense.ExpenseMonthlyTrendDTO;
 import com.finance.app.model.AnnualExpenseSummary;
-import com.finance.app.model.ExchangeRate;
 import com.finance.app.model.ExpenseBudget;
 import com.finance.app.model.ExpenseCategoryMajor;
 import com.finance.app.model.ExpenseCategoryMinor;
 import com.finance.app.model.ExpenseRecord;
 import com.finance.app.repository.AnnualExpenseSummaryRepository;
-import com.finance.app.repository.ExchangeRateRepository;
 import com.finance.app.repository.ExpenseBudgetRepository;
 import com.finance.app.repository.ExpenseCategoryMajorRepository;
 import com.finance.app.repository.ExpenseCategoryMinorRepository;
 import com.finance.app.repository.ExpenseRecordRepository;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
-import jakarta.transaction.Transactional;
+import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.ReferenceDataCache;
+import com.finance.app.util.MoneyAccumulator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -46,13 +44,16 @@ public class ExpenseAnalysisService {
     private ExpenseCategoryMinorRepository minorCategoryRepository;
 
     @Autowired
-    private ExchangeRateRepository exchangeRateRepository;
+    private ExchangeRateService exchangeRateService;
 
     @Autowired
     private AnnualExpenseSummaryRepository annualExpenseSummaryRepository;
 
-    @PersistenceContext
-    private EntityManager entityManager;
+    @Autowired
+    private AnnualExpenseSummaryService annualExpenseSummaryService;
+
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
 
     /**
      * 获取年度大类汇总
@@ -99,7 +100,7 @@ public class ExpenseAnalysisService {
         // 5. 构建DTO列表
         List<ExpenseAnnualMajorCategoryDTO> result = new ArrayList<>();
         for (Map.Entry<Long, BigDecimal> entry : majorCategoryTotals.entrySet()) {
-            ExpenseCategoryMajor major = majorCategoryRepository.findById(entry.getKey())
+            ExpenseCategoryMajor major = referenceDataCache.findExpenseMajor(entry.getKey())
                     .orElse(null);
             if (major != null) {
                 result.add(new ExpenseAnnualMajorCategoryDTO(
@@ -168,10 +169,12 @@ public class ExpenseAnalysisService {
         // 6. 构建DTO列表
         List<ExpenseAnnualMinorCategoryDTO> result = new ArrayList<>();
         for (Map.Entry<Long, BigDecimal> entry : minorCategoryTotals.entrySet()) {
-            ExpenseCategoryMinor minor = minorCategoryRepository.findById(entry.getKey())
+            ExpenseCategoryMinor minor = referenceDataCache.findExpenseMinor(entry.getKey())
                     .orElse(null);
-            if (minor != null) {
-                ExpenseCategoryMajor major = minor.getMajorCategory();
+            ExpenseCategoryMajor major = minor != null
+                    ? referenceDataCache.findExpenseMajor(minor.getMajorCategoryId()).orElse(null)
+                    : null;
+            if (major != null) {
                 result.add(new ExpenseAnnualMinorCategoryDTO(
                         minor.getId(),
                         minor.getName(),
@@ -202,39 +205,29 @@ public class ExpenseAnalysisService {
             rateMap = loadExchangeRates(year);
         }
 
-        // 2. 构建12个月的结果
-        List<ExpenseMonthlyTrendDTO> result = new ArrayList<>();
-        Map<String, BigDecimal> finalRateMap = rateMap;
+        // 2. 一次查询按月份和币种汇总该小类全年的支出，换算后归入12个月
+        String currencyFilter = "All".equalsIgnoreCase(currency) ? null : currency;
+        List<Object[]> rows = expenseRecordRepository.sumByMinorCategoryGroupByPeriodAndCurrency(
+                familyId, minorCategoryId, year + "-01", year + "-12", currencyFilter);
 
-        for (int month = 1; month <= 12; month++) {
-            String period = String.format("%d-%02d", year, month);
-
-            // 查询该月该小类的所有记录
-            List<ExpenseRecord> records = expenseRecordRepository.findByFamilyIdAndExpensePeriodAndMinorCategoryId(
-                    familyId, period, minorCategoryId);
-
-            BigDecimal monthTotal = BigDecimal.ZERO;
-
-            for (ExpenseRecord record : records) {
-                // 过滤货币
-                if (!"All".equalsIgnoreCase(currency) && !currency.equals(record.getCurrency())) {
-                    continue;
-                }
-
-                BigDecimal amount;
-                if ("All".equalsIgnoreCase(currency)) {
-                    amount = convertToUSD(record.getAmount(), record.getCurrency(), finalRateMap);
-                } else {
-                    amount = record.getAmount();
-                }
-
-                monthTotal = monthTotal.add(amount);
+        BigDecimal[] monthTotals = new BigDecimal[12];
+        Arrays.fill(monthTotals, BigDecimal.ZERO);
+        for (Object[] row : rows) {
+            int month = Integer.parseInt(((String) row[0]).substring(5, 7));
+            BigDecimal amount = (BigDecimal) row[2];
+            if (currencyFilter == null) {
+                amount = convertToUSD(amount, (String) row[1], rateMap);
             }
+            monthTotals[month - 1] = monthTotals[month - 1].add(amount);
+        }
 
+        // 3. 构建12个月的结果
+        List<ExpenseMonthlyTrendDTO> result = new ArrayList<>();
+        for (int month = 1; month <= 12; month++) {
             result.add(new ExpenseMonthlyTrendDTO(
                     month,
-                    period,
-                    monthTotal,
+                    String.format("%d-%02d", year, month),
+                    monthTotals[month - 1],
                     "All".equalsIgnoreCase(currency) ? "USD" : currency
             ));
         }
@@ -246,29 +239,8 @@ public class ExpenseAnalysisService {
      * 加载指定年份的所有汇率
      */
     private Map<String, BigDecimal> loadExchangeRates(Integer year) {
-        Map<String, BigDecimal> rateMap = new HashMap<>();
-
-        // 查询该年末的汇率（12-31）
-        LocalDate yearEnd = LocalDate.of(year, 12, 31);
-
-        // 获取所有活跃的汇率
-        List<ExchangeRate> rates = exchangeRateRepository.findByIsActiveTrueOrderByEffectiveDateDesc();
-
-        // 找每个货币在该年末或之前最近的汇率
-        Set<String> processedCurrencies = new HashSet<>();
-        for (ExchangeRate rate : rates) {
-            if (rate.getEffectiveDate().isAfter(yearEnd)) {
-                continue;  // 跳过该年之后的汇率
-            }
-            if (processedCurrencies.contains(rate.getCurrency())) {
-                continue;  // 已经有更近的汇率了
-            }
-            rateMap.put(rate.getCurrency(), rate.getRateToUsd());
-            processedCurrencies.add(rate.getCurrency());
-        }
-
-        // 手动添加USD基准货币
-        rateMap.put("USD", BigDecimal.ONE);
+        // 每个货币取该年末（12-31）或之前最近的汇率，USD 为基准货币
+        Map<String, BigDecimal> rateMap = exchangeRateService.getExchangeRatesAsOf(LocalDate.of(year, 12, 31));
 
         // Note: Default rates for all currencies should be in DB (e.g., 2000-01-01 for CNY)
         // No hardcoded fallback needed here
@@ -314,7 +286,8 @@ public class ExpenseAnalysisService {
         }
 
         // 4. 按小类+货币分组统计实际支出
-        Map<String, BigDecimal> actualTotals = new HashMap<>();
+        // 换算结果不舍入（金额2位 × 汇率8位），按10位小数定点累加
+        Map<String, MoneyAccumulator> actualAccumulators = new HashMap<>();
         Map<String, Long> minorCategoryIds = new HashMap<>();  // 记录每个key对应的小类ID
         Map<String, BigDecimal> finalRateMap = rateMap;
 
@@ -327,17 +300,18 @@ public class ExpenseAnalysisService {
             String key = record.getMinorCategory().getId() + "_" + record.getCurrency();
             minorCategoryIds.put(key, record.getMinorCategory().getId());
 
-            BigDecimal amount;
-
-            if ("All".equalsIgnoreCase(currency)) {
-                amount = convertToUSD(record.getAmount(), record.getCurrency(), finalRateMap);
+            MoneyAccumulator total = actualAccumulators.computeIfAbsent(key,
+                    k -> new MoneyAccumulator(MoneyAccumulator.AMOUNT_SCALE + MoneyAccumulator.RATE_SCALE));
+            if ("All".equalsIgnoreCase(currency) && !"USD".equals(record.getCurrency())) {
+                total.addProduct(record.getAmount(), finalRateMap.getOrDefault(record.getCurrency(), BigDecimal.ONE));
             } else {
-                amount = record.getAmount();
+                total.add(record.getAmount());
             }
-
-            actualTotals.merge(key, amount, BigDecimal::add);
         }
 
+        Map<String, BigDecimal> actualTotals = new HashMap<>();
+        actualAccumulators.forEach((key, total) -> actualTotals.put(key, total.toBigDecimal()));
+
         // 5. 构建预算执行结果
         List<BudgetExecutionDTO> result = new ArrayList<>();
         Set<String> processedKeys = new HashSet<>();  // 记录已处理的小类+货币组合
@@ -350,12 +324,14 @@ public class ExpenseAnalysisService {
             }
 
             // 加载小类和大类信息
-            ExpenseCategoryMinor minor = minorCategoryRepository.findById(budget.getMinorCategoryId())
+            ExpenseCategoryMinor minor = referenceDataCache.findExpenseMinor(budget.getMinorCategoryId())
                     .orElse(null);
-            if (minor == null) {
+            ExpenseCategoryMajor major = minor != null
+                    ? referenceDataCache.findExpenseMajor(minor.getMajorCategoryId()).orElse(null)
+                    : null;
+            if (major == null) {
                 continue;  // 小类不存在，跳过
             }
-            ExpenseCategoryMajor major = minor.getMajorCategory();
 
             // 计算预算金额
             BigDecimal budgetAmount;
@@ -406,11 +382,13 @@ public class ExpenseAnalysisService {
             }
 
             // 加载小类和大类信息
-            ExpenseCategoryMinor minor = minorCategoryRepository.findById(minorId).orElse(null);
-            if (minor == null) {
+            ExpenseCategoryMinor minor = referenceDataCache.findExpenseMinor(minorId).orElse(null);
+            ExpenseCategoryMajor major = minor != null
+                    ? referenceDataCache.findExpenseMajor(minor.getMajorCategoryId()).orElse(null)
+                    : null;
+            if (major == null) {
                 continue;
             }
-            ExpenseCategoryMajor major = minor.getMajorCategory();
 
             BigDecimal actualAmount = entry.getValue();
             BigDecimal budgetAmount = BigDecimal.ZERO;  // 没有预算
@@ -465,16 +443,11 @@ public class ExpenseAnalysisService {
         // If CNY is selected, get year-end exchange rate to convert USD to CNY
         if ("CNY".equalsIgnoreCase(currency)) {
             LocalDate yearEnd = LocalDate.of(year, 12, 31);
-            List<ExchangeRate> rates = exchangeRateRepository.findByIsActiveTrueOrderByEffectiveDateDesc();
+            BigDecimal cnyRateToUsd = exchangeRateService.findExchangeRate("CNY", yearEnd);
 
-            for (ExchangeRate rate : rates) {
-                if ("CNY".equals(rate.getCurrency()) && !rate.getEffectiveDate().isAfter(yearEnd)) {
-                    // CNY to USD rate is stored, we need USD to CNY rate (inverse)
-                    if (rate.getRateToUsd().compareTo(BigDecimal.ZERO) > 0) {
-                        conversionRate = BigDecimal.ONE.divide(rate.getRateToUsd(), 4, RoundingMode.HALF_UP);
-                    }
-                    break;
-                }
+            // CNY to USD rate is stored, we need USD to CNY rate (inverse)
+            if (cnyRateToUsd != null && cnyRateToUsd.compareTo(BigDecimal.ZERO) > 0) {
+                conversionRate = BigDecimal.ONE.divide(cnyRateToUsd, 4, RoundingMode.HALF_UP);
             }
 
             // If no rate found (should not happen with 2000-01-01 default rate in DB)
@@ -485,28 +458,7 @@ public class ExpenseAnalysisService {
         }
 
         for (AnnualExpenseSummary summary : summaries) {
-            // 获取大类信息
-            ExpenseCategoryMajor major = summary.getMajorCategory();
-
-            AnnualExpenseSummaryDTO dto = new AnnualExpenseSummaryDTO();
-            dto.setSummaryYear(summary.getSummaryYear());
-            dto.setMajorCategoryId(summary.getMajorCategoryId());
-            dto.setMajorCategoryName(major != null ? major.getName() : null);
-            dto.setMajorCategoryIcon(major != null ? major.getIcon() : null);
-            dto.setMajorCategoryCode(major != null ? major.getCode() : null);
-            dto.setMinorCategoryId(null);
-            dto.setMinorCategoryName(null);
-
-            // Convert amounts if needed
-            dto.setBaseExpenseAmount(summary.getBaseExpenseAmount().multiply(conversionRate));
-            dto.setSpecialExpense(summary.getSpecialExpenseAmount().multiply(conversionRate));
-            dto.setAssetAdjustment(summary.getAssetAdjustment().multiply(conversionRate));
-            dto.setLiabilityAdjustment(summary.getLiabilityAdjustment().multiply(conversionRate));
-            dto.setActualExpenseAmount(summary.getActualExpenseAmount().multiply(conversionRate));
-            dto.setCurrency(displayCurrency);
-            dto.setAdjustmentDetails(summary.getAdjustmentDetails());
-
-            result.add(dto);
+            result.add(toMajorSummaryDTO(summary, conversionRate, displayCurrency));
         }
 
         // 如果需要总计,添加总计记录
@@ -539,23 +491,60 @@ public class ExpenseAnalysisService {
     }
 
     /**
-     * 计算年度支出汇总（运行存储过程）
+     * 全量重算年度支出汇总
      */
-    @Transactional
     public void calculateAnnualExpenseSummary(Long familyId, Integer year) {
-        try {
-            // 调用存储过程 calculate_annual_expense_summary_v3
-            entityManager.createNativeQuery("CALL calculate_annual_expense_summary_v3(:familyId, :year)")
-                    .setParameter("familyId", familyId)
-                    .setParameter("year", year)
-                    .executeUpdate();
-
-            // 刷新实体管理器
-            entityManager.flush();
-            entityManager.clear();
-        } catch (Exception e) {
-            throw new RuntimeException("计算年度支出汇总失败: " + e.getMessage(), e);
+        annualExpenseSummaryService.rebuild(familyId, year);
+    }
+
+    /**
+     * 批量获取多个年度的大类支出汇总（USD，不含总计行）
+     * 一次查询代替逐年调用 getAnnualExpenseSummaryWithAdjustments，供仪表盘现金流指标使用
+     */
+    public Map<Integer, List<AnnualExpenseSummaryDTO>> getAnnualMajorCategorySummaries(
+            Long familyId, Collection<Integer> years) {
+        Map<Integer, List<AnnualExpenseSummaryDTO>> result = new HashMap<>();
+        for (Integer year : years) {
+            result.put(year, new ArrayList<>());
+        }
+        for (AnnualExpenseSummary summary : annualExpenseSummaryRepository
+                .findMajorCategorySummaryByYears(familyId, years)) {
+            result.computeIfAbsent(summary.getSummaryYear(), k -> new ArrayList<>())
+                    .add(toMajorSummaryDTO(summary, BigDecimal.ONE, "USD"));
         }
+        return result;
+    }
+
+    private AnnualExpenseSummaryDTO toMajorSummaryDTO(AnnualExpenseSummary summary, BigDecimal conversionRate,
+                                                      String displayCurrency) {
+        // 获取大类信息
+        ExpenseCategoryMajor major = summary.getMajorCategory();
+
+        AnnualExpenseSummaryDTO dto = new AnnualExpenseSummaryDTO();
+        dto.setSummaryYear(summary.getSummaryYear());
+        dto.setMajorCategoryId(summary.getMajorCategoryId());
+        dto.setMajorCategoryName(major != null ? major.getName() : null);
+        dto.setMajorCategoryIcon(major != null ? major.getIcon() : null);
+        dto.setMajorCategoryCode(major != null ? major.getCode() : null);
+        dto.setMinorCategoryId(null);
+        dto.setMinorCategoryName(null);
+
+        // Convert amounts if needed
+        dto.setBaseExpenseAmount(summary.getBaseExpenseAmount().multiply(conversionRate));
+        dto.setSpecialExpense(summary.getSpecialExpenseAmount().multiply(conversionRate));
+        dto.setAssetAdjustment(summary.getAssetAdjustment().multiply(conversionRate));
+        dto.setLiabilityAdjustment(summary.getLiabilityAdjustment().multiply(conversionRate));
+        dto.setActualExpenseAmount(summary.getActualExpenseAmount().multiply(conversionRate));
+        dto.setCurrency(displayCurrency);
+        dto.setAdjustmentDetails(summary.getAdjustmentDetails());
+        return dto;
+    }
+
+    /**
+     * 核对年度支出汇总：全量计算结果与已存数据的差异（为空表示一致）
+     */
+    public List<String> verifyAnnualExpenseSummary(Long familyId, Integer year) {
+        return annualExpenseSummaryService.verify(familyId, year);
     }
 
     /**
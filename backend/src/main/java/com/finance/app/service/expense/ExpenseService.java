@@ -3,6 +3,8 @@ package com.finance.app.service.expense;
 import com.finance.app.dto.expense.*;
 import com.finance.app.model.*;
 import com.finance.app.repository.*;
+import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -24,8 +26,11 @@ public class ExpenseService {
     private final ExpenseCategoryMajorRepository majorCategoryRepository;
     private final ExpenseCategoryMinorRepository minorCategoryRepository;
     private final ExpenseRecordRepository expenseRecordRepository;
-    private final ExchangeRateRepository exchangeRateRepository;
+    private final ExchangeRateService exchangeRateService;
     private final com.finance.app.service.DataProtectionService dataProtectionService;
+    private final AnnualExpenseSummaryService annualExpenseSummaryService;
+    private final ReferenceDataCache referenceDataCache;
+    private final RecordBatchInsertRepository recordBatchInsertRepository;
 
     // ==================== 分类管理 ====================
 
@@ -96,6 +101,7 @@ public class ExpenseService {
         minor.setIsDefault(false);
 
         ExpenseCategoryMinor saved = minorCategoryRepository.save(minor);
+        referenceDataCache.invalidateAfterCommit();
 
         return ExpenseCategoryDTO.MinorCategoryDTO.builder()
             .id(saved.getId())
@@ -133,6 +139,7 @@ public class ExpenseService {
         minor.setExpenseType(request.getExpenseType());
 
         ExpenseCategoryMinor saved = minorCategoryRepository.save(minor);
+        referenceDataCache.invalidateAfterCommit();
         long recordCount = minorCategoryRepository.countExpenseRecords(saved.getId());
 
         return ExpenseCategoryDTO.MinorCategoryDTO.builder()
@@ -167,6 +174,7 @@ public class ExpenseService {
             minorCategoryRepository.deleteById(id);
             log.info("子分类{}已删除（无关联记录）", id);
         }
+        referenceDataCache.invalidateAfterCommit();
     }
 
     // ==================== 支出记录管理 ====================
@@ -190,6 +198,7 @@ public class ExpenseService {
 
         ExpenseRecord record = buildExpenseRecord(request);
         ExpenseRecord saved = expenseRecordRepository.save(record);
+        onRecordsChanged(List.of(saved));
 
         return toDTO(saved);
     }
@@ -217,34 +226,34 @@ public class ExpenseService {
         record.setDescription(request.getDescription());
 
         ExpenseRecord saved = expenseRecordRepository.save(record);
+        onRecordsChanged(List.of(saved));
         return toDTO(saved);
     }
 
     /**
      * 批量保存支出记录
+     * 子分类走参考数据缓存，该期间已有记录一次查出：已有记录改字段后随 flush 批量更新，
+     * 新记录在 flush 之后用 JDBC 批量插入。同一批次内重复的 子分类+货币 以后一条为准（与逐条保存一致）。
      */
     @Transactional
     public List<ExpenseRecordDTO> batchSaveExpenseRecords(BatchExpenseRecordRequest request) {
-        List<ExpenseRecord> savedRecords = new ArrayList<>();
+        // 检查是否已存在（包含货币，支持同一分类多货币记录）
+        Map<String, ExpenseRecord> recordsByKey = new HashMap<>();
+        for (ExpenseRecord record : expenseRecordRepository.findByFamilyIdAndExpensePeriod(
+                request.getFamilyId(), request.getExpensePeriod())) {
+            recordsByKey.putIfAbsent(recordKey(record.getMinorCategoryId(), record.getCurrency()), record);
+        }
 
+        List<ExpenseRecord> savedRecords = new ArrayList<>();
+        List<ExpenseRecord> newRecords = new ArrayList<>();
         for (BatchExpenseRecordRequest.ExpenseRecordItem item : request.getRecords()) {
             // 查找子分类所属的大类
-            ExpenseCategoryMinor minor = minorCategoryRepository.findById(item.getMinorCategoryId())
+            ExpenseCategoryMinor minor = referenceDataCache.findExpenseMinor(item.getMinorCategoryId())
                 .orElseThrow(() -> new IllegalArgumentException("子分类不存在: " + item.getMinorCategoryId()));
 
-            // 检查是否已存在（包含货币，支持同一分类多货币记录）
-            Optional<ExpenseRecord> existing = expenseRecordRepository
-                .findByFamilyIdAndExpensePeriodAndMinorCategoryIdAndCurrency(
-                    request.getFamilyId(),
-                    request.getExpensePeriod(),
-                    item.getMinorCategoryId(),
-                    item.getCurrency()
-                );
-
-            ExpenseRecord record;
-            if (existing.isPresent()) {
+            ExpenseRecord record = recordsByKey.get(recordKey(item.getMinorCategoryId(), item.getCurrency()));
+            if (record != null) {
                 // 更新现有记录
-                record = existing.get();
                 record.setAmount(item.getAmount());
                 record.setCurrency(item.getCurrency());
                 record.setExpenseType(item.getExpenseType());
@@ -266,10 +275,16 @@ public class ExpenseService {
                 String[] parts = request.getExpensePeriod().split("-");
                 record.setExpenseYear(Integer.parseInt(parts[0]));
                 record.setExpenseMonth(Integer.parseInt(parts[1]));
+
+                recordsByKey.put(recordKey(item.getMinorCategoryId(), item.getCurrency()), record);
+                newRecords.add(record);
             }
 
-            savedRecords.add(expenseRecordRepository.save(record));
+            savedRecords.add(record);
         }
+        expenseRecordRepository.flush();
+        recordBatchInsertRepository.insertExpenseRecords(newRecords);
+        onRecordsChanged(savedRecords);
 
         return savedRecords.stream()
             .map(this::toDTO)
@@ -308,10 +323,29 @@ public class ExpenseService {
         dataProtectionService.validateDeleteOperation(record.getFamilyId(), "删除支出记录");
 
         expenseRecordRepository.deleteById(id);
+        onRecordsChanged(List.of(record));
     }
 
     // ==================== 辅助方法 ====================
 
+    private static String recordKey(Long minorCategoryId, String currency) {
+        return minorCategoryId + "|" + currency;
+    }
+
+    /**
+     * 记录写入后按 家庭 × 年份 增量更新年度支出汇总（只重算涉及的大类）
+     */
+    private void onRecordsChanged(List<ExpenseRecord> records) {
+        Map<Long, Map<Integer, Set<Long>>> changed = new HashMap<>();
+        for (ExpenseRecord record : records) {
+            changed.computeIfAbsent(record.getFamilyId(), k -> new HashMap<>())
+                .computeIfAbsent(record.getExpenseYear(), k -> new HashSet<>())
+                .add(record.getMajorCategoryId());
+        }
+        changed.forEach((familyId, years) -> years.forEach((year, majorCategoryIds) ->
+            annualExpenseSummaryService.onExpenseRecordsChanged(familyId, year, majorCategoryIds)));
+    }
+
     /**
      * 构建支出记录实体
      */
@@ -362,17 +396,14 @@ public class ExpenseService {
         YearMonth ym = YearMonth.parse(period);
         java.time.LocalDate monthEnd = ym.atEndOfMonth();
 
-        List<ExchangeRate> rates = exchangeRateRepository
-            .findLatestRateByCurrencyAndDate(currency, monthEnd);
+        BigDecimal rateToUsd = exchangeRateService.findExchangeRate(currency, monthEnd);
 
-        if (rates.isEmpty()) {
+        if (rateToUsd == null) {
             throw new IllegalArgumentException("找不到" + currency + "的汇率");
         }
 
-        ExchangeRate rate = rates.get(0);
-
         // amount * rate_to_usd * usd_to_cny_rate
-        BigDecimal usdAmount = amount.multiply(rate.getRateToUsd());
+        BigDecimal usdAmount = amount.multiply(rateToUsd);
         BigDecimal usdToCny = BigDecimal.valueOf(7.0);
 
         return usdAmount.multiply(usdToCny);
@@ -382,8 +413,11 @@ public class ExpenseService {
      * 转换为DTO
      */
     private ExpenseRecordDTO toDTO(ExpenseRecord record) {
-        ExpenseCategoryMajor major = record.getMajorCategory();
-        ExpenseCategoryMinor minor = record.getMinorCategory();
+        // 分类名称取自参考数据缓存，避免逐条记录加载懒关联（批量录入新插入的记录也没有关联对象）
+        ExpenseCategoryMajor major = referenceDataCache.findExpenseMajor(record.getMajorCategoryId())
+            .orElseGet(record::getMajorCategory);
+        ExpenseCategoryMinor minor = referenceDataCache.findExpenseMinor(record.getMinorCategoryId())
+            .orElseGet(record::getMinorCategory);
 
         return ExpenseRecordDTO.builder()
             .id(record.getId())
@@ -3,15 +3,13 @@ package com.finance.app.service.income;
 import com.finance.app.dto.income.IncomeAnnualMajorCategoryDTO;
 import com.finance.app.dto.income.IncomeAnnualMinorCategoryDTO;
 import com.finance.app.dto.income.IncomeMonthlyTrendDTO;
-import com.finance.app.model.ExchangeRate;
 import com.finance.app.model.IncomeCategoryMajor;
 import com.finance.app.model.IncomeCategoryMinor;
 import com.finance.app.model.IncomeRecord;
-import com.finance.app.repository.ExchangeRateRepository;
-import com.finance.app.repository.IncomeCategoryMajorRepository;
-import com.finance.app.repository.IncomeCategoryMinorRepository;
 import com.finance.app.repository.IncomeRecordRepository;
+import com.finance.app.service.ExchangeRateService;
 import com.finance.app.service.InvestmentAnalysisService;
+import com.finance.app.service.ReferenceDataCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -32,16 +30,13 @@ public class IncomeAnalysisService {
     private IncomeRecordRepository incomeRecordRepository;
 
     @Autowired
-    private IncomeCategoryMajorRepository majorCategoryRepository;
+    private ExchangeRateService exchangeRateService;
 
     @Autowired
-    private IncomeCategoryMinorRepository minorCategoryRepository;
-
-    @Autowired
-    private ExchangeRateRepository exchangeRateRepository;
+    private InvestmentAnalysisService investmentAnalysisService;
 
     @Autowired
-    private InvestmentAnalysisService investmentAnalysisService;
+    private ReferenceDataCache referenceDataCache;
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -89,7 +84,7 @@ public class IncomeAnalysisService {
         }
 
         // 5. 获取Investment大类的实时投资回报（使用投资分析页面的计算逻辑）
-        IncomeCategoryMajor investmentCategory = majorCategoryRepository.findByName("Investment");
+        IncomeCategoryMajor investmentCategory = referenceDataCache.findIncomeMajorByName("Investment").orElse(null);
         if (investmentCategory != null) {
             try {
                 // 调用投资分析服务获取年度投资回报
@@ -112,7 +107,7 @@ public class IncomeAnalysisService {
         // 6. 构建DTO列表
         List<IncomeAnnualMajorCategoryDTO> result = new ArrayList<>();
         for (Map.Entry<Long, BigDecimal> entry : majorCategoryTotals.entrySet()) {
-            IncomeCategoryMajor major = majorCategoryRepository.findById(entry.getKey())
+            IncomeCategoryMajor major = referenceDataCache.findIncomeMajor(entry.getKey())
                     .orElse(null);
             if (major != null) {
                 result.add(new IncomeAnnualMajorCategoryDTO(
@@ -186,7 +181,7 @@ public class IncomeAnalysisService {
 
             if (minorId == 0L) {
                 // 无小类的记录
-                IncomeCategoryMajor major = majorCategoryRepository.findById(majorCategoryId).orElse(null);
+                IncomeCategoryMajor major = referenceDataCache.findIncomeMajor(majorCategoryId).orElse(null);
                 if (major != null) {
                     result.add(new IncomeAnnualMinorCategoryDTO(
                             null,
@@ -201,9 +196,9 @@ public class IncomeAnalysisService {
                     ));
                 }
             } else {
-                IncomeCategoryMinor minor = minorCategoryRepository.findById(minorId).orElse(null);
+                IncomeCategoryMinor minor = referenceDataCache.findIncomeMinor(minorId).orElse(null);
                 if (minor != null) {
-                    IncomeCategoryMajor major = majorCategoryRepository.findById(majorCategoryId).orElse(null);
+                    IncomeCategoryMajor major = referenceDataCache.findIncomeMajor(majorCategoryId).orElse(null);
                     result.add(new IncomeAnnualMinorCategoryDTO(
                             minor.getId(),
                             minor.getName(),
@@ -238,49 +233,30 @@ public class IncomeAnalysisService {
             rateMap = loadExchangeRates(year);
         }
 
-        // 2. 构建12个月的结果
-        List<IncomeMonthlyTrendDTO> result = new ArrayList<>();
-        Map<String, BigDecimal> finalRateMap = rateMap;
-
-        for (int month = 1; month <= 12; month++) {
-            String period = String.format("%d-%02d", year, month);
-
-            // 查询该月该小类的所有记录
-            List<IncomeRecord> records;
-            if (minorCategoryId != null && minorCategoryId > 0) {
-                // 有小类：查询该小类
-                records = incomeRecordRepository.findByFamilyIdAndPeriod(familyId, period).stream()
-                        .filter(r -> minorCategoryId.equals(r.getMinorCategoryId()))
-                        .collect(Collectors.toList());
-            } else {
-                // 无小类：查询该大类下所有无小类的记录
-                records = incomeRecordRepository.findByFamilyIdAndPeriod(familyId, period).stream()
-                        .filter(r -> majorCategoryId.equals(r.getMajorCategoryId()) && r.getMinorCategoryId() == null)
-                        .collect(Collectors.toList());
-            }
-
-            BigDecimal monthTotal = BigDecimal.ZERO;
-
-            for (IncomeRecord record : records) {
-                // 过滤货币
-                if (!"All".equalsIgnoreCase(currency) && !currency.equals(record.getCurrency())) {
-                    continue;
-                }
-
-                BigDecimal amount;
-                if ("All".equalsIgnoreCase(currency)) {
-                    amount = convertToUSD(record.getAmount(), record.getCurrency(), finalRateMap);
-                } else {
-                    amount = record.getAmount();
-                }
-
-                monthTotal = monthTotal.add(amount);
+        // 2. 一次查询按月份和币种汇总全年的收入（有小类时为该小类，否则为该大类下无小类的记录）
+        String currencyFilter = "All".equalsIgnoreCase(currency) ? null : currency;
+        Long minorFilter = minorCategoryId != null && minorCategoryId > 0 ? minorCategoryId : null;
+        List<Object[]> rows = incomeRecordRepository.sumByCategoryGroupByPeriodAndCurrency(
+                familyId, majorCategoryId, minorFilter, year + "-01", year + "-12", currencyFilter);
+
+        BigDecimal[] monthTotals = new BigDecimal[12];
+        Arrays.fill(monthTotals, BigDecimal.ZERO);
+        for (Object[] row : rows) {
+            int month = Integer.parseInt(((String) row[0]).substring(5, 7));
+            BigDecimal amount = (BigDecimal) row[2];
+            if (currencyFilter == null) {
+                amount = convertToUSD(amount, (String) row[1], rateMap);
             }
+            monthTotals[month - 1] = monthTotals[month - 1].add(amount);
+        }
 
+        // 3. 构建12个月的结果
+        List<IncomeMonthlyTrendDTO> result = new ArrayList<>();
+        for (int month = 1; month <= 12; month++) {
             result.add(new IncomeMonthlyTrendDTO(
                     month,
-                    period,
-                    monthTotal,
+                    String.format("%d-%02d", year, month),
+                    monthTotals[month - 1],
                     "All".equalsIgnoreCase(currency) ? "USD" : currency
             ));
         }
@@ -292,29 +268,8 @@ public class IncomeAnalysisService {
      * 加载指定年份的所有汇率
      */
     private Map<String, BigDecimal> loadExchangeRates(Integer year) {
-        Map<String, BigDecimal> rateMap = new HashMap<>();
-
-        // 查询该年末的汇率（12-31）
-        LocalDate yearEnd = LocalDate.of(year, 12, 31);
-
-        // 获取所有活跃的汇率
-        List<ExchangeRate> rates = exchangeRateRepository.findByIsActiveTrueOrderByEffectiveDateDesc();
-
-        // 找每个货币在该年末或之前最近的汇率
-        Set<String> processedCurrencies = new HashSet<>();
-        for (ExchangeRate rate : rates) {
-            if (rate.getEffectiveDate().isAfter(yearEnd)) {
-                continue;  // 跳过该年之后的汇率
-            }
-            if (processedCurrencies.contains(rate.getCurrency())) {
-                continue;  // 已经有更近的汇率了
-            }
-            rateMap.put(rate.getCurrency(), rate.getRateToUsd());
-            processedCurrencies.add(rate.getCurrency());
-        }
-
-        // 手动添加USD基准货币
-        rateMap.put("USD", BigDecimal.ONE);
+        // 每个货币取该年末（12-31）或之前最近的汇率，USD 为基准货币
+        Map<String, BigDecimal> rateMap = exchangeRateService.getExchangeRatesAsOf(LocalDate.of(year, 12, 31));
 
         // 添加默认汇率（以防某些货币查不到）
         if (!rateMap.containsKey("CNY")) {
@@ -3,7 +3,9 @@ package com.finance.app.service.income;
 import com.finance.app.dto.income.*;
 import com.finance.app.model.*;
 import com.finance.app.repository.*;
+import com.finance.app.service.AnnualSummaryRefreshScheduler;
 import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.ReferenceDataCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -28,6 +30,9 @@ public class IncomeService {
     private final AssetAccountRepository assetAccountRepository;
     private final ExchangeRateService exchangeRateService;
     private final com.finance.app.service.DataProtectionService dataProtectionService;
+    private final AnnualSummaryRefreshScheduler annualSummaryRefreshScheduler;
+    private final ReferenceDataCache referenceDataCache;
+    private final RecordBatchInsertRepository recordBatchInsertRepository;
 
     // ==================== 分类管理 ====================
 
@@ -109,7 +114,9 @@ public class IncomeService {
         minor.setDescription(description);
         minor.setIsActive(true);
 
-        return minorCategoryRepository.save(minor);
+        IncomeCategoryMinor saved = minorCategoryRepository.save(minor);
+        referenceDataCache.invalidateAfterCommit();
+        return saved;
     }
 
     /**
@@ -125,7 +132,9 @@ public class IncomeService {
         minor.setUserId(userId);
         minor.setDescription(description);
 
-        return minorCategoryRepository.save(minor);
+        IncomeCategoryMinor saved = minorCategoryRepository.save(minor);
+        referenceDataCache.invalidateAfterCommit();
+        return saved;
     }
 
     /**
@@ -150,6 +159,7 @@ public class IncomeService {
             minorCategoryRepository.deleteById(id);
             log.info("小类{}已删除（无关联记录）", id);
         }
+        referenceDataCache.invalidateAfterCommit();
     }
 
     // ==================== 收入记录管理 ====================
@@ -170,6 +180,7 @@ public class IncomeService {
 
         IncomeRecord record = buildIncomeRecord(request);
         IncomeRecord saved = incomeRecordRepository.save(record);
+        annualSummaryRefreshScheduler.onIncomeRecordsChanged(saved.getFamilyId(), saved.getPeriod());
 
         return toDTO(saved);
     }
@@ -201,19 +212,32 @@ public class IncomeService {
         record.setAmountUsd(request.getAmount().multiply(exchangeRate));
 
         IncomeRecord saved = incomeRecordRepository.save(record);
+        annualSummaryRefreshScheduler.onIncomeRecordsChanged(saved.getFamilyId(), saved.getPeriod());
         return toDTO(saved);
     }
 
     /**
      * 批量保存收入记录
+     * 大类走参考数据缓存，该期间已有记录和各币种汇率各取一次：已有记录随 flush 批量更新，
+     * 新记录在 flush 之后用 JDBC 批量插入
      */
     @Transactional
     public List<IncomeRecordDTO> batchSaveIncomeRecords(BatchIncomeRecordRequest request) {
-        List<IncomeRecord> savedRecords = new ArrayList<>();
+        // 检查是否已存在（家庭+用户+期间+大类+小类+币种唯一）
+        Map<String, IncomeRecord> recordsByKey = new HashMap<>();
+        for (IncomeRecord record : incomeRecordRepository.findByFamilyIdAndPeriod(
+                request.getFamilyId(), request.getPeriod())) {
+            recordsByKey.putIfAbsent(
+                recordKey(record.getMajorCategoryId(), record.getMinorCategoryId(), record.getCurrency()), record);
+        }
+        LocalDate periodStart = LocalDate.parse(request.getPeriod() + "-01");
+        Map<String, BigDecimal> exchangeRates = new HashMap<>();
 
+        List<IncomeRecord> savedRecords = new ArrayList<>();
+        List<IncomeRecord> newRecords = new ArrayList<>();
         for (BatchIncomeRecordRequest.IncomeRecordItem item : request.getRecords()) {
             // 检查大类
-            IncomeCategoryMajor major = majorCategoryRepository.findById(item.getMajorCategoryId())
+            IncomeCategoryMajor major = referenceDataCache.findIncomeMajor(item.getMajorCategoryId())
                 .orElseThrow(() -> new IllegalArgumentException("大类不存在: " + item.getMajorCategoryId()));
 
             // 投资收益不允许手动录入
@@ -222,30 +246,18 @@ public class IncomeService {
                 continue;
             }
 
-            // 检查是否已存在（家庭+用户+期间+大类+小类+币种唯一）
-            IncomeRecord record;
-            List<IncomeRecord> existing = incomeRecordRepository.findByFamilyIdAndPeriod(
-                request.getFamilyId(),
-                request.getPeriod()
-            );
+            String key = recordKey(item.getMajorCategoryId(), item.getMinorCategoryId(), item.getCurrency());
+            IncomeRecord record = recordsByKey.get(key);
 
-            Optional<IncomeRecord> matchingRecord = existing.stream()
-                .filter(r -> Objects.equals(r.getMajorCategoryId(), item.getMajorCategoryId())
-                    && Objects.equals(r.getMinorCategoryId(), item.getMinorCategoryId())
-                    && Objects.equals(r.getCurrency(), item.getCurrency()))
-                .findFirst();
+            // 计算USD金额
+            BigDecimal exchangeRate = exchangeRates.computeIfAbsent(item.getCurrency(),
+                currency -> exchangeRateService.getExchangeRate(currency, periodStart));
 
-            if (matchingRecord.isPresent()) {
+            if (record != null) {
                 // 更新现有记录
-                record = matchingRecord.get();
                 record.setAssetAccountId(item.getAssetAccountId());
                 record.setAmount(item.getAmount());
                 record.setDescription(item.getDescription());
-
-                BigDecimal exchangeRate = exchangeRateService.getExchangeRate(
-                    item.getCurrency(),
-                    LocalDate.parse(request.getPeriod() + "-01")
-                );
                 record.setAmountUsd(item.getAmount().multiply(exchangeRate));
             } else {
                 // 创建新记录
@@ -258,16 +270,18 @@ public class IncomeService {
                 record.setAmount(item.getAmount());
                 record.setCurrency(item.getCurrency());
                 record.setDescription(item.getDescription());
-
-                // 计算USD金额
-                BigDecimal exchangeRate = exchangeRateService.getExchangeRate(
-                    item.getCurrency(),
-                    LocalDate.parse(request.getPeriod() + "-01")
-                );
                 record.setAmountUsd(item.getAmount().multiply(exchangeRate));
+
+                recordsByKey.put(key, record);
+                newRecords.add(record);
             }
 
-            savedRecords.add(incomeRecordRepository.save(record));
+            savedRecords.add(record);
+        }
+        incomeRecordRepository.flush();
+        recordBatchInsertRepository.insertIncomeRecords(newRecords);
+        if (!savedRecords.isEmpty()) {
+            annualSummaryRefreshScheduler.onIncomeRecordsChanged(request.getFamilyId(), request.getPeriod());
         }
 
         return savedRecords.stream()
@@ -315,6 +329,7 @@ public class IncomeService {
         }
 
         incomeRecordRepository.deleteById(id);
+        annualSummaryRefreshScheduler.onIncomeRecordsChanged(record.getFamilyId(), record.getPeriod());
     }
 
     // ==================== 辅助方法 ====================
@@ -343,14 +358,18 @@ public class IncomeService {
         return record;
     }
 
+    private static String recordKey(Long majorCategoryId, Long minorCategoryId, String currency) {
+        return majorCategoryId + "|" + minorCategoryId + "|" + currency;
+    }
+
     /**
      * 转换为DTO
      */
     private IncomeRecordDTO toDTO(IncomeRecord record) {
-        IncomeCategoryMajor major = majorCategoryRepository.findById(record.getMajorCategoryId())
+        IncomeCategoryMajor major = referenceDataCache.findIncomeMajor(record.getMajorCategoryId())
             .orElse(null);
         IncomeCategoryMinor minor = record.getMinorCategoryId() != null
-            ? minorCategoryRepository.findById(record.getMinorCategoryId()).orElse(null)
+            ? referenceDataCache.findIncomeMinor(record.getMinorCategoryId()).orElse(null)
             : null;
         AssetAccount assetAccount = record.getAssetAccountId() != null
             ? assetAccountRepository.findById(record.getAssetAccountId()).orElse(null)
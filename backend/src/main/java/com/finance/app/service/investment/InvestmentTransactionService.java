@@ -25,6 +25,8 @@ public class InvestmentTransactionService {
     private final UserRepository userRepository;
     private final AssetRecordRepository assetRecordRepository;
     private final com.finance.app.service.ExchangeRateService exchangeRateService;
+    private final com.finance.app.service.ReferenceDataCache referenceDataCache;
+    private final RecordBatchInsertRepository recordBatchInsertRepository;
 
     // ==================== 投资账户查询 ====================
 
@@ -222,6 +224,8 @@ public class InvestmentTransactionService {
 
     /**
      * 批量保存投资交易记录
+     * 账户一次查出、该期间这些账户的已有交易一次查出，逐项在内存中决定创建/更新/删除；
+     * 删除和更新随 flush 批量执行，新交易在 flush 之后用 JDBC 批量插入
      */
     @Transactional
     public Map<String, Object> batchSaveTransactions(BatchInvestmentTransactionRequest request) {
@@ -229,18 +233,42 @@ public class InvestmentTransactionService {
         int updated = 0;
         int deleted = 0;
 
+        List<Long> accountIds = request.getTransactions().stream()
+            .map(BatchInvestmentTransactionRequest.TransactionItem::getAccountId)
+            .distinct()
+            .collect(Collectors.toList());
+        Map<Long, AssetAccount> accounts = assetAccountRepository.findAllById(accountIds).stream()
+            .collect(Collectors.toMap(AssetAccount::getId, account -> account));
+        Set<Long> investmentTypeIds = referenceDataCache.getAssetTypes().stream()
+            .filter(type -> Boolean.TRUE.equals(type.getIsInvestment()))
+            .map(AssetType::getId)
+            .collect(Collectors.toSet());
+
+        Map<String, InvestmentTransaction> transactionsByKey = new LinkedHashMap<>();
+        if (!accountIds.isEmpty()) {
+            for (InvestmentTransaction transaction : transactionRepository.findByAccountIdsAndTransactionPeriod(
+                    accountIds, request.getTransactionPeriod())) {
+                transactionsByKey.putIfAbsent(
+                    transactionKey(transaction.getAccountId(), transaction.getTransactionType()), transaction);
+            }
+        }
+        List<InvestmentTransaction> removed = new ArrayList<>();
+
         for (BatchInvestmentTransactionRequest.TransactionItem item : request.getTransactions()) {
             // 验证账户
-            AssetAccount account = assetAccountRepository.findById(item.getAccountId())
-                .orElseThrow(() -> new IllegalArgumentException("账户不存在: " + item.getAccountId()));
+            AssetAccount account = accounts.get(item.getAccountId());
+            if (account == null) {
+                throw new IllegalArgumentException("账户不存在: " + item.getAccountId());
+            }
 
-            if (account.getAssetType() == null || !Boolean.TRUE.equals(account.getAssetType().getIsInvestment())) {
+            if (account.getAssetTypeId() == null || !investmentTypeIds.contains(account.getAssetTypeId())) {
                 throw new IllegalArgumentException("只有投资类账户才能创建投资交易记录");
             }
 
             // 处理投入记录
             if (item.getDeposits() != null && item.getDeposits().compareTo(BigDecimal.ZERO) > 0) {
                 created += saveOrUpdateTransaction(
+                    transactionsByKey,
                     item.getAccountId(),
                     request.getTransactionPeriod(),
                     InvestmentTransaction.TransactionType.DEPOSIT,
@@ -250,8 +278,9 @@ public class InvestmentTransactionService {
             } else {
                 // 删除原有的投入记录
                 deleted += deleteTransactionIfExists(
+                    transactionsByKey,
+                    removed,
                     item.getAccountId(),
-                    request.getTransactionPeriod(),
                     InvestmentTransaction.TransactionType.DEPOSIT
                 );
             }
@@ -259,6 +288,7 @@ public class InvestmentTransactionService {
             // 处理取出记录
             if (item.getWithdrawals() != null && item.getWithdrawals().compareTo(BigDecimal.ZERO) > 0) {
                 created += saveOrUpdateTransaction(
+                    transactionsByKey,
                     item.getAccountId(),
                     request.getTransactionPeriod(),
                     InvestmentTransaction.TransactionType.WITHDRAWAL,
@@ -268,13 +298,20 @@ public class InvestmentTransactionService {
             } else {
                 // 删除原有的取出记录
                 deleted += deleteTransactionIfExists(
+                    transactionsByKey,
+                    removed,
                     item.getAccountId(),
-                    request.getTransactionPeriod(),
                     InvestmentTransaction.TransactionType.WITHDRAWAL
                 );
             }
         }
 
+        transactionRepository.deleteAll(removed);
+        transactionRepository.flush();
+        recordBatchInsertRepository.insertInvestmentTransactions(transactionsByKey.values().stream()
+            .filter(transaction -> transaction.getId() == null)
+            .collect(Collectors.toList()));
+
         log.info("批量保存投资交易记录完成: period={}, created={}, updated={}, deleted={}",
             request.getTransactionPeriod(), created, updated - created, deleted);
 
@@ -287,22 +324,24 @@ public class InvestmentTransactionService {
 
     // ==================== 私有辅助方法 ====================
 
+    private static String transactionKey(Long accountId, InvestmentTransaction.TransactionType type) {
+        return accountId + "|" + type;
+    }
+
     /**
-     * 保存或更新交易记录
+     * 保存或更新交易记录（已有交易只改字段，由 flush 写入；新交易放入 transactionsByKey 等待批量插入）
      * 返回1表示创建，0表示更新
      */
-    private int saveOrUpdateTransaction(Long accountId, String period,
+    private int saveOrUpdateTransaction(Map<String, InvestmentTransaction> transactionsByKey,
+                                       Long accountId, String period,
                                        InvestmentTransaction.TransactionType type,
                                        BigDecimal amount, String description) {
-        Optional<InvestmentTransaction> existing = transactionRepository
-            .findByAccountIdAndTransactionPeriodAndTransactionType(accountId, period, type);
+        InvestmentTransaction existing = transactionsByKey.get(transactionKey(accountId, type));
 
-        if (existing.isPresent()) {
+        if (existing != null) {
             // 更新现有记录
-            InvestmentTransaction transaction = existing.get();
-            transaction.setAmount(amount);
-            transaction.setDescription(description);
-            transactionRepository.save(transaction);
+            existing.setAmount(amount);
+            existing.setDescription(description);
             return 0; // 更新
         } else {
             // 创建新记录
@@ -312,22 +351,24 @@ public class InvestmentTransactionService {
             transaction.setTransactionType(type);
             transaction.setAmount(amount);
             transaction.setDescription(description);
-            transactionRepository.save(transaction);
+            transactionsByKey.put(transactionKey(accountId, type), transaction);
             return 1; // 创建
         }
     }
 
     /**
-     * 如果存在则删除交易记录
+     * 如果存在则删除交易记录（本批次新建、尚未插入的交易直接丢弃）
      * 返回删除数量
      */
-    private int deleteTransactionIfExists(Long accountId, String period,
-                                         InvestmentTransaction.TransactionType type) {
-        Optional<InvestmentTransaction> existing = transactionRepository
-            .findByAccountIdAndTransactionPeriodAndTransactionType(accountId, period, type);
-
-        if (existing.isPresent()) {
-            transactionRepository.delete(existing.get());
+    private int deleteTransactionIfExists(Map<String, InvestmentTransaction> transactionsByKey,
+                                         List<InvestmentTransaction> removed,
+                                         Long accountId, InvestmentTransaction.TransactionType type) {
+        InvestmentTransaction existing = transactionsByKey.remove(transactionKey(accountId, type));
+
+        if (existing != null) {
+            if (existing.getId() != null) {
+                removed.add(existing);
+            }
             return 1;
         }
         return 0;
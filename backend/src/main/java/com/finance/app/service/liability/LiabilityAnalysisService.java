@@ -4,11 +4,15 @@ import com.finance.app.dto.AccountTrendDataPointDTO;
 import com.finance.app.dto.TrendDataPointDTO;
 import com.finance.app.model.LiabilityAccount;
 import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.NetWorthSnapshotCube;
 import com.finance.app.model.User;
 import com.finance.app.repository.LiabilityAccountRepository;
 import com.finance.app.repository.LiabilityRecordRepository;
 import com.finance.app.repository.UserRepository;
+import com.finance.app.service.AccountBalanceIndexService;
+import com.finance.app.service.AccountBalanceIndexService.BalancePoint;
 import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.NetWorthCubeService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -26,6 +30,8 @@ public class LiabilityAnalysisService {
     private final LiabilityRecordRepository recordRepository;
     private final UserRepository userRepository;
     private final ExchangeRateService exchangeRateService;
+    private final AccountBalanceIndexService balanceIndexService;
+    private final NetWorthCubeService netWorthCubeService;
 
     // 获取按类型的负债配置
     public Map<String, Object> getLiabilityAllocationByType(Long userId) {
@@ -65,20 +71,20 @@ public class LiabilityAnalysisService {
         BigDecimal totalLiabilities = BigDecimal.ZERO;
 
         for (LiabilityAccount account : accounts) {
-            Optional<LiabilityRecord> record = getLiabilityRecordAsOfDate(account.getId(), asOfDate);
+            Optional<BalancePoint> record = getLiabilityRecordAsOfDate(familyId, account.getId(), asOfDate);
             if (record.isPresent()) {
-                LiabilityRecord liabilityRecord = record.get();
+                BalancePoint liabilityRecord = record.get();
                 BigDecimal amount;
                 if ("All".equalsIgnoreCase(currency)) {
                     // All模式：转换为USD
                     amount = convertToUSD(
-                        liabilityRecord.getOutstandingBalance(),
-                        liabilityRecord.getCurrency(),
-                        asOfDate != null ? asOfDate : liabilityRecord.getRecordDate()
+                        liabilityRecord.amount(),
+                        liabilityRecord.currency(),
+                        asOfDate != null ? asOfDate : liabilityRecord.recordDate()
                     );
                 } else {
                     // 单货币模式：使用原始金额
-                    amount = liabilityRecord.getOutstandingBalance();
+                    amount = liabilityRecord.amount();
                 }
                 totalLiabilities = totalLiabilities.add(amount);
 
@@ -133,23 +139,32 @@ public class LiabilityAnalysisService {
         LocalDate startDate = LocalDate.parse(startDateStr);
         LocalDate endDate = LocalDate.parse(endDateStr);
 
-        // 获取该类型的所有负债账户
-        List<LiabilityAccount> accounts;
-        if (familyId != null) {
-            // 获取该家庭所有成员的账户
-            List<User> familyMembers = userRepository.findByFamilyIdAndIsActiveTrue(familyId);
-            List<Long> userIds = familyMembers.stream().map(User::getId).collect(Collectors.toList());
-            accounts = accountRepository.findByUserIdInAndIsActiveTrue(userIds);
-        } else {
-            accounts = accountRepository.findByIsActiveTrue();
+        // 家庭维度直接读取净资产快照汇总
+        Map<LocalDate, BigDecimal> totalByDate = familyId != null
+            ? netWorthCubeService.getTotalsByDate(familyId, NetWorthSnapshotCube.KIND_LIABILITY, List.of(categoryType), startDate, endDate)
+            : sumRecordsByDate(categoryType, startDate, endDate);
+
+        // 转换为DTO列表
+        List<TrendDataPointDTO> result = new ArrayList<>();
+        for (Map.Entry<LocalDate, BigDecimal> entry : totalByDate.entrySet()) {
+            TrendDataPointDTO point = new TrendDataPointDTO();
+            point.setDate(entry.getKey().toString());
+            point.setTotal(entry.getValue());
+            result.add(point);
         }
 
-        // 过滤出匹配类型的账户
-        List<LiabilityAccount> filteredAccounts = accounts.stream()
+        // 按日期排序
+        result.sort(Comparator.comparing(TrendDataPointDTO::getDate));
+
+        return result;
+    }
+
+    // 按记录日期汇总指定类型所有活跃账户的USD金额（未指定家庭时使用）
+    private Map<LocalDate, BigDecimal> sumRecordsByDate(String categoryType, LocalDate startDate, LocalDate endDate) {
+        List<LiabilityAccount> filteredAccounts = accountRepository.findByIsActiveTrue().stream()
             .filter(acc -> acc.getLiabilityType() != null && categoryType.equals(acc.getLiabilityType().getType()))
             .collect(Collectors.toList());
 
-        // 获取日期范围内的记录并按日期汇总
         Map<LocalDate, BigDecimal> totalByDate = new HashMap<>();
         for (LiabilityAccount account : filteredAccounts) {
             List<LiabilityRecord> records = recordRepository.findByAccountIdAndRecordDateBetweenOrderByRecordDateDesc(
@@ -164,20 +179,7 @@ public class LiabilityAnalysisService {
                 totalByDate.merge(record.getRecordDate(), amount, BigDecimal::add);
             }
         }
-
-        // 转换为DTO列表
-        List<TrendDataPointDTO> result = new ArrayList<>();
-        for (Map.Entry<LocalDate, BigDecimal> entry : totalByDate.entrySet()) {
-            TrendDataPointDTO point = new TrendDataPointDTO();
-            point.setDate(entry.getKey().toString());
-            point.setTotal(entry.getValue());
-            result.add(point);
-        }
-
-        // 按日期排序
-        result.sort(Comparator.comparing(TrendDataPointDTO::getDate));
-
-        return result;
+        return totalByDate;
     }
 
     // 获取指定类型和日期的负债账户及其余额
@@ -200,13 +202,13 @@ public class LiabilityAnalysisService {
         // 获取每个账户在指定日期的余额
         List<Map<String, Object>> result = new ArrayList<>();
         for (LiabilityAccount account : filteredAccounts) {
-            Optional<LiabilityRecord> record = getLiabilityRecordAsOfDate(account.getId(), asOfDate);
+            Optional<BalancePoint> record = getLiabilityRecordAsOfDate(familyId, account.getId(), asOfDate);
             if (record.isPresent()) {
-                LiabilityRecord liabilityRecord = record.get();
+                BalancePoint liabilityRecord = record.get();
                 BigDecimal balance = convertToUSD(
-                    liabilityRecord.getOutstandingBalance(),
-                    liabilityRecord.getCurrency(),
-                    asOfDate != null ? asOfDate : liabilityRecord.getRecordDate()
+                    liabilityRecord.amount(),
+                    liabilityRecord.currency(),
+                    asOfDate != null ? asOfDate : liabilityRecord.recordDate()
                 );
                 Map<String, Object> accountData = new HashMap<>();
                 accountData.put("accountName", account.getAccountName());
@@ -279,16 +281,17 @@ public class LiabilityAnalysisService {
         return result;
     }
 
-    // 获取指定日期或之前最近的负债记录
-    private Optional<LiabilityRecord> getLiabilityRecordAsOfDate(Long accountId, LocalDate asOfDate) {
-        if (asOfDate == null) {
+    // 获取指定日期或之前最近的负债记录（有familyId时走家庭余额索引）
+    private Optional<BalancePoint> getLiabilityRecordAsOfDate(Long familyId, Long accountId, LocalDate asOfDate) {
+        if (familyId != null) {
+            return balanceIndexService.getLiabilityBalanceAsOf(familyId, accountId, asOfDate);
+        }
+        Optional<LiabilityRecord> record = asOfDate == null
             // 如果没有指定日期，获取最新记录
-            return recordRepository.findLatestByAccountId(accountId);
-        } else {
+            ? recordRepository.findLatestByAccountId(accountId)
             // 获取指定日期或之前最近的记录
-            List<LiabilityRecord> records = recordRepository.findByAccountIdAndRecordDateBeforeOrEqual(accountId, asOfDate);
-            return records.isEmpty() ? Optional.empty() : Optional.of(records.get(0));
-        }
+            : recordRepository.findLatestByAccountIdBeforeOrOnDate(accountId, asOfDate);
+        return record.map(r -> new BalancePoint(r.getAccountId(), r.getRecordDate(), r.getOutstandingBalance(), r.getCurrency()));
     }
 
     /**
@@ -8,8 +8,13 @@ import com.finance.app.model.LiabilityRecord;
 import com.finance.app.model.LiabilityType;
 import com.finance.app.repository.LiabilityAccountRepository;
 import com.finance.app.repository.LiabilityRecordRepository;
-import com.finance.app.repository.LiabilityTypeRepository;
+import com.finance.app.service.AccountBalanceIndexService;
+import com.finance.app.service.AccountLatestRecordService;
+import com.finance.app.service.AnnualSummaryRefreshScheduler;
 import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.NetWorthCubeService;
+import com.finance.app.service.ReferenceDataCache;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,16 +34,21 @@ public class LiabilityService {
 
     private final LiabilityAccountRepository accountRepository;
     private final LiabilityRecordRepository recordRepository;
-    private final LiabilityTypeRepository liabilityTypeRepository;
+    private final ReferenceDataCache referenceDataCache;
     private final com.finance.app.repository.UserRepository userRepository;
     private final com.finance.app.repository.AssetAccountRepository assetAccountRepository;
     private final ExchangeRateService exchangeRateService;
     private final com.finance.app.service.DataProtectionService dataProtectionService;
+    private final AccountBalanceIndexService balanceIndexService;
+    private final AccountLatestRecordService latestRecordService;
+    private final NetWorthCubeService netWorthCubeService;
+    private final AnnualExpenseSummaryService annualExpenseSummaryService;
+    private final AnnualSummaryRefreshScheduler annualSummaryRefreshScheduler;
 
     // ========== Liability Type Operations ==========
 
     public List<LiabilityType> getAllLiabilityTypes() {
-        return liabilityTypeRepository.findAllByOrderByDisplayOrderAsc();
+        return referenceDataCache.getLiabilityTypes();
     }
 
     // ========== Account Operations ==========
@@ -69,18 +79,7 @@ public class LiabilityService {
         Map<Long, LiabilityRecord> latestRecordMap = recordRepository.findLatestByAccountIds(accountIds)
                 .stream().collect(Collectors.toMap(LiabilityRecord::getAccountId, r -> r, (a, b) -> a));
 
-        // 3. 批量加载汇率（按 currency+date 去重）
-        Map<String, BigDecimal> exchangeRateCache = new HashMap<>();
-        latestRecordMap.values().forEach(record -> {
-            String currency = record.getCurrency();
-            LocalDate date = record.getRecordDate();
-            if (currency != null && !currency.equalsIgnoreCase("USD") && date != null) {
-                String key = currency + ":" + date;
-                exchangeRateCache.computeIfAbsent(key, k -> exchangeRateService.getExchangeRate(currency, date));
-            }
-        });
-
-        // 4. 批量加载关联资产账户
+        // 3. 批量加载关联资产账户
         Set<Long> linkedIds = accounts.stream()
                 .map(LiabilityAccount::getLinkedAssetAccountId)
                 .filter(id -> id != null)
@@ -127,8 +126,7 @@ public class LiabilityService {
                 dto.setLatestBalance(latest.getOutstandingBalance());
                 dto.setLatestRecordDate(latest.getRecordDate());
                 if (latest.getOutstandingBalance() != null && latest.getCurrency() != null) {
-                    String key = latest.getCurrency() + ":" + latest.getRecordDate();
-                    BigDecimal rate = exchangeRateCache.getOrDefault(key, BigDecimal.ONE);
+                    BigDecimal rate = exchangeRateService.getExchangeRate(latest.getCurrency(), latest.getRecordDate());
                     dto.setLatestBalanceInBaseCurrency(latest.getOutstandingBalance().multiply(rate));
                 }
             }
@@ -155,6 +153,12 @@ public class LiabilityService {
     @Transactional
     public LiabilityAccount updateAccount(Long accountId, LiabilityAccount accountDetails) {
         LiabilityAccount account = getAccountById(accountId);
+        // 归属成员变化会影响净资产快照汇总和余额索引，变更前后的家庭都需要重建
+        netWorthCubeService.invalidateFamilyOfUser(account.getUserId());
+        netWorthCubeService.invalidateFamilyOfUser(accountDetails.getUserId());
+        balanceIndexService.invalidateFamilyOfUser(account.getUserId());
+        balanceIndexService.invalidateFamilyOfUser(accountDetails.getUserId());
+        Long previousUserId = account.getUserId();
         account.setUserId(accountDetails.getUserId());
         account.setLiabilityTypeId(accountDetails.getLiabilityTypeId());
         account.setAccountName(accountDetails.getAccountName());
@@ -167,7 +171,15 @@ public class LiabilityService {
         account.setEndDate(accountDetails.getEndDate());
         account.setMonthlyPayment(accountDetails.getMonthlyPayment());
         account.setNotes(accountDetails.getNotes());
-        return accountRepository.save(account);
+        LiabilityAccount saved = accountRepository.save(account);
+        // 类型、币种、归属成员变化会影响年度支出汇总的资产/负债调整
+        annualExpenseSummaryService.onAccountChanged(previousUserId);
+        annualSummaryRefreshScheduler.onAccountChanged(previousUserId);
+        if (!previousUserId.equals(saved.getUserId())) {
+            annualExpenseSummaryService.onAccountChanged(saved.getUserId());
+            annualSummaryRefreshScheduler.onAccountChanged(saved.getUserId());
+        }
+        return saved;
     }
 
     @Transactional
@@ -185,6 +197,10 @@ public class LiabilityService {
             // 如果有记录，只能标记为inactive（软删除）
             account.setIsActive(false);
             accountRepository.save(account);
+            netWorthCubeService.invalidateFamily(familyId);
+            balanceIndexService.invalidateFamily(familyId);
+            annualExpenseSummaryService.onAccountChanged(account.getUserId());
+            annualSummaryRefreshScheduler.onAccountChanged(account.getUserId());
         } else {
             // 如果没有记录，可以真正删除
             accountRepository.delete(account);
@@ -209,7 +225,13 @@ public class LiabilityService {
         LiabilityAccount account = getAccountById(record.getAccountId());
         record.setUserId(account.getUserId());
 
-        return recordRepository.save(record);
+        LiabilityRecord saved = recordRepository.save(record);
+        latestRecordService.refreshLiabilityAccount(saved.getAccountId());
+        netWorthCubeService.onRecordChanged(saved.getUserId(), saved.getRecordDate());
+        annualExpenseSummaryService.onBalanceRecordChanged(saved.getUserId(), saved.getRecordDate());
+        annualSummaryRefreshScheduler.onBalanceRecordChanged(saved.getUserId(), saved.getRecordDate());
+        balanceIndexService.invalidateFamilyOfUser(saved.getUserId());
+        return saved;
     }
 
     public LiabilityRecordDTO getRecordById(Long recordId) {
@@ -222,6 +244,7 @@ public class LiabilityService {
     public LiabilityRecord updateRecord(Long recordId, LiabilityRecord recordDetails) {
         LiabilityRecord record = recordRepository.findById(recordId)
                 .orElseThrow(() -> new RuntimeException("Record not found with id: " + recordId));
+        LocalDate previousDate = record.getRecordDate();
 
         // Update basic fields
         record.setRecordDate(recordDetails.getRecordDate());
@@ -232,7 +255,13 @@ public class LiabilityService {
         record.setInterestPayment(recordDetails.getInterestPayment());
         record.setNotes(recordDetails.getNotes());
 
-        return recordRepository.save(record);
+        LiabilityRecord saved = recordRepository.save(record);
+        latestRecordService.refreshLiabilityAccount(saved.getAccountId());
+        netWorthCubeService.onRecordChanged(saved.getUserId(), previousDate, saved.getRecordDate());
+        annualExpenseSummaryService.onBalanceRecordChanged(saved.getUserId(), previousDate, saved.getRecordDate());
+        annualSummaryRefreshScheduler.onBalanceRecordChanged(saved.getUserId(), previousDate, saved.getRecordDate());
+        balanceIndexService.invalidateFamilyOfUser(saved.getUserId());
+        return saved;
     }
 
     @Transactional
@@ -245,6 +274,11 @@ public class LiabilityService {
         dataProtectionService.validateDeleteOperation(familyId, "删除负债记录");
 
         recordRepository.deleteById(recordId);
+        latestRecordService.refreshLiabilityAccount(record.getAccountId());
+        netWorthCubeService.onRecordChanged(record.getUserId(), record.getRecordDate());
+        annualExpenseSummaryService.onBalanceRecordChanged(record.getUserId(), record.getRecordDate());
+        annualSummaryRefreshScheduler.onBalanceRecordChanged(record.getUserId(), record.getRecordDate());
+        balanceIndexService.invalidateFamilyOfUser(record.getUserId());
     }
 
     // 检查哪些账户在指定日期已有记录
@@ -335,6 +369,11 @@ public class LiabilityService {
 
             // 保存记录
             LiabilityRecord saved = recordRepository.save(record);
+            latestRecordService.refreshLiabilityAccount(saved.getAccountId());
+            netWorthCubeService.onRecordChanged(saved.getUserId(), saved.getRecordDate());
+            annualExpenseSummaryService.onBalanceRecordChanged(saved.getUserId(), saved.getRecordDate());
+            annualSummaryRefreshScheduler.onBalanceRecordChanged(saved.getUserId(), saved.getRecordDate());
+            balanceIndexService.invalidateFamilyOfUser(saved.getUserId());
             savedRecords.add(saved);
         }
 
@@ -0,0 +1,170 @@
+package com.finance.app.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 定点金额累加器
+ *
+ * 以 long 最小单位（scale 位小数，默认为分）累加金额，循环内不再为每次 add / multiply / setScale
+ * 创建 BigDecimal，只在 toBigDecimal() 时转换一次。结果与对应的 BigDecimal 写法逐位一致：
+ * - add(amount)                 等价于 sum = sum.add(amount)
+ * - addConverted(amount, rate)  等价于 sum = sum.add(amount.multiply(rate).setScale(scale, HALF_UP))
+ * - addProduct(amount, rate)    等价于 sum = sum.add(amount.multiply(rate))（不舍入）
+ * 返回值的 scale 也与 BigDecimal.add 的结果相同（各加数 scale 的最大值）。
+ *
+ * long 溢出或输入精度超出累加器精度时，自动切换为 BigDecimal 精确累加，结果不受影响。
+ * 非线程安全。
+ */
+public final class MoneyAccumulator {
+
+    /** 金额列精度（DECIMAL(x,2)） */
+    public static final int AMOUNT_SCALE = 2;
+
+    /** 汇率列精度（exchange_rates.rate_to_usd DECIMAL(18,8)） */
+    public static final int RATE_SCALE = 8;
+
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+        10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+        10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private final int scale;
+    private long units;
+    private int resultScale;
+    private BigDecimal exact;  // 不为 null 时表示已切换为 BigDecimal 累加
+
+    // 同一汇率对象连续出现时（汇率时间线返回的是同一实例）复用已转换的最小单位
+    private BigDecimal lastRate;
+    private long lastRateUnits;
+
+    /**
+     * 以分为单位累加（scale = 2）
+     */
+    public MoneyAccumulator() {
+        this(AMOUNT_SCALE);
+    }
+
+    /**
+     * @param scale 累加单位的小数位数，0 ~ 18
+     */
+    public MoneyAccumulator(int scale) {
+        if (scale < 0 || scale >= POW10.length) {
+            throw new IllegalArgumentException("不支持的精度: " + scale);
+        }
+        this.scale = scale;
+    }
+
+    /**
+     * 累加金额（null 视为 0）
+     */
+    public MoneyAccumulator add(BigDecimal amount) {
+        if (amount == null) {
+            return this;
+        }
+        int s = amount.scale();
+        resultScale = Math.max(resultScale, s);
+        if (exact == null && s >= 0 && s <= scale) {
+            try {
+                long u = amount.unscaledValue().longValueExact();
+                units = Math.addExact(units, Math.multiplyExact(u, POW10[scale - s]));
+                return this;
+            } catch (ArithmeticException e) {
+                switchToExact();
+            }
+        }
+        switchToExact();
+        exact = exact.add(amount);
+        return this;
+    }
+
+    /**
+     * 累加 amount × rate，乘积按 HALF_UP 舍入到累加器精度（amount 为 null 时忽略）
+     */
+    public MoneyAccumulator addConverted(BigDecimal amount, BigDecimal rate) {
+        if (amount == null) {
+            return this;
+        }
+        resultScale = Math.max(resultScale, scale);
+        int natural = amount.scale() + rate.scale();
+        if (exact == null && amount.scale() >= 0 && rate.scale() >= 0 && natural - scale < POW10.length) {
+            try {
+                long product = Math.multiplyExact(amount.unscaledValue().longValueExact(), rateUnits(rate));
+                long value = natural <= scale
+                    ? Math.multiplyExact(product, POW10[scale - natural])
+                    : divideHalfUp(product, POW10[natural - scale]);
+                units = Math.addExact(units, value);
+                return this;
+            } catch (ArithmeticException e) {
+                switchToExact();
+            }
+        }
+        switchToExact();
+        exact = exact.add(amount.multiply(rate).setScale(scale, RoundingMode.HALF_UP));
+        return this;
+    }
+
+    /**
+     * 累加 amount × rate 的精确乘积，不舍入（amount 为 null 时忽略）
+     */
+    public MoneyAccumulator addProduct(BigDecimal amount, BigDecimal rate) {
+        if (amount == null) {
+            return this;
+        }
+        int natural = amount.scale() + rate.scale();
+        resultScale = Math.max(resultScale, natural);
+        if (exact == null && amount.scale() >= 0 && rate.scale() >= 0 && natural <= scale) {
+            try {
+                long product = Math.multiplyExact(amount.unscaledValue().longValueExact(), rateUnits(rate));
+                units = Math.addExact(units, Math.multiplyExact(product, POW10[scale - natural]));
+                return this;
+            } catch (ArithmeticException e) {
+                switchToExact();
+            }
+        }
+        switchToExact();
+        exact = exact.add(amount.multiply(rate));
+        return this;
+    }
+
+    /**
+     * 累加另一个累加器的结果
+     */
+    public MoneyAccumulator addAll(MoneyAccumulator other) {
+        return add(other.toBigDecimal());
+    }
+
+    /**
+     * 转换为 BigDecimal；未累加任何金额时返回 BigDecimal.ZERO
+     */
+    public BigDecimal toBigDecimal() {
+        BigDecimal sum = exact != null ? exact : BigDecimal.valueOf(units, scale);
+        return sum.setScale(resultScale, RoundingMode.UNNECESSARY);
+    }
+
+    private long rateUnits(BigDecimal rate) {
+        if (rate != lastRate) {
+            lastRateUnits = rate.unscaledValue().longValueExact();
+            lastRate = rate;
+        }
+        return lastRateUnits;
+    }
+
+    private void switchToExact() {
+        if (exact == null) {
+            exact = BigDecimal.valueOf(units, scale);
+        }
+    }
+
+    // 与 RoundingMode.HALF_UP 一致：舍入到最近值，正好一半时远离零
+    private static long divideHalfUp(long value, long divisor) {
+        long quotient = value / divisor;
+        long remainder = value % divisor;
+        if (Math.abs(remainder) >= divisor - Math.abs(remainder)) {
+            quotient += Long.signum(value);
+        }
+        return quotient;
+    }
+}
@@ -0,0 +1,87 @@
+package com.finance.app.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求级 SQL 统计：执行的语句数、读取的行数和数据库耗时
+ *
+ * 由 QueryCountInterceptor 在请求开始时绑定到当前线程，QueryCountingDataSource 在每次执行语句时累加。
+ * 分析接口会把分段提交到线程池，线程池通过 {@link #propagate(Runnable)} 把计数器带到工作线程，
+ * 因此并行分段中的查询也计入发起请求的计数器。
+ */
+public final class QueryCounter {
+
+    private static final ThreadLocal<QueryCounter> CURRENT = new ThreadLocal<>();
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    /**
+     * 为当前线程开始一个新的计数器
+     */
+    public static QueryCounter start() {
+        QueryCounter counter = new QueryCounter();
+        CURRENT.set(counter);
+        return counter;
+    }
+
+    /**
+     * 当前线程绑定的计数器，没有时返回 null
+     */
+    public static QueryCounter current() {
+        return CURRENT.get();
+    }
+
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * 包装任务，使其在执行线程上沿用提交线程的计数器（可直接作为 TaskDecorator 使用）
+     */
+    public static Runnable propagate(Runnable task) {
+        QueryCounter counter = CURRENT.get();
+        if (counter == null) {
+            return task;
+        }
+        return () -> {
+            QueryCounter previous = CURRENT.get();
+            CURRENT.set(counter);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    public void recordStatement(long elapsedNanos) {
+        statements.increment();
+        nanos.add(elapsedNanos);
+    }
+
+    public void recordRow() {
+        rows.increment();
+    }
+
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getElapsedNanos() {
+        return nanos.sum();
+    }
+
+    public long getElapsedMillis() {
+        return nanos.sum() / 1_000_000L;
+    }
+}
@@ -0,0 +1,37 @@
+-- 账户最新记录投影表：每个资产/负债账户一行，保存最新一条记录
+-- 由 AssetService / LiabilityService 在记录写入时同步维护，应用启动时全量重建
+
+CREATE TABLE IF NOT EXISTS asset_account_latest (
+    account_id BIGINT PRIMARY KEY COMMENT '资产账户ID',
+    record_id BIGINT NOT NULL COMMENT '最新资产记录ID',
+    record_date DATE NOT NULL COMMENT '最新记录日期',
+    amount DECIMAL(18,2) NOT NULL COMMENT '金额（原币种）',
+    currency VARCHAR(10) DEFAULT 'USD',
+    updated_at DATETIME NOT NULL COMMENT '投影更新时间',
+    INDEX idx_record_id (record_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='资产账户最新记录投影';
+
+CREATE TABLE IF NOT EXISTS liability_account_latest (
+    account_id BIGINT PRIMARY KEY COMMENT '负债账户ID',
+    record_id BIGINT NOT NULL COMMENT '最新负债记录ID',
+    record_date DATE NOT NULL COMMENT '最新记录日期',
+    outstanding_balance DECIMAL(18,2) NOT NULL COMMENT '未偿余额（原币种）',
+    currency VARCHAR(10) DEFAULT 'USD',
+    updated_at DATETIME NOT NULL COMMENT '投影更新时间',
+    INDEX idx_record_id (record_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='负债账户最新记录投影';
+
+-- 回填现有数据
+INSERT INTO asset_account_latest (account_id, record_id, record_date, amount, currency, updated_at)
+SELECT r.account_id, r.id, r.record_date, r.amount, r.currency, NOW()
+FROM asset_records r
+WHERE r.record_date = (SELECT MAX(r2.record_date) FROM asset_records r2 WHERE r2.account_id = r.account_id)
+ON DUPLICATE KEY UPDATE record_id = VALUES(record_id), record_date = VALUES(record_date),
+    amount = VALUES(amount), currency = VALUES(currency), updated_at = VALUES(updated_at);
+
+INSERT INTO liability_account_latest (account_id, record_id, record_date, outstanding_balance, currency, updated_at)
+SELECT r.account_id, r.id, r.record_date, r.outstanding_balance, r.currency, NOW()
+FROM liability_records r
+WHERE r.record_date = (SELECT MAX(r2.record_date) FROM liability_records r2 WHERE r2.account_id = r.account_id)
+ON DUPLICATE KEY UPDATE record_id = VALUES(record_id), record_date = VALUES(record_date),
+    outstanding_balance = VALUES(outstanding_balance), currency = VALUES(currency), updated_at = VALUES(updated_at);
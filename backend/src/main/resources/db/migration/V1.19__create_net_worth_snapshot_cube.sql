@@ -0,0 +1,17 @@
+-- 净资产快照汇总表：家庭 × 快照日期 × 资产/负债 × 类型 × 币种
+-- 由 NetWorthCubeService 增量维护；家庭首次查询趋势时自动全量构建，无需回填
+
+CREATE TABLE IF NOT EXISTS net_worth_snapshot_cube (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    family_id BIGINT NOT NULL COMMENT '家庭ID',
+    snapshot_date DATE NOT NULL COMMENT '快照日期（记录日期）',
+    record_kind VARCHAR(20) NOT NULL COMMENT 'ASSET 或 LIABILITY',
+    type_code VARCHAR(50) NOT NULL COMMENT '资产类型/负债类型代码',
+    currency VARCHAR(10) NOT NULL COMMENT '原币种',
+    amount_original DECIMAL(20,2) NOT NULL COMMENT '原币种金额合计',
+    amount_usd DECIMAL(20,2) NOT NULL COMMENT 'USD金额合计（逐条按记录日期汇率换算）',
+    record_count INT NOT NULL COMMENT '记录条数',
+    updated_at DATETIME NOT NULL COMMENT '更新时间',
+    UNIQUE KEY uk_cube_cell (family_id, snapshot_date, record_kind, type_code, currency),
+    INDEX idx_cube_currency_date (currency, snapshot_date)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='净资产快照汇总';
@@ -0,0 +1,3 @@
+-- 记录每个工作表上次导出时的源数据水位和内容指纹，重新导出时只更新发生变化的工作表
+ALTER TABLE google_sheets_sync
+ADD COLUMN tab_fingerprints TEXT NULL COMMENT '各工作表导出指纹（JSON：工作表名 → {watermark, content}）' AFTER error_message;
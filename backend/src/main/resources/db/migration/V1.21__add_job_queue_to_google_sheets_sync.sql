@@ -0,0 +1,16 @@
+-- google_sheets_sync 同时作为导出任务队列：每个 (family_id, year) 一行，一行即一个任务
+-- 工作线程通过条件更新领取 PENDING 任务并持有租约，租约过期未完成的任务重新排队
+ALTER TABLE google_sheets_sync
+ADD COLUMN requested_permission VARCHAR(20) NULL COMMENT '排队时请求的权限（reader/writer），完成后写入 permission' AFTER permission,
+ADD COLUMN queued_at DATETIME NULL COMMENT '进入队列的时间' AFTER tab_fingerprints,
+ADD COLUMN attempts INT NOT NULL DEFAULT 0 COMMENT '本次排队后被领取的次数' AFTER queued_at,
+ADD COLUMN lease_owner VARCHAR(100) NULL COMMENT '领取任务的实例' AFTER attempts,
+ADD COLUMN lease_expires_at DATETIME NULL COMMENT '租约到期时间' AFTER lease_owner,
+ADD COLUMN cancel_requested TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否已请求取消' AFTER lease_expires_at;
+
+-- 旧线程池中未完成的任务（重启后已丢失）重新排队
+UPDATE google_sheets_sync
+SET status = 'PENDING', queued_at = updated_at
+WHERE status IN ('PENDING', 'IN_PROGRESS');
+
+CREATE INDEX idx_google_sheets_sync_queue ON google_sheets_sync(status, queued_at);
@@ -0,0 +1,5 @@
+-- 多年份批量导出：同一次请求排队的各年份任务共用一个批次ID，由一个工作线程一起执行并共享数据加载
+ALTER TABLE google_sheets_sync
+ADD COLUMN batch_id VARCHAR(36) NULL COMMENT '批量导出的批次ID（单年份导出为空）' AFTER cancel_requested;
+
+CREATE INDEX idx_google_sheets_sync_batch ON google_sheets_sync(batch_id);
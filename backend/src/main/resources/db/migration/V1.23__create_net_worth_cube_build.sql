@@ -0,0 +1,7 @@
+-- 净资产快照汇总构建标记：每个已构建的家庭一行
+-- 没有记录的家庭构建后不产生单元格，以此标记判断是否已构建，避免每次查询都重新构建；无需回填（未标记的家庭下次查询时重建）
+
+CREATE TABLE IF NOT EXISTS net_worth_cube_build (
+    family_id BIGINT PRIMARY KEY COMMENT '家庭ID',
+    built_at DATETIME NOT NULL COMMENT '构建时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='净资产快照汇总构建标记';
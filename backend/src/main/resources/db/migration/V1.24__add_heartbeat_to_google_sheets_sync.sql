@@ -0,0 +1,4 @@
+-- 执行实例定期写入心跳：实例崩溃或重启（Deployment 的 Pod 名称每次都会变化）后，
+-- 心跳超时的任务不必等待整个租约到期即可重新排队
+ALTER TABLE google_sheets_sync
+ADD COLUMN heartbeat_at DATETIME NULL COMMENT '执行实例最近一次心跳时间' AFTER lease_expires_at;
@@ -0,0 +1,328 @@
+package com.finance.app.controller.querybudget;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetType;
+import com.finance.app.model.ExchangeRate;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.Family;
+import com.finance.app.model.IncomeCategoryMajor;
+import com.finance.app.model.IncomeCategoryMinor;
+import com.finance.app.model.IncomeRecord;
+import com.finance.app.model.InvestmentTransaction;
+import com.finance.app.model.TaxStatus;
+import com.finance.app.model.User;
+import com.finance.app.repository.AssetAccountRepository;
+import com.finance.app.repository.AssetTypeRepository;
+import com.finance.app.repository.ExchangeRateRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.ExpenseRecordRepository;
+import com.finance.app.repository.FamilyRepository;
+import com.finance.app.repository.IncomeCategoryMajorRepository;
+import com.finance.app.repository.IncomeCategoryMinorRepository;
+import com.finance.app.repository.IncomeRecordRepository;
+import com.finance.app.repository.InvestmentTransactionRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.security.AuthHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量录入接口的 SQL 语句预算
+ *
+ * 在 H2 上对支出、收入、投资三个批量保存接口各提交一批 500 行：先全部新建，再用同一批次全部更新
+ * （投资交易第二次一半更新一半删除），用 X-SQL-Statements 响应头断言语句数与行数无关。
+ * 逐行 findById + 存在性查询 + save() 的实现每批 1250~2000 条语句，会超出预算而失败。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:batchsave;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR,MONTH,VALUE",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.com.finance=info",
+    "logging.level.org.springframework.web=info",
+    "jwt.secret=query-budget-test-secret-query-budget-test-secret",
+    "sql.query-count.enabled=true",
+    "sql.query-count.headers=true",
+    "annual-summary.refresh.enabled=false"
+})
+@AutoConfigureMockMvc(addFilters = false)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("Batch save endpoints SQL query budget (500 rows)")
+class BatchSaveQueryBudgetTest {
+
+    private static final int ROWS = 500;
+    private static final int MAX_STATEMENTS = 30;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private AuthHelper authHelper;
+
+    @Autowired private FamilyRepository familyRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private AssetTypeRepository assetTypeRepository;
+    @Autowired private AssetAccountRepository assetAccountRepository;
+    @Autowired private ExchangeRateRepository exchangeRateRepository;
+    @Autowired private ExpenseCategoryMajorRepository expenseMajorRepository;
+    @Autowired private ExpenseCategoryMinorRepository expenseMinorRepository;
+    @Autowired private ExpenseRecordRepository expenseRecordRepository;
+    @Autowired private IncomeCategoryMajorRepository incomeMajorRepository;
+    @Autowired private IncomeCategoryMinorRepository incomeMinorRepository;
+    @Autowired private IncomeRecordRepository incomeRecordRepository;
+    @Autowired private InvestmentTransactionRepository investmentTransactionRepository;
+
+    private Long familyId;
+    private Long userId;
+    private final List<Long> expenseMinorIds = new ArrayList<>();
+    private Long incomeMajorId;
+    private final List<Long> incomeMinorIds = new ArrayList<>();
+    private final List<Long> investmentAccountIds = new ArrayList<>();
+
+    @BeforeAll
+    void seedFamily() {
+        // 年度支出汇总增量更新读取的调整配置表不是 JPA 实体，按迁移脚本建一个空表
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS expense_category_adjustment_config (" +
+            "id BIGINT AUTO_INCREMENT PRIMARY KEY, major_category_id BIGINT NOT NULL, " +
+            "adjustment_type VARCHAR(20) NOT NULL, asset_type_code VARCHAR(50), liability_type VARCHAR(50), " +
+            "adjustment_direction VARCHAR(20) NOT NULL, is_active TINYINT NOT NULL DEFAULT 1)");
+
+        Family family = new Family();
+        family.setFamilyName("Batch");
+        familyId = familyRepository.save(family).getId();
+
+        User user = new User();
+        user.setFamilyId(familyId);
+        user.setUsername("batch");
+        user.setEmail("batch@example.com");
+        user.setFullName("Batch");
+        user.setPasswordHash("x");
+        user.setRole(User.Role.USER);
+        user.setIsActive(true);
+        userId = userRepository.save(user).getId();
+
+        ExchangeRate cny = new ExchangeRate();
+        cny.setCurrency("CNY");
+        cny.setRateToUsd(new BigDecimal("0.14"));
+        cny.setEffectiveDate(LocalDate.of(2000, 1, 1));
+        cny.setIsActive(true);
+        exchangeRateRepository.save(cny);
+
+        // 开支：1 个大类 × 500 个小类（唯一键为 家庭+期间+小类）
+        ExpenseCategoryMajor major = new ExpenseCategoryMajor();
+        major.setCode("DAILY");
+        major.setName("daily");
+        major.setSortOrder(1);
+        major.setIsActive(true);
+        major = expenseMajorRepository.save(major);
+        for (int i = 0; i < ROWS; i++) {
+            ExpenseCategoryMinor minor = new ExpenseCategoryMinor();
+            minor.setMajorCategoryId(major.getId());
+            minor.setName("minor-" + i);
+            minor.setSortOrder(i);
+            minor.setIsActive(true);
+            minor.setIsDefault(false);
+            minor.setExpenseType("FIXED_DAILY");
+            expenseMinorIds.add(expenseMinorRepository.save(minor).getId());
+        }
+
+        // 收入：1 个大类 × 250 个小类 × USD/CNY
+        IncomeCategoryMajor salary = new IncomeCategoryMajor();
+        salary.setName("Salary");
+        salary.setChineseName("工资");
+        salary.setDisplayOrder(1);
+        salary.setIsActive(true);
+        incomeMajorId = incomeMajorRepository.save(salary).getId();
+        for (int i = 0; i < ROWS / 2; i++) {
+            IncomeCategoryMinor minor = new IncomeCategoryMinor();
+            minor.setMajorCategoryId(incomeMajorId);
+            minor.setUserId(userId);
+            minor.setName("income-" + i);
+            minor.setChineseName("收入-" + i);
+            minor.setIsActive(true);
+            incomeMinorIds.add(incomeMinorRepository.save(minor).getId());
+        }
+
+        // 投资：250 个投资账户 × 投入/取出
+        AssetType stocks = new AssetType();
+        stocks.setType("STOCKS");
+        stocks.setName("STOCKS");
+        stocks.setChineseName("股票");
+        stocks.setIsInvestment(true);
+        stocks.setDisplayOrder(1);
+        stocks = assetTypeRepository.save(stocks);
+        for (int i = 0; i < ROWS / 2; i++) {
+            AssetAccount account = new AssetAccount();
+            account.setUserId(userId);
+            account.setAssetTypeId(stocks.getId());
+            account.setAccountName("stocks-" + i);
+            account.setCurrency("USD");
+            account.setIsActive(true);
+            account.setTaxStatus(TaxStatus.TAXABLE);
+            investmentAccountIds.add(assetAccountRepository.save(account).getId());
+        }
+    }
+
+    @BeforeEach
+    void authorizeFamily() {
+        when(authHelper.getFamilyIdFromAuth(any())).thenReturn(familyId);
+    }
+
+    @Test
+    @DisplayName("支出批量保存：500 行新建与更新的语句数不随行数增长")
+    void expenseBatchShouldStayWithinBudget() throws Exception {
+        String period = "2025-03";
+        // 上月已录入：年度支出汇总已有各小类的行，本次录入只更新汇总（年内首次出现的小类会逐行新增汇总行）
+        post("/expenses/records/batch", expenseRequest("2025-02", 100));
+
+        JsonNode created = postWithinBudget("/expenses/records/batch", expenseRequest(period, 100));
+        assertEquals(ROWS, created.path("data").size());
+        assertTrue(created.path("data").get(0).path("id").asLong() > 0);
+
+        postWithinBudget("/expenses/records/batch", expenseRequest(period, 200));
+        List<ExpenseRecord> records = expenseRecordRepository.findByFamilyIdAndExpensePeriod(familyId, period);
+        assertEquals(ROWS, records.size());
+        assertTrue(records.stream().allMatch(r -> r.getAmount().compareTo(BigDecimal.valueOf(200)) == 0));
+    }
+
+    @Test
+    @DisplayName("收入批量保存：500 行新建与更新的语句数不随行数增长")
+    void incomeBatchShouldStayWithinBudget() throws Exception {
+        String period = "2025-04";
+
+        JsonNode created = postWithinBudget("/incomes/records/batch", incomeRequest(period, 1000));
+        assertEquals(ROWS, created.path("data").size());
+        // 回填的主键与数据库中的行一一对应
+        Map<Long, String> keyById = incomeRecordRepository.findByFamilyIdAndPeriod(familyId, period).stream()
+            .collect(Collectors.toMap(IncomeRecord::getId, r -> r.getMinorCategoryId() + "|" + r.getCurrency()));
+        created.path("data").forEach(dto -> assertEquals(keyById.get(dto.path("id").asLong()),
+            dto.path("minorCategoryId").asLong() + "|" + dto.path("currency").asText()));
+
+        postWithinBudget("/incomes/records/batch", incomeRequest(period, 2000));
+        List<IncomeRecord> records = incomeRecordRepository.findByFamilyIdAndPeriod(familyId, period);
+        assertEquals(ROWS, records.size());
+        IncomeRecord cny = records.stream().filter(r -> "CNY".equals(r.getCurrency())).findFirst().orElseThrow();
+        assertEquals(0, cny.getAmountUsd().compareTo(new BigDecimal("280")));
+    }
+
+    @Test
+    @DisplayName("投资交易批量保存：500 行新建，再更新 250 行、删除 250 行")
+    void investmentBatchShouldStayWithinBudget() throws Exception {
+        String period = "2025-05";
+
+        JsonNode created = postWithinBudget("/investments/transactions/batch", investmentRequest(period, true));
+        assertEquals(ROWS, created.path("data").path("created").asInt());
+
+        JsonNode changed = postWithinBudget("/investments/transactions/batch", investmentRequest(period, false));
+        assertEquals(0, changed.path("data").path("created").asInt());
+        assertEquals(ROWS / 2, changed.path("data").path("deleted").asInt());
+        List<InvestmentTransaction> transactions = investmentTransactionRepository
+            .findByAccountIdsAndTransactionPeriod(investmentAccountIds, period);
+        assertEquals(ROWS / 2, transactions.size());
+        assertTrue(transactions.stream().allMatch(t ->
+            t.getTransactionType() == InvestmentTransaction.TransactionType.DEPOSIT
+                && t.getAmount().compareTo(BigDecimal.valueOf(300)) == 0));
+    }
+
+    private JsonNode postWithinBudget(String path, Object body) throws Exception {
+        MvcResult result = post(path, body);
+        String header = result.getResponse().getHeader("X-SQL-Statements");
+        assertNotNull(header, "缺少 X-SQL-Statements 响应头");
+        int statements = Integer.parseInt(header);
+        assertTrue(statements <= MAX_STATEMENTS,
+            path + " 执行了 " + statements + " 条SQL，超出预算 " + MAX_STATEMENTS);
+        return objectMapper.readTree(result.getResponse().getContentAsString());
+    }
+
+    private MvcResult post(String path, Object body) throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post(path)
+                .header("Authorization", "Bearer token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(body)))
+            .andReturn();
+        assertEquals(200, result.getResponse().getStatus(), result.getResponse().getContentAsString());
+        return result;
+    }
+
+    private Map<String, Object> expenseRequest(String period, int amount) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (Long minorId : expenseMinorIds) {
+            records.add(Map.of("minorCategoryId", minorId, "amount", amount,
+                "currency", "USD", "expenseType", "FIXED_DAILY"));
+        }
+        Map<String, Object> request = new HashMap<>();
+        request.put("familyId", familyId);
+        request.put("userId", userId);
+        request.put("expensePeriod", period);
+        request.put("records", records);
+        return request;
+    }
+
+    private Map<String, Object> incomeRequest(String period, int amount) {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (Long minorId : incomeMinorIds) {
+            for (String currency : List.of("USD", "CNY")) {
+                records.add(Map.of("majorCategoryId", incomeMajorId, "minorCategoryId", minorId,
+                    "amount", amount, "currency", currency));
+            }
+        }
+        Map<String, Object> request = new HashMap<>();
+        request.put("familyId", familyId);
+        request.put("period", period);
+        request.put("records", records);
+        return request;
+    }
+
+    private Map<String, Object> investmentRequest(String period, boolean withWithdrawals) {
+        List<Map<String, Object>> transactions = new ArrayList<>();
+        for (Long accountId : investmentAccountIds) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("accountId", accountId);
+            item.put("deposits", withWithdrawals ? 100 : 300);
+            item.put("withdrawals", withWithdrawals ? 50 : 0);
+            transactions.add(item);
+        }
+        Map<String, Object> request = new HashMap<>();
+        request.put("familyId", familyId);
+        request.put("transactionPeriod", period);
+        request.put("transactions", transactions);
+        return request;
+    }
+}
@@ -0,0 +1,456 @@
+package com.finance.app.controller.querybudget;
+
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.AssetType;
+import com.finance.app.model.ExchangeRate;
+import com.finance.app.model.ExpenseBudget;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.Family;
+import com.finance.app.model.IncomeCategoryMajor;
+import com.finance.app.model.IncomeCategoryMinor;
+import com.finance.app.model.IncomeRecord;
+import com.finance.app.model.InvestmentTransaction;
+import com.finance.app.model.LiabilityAccount;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.LiabilityType;
+import com.finance.app.model.NetAssetCategory;
+import com.finance.app.model.NetAssetCategoryAssetTypeMapping;
+import com.finance.app.model.NetAssetCategoryLiabilityTypeMapping;
+import com.finance.app.model.TaxStatus;
+import com.finance.app.model.User;
+import com.finance.app.repository.AssetAccountRepository;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.AssetTypeRepository;
+import com.finance.app.repository.ExchangeRateRepository;
+import com.finance.app.repository.ExpenseBudgetRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.ExpenseRecordRepository;
+import com.finance.app.repository.FamilyRepository;
+import com.finance.app.repository.IncomeCategoryMajorRepository;
+import com.finance.app.repository.IncomeCategoryMinorRepository;
+import com.finance.app.repository.IncomeRecordRepository;
+import com.finance.app.repository.InvestmentTransactionRepository;
+import com.finance.app.repository.LiabilityAccountRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.LiabilityTypeRepository;
+import com.finance.app.repository.NetAssetCategoryAssetTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryLiabilityTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
+import com.finance.app.security.AuthHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * 分析接口的 SQL 查询预算
+ *
+ * 在 H2 上准备一个家庭（6 个资产账户、2 个负债账户、2 年月末记录、开支及年度支出汇总/收入/投资数据），
+ * 逐个调用 /analysis、/expenses/analysis、/incomes-analysis、/investments/analysis 下的查询接口，
+ * 用 X-SQL-Statements 响应头断言执行的语句数不超过预算。
+ * 预算按当前实现的实测值设定：新增按账户或按月循环的查询会超出预算而失败；
+ * 优化减少查询后应同步调低预算。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:querybudget;MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=YEAR,MONTH,VALUE",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.com.finance=info",
+    "logging.level.org.springframework.web=info",
+    "jwt.secret=query-budget-test-secret-query-budget-test-secret",
+    "sql.query-count.enabled=true",
+    "sql.query-count.headers=true"
+})
+@AutoConfigureMockMvc(addFilters = false)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@DisplayName("Analysis endpoints SQL query budget")
+class QueryBudgetTest {
+
+    private static final int YEAR = 2025;
+    private static final String FAMILY = "1";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private AuthHelper authHelper;
+
+    @Autowired private FamilyRepository familyRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private AssetTypeRepository assetTypeRepository;
+    @Autowired private LiabilityTypeRepository liabilityTypeRepository;
+    @Autowired private AssetAccountRepository assetAccountRepository;
+    @Autowired private AssetRecordRepository assetRecordRepository;
+    @Autowired private LiabilityAccountRepository liabilityAccountRepository;
+    @Autowired private LiabilityRecordRepository liabilityRecordRepository;
+    @Autowired private ExchangeRateRepository exchangeRateRepository;
+    @Autowired private NetAssetCategoryRepository netAssetCategoryRepository;
+    @Autowired private NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository;
+    @Autowired private NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository;
+    @Autowired private ExpenseCategoryMajorRepository expenseMajorRepository;
+    @Autowired private ExpenseCategoryMinorRepository expenseMinorRepository;
+    @Autowired private ExpenseRecordRepository expenseRecordRepository;
+    @Autowired private ExpenseBudgetRepository expenseBudgetRepository;
+    @Autowired private IncomeCategoryMajorRepository incomeMajorRepository;
+    @Autowired private IncomeCategoryMinorRepository incomeMinorRepository;
+    @Autowired private IncomeRecordRepository incomeRecordRepository;
+    @Autowired private InvestmentTransactionRepository investmentTransactionRepository;
+    @Autowired private AnnualExpenseSummaryService annualExpenseSummaryService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    private Long expenseMajorId;
+    private Long expenseMinorId;
+    private Long incomeMajorId;
+    private Long stockAccountId;
+    private Long memberId;
+    private int cubeBuildStatements;
+
+    @BeforeAll
+    void seedFamily() throws Exception {
+        // 年度支出汇总读取的调整配置表不是 JPA 实体，按迁移脚本建一个空表
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS expense_category_adjustment_config (" +
+            "id BIGINT AUTO_INCREMENT PRIMARY KEY, major_category_id BIGINT NOT NULL, " +
+            "adjustment_type VARCHAR(20) NOT NULL, asset_type_code VARCHAR(50), liability_type VARCHAR(50), " +
+            "adjustment_direction VARCHAR(20) NOT NULL, is_active TINYINT NOT NULL DEFAULT 1)");
+
+        Family family = new Family();
+        family.setFamilyName("Budget");
+        family = familyRepository.save(family);
+
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            User user = new User();
+            user.setFamilyId(family.getId());
+            user.setUsername("member" + i);
+            user.setEmail("member" + i + "@example.com");
+            user.setFullName("Member " + i);
+            user.setPasswordHash("x");
+            user.setRole(User.Role.USER);
+            user.setIsActive(true);
+            users.add(userRepository.save(user));
+        }
+        memberId = users.get(0).getId();
+
+        String[][] assetTypes = {
+            {"CASH", "false"}, {"STOCKS", "true"}, {"RETIREMENT_FUND", "true"}, {"REAL_ESTATE", "true"}
+        };
+        List<AssetType> savedAssetTypes = new ArrayList<>();
+        for (int i = 0; i < assetTypes.length; i++) {
+            AssetType type = new AssetType();
+            type.setType(assetTypes[i][0]);
+            type.setName(assetTypes[i][0]);
+            type.setChineseName(assetTypes[i][0]);
+            type.setIsInvestment(Boolean.parseBoolean(assetTypes[i][1]));
+            type.setDisplayOrder(i + 1);
+            savedAssetTypes.add(assetTypeRepository.save(type));
+        }
+        LiabilityType mortgage = new LiabilityType();
+        mortgage.setType("MORTGAGE");
+        mortgage.setChineseName("房贷");
+        mortgage.setEnglishName("Mortgage");
+        mortgage.setDisplayOrder(1);
+        mortgage = liabilityTypeRepository.save(mortgage);
+
+        String[][] netCategories = {{"REAL_ESTATE_NET", "REAL_ESTATE"}, {"LIQUID_NET", "CASH"},
+            {"INVESTMENT_NET", "STOCKS"}, {"RETIREMENT_FUND_NET", "RETIREMENT_FUND"}};
+        for (int i = 0; i < netCategories.length; i++) {
+            NetAssetCategory category = new NetAssetCategory();
+            category.setName(netCategories[i][0]);
+            category.setCode(netCategories[i][0]);
+            category.setDisplayOrder(i + 1);
+            category = netAssetCategoryRepository.save(category);
+            NetAssetCategoryAssetTypeMapping mapping = new NetAssetCategoryAssetTypeMapping();
+            mapping.setNetAssetCategoryId(category.getId());
+            mapping.setAssetType(netCategories[i][1]);
+            assetTypeMappingRepository.save(mapping);
+            if (i == 0) {
+                NetAssetCategoryLiabilityTypeMapping liabilityMapping = new NetAssetCategoryLiabilityTypeMapping();
+                liabilityMapping.setNetAssetCategoryId(category.getId());
+                liabilityMapping.setLiabilityType("MORTGAGE");
+                liabilityTypeMappingRepository.save(liabilityMapping);
+            }
+        }
+
+        ExchangeRate cny = new ExchangeRate();
+        cny.setCurrency("CNY");
+        cny.setRateToUsd(new BigDecimal("0.14"));
+        cny.setEffectiveDate(LocalDate.of(2000, 1, 1));
+        cny.setIsActive(true);
+        exchangeRateRepository.save(cny);
+
+        // 6 个资产账户（含 2 个 CNY）、2 个负债账户，每个账户 24 条月末记录
+        YearMonth first = YearMonth.of(YEAR - 1, 1);
+        AssetAccount realEstateAccount = null;
+        for (int i = 0; i < 6; i++) {
+            User owner = users.get(i % users.size());
+            AssetType type = savedAssetTypes.get(i % savedAssetTypes.size());
+            AssetAccount account = new AssetAccount();
+            account.setUserId(owner.getId());
+            account.setAssetTypeId(type.getId());
+            account.setAccountName("asset-" + i);
+            account.setCurrency(i % 3 == 2 ? "CNY" : "USD");
+            account.setIsActive(true);
+            account.setTaxStatus(TaxStatus.TAXABLE);
+            account = assetAccountRepository.save(account);
+            if ("STOCKS".equals(type.getType()) && stockAccountId == null) {
+                stockAccountId = account.getId();
+            }
+            if ("REAL_ESTATE".equals(type.getType()) && realEstateAccount == null) {
+                realEstateAccount = account;
+            }
+            for (int m = 0; m < 24; m++) {
+                AssetRecord record = new AssetRecord();
+                record.setUserId(owner.getId());
+                record.setAccountId(account.getId());
+                record.setRecordDate(first.plusMonths(m).atEndOfMonth());
+                record.setAmount(BigDecimal.valueOf(10_000L + 100L * m + i));
+                record.setCurrency(account.getCurrency());
+                assetRecordRepository.save(record);
+            }
+            if (Boolean.TRUE.equals(type.getIsInvestment())) {
+                for (int m = 1; m <= 12; m++) {
+                    InvestmentTransaction tx = new InvestmentTransaction();
+                    tx.setAccountId(account.getId());
+                    tx.setTransactionPeriod(YearMonth.of(YEAR, m).toString());
+                    tx.setTransactionType(InvestmentTransaction.TransactionType.DEPOSIT);
+                    tx.setAmount(BigDecimal.valueOf(500));
+                    investmentTransactionRepository.save(tx);
+                }
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            User owner = users.get(i);
+            LiabilityAccount account = new LiabilityAccount();
+            account.setUserId(owner.getId());
+            account.setLiabilityTypeId(mortgage.getId());
+            account.setAccountName("liability-" + i);
+            account.setCurrency("USD");
+            account.setIsActive(true);
+            account = liabilityAccountRepository.save(account);
+            if (i == 0) {
+                // 房产账户关联房贷，投资分析按净值计算回报
+                realEstateAccount.setLinkedLiabilityAccountId(account.getId());
+                assetAccountRepository.save(realEstateAccount);
+            }
+            for (int m = 0; m < 24; m++) {
+                LiabilityRecord record = new LiabilityRecord();
+                record.setUserId(owner.getId());
+                record.setAccountId(account.getId());
+                record.setRecordDate(first.plusMonths(m).atEndOfMonth());
+                record.setOutstandingBalance(BigDecimal.valueOf(50_000L - 100L * m));
+                record.setCurrency("USD");
+                liabilityRecordRepository.save(record);
+            }
+        }
+
+        // 2 个开支大类 × 2 个小类，每月 USD 开支 + 年度预算
+        for (int major = 1; major <= 2; major++) {
+            ExpenseCategoryMajor majorCategory = new ExpenseCategoryMajor();
+            majorCategory.setCode("MAJOR_" + major);
+            majorCategory.setName("major-" + major);
+            majorCategory.setSortOrder(major);
+            majorCategory.setIsActive(true);
+            majorCategory = expenseMajorRepository.save(majorCategory);
+            if (expenseMajorId == null) {
+                expenseMajorId = majorCategory.getId();
+            }
+            for (int minor = 1; minor <= 2; minor++) {
+                ExpenseCategoryMinor minorCategory = new ExpenseCategoryMinor();
+                minorCategory.setMajorCategoryId(majorCategory.getId());
+                minorCategory.setName("minor-" + major + "-" + minor);
+                minorCategory.setSortOrder(minor);
+                minorCategory.setIsActive(true);
+                minorCategory.setIsDefault(false);
+                minorCategory.setExpenseType("FIXED_DAILY");
+                minorCategory = expenseMinorRepository.save(minorCategory);
+                if (expenseMinorId == null) {
+                    expenseMinorId = minorCategory.getId();
+                }
+                for (int m = 1; m <= 12; m++) {
+                    ExpenseRecord record = new ExpenseRecord();
+                    record.setFamilyId(family.getId());
+                    record.setUserId(users.get(0).getId());
+                    record.setExpenseYear(YEAR);
+                    record.setExpenseMonth(m);
+                    record.setExpensePeriod(YearMonth.of(YEAR, m).toString());
+                    record.setMajorCategoryId(majorCategory.getId());
+                    record.setMinorCategoryId(minorCategory.getId());
+                    record.setAmount(BigDecimal.valueOf(100L * m));
+                    record.setCurrency("USD");
+                    record.setExpenseType("FIXED_DAILY");
+                    expenseRecordRepository.save(record);
+                }
+                ExpenseBudget budget = new ExpenseBudget();
+                budget.setFamilyId(family.getId());
+                budget.setBudgetYear(YEAR);
+                budget.setMinorCategoryId(minorCategory.getId());
+                budget.setBudgetAmount(BigDecimal.valueOf(10_000));
+                budget.setCurrency("USD");
+                expenseBudgetRepository.save(budget);
+            }
+        }
+
+        IncomeCategoryMajor salary = new IncomeCategoryMajor();
+        salary.setName("Salary");
+        salary.setChineseName("工资");
+        salary.setDisplayOrder(1);
+        salary.setIsActive(true);
+        salary = incomeMajorRepository.save(salary);
+        incomeMajorId = salary.getId();
+        IncomeCategoryMinor base = new IncomeCategoryMinor();
+        base.setMajorCategoryId(salary.getId());
+        base.setUserId(users.get(0).getId());
+        base.setName("Base");
+        base.setChineseName("基本工资");
+        base.setIsActive(true);
+        base = incomeMinorRepository.save(base);
+        for (int m = 1; m <= 12; m++) {
+            IncomeRecord record = new IncomeRecord();
+            record.setFamilyId(family.getId());
+            record.setMajorCategoryId(salary.getId());
+            record.setMinorCategoryId(base.getId());
+            record.setPeriod(YearMonth.of(YEAR, m).toString());
+            record.setAmount(BigDecimal.valueOf(8_000));
+            record.setCurrency("USD");
+            record.setAmountUsd(BigDecimal.valueOf(8_000));
+            incomeRecordRepository.save(record);
+        }
+
+        annualExpenseSummaryService.rebuild(family.getId(), YEAR);
+        warmNetWorthCube();
+    }
+
+    /**
+     * 首次查询趋势时构建净资产快照汇总；预热后预算表中的趋势接口衡量的是已构建后的查询
+     */
+    private void warmNetWorthCube() throws Exception {
+        when(authHelper.getAuthorizedFamilyId(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+        cubeBuildStatements = statements("/analysis/trends/overall", "familyId", FAMILY,
+            "startDate", (YEAR - 1) + "-01-31", "endDate", YEAR + "-12-31");
+    }
+
+    @Test
+    @DisplayName("Building the net worth cube should insert cells in one batch")
+    void shouldBuildNetWorthCubeWithinBudget() {
+        assertTrue(cubeBuildStatements <= 12,
+            "构建净资产快照汇总执行了 " + cubeBuildStatements + " 条SQL，超出预算 12");
+    }
+
+    @BeforeEach
+    void authorizeFamily() {
+        when(authHelper.getAuthorizedFamilyId(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+    }
+
+    Stream<Arguments> endpoints() {
+        String start = (YEAR - 1) + "-01-31";
+        String end = YEAR + "-12-31";
+        String year = String.valueOf(YEAR);
+        return Stream.of(
+            // /analysis
+            budget(10, "/analysis/summary", "familyId", FAMILY),
+            budget(18, "/analysis/dashboard", "familyId", FAMILY),
+            budget(5, "/analysis/allocation/type", "familyId", FAMILY),
+            budget(7, "/analysis/allocation/net", "familyId", FAMILY),
+            budget(2, "/analysis/allocation/liability", "familyId", FAMILY),
+            budget(4, "/analysis/allocation/net-worth-by-tax-status", "familyId", FAMILY),
+            budget(5, "/analysis/allocation/net-worth-by-member", "familyId", FAMILY),
+            budget(4, "/analysis/allocation/net-worth-by-currency", "familyId", FAMILY),
+            budget(9, "/analysis/trends/overall", "familyId", FAMILY, "startDate", start, "endDate", end),
+            budget(2, "/analysis/trends/asset-category/STOCKS", "familyId", FAMILY, "startDate", start, "endDate", end),
+            budget(2, "/analysis/trends/liability-category/MORTGAGE", "familyId", FAMILY, "startDate", start, "endDate", end),
+            budget(3, "/analysis/trends/net-asset-category/INVESTMENT_NET", "familyId", FAMILY, "startDate", start, "endDate", end),
+            budget(5, "/analysis/allocation/asset-accounts/STOCKS", "familyId", FAMILY),
+            budget(2, "/analysis/allocation/liability-accounts/MORTGAGE", "familyId", FAMILY),
+            budget(7, "/analysis/allocation/net-asset-accounts/INVESTMENT_NET", "familyId", FAMILY),
+            budget(17, "/analysis/financial-metrics", "familyId", FAMILY),
+            budget(23, "/analysis/financial-metrics/enhanced", "familyId", FAMILY),
+            budget(6, "/analysis/risk-assessment", "familyId", FAMILY),
+            budget(27, "/analysis/optimization-recommendations", "familyId", FAMILY),
+            budget(4, "/analysis/trends/total", "userId", String.valueOf(memberId), "startDate", start, "endDate", end),
+            budget(3, "/analysis/trends/account/" + stockAccountId),
+            budget(4, "/analysis/allocation/category", "userId", String.valueOf(memberId)),
+            budget(9, "/analysis/trends/asset-accounts/STOCKS", "familyId", FAMILY, "startDate", start, "endDate", end),
+            budget(6, "/analysis/trends/liability-accounts/MORTGAGE", "familyId", FAMILY, "startDate", start, "endDate", end),
+            // /expenses/analysis
+            budget(6, "/expenses/analysis/annual/major-categories", "familyId", FAMILY, "year", year),
+            budget(6, "/expenses/analysis/annual/minor-categories", "familyId", FAMILY, "year", year,
+                "majorCategoryId", String.valueOf(expenseMajorId)),
+            budget(1, "/expenses/analysis/annual/monthly-trend", "familyId", FAMILY, "year", year,
+                "minorCategoryId", String.valueOf(expenseMinorId)),
+            budget(2, "/expenses/analysis/budget-execution", "familyId", FAMILY, "budgetYear", year),
+            budget(4, "/expenses/analysis/annual/summary", "familyId", FAMILY, "year", year),
+            budget(5, "/expenses/analysis/annual/summary/verify", "familyId", FAMILY, "year", year),
+            budget(1, "/expenses/analysis/annual/trend", "familyId", FAMILY),
+            budget(2, "/expenses/analysis/annual/category-trend", "familyId", FAMILY),
+            budget(2, "/expenses/analysis/annual/summary-table", "familyId", FAMILY),
+            // /incomes-analysis
+            budget(1, "/incomes-analysis/annual/major-categories", "familyId", FAMILY, "year", year),
+            budget(2, "/incomes-analysis/annual/minor-categories", "familyId", FAMILY, "year", year,
+                "majorCategoryId", String.valueOf(incomeMajorId)),
+            budget(1, "/incomes-analysis/annual/monthly-trend", "familyId", FAMILY, "year", year,
+                "majorCategoryId", String.valueOf(incomeMajorId)),
+            // /investments/analysis
+            budget(10, "/investments/analysis/annual/by-category", "familyId", FAMILY, "year", year),
+            budget(20, "/investments/analysis/annual/by-account", "familyId", FAMILY, "year", year),
+            budget(5, "/investments/analysis/annual/monthly-trend", "accountId", String.valueOf(stockAccountId), "year", year)
+        );
+    }
+
+    @ParameterizedTest(name = "{0} <= {1} statements")
+    @MethodSource("endpoints")
+    void shouldStayWithinQueryBudget(String path, int maxStatements, String[] params) throws Exception {
+        int statements = statements(path, params);
+        assertTrue(statements <= maxStatements,
+            path + " 执行了 " + statements + " 条SQL，超出预算 " + maxStatements);
+    }
+
+    private int statements(String path, String... params) throws Exception {
+        var request = get(path).header("Authorization", "Bearer token");
+        for (int i = 0; i < params.length; i += 2) {
+            request.param(params[i], params[i + 1]);
+        }
+
+        MvcResult result = mockMvc.perform(request).andReturn();
+
+        assertEquals(200, result.getResponse().getStatus(), result.getResponse().getContentAsString());
+        String header = result.getResponse().getHeader("X-SQL-Statements");
+        assertNotNull(header, "缺少 X-SQL-Statements 响应头");
+        return Integer.parseInt(header);
+    }
+
+    private static Arguments budget(int maxStatements, String path, String... params) {
+        return Arguments.of(path, maxStatements, params);
+    }
+}
@@ -0,0 +1,129 @@
+package com.finance.app.service.analysis;
+
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.User;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.AccountBalanceIndexService;
+import com.finance.app.service.AccountBalanceIndexService.BalancePoint;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AccountBalanceIndexService Tests")
+class AccountBalanceIndexServiceTest {
+
+    @Mock
+    private AssetRecordRepository assetRecordRepository;
+
+    @Mock
+    private LiabilityRecordRepository liabilityRecordRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @InjectMocks
+    private AccountBalanceIndexService balanceIndexService;
+
+    private AssetRecord record(Long accountId, String date, String amount, String currency) {
+        AssetRecord r = new AssetRecord();
+        r.setUserId(7L);
+        r.setAccountId(accountId);
+        r.setRecordDate(LocalDate.parse(date));
+        r.setAmount(new BigDecimal(amount));
+        r.setCurrency(currency);
+        return r;
+    }
+
+    @Test
+    @DisplayName("应该返回指定日期（含）之前最近一条记录")
+    void shouldReturnFloorRecordForAsOfDate() {
+        when(assetRecordRepository.findAllByFamilyIdOrderByAccountAndDate(1L)).thenReturn(List.of(
+            record(10L, "2024-01-31", "100.00", "USD"),
+            record(10L, "2024-02-29", "200.50", "USD"),
+            record(10L, "2024-03-31", "300.00", "CNY")
+        ));
+
+        Optional<BalancePoint> exact = balanceIndexService.getAssetBalanceAsOf(1L, 10L, LocalDate.parse("2024-02-29"));
+        Optional<BalancePoint> between = balanceIndexService.getAssetBalanceAsOf(1L, 10L, LocalDate.parse("2024-03-15"));
+        Optional<BalancePoint> latest = balanceIndexService.getAssetBalanceAsOf(1L, 10L, null);
+        Optional<BalancePoint> before = balanceIndexService.getAssetBalanceAsOf(1L, 10L, LocalDate.parse("2023-12-31"));
+
+        assertEquals(new BigDecimal("200.50"), exact.orElseThrow().amount());
+        assertEquals(LocalDate.parse("2024-02-29"), between.orElseThrow().recordDate());
+        assertEquals("CNY", latest.orElseThrow().currency());
+        assertTrue(before.isEmpty());
+        assertTrue(balanceIndexService.getAssetBalanceAsOf(1L, 99L, null).isEmpty());
+
+        // 同一家庭只加载一次
+        verify(assetRecordRepository, times(1)).findAllByFamilyIdOrderByAccountAndDate(1L);
+    }
+
+    @Test
+    @DisplayName("记录变更后清除家庭索引，下次查询读取最新数据")
+    void shouldReloadFamilyAfterWrite() {
+        when(assetRecordRepository.findAllByFamilyIdOrderByAccountAndDate(1L))
+            .thenReturn(List.of(record(10L, "2024-01-31", "100.00", "USD")))
+            .thenReturn(List.of(record(10L, "2024-01-31", "100.00", "USD"), record(10L, "2024-02-29", "150.00", "USD")));
+        User user = new User();
+        user.setId(7L);
+        user.setFamilyId(1L);
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+
+        balanceIndexService.getAssetBalanceAsOf(1L, 10L, null);
+        balanceIndexService.invalidateFamilyOfUser(7L);
+
+        assertEquals(new BigDecimal("150.00"),
+            balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        assertEquals(new BigDecimal("100.00"),
+            balanceIndexService.getAssetBalanceAsOf(1L, 10L, LocalDate.parse("2024-02-01")).orElseThrow().amount());
+    }
+
+    @Test
+    @DisplayName("到期后按水位校验：水位不变继续使用，其他实例写入后水位变化则重新加载")
+    void shouldRevalidateByWatermark() {
+        ReflectionTestUtils.setField(balanceIndexService, "revalidateMs", 0L);
+        when(assetRecordRepository.getBalanceIndexWatermark(1L))
+            .thenReturn(List.<Object[]>of(new Object[]{1L, 5L}))
+            .thenReturn(List.<Object[]>of(new Object[]{1L, 5L}))
+            .thenReturn(List.<Object[]>of(new Object[]{2L, 6L}));
+        when(assetRecordRepository.findAllByFamilyIdOrderByAccountAndDate(1L))
+            .thenReturn(List.of(record(10L, "2024-01-31", "100.00", "USD")))
+            .thenReturn(List.of(record(10L, "2024-02-29", "150.00", "USD")));
+
+        assertEquals(new BigDecimal("100.00"), balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        assertEquals(new BigDecimal("100.00"), balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        assertEquals(new BigDecimal("150.00"), balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        verify(assetRecordRepository, times(2)).findAllByFamilyIdOrderByAccountAndDate(1L);
+    }
+
+    @Test
+    @DisplayName("加载期间发生清除时，本次结果只返回给调用方，不写入索引")
+    void shouldNotCacheFamilyLoadedBeforeInvalidation() {
+        when(assetRecordRepository.findAllByFamilyIdOrderByAccountAndDate(1L))
+            .thenAnswer(invocation -> {
+                balanceIndexService.invalidateFamily(1L); // 模拟其他线程的写入提交与加载并发
+                return List.of(record(10L, "2024-01-31", "100.00", "USD"));
+            })
+            .thenReturn(List.of(record(10L, "2024-02-29", "150.00", "USD")));
+
+        assertEquals(new BigDecimal("100.00"), balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        assertEquals(new BigDecimal("150.00"), balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        assertEquals(new BigDecimal("150.00"), balanceIndexService.getAssetBalanceAsOf(1L, 10L, null).orElseThrow().amount());
+        verify(assetRecordRepository, times(2)).findAllByFamilyIdOrderByAccountAndDate(1L);
+    }
+}
@@ -0,0 +1,66 @@
+package com.finance.app.service.analysis;
+
+import com.finance.app.service.AnalysisSectionRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("AnalysisSectionRunner Tests")
+class AnalysisSectionRunnerTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final AnalysisSectionRunner runner =
+        new AnalysisSectionRunner(executor, mock(PlatformTransactionManager.class), 200);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("超时的分段应该降级，其他分段结果不受影响")
+    void shouldFallBackOnlyForSlowSection() {
+        List<String> unavailable = new CopyOnWriteArrayList<>();
+        CountDownLatch never = new CountDownLatch(1);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> fast = runner.submit("fast", () -> "ok", () -> "fallback", unavailable);
+        CompletableFuture<String> slow = runner.submit("slow", () -> {
+            try {
+                never.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "late";
+        }, () -> "fallback", unavailable);
+
+        assertEquals("ok", fast.join());
+        assertEquals("fallback", slow.join());
+        assertEquals(List.of("slow"), unavailable);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    @Test
+    @DisplayName("抛出异常的分段应该降级")
+    void shouldFallBackOnFailure() {
+        List<String> unavailable = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Integer> failing = runner.submit("failing", () -> {
+            throw new IllegalStateException("boom");
+        }, () -> 0, unavailable);
+
+        assertEquals(0, failing.join());
+        assertEquals(List.of("failing"), unavailable);
+    }
+}
@@ -0,0 +1,214 @@
+package com.finance.app.service.analysis;
+
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.AssetType;
+import com.finance.app.model.NetWorthCubeBuild;
+import com.finance.app.model.NetWorthSnapshotCube;
+import com.finance.app.model.User;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.NetWorthCubeBuildRepository;
+import com.finance.app.repository.NetWorthSnapshotCubeRepository;
+import com.finance.app.repository.RecordBatchInsertRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.NetWorthCubeService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("NetWorthCubeService Tests")
+class NetWorthCubeServiceTest {
+
+    @Mock
+    private NetWorthSnapshotCubeRepository cubeRepository;
+
+    @Mock
+    private NetWorthCubeBuildRepository cubeBuildRepository;
+
+    @Mock
+    private RecordBatchInsertRepository batchInsertRepository;
+
+    @Mock
+    private AssetRecordRepository assetRecordRepository;
+
+    @Mock
+    private LiabilityRecordRepository liabilityRecordRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ExchangeRateService exchangeRateService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private NetWorthCubeService netWorthCubeService;
+
+    private AssetRecord record(String type, String date, String amount, String currency) {
+        AssetAccount account = new AssetAccount();
+        if (type != null) {
+            AssetType assetType = new AssetType();
+            assetType.setType(type);
+            account.setAssetType(assetType);
+        }
+
+        AssetRecord r = new AssetRecord();
+        r.setUserId(7L);
+        r.setAccount(account);
+        r.setRecordDate(LocalDate.parse(date));
+        r.setAmount(new BigDecimal(amount));
+        r.setCurrency(currency);
+        return r;
+    }
+
+    @Test
+    @DisplayName("汇总尚未构建时记录变更不应触发重算")
+    void shouldSkipRecomputeWhenCubeNotBuilt() {
+        User user = new User();
+        user.setFamilyId(1L);
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+        when(cubeBuildRepository.existsById(1L)).thenReturn(false);
+
+        netWorthCubeService.onRecordChanged(7L, LocalDate.parse("2024-03-31"));
+
+        verify(cubeRepository, never()).deleteCells(any(), any(), any(), any());
+        verify(batchInsertRepository, never()).insertCubeCells(any());
+    }
+
+    @Test
+    @DisplayName("记录变更后只重算该日期，并按类型和币种逐条换算汇总")
+    @SuppressWarnings("unchecked")
+    void shouldRecomputeOnlyChangedDate() {
+        User user = new User();
+        user.setFamilyId(1L);
+        LocalDate date = LocalDate.parse("2024-03-31");
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+        when(cubeBuildRepository.existsById(1L)).thenReturn(true);
+        when(assetRecordRepository.findForSnapshotCube(1L, date, date, null)).thenReturn(List.of(
+            record("CASH", "2024-03-31", "100.00", "USD"),
+            record("CASH", "2024-03-31", "10.00", "cny"),
+            record("CASH", "2024-03-31", "10.00", "CNY"),
+            record("STOCKS", "2024-03-31", "50.00", null)
+        ));
+        when(exchangeRateService.getExchangeRate(anyString(), eq(date))).thenReturn(new BigDecimal("0.1385"));
+
+        netWorthCubeService.onRecordChanged(7L, date);
+
+        verify(cubeRepository).deleteCells(1L, date, date, null);
+        ArgumentCaptor<List<NetWorthSnapshotCube>> captor = ArgumentCaptor.forClass(List.class);
+        verify(batchInsertRepository).insertCubeCells(captor.capture());
+        List<NetWorthSnapshotCube> cells = captor.getValue();
+        assertEquals(3, cells.size());
+
+        NetWorthSnapshotCube cny = cells.stream()
+            .filter(c -> c.getTypeCode().equals("CASH") && c.getCurrency().equals("CNY"))
+            .findFirst().orElseThrow();
+        assertEquals(new BigDecimal("20.00"), cny.getAmountOriginal());
+        // 逐条换算：1.385 -> 1.39，两条合计 2.78
+        assertEquals(new BigDecimal("2.78"), cny.getAmountUsd());
+        assertEquals(2, cny.getRecordCount());
+
+        NetWorthSnapshotCube stocks = cells.stream()
+            .filter(c -> c.getTypeCode().equals("STOCKS"))
+            .findFirst().orElseThrow();
+        assertEquals("USD", stocks.getCurrency());
+        assertEquals(new BigDecimal("50.00"), stocks.getAmountUsd());
+    }
+
+    @Test
+    @DisplayName("同一事务内多个账户的变更合并到提交后，每个日期只重算一次")
+    void shouldCoalesceRecomputesUntilCommit() {
+        User user = new User();
+        user.setFamilyId(1L);
+        LocalDate march = LocalDate.parse("2024-03-31");
+        LocalDate april = LocalDate.parse("2024-04-30");
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+        when(cubeBuildRepository.existsById(1L)).thenReturn(true);
+        when(assetRecordRepository.findForSnapshotCube(eq(1L), any(), any(), isNull())).thenReturn(List.of());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            netWorthCubeService.onRecordChanged(7L, march);
+            netWorthCubeService.onRecordChanged(7L, march);
+            netWorthCubeService.onRecordChanged(7L, march, april);
+            verifyNoInteractions(cubeRepository, userRepository);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+            verifyNoInteractions(cubeRepository, userRepository);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(userRepository, times(1)).findById(7L);
+        verify(cubeRepository, times(1)).deleteCells(1L, march, march, null);
+        verify(cubeRepository, times(1)).deleteCells(1L, april, april, null);
+        verify(batchInsertRepository, times(2)).insertCubeCells(any());
+        assertFalse(TransactionSynchronizationManager.hasResource(netWorthCubeService));
+    }
+
+    @Test
+    @DisplayName("提交后重算失败时不抛出异常，清空该家庭等待下次查询重建")
+    void shouldInvalidateFamilyWhenRecomputeFails() {
+        User user = new User();
+        user.setFamilyId(1L);
+        LocalDate date = LocalDate.parse("2024-03-31");
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+        when(cubeBuildRepository.existsById(1L)).thenReturn(true);
+        when(cubeRepository.deleteCells(1L, date, date, null)).thenThrow(new CannotAcquireLockException("deadlock"));
+
+        assertDoesNotThrow(() -> netWorthCubeService.onRecordChanged(7L, date));
+
+        verify(cubeBuildRepository).deleteByFamilyId(1L);
+        verify(cubeRepository).deleteByFamilyId(1L);
+        verify(batchInsertRepository, never()).insertCubeCells(any());
+    }
+
+    @Test
+    @DisplayName("首次查询全量构建并写入构建标记，未设置类型的账户计入总额")
+    @SuppressWarnings("unchecked")
+    void shouldBuildOnceAndIncludeUntypedAccounts() {
+        LocalDate date = LocalDate.parse("2024-03-31");
+        when(cubeBuildRepository.existsById(1L)).thenReturn(false, false, true);
+        when(assetRecordRepository.findForSnapshotCube(eq(1L), any(), any(), isNull())).thenReturn(List.of(
+            record(null, "2024-03-31", "30.00", "USD")
+        ));
+        when(cubeRepository.sumUsdByDate(eq(1L), eq(NetWorthSnapshotCube.KIND_ASSET), any(), any()))
+            .thenReturn(List.<Object[]>of(new Object[]{date, new BigDecimal("30.00")}));
+
+        netWorthCubeService.getTotalsByDate(1L, NetWorthSnapshotCube.KIND_ASSET, null, date, date);
+        Map<LocalDate, BigDecimal> totals = netWorthCubeService.getTotalsByDate(
+            1L, NetWorthSnapshotCube.KIND_ASSET, null, date, date);
+
+        assertEquals(new BigDecimal("30.00"), totals.get(date));
+        ArgumentCaptor<List<NetWorthSnapshotCube>> captor = ArgumentCaptor.forClass(List.class);
+        verify(batchInsertRepository, times(1)).insertCubeCells(captor.capture());
+        assertEquals(NetWorthSnapshotCube.TYPE_NONE, captor.getValue().get(0).getTypeCode());
+        verify(cubeBuildRepository, times(1)).save(any(NetWorthCubeBuild.class));
+    }
+}
@@ -0,0 +1,123 @@
+package com.finance.app.service.analysis;
+
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.NetAssetCategoryAssetTypeMapping;
+import com.finance.app.repository.AssetTypeRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.IncomeCategoryMajorRepository;
+import com.finance.app.repository.IncomeCategoryMinorRepository;
+import com.finance.app.repository.LiabilityTypeRepository;
+import com.finance.app.repository.NetAssetCategoryAssetTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryLiabilityTypeMappingRepository;
+import com.finance.app.repository.NetAssetCategoryRepository;
+import com.finance.app.service.ReferenceDataCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 参考数据缓存：整表加载一次、失效或过期后重新加载、加载期间失效的结果不写入缓存
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ReferenceDataCache Tests")
+class ReferenceDataCacheTest {
+
+    @Mock private ExpenseCategoryMajorRepository expenseCategoryMajorRepository;
+    @Mock private ExpenseCategoryMinorRepository expenseCategoryMinorRepository;
+    @Mock private IncomeCategoryMajorRepository incomeCategoryMajorRepository;
+    @Mock private IncomeCategoryMinorRepository incomeCategoryMinorRepository;
+    @Mock private AssetTypeRepository assetTypeRepository;
+    @Mock private LiabilityTypeRepository liabilityTypeRepository;
+    @Mock private NetAssetCategoryRepository netAssetCategoryRepository;
+    @Mock private NetAssetCategoryAssetTypeMappingRepository assetTypeMappingRepository;
+    @Mock private NetAssetCategoryLiabilityTypeMappingRepository liabilityTypeMappingRepository;
+    @Mock private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private ReferenceDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReferenceDataCache(expenseCategoryMajorRepository, expenseCategoryMinorRepository,
+            incomeCategoryMajorRepository, incomeCategoryMinorRepository, assetTypeRepository, liabilityTypeRepository,
+            netAssetCategoryRepository, assetTypeMappingRepository, liabilityTypeMappingRepository, meterRegistry);
+    }
+
+    private ExpenseCategoryMajor major(Long id, String code) {
+        ExpenseCategoryMajor major = new ExpenseCategoryMajor();
+        major.setId(id);
+        major.setCode(code);
+        major.setName(code);
+        return major;
+    }
+
+    @Test
+    @DisplayName("按ID和编码查找只加载一次整表，失效后重新加载")
+    void shouldLoadTableOnceUntilInvalidated() {
+        when(expenseCategoryMajorRepository.findAll())
+            .thenReturn(List.of(major(1L, "FOOD"), major(2L, "HOUSING")))
+            .thenReturn(List.of(major(1L, "FOOD"), major(2L, "HOUSING"), major(3L, "TRAVEL")));
+
+        assertEquals("FOOD", cache.findExpenseMajor(1L).orElseThrow().getCode());
+        assertEquals(2L, cache.findExpenseMajorByCode("HOUSING").orElseThrow().getId());
+        assertTrue(cache.findExpenseMajor(3L).isEmpty());
+        verify(expenseCategoryMajorRepository, times(1)).findAll();
+
+        long version = cache.getVersion();
+        cache.invalidateAfterCommit();
+
+        assertEquals(version + 1, cache.getVersion());
+        assertEquals("TRAVEL", cache.findExpenseMajor(3L).orElseThrow().getCode());
+        verify(expenseCategoryMajorRepository, times(2)).findAll();
+        verifyNoInteractions(expenseCategoryMinorRepository);
+    }
+
+    @Test
+    @DisplayName("加载期间发生失效时，本次结果只返回给调用方，不写入缓存")
+    void shouldNotCacheRowsLoadedBeforeInvalidation() {
+        NetAssetCategoryAssetTypeMapping stale = new NetAssetCategoryAssetTypeMapping();
+        stale.setId(1L);
+        stale.setNetAssetCategoryId(10L);
+        stale.setAssetType("CASH");
+        NetAssetCategoryAssetTypeMapping fresh = new NetAssetCategoryAssetTypeMapping();
+        fresh.setId(2L);
+        fresh.setNetAssetCategoryId(10L);
+        fresh.setAssetType("STOCKS");
+        when(assetTypeMappingRepository.findAll())
+            .thenAnswer(invocation -> {
+                cache.invalidate(); // 模拟管理端修改与加载并发
+                return List.of(stale);
+            })
+            .thenReturn(List.of(fresh));
+
+        assertEquals("CASH", cache.getAssetTypeMappings(10L).get(0).getAssetType());
+        assertEquals("STOCKS", cache.getAssetTypeMappings(10L).get(0).getAssetType());
+        assertEquals("STOCKS", cache.getAssetTypeMappings(10L).get(0).getAssetType());
+        assertTrue(cache.getAssetTypeMappings(99L).isEmpty());
+        verify(assetTypeMappingRepository, times(2)).findAll();
+    }
+
+    @Test
+    @DisplayName("快照过期后重新加载，以读到其他实例的修改")
+    void shouldReloadExpiredSnapshot() {
+        ReflectionTestUtils.setField(cache, "ttlMs", 0L);
+        when(expenseCategoryMajorRepository.findAll())
+            .thenReturn(List.of(major(1L, "FOOD")))
+            .thenReturn(List.of(major(1L, "FOOD"), major(3L, "TRAVEL")));
+
+        assertTrue(cache.findExpenseMajor(3L).isEmpty());
+        assertEquals("TRAVEL", cache.findExpenseMajor(3L).orElseThrow().getCode());
+        verify(expenseCategoryMajorRepository, times(2)).findAll();
+    }
+}
@@ -0,0 +1,126 @@
+package com.finance.app.service.exchangerate;
+
+import com.finance.app.model.ExchangeRate;
+import com.finance.app.repository.ExchangeRateRepository;
+import com.finance.app.service.ExchangeRateService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ExchangeRateService Tests")
+class ExchangeRateServiceTest {
+
+    @Mock
+    private ExchangeRateRepository exchangeRateRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private ExchangeRateService exchangeRateService;
+
+    private ExchangeRate rate(Long id, String currency, String date, String rateToUsd) {
+        ExchangeRate rate = new ExchangeRate();
+        rate.setId(id);
+        rate.setCurrency(currency);
+        rate.setEffectiveDate(LocalDate.parse(date));
+        rate.setRateToUsd(new BigDecimal(rateToUsd));
+        rate.setIsActive(true);
+        return rate;
+    }
+
+    @Test
+    @DisplayName("应该返回生效日期（含）之前最近的汇率，并只加载一次时间线")
+    void shouldReturnFloorRateFromTimeline() {
+        when(exchangeRateRepository.findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY")).thenReturn(List.of(
+            rate(1L, "CNY", "2024-01-01", "0.14"),
+            rate(2L, "CNY", "2024-06-30", "0.138")
+        ));
+
+        assertEquals(new BigDecimal("0.14"), exchangeRateService.getExchangeRate("CNY", LocalDate.parse("2024-03-31")));
+        assertEquals(new BigDecimal("0.138"), exchangeRateService.getExchangeRate("cny", LocalDate.parse("2024-06-30")));
+        assertNull(exchangeRateService.findExchangeRate("CNY", LocalDate.parse("2023-12-31")));
+        assertEquals(BigDecimal.ONE, exchangeRateService.getExchangeRate("CNY", LocalDate.parse("2023-12-31")));
+        assertEquals(BigDecimal.ONE, exchangeRateService.getExchangeRate("USD", LocalDate.parse("2024-03-31")));
+
+        verify(exchangeRateRepository, times(1)).findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY");
+    }
+
+    @Test
+    @DisplayName("删除汇率后应该重新加载时间线")
+    void shouldReloadTimelineAfterDelete() {
+        ExchangeRate june = rate(2L, "CNY", "2024-06-30", "0.138");
+        when(exchangeRateRepository.findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY"))
+            .thenReturn(List.of(rate(1L, "CNY", "2024-01-01", "0.14"), june))
+            .thenReturn(List.of(rate(1L, "CNY", "2024-01-01", "0.14")));
+        when(exchangeRateRepository.findById(2L)).thenReturn(Optional.of(june));
+
+        LocalDate date = LocalDate.parse("2024-12-31");
+        assertEquals(new BigDecimal("0.138"), exchangeRateService.getExchangeRate("CNY", date));
+
+        exchangeRateService.deleteExchangeRate(2L);
+
+        assertEquals(new BigDecimal("0.14"), exchangeRateService.getExchangeRate("CNY", date));
+        verify(exchangeRateRepository, times(2)).findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY");
+        verify(eventPublisher).publishEvent(new ExchangeRateService.ExchangeRateChangedEvent("CNY", LocalDate.parse("2024-06-30")));
+    }
+
+    @Test
+    @DisplayName("其他实例修改汇率（水位变化）后应该重新加载时间线")
+    void shouldReloadTimelineWhenWatermarkChanges() {
+        ReflectionTestUtils.setField(exchangeRateService, "revalidateMs", 0L);
+        when(exchangeRateRepository.getCacheWatermark())
+            .thenReturn(List.<Object[]>of(new Object[]{1L, 1L}))
+            .thenReturn(List.<Object[]>of(new Object[]{1L, 1L}))
+            .thenReturn(List.<Object[]>of(new Object[]{2L, 2L}));
+        when(exchangeRateRepository.findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY"))
+            .thenReturn(List.of(rate(1L, "CNY", "2024-01-01", "0.14")))
+            .thenReturn(List.of(rate(1L, "CNY", "2024-01-01", "0.14"), rate(2L, "CNY", "2024-06-30", "0.138")));
+
+        LocalDate date = LocalDate.parse("2024-12-31");
+        assertEquals(new BigDecimal("0.14"), exchangeRateService.getExchangeRate("CNY", date));
+        assertEquals(new BigDecimal("0.14"), exchangeRateService.getExchangeRate("CNY", date));
+        assertEquals(new BigDecimal("0.138"), exchangeRateService.getExchangeRate("CNY", date));
+        verify(exchangeRateRepository, times(2)).findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY");
+    }
+
+    @Test
+    @DisplayName("事务回滚后应该清空事务内加载的汇率缓存")
+    void shouldClearCacheAfterRollback() {
+        ExchangeRate june = rate(2L, "CNY", "2024-06-30", "0.138");
+        when(exchangeRateRepository.findById(2L)).thenReturn(Optional.of(june));
+        when(exchangeRateRepository.findByCurrencyAndIsActiveTrueOrderByEffectiveDateAsc("CNY"))
+            .thenReturn(List.of(rate(1L, "CNY", "2024-01-01", "0.14")))
+            .thenReturn(List.of(rate(1L, "CNY", "2024-01-01", "0.14"), june));
+
+        LocalDate date = LocalDate.parse("2024-12-31");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            exchangeRateService.deleteExchangeRate(2L);
+            // 事务内读到未提交的删除结果
+            assertEquals(new BigDecimal("0.14"), exchangeRateService.getExchangeRate("CNY", date));
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(new BigDecimal("0.138"), exchangeRateService.getExchangeRate("CNY", date));
+    }
+}
@@ -0,0 +1,555 @@
+package com.finance.app.service.expense;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.finance.app.model.AnnualExpenseSummary;
+import com.finance.app.model.AnnualFinancialSummary;
+import com.finance.app.model.AssetAccount;
+import com.finance.app.model.AssetRecord;
+import com.finance.app.model.AssetType;
+import com.finance.app.model.ExpenseCategoryMajor;
+import com.finance.app.model.ExpenseCategoryMinor;
+import com.finance.app.model.ExpenseRecord;
+import com.finance.app.model.LiabilityAccount;
+import com.finance.app.model.LiabilityRecord;
+import com.finance.app.model.LiabilityType;
+import com.finance.app.model.PropertyRecord;
+import com.finance.app.model.User;
+import com.finance.app.repository.AnnualExpenseSummaryRepository;
+import com.finance.app.repository.AnnualFinancialSummaryRepository;
+import com.finance.app.repository.AssetAccountRepository;
+import com.finance.app.repository.AssetRecordRepository;
+import com.finance.app.repository.ExpenseCategoryMajorRepository;
+import com.finance.app.repository.ExpenseCategoryMinorRepository;
+import com.finance.app.repository.ExpenseRecordRepository;
+import com.finance.app.repository.LiabilityRecordRepository;
+import com.finance.app.repository.PropertyRecordRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.ExchangeRateService;
+import com.finance.app.service.ExchangeRateService.ExchangeRateChangedEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AnnualExpenseSummaryService Tests")
+class AnnualExpenseSummaryServiceTest {
+
+    @Mock
+    private AnnualExpenseSummaryRepository summaryRepository;
+
+    @Mock
+    private ExpenseRecordRepository expenseRecordRepository;
+
+    @Mock
+    private ExpenseCategoryMajorRepository majorCategoryRepository;
+
+    @Mock
+    private ExpenseCategoryMinorRepository minorCategoryRepository;
+
+    @Mock
+    private AssetRecordRepository assetRecordRepository;
+
+    @Mock
+    private LiabilityRecordRepository liabilityRecordRepository;
+
+    @Mock
+    private AssetAccountRepository assetAccountRepository;
+
+    @Mock
+    private PropertyRecordRepository propertyRecordRepository;
+
+    @Mock
+    private AnnualFinancialSummaryRepository financialSummaryRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ExchangeRateService exchangeRateService;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Query configQuery;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private AnnualExpenseSummaryService summaryService;
+
+    @BeforeEach
+    void setUp() {
+        summaryService = new AnnualExpenseSummaryService(summaryRepository, expenseRecordRepository,
+            majorCategoryRepository, minorCategoryRepository, assetRecordRepository, liabilityRecordRepository,
+            assetAccountRepository, propertyRecordRepository, financialSummaryRepository, userRepository,
+            exchangeRateService, new ObjectMapper(), transactionManager);
+        ReflectionTestUtils.setField(summaryService, "entityManager", entityManager);
+
+        Map<String, BigDecimal> rates = new HashMap<>();
+        rates.put("USD", BigDecimal.ONE);
+        rates.put("CNY", new BigDecimal("0.14"));
+        lenient().when(exchangeRateService.getExchangeRatesAsOf(LocalDate.of(2024, 12, 31))).thenReturn(rates);
+        lenient().when(majorCategoryRepository.findByCode("HOUSING")).thenReturn(Optional.empty());
+        lenient().when(financialSummaryRepository.findByFamilyIdAndYear(anyLong(), anyInt())).thenReturn(Optional.empty());
+        lenient().when(entityManager.createNativeQuery(anyString())).thenReturn(configQuery);
+        lenient().when(configQuery.getResultList()).thenReturn(List.of());
+    }
+
+    private ExpenseRecord record(Long majorId, Long minorId, String amount, String currency) {
+        ExpenseRecord r = new ExpenseRecord();
+        r.setFamilyId(1L);
+        r.setUserId(7L);
+        r.setExpenseYear(2024);
+        r.setMajorCategoryId(majorId);
+        r.setMinorCategoryId(minorId);
+        r.setAmount(new BigDecimal(amount));
+        r.setCurrency(currency);
+        return r;
+    }
+
+    private static final LocalDate END_2024 = LocalDate.of(2024, 12, 31);
+    private static final LocalDate END_2023 = LocalDate.of(2023, 12, 31);
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "应为 " + expected + "，实际为 " + actual);
+    }
+
+    private void stubConfigs(Object[]... configs) {
+        when(configQuery.getResultList()).thenReturn(List.of(configs));
+    }
+
+    private AssetRecord assetBalance(String type, String currency, String amount) {
+        AssetType assetType = new AssetType();
+        assetType.setType(type);
+        AssetAccount account = new AssetAccount();
+        account.setAssetType(assetType);
+        account.setCurrency(currency);
+        AssetRecord record = new AssetRecord();
+        record.setAccount(account);
+        record.setAmount(new BigDecimal(amount));
+        return record;
+    }
+
+    private LiabilityRecord liabilityBalance(String type, String currency, String balance) {
+        LiabilityType liabilityType = new LiabilityType();
+        liabilityType.setType(type);
+        LiabilityAccount account = new LiabilityAccount();
+        account.setLiabilityType(liabilityType);
+        account.setCurrency(currency);
+        LiabilityRecord record = new LiabilityRecord();
+        record.setAccount(account);
+        record.setOutstandingBalance(new BigDecimal(balance));
+        return record;
+    }
+
+    /**
+     * 按大类找出全量计算结果中的大类行（总计行的 majorCategoryId 为 null）
+     */
+    private static AnnualExpenseSummary majorRow(List<AnnualExpenseSummary> rows, Long majorId) {
+        return rows.stream()
+            .filter(r -> Objects.equals(majorId, r.getMajorCategoryId()) && r.getMinorCategoryId() == null)
+            .findFirst()
+            .orElseThrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AnnualExpenseSummary> rebuildAndCapture() {
+        summaryService.rebuild(1L, 2024);
+        ArgumentCaptor<List<AnnualExpenseSummary>> captor = ArgumentCaptor.forClass(List.class);
+        verify(summaryRepository).saveAll(captor.capture());
+        return captor.getValue();
+    }
+
+    private AnnualExpenseSummary row(Long majorId, Long minorId, String base, String actual) {
+        AnnualExpenseSummary s = new AnnualExpenseSummary();
+        s.setFamilyId(1L);
+        s.setSummaryYear(2024);
+        s.setMajorCategoryId(majorId);
+        s.setMinorCategoryId(minorId);
+        s.setBaseExpenseAmount(new BigDecimal(base));
+        s.setActualExpenseAmount(new BigDecimal(actual));
+        s.setCurrency("USD");
+        return s;
+    }
+
+    @Test
+    @DisplayName("全量计算应按年末汇率折算并把单笔>=10000 USD 计入大类特殊支出")
+    @SuppressWarnings("unchecked")
+    void shouldRebuildWithSpecialExpenses() {
+        ExpenseCategoryMinor renovation = new ExpenseCategoryMinor();
+        renovation.setId(21L);
+        renovation.setName("装修");
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYear(1L, 2024)).thenReturn(List.of(
+            record(2L, 20L, "700", "CNY"),
+            record(2L, 20L, "2", "USD"),
+            record(2L, 21L, "12000", "USD")));
+        when(minorCategoryRepository.findAllById(Set.of(21L))).thenReturn(List.of(renovation));
+
+        summaryService.rebuild(1L, 2024);
+
+        ArgumentCaptor<List<AnnualExpenseSummary>> captor = ArgumentCaptor.forClass(List.class);
+        verify(summaryRepository).deleteByFamilyIdAndSummaryYear(1L, 2024);
+        verify(summaryRepository).saveAll(captor.capture());
+        List<AnnualExpenseSummary> rows = captor.getValue();
+        assertEquals(3, rows.size()); // 小类20、大类2、总计（小类21只有特殊支出）
+
+        AnnualExpenseSummary minor = rows.get(0);
+        assertEquals(20L, minor.getMinorCategoryId());
+        assertEquals(0, new BigDecimal("100.00").compareTo(minor.getBaseExpenseAmount()));
+
+        AnnualExpenseSummary major = rows.get(1);
+        assertNull(major.getMinorCategoryId());
+        assertEquals(0, new BigDecimal("100.00").compareTo(major.getBaseExpenseAmount()));
+        assertEquals(0, new BigDecimal("12000.00").compareTo(major.getSpecialExpenseAmount()));
+        assertEquals(0, new BigDecimal("12100.00").compareTo(major.getActualExpenseAmount()));
+        assertTrue(major.getSpecialExpenseDetails().contains("装修"));
+
+        AnnualExpenseSummary total = rows.get(2);
+        assertNull(total.getMajorCategoryId());
+        assertNull(total.getUserId());
+        assertEquals(0, new BigDecimal("12100.00").compareTo(total.getActualExpenseAmount()));
+    }
+
+    @Test
+    @DisplayName("增量更新应只重算变更大类并保留已有调整对实际支出的影响")
+    void shouldKeepAdjustmentWhenRecomputingMajor() {
+        AnnualExpenseSummary minor = row(3L, 30L, "100.00", "100.00");
+        AnnualExpenseSummary major = row(3L, null, "100.00", "80.00");
+        major.setAssetAdjustment(new BigDecimal("20.00"));
+        AnnualExpenseSummary other = row(4L, null, "50.00", "50.00");
+        AnnualExpenseSummary total = row(null, null, "150.00", "130.00");
+        when(summaryRepository.findByFamilyIdAndSummaryYear(1L, 2024))
+            .thenReturn(List.of(minor, major, other, total));
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(eq(1L), eq(2024), any()))
+            .thenReturn(List.of(record(3L, 30L, "150", "USD")));
+
+        summaryService.onExpenseRecordsChanged(1L, 2024, List.of(3L));
+
+        assertEquals(0, new BigDecimal("150.00").compareTo(minor.getBaseExpenseAmount()));
+        assertEquals(0, new BigDecimal("150.00").compareTo(major.getBaseExpenseAmount()));
+        assertEquals(0, new BigDecimal("130.00").compareTo(major.getActualExpenseAmount()));
+        assertEquals(0, new BigDecimal("200.00").compareTo(total.getBaseExpenseAmount()));
+        assertEquals(0, new BigDecimal("180.00").compareTo(total.getActualExpenseAmount()));
+        verify(summaryRepository, never()).deleteByFamilyIdAndSummaryYear(anyLong(), anyInt());
+        verify(configQuery, never()).getResultList();
+    }
+
+    @Test
+    @DisplayName("同一事务内的汇率变更提交后按币种合并，每个受影响的家庭年份只重算一次")
+    void shouldCoalesceRateChangesUntilCommit() {
+        when(summaryRepository.findFamilyYearsAffectedByCurrency(eq(2023), eq("CNY"), anyCollection(), anyCollection()))
+            .thenReturn(List.<Object[]>of(new Object[]{1L, 2023}, new Object[]{1L, 2024}));
+        when(summaryRepository.findFamilyYearsAffectedByCurrency(eq(2024), eq("EUR"), anyCollection(), anyCollection()))
+            .thenReturn(List.<Object[]>of(new Object[]{1L, 2024}));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            summaryService.onExchangeRateChanged(new ExchangeRateChangedEvent("CNY", LocalDate.of(2024, 6, 30)));
+            summaryService.onExchangeRateChanged(new ExchangeRateChangedEvent("CNY", LocalDate.of(2023, 12, 31)));
+            summaryService.onExchangeRateChanged(new ExchangeRateChangedEvent("EUR", LocalDate.of(2024, 6, 30)));
+            verifyNoInteractions(summaryRepository, expenseRecordRepository);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(summaryRepository, times(2)).findFamilyYearsAffectedByCurrency(anyInt(), anyString(), anyCollection(), anyCollection());
+        verify(summaryRepository, times(1)).deleteByFamilyIdAndSummaryYear(1L, 2023);
+        verify(summaryRepository, times(1)).deleteByFamilyIdAndSummaryYear(1L, 2024);
+        assertFalse(TransactionSynchronizationManager.hasResource(summaryService));
+    }
+
+    @Test
+    @DisplayName("同一事务内的资产/负债记录变更提交后按家庭合并重算调整，重算失败不抛出异常")
+    void shouldRefreshAdjustmentsAfterCommit() {
+        User user = new User();
+        user.setFamilyId(1L);
+        when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+        when(summaryRepository.findSummaryYearsFrom(1L, 2023)).thenThrow(new IllegalStateException("deadlock"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            summaryService.onBalanceRecordChanged(7L, LocalDate.of(2024, 6, 30));
+            summaryService.onBalanceRecordChanged(7L, LocalDate.of(2023, 12, 31), null);
+            TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.beforeCommit(false));
+            verifyNoInteractions(summaryRepository, userRepository);
+
+            assertDoesNotThrow(() ->
+                TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit));
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(userRepository, times(1)).findById(7L);
+        verify(summaryRepository, times(1)).findSummaryYearsFrom(1L, 2023);
+    }
+
+    /**
+     * 与存储过程对照：资产调整 SUBTRACT 实际支出减去增值、ADD 加上增值，负债调整扣除负债减少额；
+     * 上年财务摘要中有该类型时以摘要为基数，没有时取上年末余额
+     */
+    @Test
+    @DisplayName("资产/负债调整配置应按方向调整实际支出，并优先以上年财务摘要为基数")
+    void shouldApplyAssetAndLiabilityAdjustments() {
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYear(1L, 2024)).thenReturn(List.of(
+            record(5L, 50L, "1000", "USD"),
+            record(6L, 60L, "500", "USD"),
+            record(7L, 70L, "300", "USD")));
+        stubConfigs(
+            new Object[]{5L, "ASSET", "STOCKS", null, "SUBTRACT"},
+            new Object[]{6L, "ASSET", "CASH", null, "ADD"},
+            new Object[]{7L, "LIABILITY", null, "CREDIT_CARD", null});
+
+        AnnualFinancialSummary previous = new AnnualFinancialSummary();
+        previous.setAssetBreakdown(Map.of("STOCKS", new BigDecimal("10000")));
+        previous.setLiabilityBreakdown(Map.of("CREDIT_CARD", new BigDecimal("1000")));
+        when(financialSummaryRepository.findByFamilyIdAndYear(1L, 2023)).thenReturn(Optional.of(previous));
+
+        when(assetRecordRepository.findLatestRecordsByFamilyAndDate(1L, END_2024)).thenReturn(List.of(
+            assetBalance("STOCKS", "USD", "12000"),
+            assetBalance("CASH", "CNY", "10000")));
+        // 上年末 STOCKS 余额与摘要不同，应以摘要为准；CASH 不在摘要中，取上年末余额
+        when(assetRecordRepository.findLatestRecordsByFamilyAndDate(1L, END_2023)).thenReturn(List.of(
+            assetBalance("STOCKS", "USD", "9000"),
+            assetBalance("CASH", "CNY", "5000")));
+        when(liabilityRecordRepository.findLatestRecordsByFamilyAndDate(1L, END_2024)).thenReturn(List.of(
+            liabilityBalance("CREDIT_CARD", "USD", "800")));
+        when(exchangeRateService.getExchangeRate(eq("USD"), any())).thenReturn(BigDecimal.ONE);
+        when(exchangeRateService.getExchangeRate("CNY", END_2024)).thenReturn(new BigDecimal("0.14"));
+        when(exchangeRateService.getExchangeRate("CNY", END_2023)).thenReturn(new BigDecimal("0.15"));
+
+        List<AnnualExpenseSummary> rows = rebuildAndCapture();
+
+        // STOCKS: 12000 - 10000 = 2000，SUBTRACT：资产调整 2000，实际 1000 - 2000
+        AnnualExpenseSummary stocks = majorRow(rows, 5L);
+        assertAmount("2000.00", stocks.getAssetAdjustment());
+        assertAmount("-1000.00", stocks.getActualExpenseAmount());
+        // CASH: 10000×0.14 - 5000×0.15 = 650，ADD：资产调整 -650，实际 500 + 650
+        AnnualExpenseSummary cash = majorRow(rows, 6L);
+        assertAmount("-650.00", cash.getAssetAdjustment());
+        assertAmount("1150.00", cash.getActualExpenseAmount());
+        assertTrue(cash.getAdjustmentDetails().contains("\"direction\":\"ADD\""));
+        // CREDIT_CARD: 1000 - 800 = 200，实际 300 - 200
+        AnnualExpenseSummary card = majorRow(rows, 7L);
+        assertAmount("200.00", card.getLiabilityAdjustment());
+        assertAmount("100.00", card.getActualExpenseAmount());
+
+        AnnualExpenseSummary total = majorRow(rows, null);
+        assertAmount("1800.00", total.getBaseExpenseAmount());
+        assertAmount("1350.00", total.getAssetAdjustment());
+        assertAmount("200.00", total.getLiabilityAdjustment());
+        assertAmount("250.00", total.getActualExpenseAmount());
+        assertTrue(total.getAdjustmentDetails().contains("STOCKS"));
+        assertTrue(total.getAdjustmentDetails().contains("CREDIT_CARD"));
+        verify(liabilityRecordRepository, never()).findLatestRecordsByFamilyAndDate(1L, END_2023);
+    }
+
+    /**
+     * 与存储过程对照（房产 CNY，购买年份年末汇率 0.14）：
+     * 首付 140000、房贷 280000、房产价值 420000；年末房贷余额 1950000×0.14 = 273000，上年无余额
+     * 已还本金 = 280000 - 273000 + 0 = 7000；调整支出 = (280000 - 420000) - 7000 = -147000
+     * 年末房产价值 3100000×0.14 = 434000，投资回报 14000
+     */
+    @Test
+    @DisplayName("购房年份的住房大类应按购房口径调整，并跳过房贷余额调整配置")
+    void shouldApplyPropertyPurchaseToHousing() {
+        ExpenseCategoryMajor housing = new ExpenseCategoryMajor();
+        housing.setId(1L);
+        housing.setCode("HOUSING");
+        when(majorCategoryRepository.findByCode("HOUSING")).thenReturn(Optional.of(housing));
+        ExpenseCategoryMinor mortgage = new ExpenseCategoryMinor();
+        mortgage.setId(10L);
+        mortgage.setName("房贷");
+        ExpenseCategoryMinor fees = new ExpenseCategoryMinor();
+        fees.setId(11L);
+        fees.setName("物业费");
+        when(minorCategoryRepository.findByMajorCategoryIdOrderBySortOrder(1L)).thenReturn(List.of(mortgage, fees));
+
+        List<ExpenseRecord> housingRecords = List.of(record(1L, 10L, "3000", "USD"), record(1L, 11L, "500", "USD"));
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYear(1L, 2024)).thenReturn(housingRecords);
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(1L, 2024, List.of(1L)))
+            .thenReturn(housingRecords);
+        stubConfigs(new Object[]{1L, "LIABILITY", null, "MORTGAGE", null});
+
+        PropertyRecord property = new PropertyRecord();
+        property.setId(9L);
+        property.setAssetAccountId(100L);
+        property.setPurchaseDate(LocalDate.of(2024, 3, 1));
+        property.setCurrency("CNY");
+        property.setDownPayment(new BigDecimal("1000000"));
+        property.setMortgageAmount(new BigDecimal("2000000"));
+        property.setPropertyValue(new BigDecimal("3000000"));
+        when(propertyRecordRepository.findByFamilyIdAndPurchaseYear(1L, 2024)).thenReturn(List.of(property));
+
+        AssetAccount propertyAccount = new AssetAccount();
+        propertyAccount.setId(100L);
+        propertyAccount.setCurrency("CNY");
+        propertyAccount.setLinkedLiabilityAccountId(200L);
+        when(assetAccountRepository.findById(100L)).thenReturn(Optional.of(propertyAccount));
+        LiabilityRecord mortgageBalance = liabilityBalance("MORTGAGE", "CNY", "1950000");
+        when(liabilityRecordRepository.findLatestByAccountIdBeforeOrOnDate(200L, END_2024))
+            .thenReturn(Optional.of(mortgageBalance));
+        when(liabilityRecordRepository.findLatestByAccountIdBeforeOrOnDate(200L, END_2023)).thenReturn(Optional.empty());
+        AssetRecord propertyValue = new AssetRecord();
+        propertyValue.setAccount(propertyAccount);
+        propertyValue.setAmount(new BigDecimal("3100000"));
+        when(assetRecordRepository.findLatestByAccountIdBeforeOrOnDate(100L, END_2024))
+            .thenReturn(Optional.of(propertyValue));
+        when(exchangeRateService.getExchangeRate("CNY", END_2024)).thenReturn(new BigDecimal("0.14"));
+
+        List<AnnualExpenseSummary> rows = rebuildAndCapture();
+
+        AnnualExpenseSummary housingRow = majorRow(rows, 1L);
+        assertAmount("3500.00", housingRow.getBaseExpenseAmount());
+        assertAmount("14000.00", housingRow.getAssetAdjustment());
+        assertAmount("-147000.00", housingRow.getLiabilityAdjustment());
+        assertAmount("-143500.00", housingRow.getActualExpenseAmount());
+        String details = housingRow.getAdjustmentDetails();
+        assertTrue(details.startsWith("[{\"type\":\"PROPERTY_PURCHASE\""), details);
+        assertTrue(details.contains("\"mortgage_principal_paid\":7000.00"), details);
+        assertTrue(details.contains("\"accumulated_interest\":-4000.00"), details);
+        assertTrue(details.contains("\"purchase_cost\":0.00"), details);
+
+        assertAmount("-143500.00", majorRow(rows, null).getActualExpenseAmount());
+        // 房贷余额调整配置被跳过，不查询家庭负债余额
+        verify(liabilityRecordRepository, never()).findLatestRecordsByFamilyAndDate(anyLong(), any());
+    }
+
+    @Test
+    @DisplayName("增量更新应删除已没有记录的小类行和大类行")
+    void shouldDeleteEmptiedRows() {
+        AnnualExpenseSummary keptMinor = row(3L, 30L, "100.00", "100.00");
+        AnnualExpenseSummary emptiedMinor = row(3L, 31L, "40.00", "40.00");
+        AnnualExpenseSummary keptMajor = row(3L, null, "140.00", "140.00");
+        AnnualExpenseSummary removedMinor = row(4L, 40L, "60.00", "60.00");
+        AnnualExpenseSummary removedMajor = row(4L, null, "60.00", "60.00");
+        AnnualExpenseSummary total = row(null, null, "200.00", "200.00");
+        when(summaryRepository.findByFamilyIdAndSummaryYear(1L, 2024)).thenReturn(
+            List.of(keptMinor, emptiedMinor, keptMajor, removedMinor, removedMajor, total));
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(eq(1L), eq(2024), any()))
+            .thenReturn(List.of(record(3L, 30L, "150", "USD")));
+
+        summaryService.onExpenseRecordsChanged(1L, 2024, List.of(3L, 4L));
+
+        verify(summaryRepository).deleteAll(argThat(rows -> rows instanceof Collection<?> c && c.size() == 1
+            && c.contains(emptiedMinor)));
+        verify(summaryRepository).deleteAll(argThat(rows -> rows instanceof Collection<?> c && c.size() == 1
+            && c.contains(removedMinor)));
+        verify(summaryRepository).delete(removedMajor);
+        verify(summaryRepository, never()).delete(total);
+        assertAmount("150.00", keptMajor.getBaseExpenseAmount());
+        assertAmount("150.00", total.getBaseExpenseAmount());
+        assertAmount("150.00", total.getActualExpenseAmount());
+    }
+
+    @Test
+    @DisplayName("核对应列出金额不一致、缺少和多余的汇总行，且不修改数据")
+    void shouldReportDifferencesOnVerify() {
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYear(1L, 2024))
+            .thenReturn(List.of(record(2L, 20L, "100", "USD")));
+        when(summaryRepository.findByFamilyIdAndSummaryYear(1L, 2024)).thenReturn(List.of(
+            row(2L, 20L, "100.00", "100.00"),
+            row(2L, null, "100.00", "90.00"),
+            row(2L, 21L, "5.00", "5.00")));
+
+        List<String> differences = summaryService.verify(1L, 2024);
+
+        assertEquals(List.of(
+            "大类 2: 实际支出 应为 100.00，实际为 90.00",
+            "总计: 缺少汇总行",
+            "大类 2 / 小类 21: 多余的汇总行"), differences);
+        verify(summaryRepository, never()).save(any());
+        verify(summaryRepository, never()).saveAll(any());
+        verify(summaryRepository, never()).deleteByFamilyIdAndSummaryYear(anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("增量更新的结果应与全量重算一致")
+    void incrementalUpdateShouldMatchRebuild() {
+        // 汇总表替身：保存、删除直接作用在内存列表上
+        List<AnnualExpenseSummary> table = new ArrayList<>();
+        when(summaryRepository.findByFamilyIdAndSummaryYear(1L, 2024)).thenAnswer(inv -> new ArrayList<>(table));
+        when(summaryRepository.saveAll(any())).thenAnswer(inv -> {
+            List<AnnualExpenseSummary> saved = inv.getArgument(0);
+            table.addAll(saved);
+            return saved;
+        });
+        lenient().when(summaryRepository.save(any())).thenAnswer(inv -> {
+            AnnualExpenseSummary saved = inv.getArgument(0);
+            if (table.stream().noneMatch(r -> r == saved)) {
+                table.add(saved);
+            }
+            return saved;
+        });
+        lenient().doAnswer(inv -> table.removeIf(r -> r == inv.getArgument(0))).when(summaryRepository).delete(any());
+        lenient().doAnswer(inv -> {
+            Iterable<?> removed = inv.getArgument(0);
+            removed.forEach(gone -> table.removeIf(r -> r == gone));
+            return null;
+        }).when(summaryRepository).deleteAll(any());
+
+        stubConfigs(new Object[]{3L, "ASSET", "STOCKS", null, "SUBTRACT"});
+        when(assetRecordRepository.findLatestRecordsByFamilyAndDate(1L, END_2024))
+            .thenReturn(List.of(assetBalance("STOCKS", "USD", "1200")));
+        when(assetRecordRepository.findLatestRecordsByFamilyAndDate(1L, END_2023))
+            .thenReturn(List.of(assetBalance("STOCKS", "USD", "1000")));
+        when(exchangeRateService.getExchangeRate(eq("USD"), any())).thenReturn(BigDecimal.ONE);
+
+        List<ExpenseRecord> records = new ArrayList<>(List.of(
+            record(3L, 30L, "100", "USD"),
+            record(3L, 31L, "700", "CNY"),
+            record(4L, 40L, "50", "USD")));
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYear(1L, 2024)).thenAnswer(inv -> List.copyOf(records));
+        when(expenseRecordRepository.findByFamilyIdAndExpenseYearAndMajorCategoryIdIn(eq(1L), eq(2024), any()))
+            .thenAnswer(inv -> {
+                Collection<Long> majors = inv.getArgument(2);
+                return records.stream().filter(r -> majors.contains(r.getMajorCategoryId())).toList();
+            });
+
+        summaryService.rebuild(1L, 2024);
+        assertEquals(List.of(), summaryService.verify(1L, 2024));
+
+        // 修改大类3、删除大类4唯一的记录、新增大类5
+        records.set(0, record(3L, 30L, "250", "USD"));
+        records.remove(2);
+        records.add(record(5L, 50L, "80", "USD"));
+        summaryService.onExpenseRecordsChanged(1L, 2024, List.of(3L, 4L, 5L));
+
+        assertEquals(List.of(), summaryService.verify(1L, 2024));
+        // 大类3：250 + 700×0.14 = 348，STOCKS 1200 - 1000 = 200 按 SUBTRACT 扣除
+        assertAmount("200.00", majorRow(table, 3L).getAssetAdjustment());
+        assertAmount("148.00", majorRow(table, 3L).getActualExpenseAmount());
+        assertTrue(table.stream().noneMatch(r -> Long.valueOf(4L).equals(r.getMajorCategoryId())));
+    }
+}
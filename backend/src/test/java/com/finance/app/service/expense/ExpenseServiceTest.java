@@ -3,6 +3,8 @@ package com.finance.app.service.expense;
 import com.finance.app.dto.expense.*;
 import com.finance.app.model.*;
 import com.finance.app.repository.*;
+import com.finance.app.service.ReferenceDataCache;
+import com.finance.app.service.expense.AnnualExpenseSummaryService;
 import com.finance.app.service.expense.ExpenseService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -43,6 +45,15 @@ class ExpenseServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private AnnualExpenseSummaryService annualExpenseSummaryService;
+
+    @Mock
+    private ReferenceDataCache referenceDataCache;
+
+    @Mock
+    private RecordBatchInsertRepository recordBatchInsertRepository;
+
     @InjectMocks
     private ExpenseService expenseService;
 
@@ -295,10 +306,9 @@ class ExpenseServiceTest {
 
         batchRequest.setRecords(Arrays.asList(record1));
 
-        when(minorRepository.findById(1L)).thenReturn(Optional.of(minorCategory));
-        when(recordRepository.findByFamilyIdAndExpensePeriodAndMinorCategoryId(anyLong(), anyString(), anyLong()))
+        when(referenceDataCache.findExpenseMinor(1L)).thenReturn(Optional.of(minorCategory));
+        when(recordRepository.findByFamilyIdAndExpensePeriod(1L, "2024-12"))
             .thenReturn(Collections.emptyList());
-        when(recordRepository.save(any(ExpenseRecord.class))).thenReturn(expenseRecord);
 
         // When
         List<ExpenseRecordDTO> results = expenseService.batchSaveExpenseRecords(batchRequest);
@@ -306,7 +316,9 @@ class ExpenseServiceTest {
         // Then
         assertNotNull(results);
         assertEquals(1, results.size());
-        verify(recordRepository).save(any(ExpenseRecord.class));
+        verify(recordBatchInsertRepository).insertExpenseRecords(argThat(records -> records.size() == 1
+            && records.get(0).getMinorCategoryId().equals(1L)));
+        verify(recordRepository, never()).save(any(ExpenseRecord.class));
     }
 
     @Test
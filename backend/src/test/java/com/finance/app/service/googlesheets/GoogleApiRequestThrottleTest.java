@@ -0,0 +1,178 @@
+package com.finance.app.service.googlesheets;
+
+import com.finance.app.service.GoogleApiClientProvider;
+import com.finance.app.service.GoogleApiRequestThrottle;
+import com.finance.app.service.GoogleOAuthService;
+import com.finance.app.service.GoogleSheetsService;
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.client.util.NanoClock;
+import com.google.api.client.util.Sleeper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 在注入配额错误的本地替身服务器上验证限流和退避重试（时钟和休眠为虚拟时间）
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("GoogleApiRequestThrottle Tests")
+class GoogleApiRequestThrottleTest {
+
+    @Mock
+    private GoogleOAuthService googleOAuthService;
+
+    private HttpServer server;
+    private final Queue<Integer> injectedStatuses = new ConcurrentLinkedQueue<>();
+    private final List<String> paths = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final List<Long> sleeps = new CopyOnWriteArrayList<>();
+    private final NanoClock clock = nanoTime::get;
+    private final Sleeper sleeper = millis -> {
+        sleeps.add(millis);
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    };
+
+    private GoogleApiClientProvider clientProvider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Credential credential = new Credential(BearerToken.authorizationHeaderAccessMethod())
+            .setAccessToken("test-token");
+        when(googleOAuthService.getSavedCredential()).thenReturn(credential);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (clientProvider != null) {
+            clientProvider.shutdown();
+        }
+        server.stop(0);
+    }
+
+    private GoogleSheetsService sheetsService(int accountPerMinute, int spreadsheetPerMinute, int maxAttempts) {
+        GoogleApiRequestThrottle throttle = new GoogleApiRequestThrottle(
+            accountPerMinute, spreadsheetPerMinute, maxAttempts, 1000, 32000, clock, sleeper);
+        String rootUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+        clientProvider = new GoogleApiClientProvider(googleOAuthService, new ApacheHttpTransport(), rootUrl, throttle);
+        return new GoogleSheetsService(clientProvider);
+    }
+
+    @Test
+    @DisplayName("Should retry quota errors with jittered backoff and honour Retry-After")
+    void shouldRetryQuotaErrors() throws Exception {
+        GoogleSheetsService sheetsService = sheetsService(100, 100, 5);
+        injectedStatuses.addAll(List.of(429, 503));
+
+        sheetsService.writeData("sheet-1", "Data", List.of(List.of("A", 1)));
+
+        assertEquals(3, paths.size());
+        assertEquals(2, sleeps.size());
+        assertEquals(3000L, sleeps.get(0), "首次 429 带 Retry-After: 3，应至少等待 3 秒");
+        assertTrue(sleeps.get(1) >= 1000 && sleeps.get(1) <= 3000, "第二次退避应为 2 秒 ±50%: " + sleeps.get(1));
+    }
+
+    @Test
+    @DisplayName("Should not retry client errors and give up after max attempts")
+    void shouldStopOnClientErrorsAndAfterMaxAttempts() throws Exception {
+        GoogleSheetsService sheetsService = sheetsService(100, 100, 3);
+
+        injectedStatuses.add(400);
+        GoogleJsonResponseException badRequest = assertThrows(GoogleJsonResponseException.class,
+            () -> sheetsService.writeData("sheet-1", "Data", List.of(List.of("A"))));
+        assertEquals(400, badRequest.getStatusCode());
+        assertEquals(1, paths.size());
+        assertTrue(sleeps.isEmpty());
+
+        injectedStatuses.addAll(List.of(500, 500, 500));
+        GoogleJsonResponseException serverError = assertThrows(GoogleJsonResponseException.class,
+            () -> sheetsService.writeData("sheet-1", "Data", List.of(List.of("A"))));
+        assertEquals(500, serverError.getStatusCode());
+        assertEquals(4, paths.size(), "最多尝试 3 次");
+        assertEquals(2, sleeps.size());
+    }
+
+    @Test
+    @DisplayName("Should not retry server errors on non-idempotent create, but retry quota errors")
+    void shouldOnlyRetryQuotaErrorsForCreate() throws Exception {
+        GoogleSheetsService sheetsService = sheetsService(100, 100, 5);
+
+        injectedStatuses.add(503);
+        GoogleJsonResponseException serverError = assertThrows(GoogleJsonResponseException.class,
+            () -> sheetsService.createSpreadsheet("Report"));
+        assertEquals(503, serverError.getStatusCode());
+        assertEquals(List.of("/v4/spreadsheets"), paths, "服务端可能已创建，不能重发");
+        assertTrue(sleeps.isEmpty());
+
+        injectedStatuses.add(429);
+        sheetsService.createSpreadsheet("Report");
+        assertEquals(3, paths.size(), "429 未执行请求，可以重发");
+        assertEquals(1, sleeps.size());
+    }
+
+    @Test
+    @DisplayName("Should pace requests per spreadsheet with a token bucket")
+    void shouldPaceRequestsPerSpreadsheet() throws Exception {
+        GoogleSheetsService sheetsService = sheetsService(100, 2, 5);
+
+        sheetsService.writeData("sheet-1", "Data", List.of(List.of("A")));
+        sheetsService.writeData("sheet-1", "Data", List.of(List.of("A")));
+        sheetsService.writeData("sheet-2", "Data", List.of(List.of("A")));
+        assertTrue(sleeps.isEmpty(), "配额内的请求和其他表格的请求不需要等待");
+
+        sheetsService.writeData("sheet-1", "Data", List.of(List.of("A")));
+        assertEquals(List.of(30_000L), sleeps, "每分钟 2 次：第 3 次请求等待半分钟");
+        assertEquals(4, paths.size());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        paths.add(exchange.getRequestURI().getPath());
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+
+        Integer injected = injectedStatuses.poll();
+        int status = injected != null ? injected : 200;
+        String body = status == 200
+            ? "{}"
+            : "{\"error\":{\"code\":" + status + ",\"message\":\"injected\"}}";
+        if (status == 429 && paths.size() == 1) {
+            exchange.getResponseHeaders().set("Retry-After", "3");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.finance.app.service.googlesheets;
+
+import com.finance.app.model.GoogleSheetsSync;
+import com.finance.app.repository.GoogleSheetsSyncRepository;
+import com.finance.app.service.GoogleSheetsExportQueue;
+import com.finance.app.service.GoogleSheetsExportService;
+import com.finance.app.service.SseEmitterManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 导出任务队列：同一家庭年份去重、取消、跨实例进度转发
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("GoogleSheetsExportQueue Tests")
+class GoogleSheetsExportQueueTest {
+
+    @Mock private GoogleSheetsSyncRepository googleSheetsSyncRepository;
+    @Mock private GoogleSheetsExportService googleSheetsExportService;
+    @Mock private SseEmitterManager sseEmitterManager;
+    @Mock private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private GoogleSheetsExportQueue queue;
+    private GoogleSheetsSync sync;
+
+    @BeforeEach
+    void setUp() {
+        queue = new GoogleSheetsExportQueue(googleSheetsSyncRepository, googleSheetsExportService,
+            sseEmitterManager, meterRegistry, 2, 30, 5000, 3, 20, 60_000, 1000, "test-instance");
+
+        sync = new GoogleSheetsSync();
+        sync.setId(1L);
+        sync.setFamilyId(1L);
+        sync.setYear(2024);
+        sync.setSpreadsheetId("sheet-1");
+        sync.setStatus("IN_PROGRESS");
+        sync.setProgress(35);
+    }
+
+    @Test
+    @DisplayName("Should return the running task instead of starting a competing export")
+    void shouldDeduplicateRunningTask() {
+        when(googleSheetsSyncRepository.findByFamilyIdAndYear(1L, 2024)).thenReturn(Optional.of(sync));
+        when(googleSheetsSyncRepository.requeue(eq(1L), eq("reader"), isNull(), any())).thenReturn(0);
+        when(googleSheetsSyncRepository.findById(1L)).thenReturn(Optional.of(sync));
+
+        Map<String, Object> result = queue.enqueue(1L, 2024, "reader");
+
+        assertEquals(1L, result.get("syncId"));
+        assertEquals("IN_PROGRESS", result.get("status"));
+        assertEquals(35, result.get("progress"));
+        verify(googleSheetsSyncRepository, never()).save(any());
+        verifyNoInteractions(googleSheetsExportService);
+    }
+
+    @Test
+    @DisplayName("Should requeue a finished task for the same family and year")
+    void shouldRequeueFinishedTask() {
+        when(googleSheetsSyncRepository.findByFamilyIdAndYear(1L, 2024)).thenReturn(Optional.of(sync));
+        when(googleSheetsSyncRepository.requeue(eq(1L), eq("writer"), isNull(), any())).thenReturn(1);
+
+        Map<String, Object> result = queue.enqueue(1L, 2024, "writer");
+
+        assertEquals(1L, result.get("syncId"));
+        assertEquals("PENDING", result.get("status"));
+        verify(googleSheetsSyncRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Should cancel queued tasks directly and flag running ones")
+    void shouldCancelQueuedOrFlagRunning() {
+        when(googleSheetsSyncRepository.cancelQueued(eq(1L), any(), any())).thenReturn(1);
+        when(googleSheetsSyncRepository.cancelQueued(eq(2L), any(), any())).thenReturn(0);
+        when(googleSheetsSyncRepository.requestCancel(eq(2L), any())).thenReturn(1);
+        when(googleSheetsSyncRepository.cancelQueued(eq(3L), any(), any())).thenReturn(0);
+        when(googleSheetsSyncRepository.requestCancel(eq(3L), any())).thenReturn(0);
+
+        assertEquals("CANCELLED", queue.cancel(1L));
+        assertEquals("CANCELLING", queue.cancel(2L));
+        assertNull(queue.cancel(3L));
+        verify(sseEmitterManager).sendError(1L, "同步任务已取消");
+        verify(googleSheetsSyncRepository, never()).requestCancel(eq(1L), any());
+    }
+
+    @Test
+    @DisplayName("Should relay progress of a task running on another instance once per change")
+    void shouldRelayRemoteProgress() {
+        when(sseEmitterManager.activeStreams()).thenReturn(List.of("1"));
+        when(googleSheetsSyncRepository.findAllById(List.of(1L))).thenReturn(List.of(sync));
+
+        ReflectionTestUtils.invokeMethod(queue, "relayRemoteProgress");
+        ReflectionTestUtils.invokeMethod(queue, "relayRemoteProgress");
+        sync.setStatus("COMPLETED");
+        sync.setProgress(100);
+        sync.setShareUrl("https://docs.google.com/spreadsheets/d/sheet-1");
+        ReflectionTestUtils.invokeMethod(queue, "relayRemoteProgress");
+
+        verify(sseEmitterManager, times(1)).sendProgress(eq(1L), eq(35), eq("IN_PROGRESS"), any());
+        verify(sseEmitterManager).sendSuccess(1L, "https://docs.google.com/spreadsheets/d/sheet-1", "sheet-1");
+    }
+
+    @Test
+    @DisplayName("Should finish a remote batch stream once every year has ended")
+    void shouldFinishRemoteBatch() {
+        GoogleSheetsSync failed = new GoogleSheetsSync();
+        failed.setId(2L);
+        failed.setYear(2025);
+        failed.setStatus("FAILED");
+        failed.setErrorMessage("配额不足");
+        sync.setStatus("COMPLETED");
+        when(sseEmitterManager.activeStreams()).thenReturn(List.of(SseEmitterManager.batchStream("b1")));
+        when(googleSheetsSyncRepository.findByBatchIdOrderByYear("b1")).thenReturn(List.of(sync, failed));
+
+        ReflectionTestUtils.invokeMethod(queue, "relayRemoteProgress");
+
+        verify(sseEmitterManager).finish(eq(SseEmitterManager.batchStream("b1")), eq("complete"),
+            argThat(data -> "PARTIAL".equals(data.get("status")) && Long.valueOf(1).equals(data.get("completed"))));
+    }
+}
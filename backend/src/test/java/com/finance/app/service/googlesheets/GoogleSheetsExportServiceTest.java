@@ -0,0 +1,210 @@
+package com.finance.app.service.googlesheets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.finance.app.model.GoogleSheetsSync;
+import com.finance.app.repository.*;
+import com.finance.app.service.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 重新导出时按工作表指纹跳过未变化的工作表
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("GoogleSheetsExportService Incremental Export Tests")
+class GoogleSheetsExportServiceTest {
+
+    private static final List<String> TABS = List.of(
+        "资产负债表", "资产负债表明细", "开支表-USD", "开支表-CNY", "投资账户明细", "退休账户明细");
+
+    @Mock private GoogleSheetsService googleSheetsService;
+    @Mock private GoogleSheetsSyncRepository googleSheetsSyncRepository;
+    @Mock private AssetAccountRepository assetAccountRepository;
+    @Mock private AssetRecordRepository assetRecordRepository;
+    @Mock private LiabilityAccountRepository liabilityAccountRepository;
+    @Mock private LiabilityRecordRepository liabilityRecordRepository;
+    @Mock private ExpenseRecordRepository expenseRecordRepository;
+    @Mock private ExpenseBudgetRepository expenseBudgetRepository;
+    @Mock private ExpenseCategoryMajorRepository expenseCategoryMajorRepository;
+    @Mock private ExpenseCategoryMinorRepository expenseCategoryMinorRepository;
+    @Mock private AssetTypeRepository assetTypeRepository;
+    @Mock private LiabilityTypeRepository liabilityTypeRepository;
+    @Mock private ExchangeRateService exchangeRateService;
+    @Mock private UserRepository userRepository;
+    @Mock private SseEmitterManager sseEmitterManager;
+    @Mock private AnalysisService analysisService;
+    @Mock private FamilyRepository familyRepository;
+    @Mock private ExportWatermarkService exportWatermarkService;
+    @Mock private PlatformTransactionManager transactionManager;
+    @Spy private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private GoogleSheetsExportService exportService;
+
+    private GoogleSheetsSync sync;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sync = new GoogleSheetsSync();
+        sync.setId(1L);
+        sync.setFamilyId(1L);
+        sync.setYear(2024);
+        sync.setSpreadsheetId("sheet-1");
+        sync.setShareUrl("https://docs.google.com/spreadsheets/d/sheet-1");
+        sync.setPermission("reader");
+        lenient().when(googleSheetsSyncRepository.findById(1L)).thenReturn(Optional.of(sync));
+        lenient().when(googleSheetsSyncRepository.updateProgress(anyLong(), eq("test-instance"), anyInt(), any(), any()))
+            .thenReturn(1);
+        lenient().when(googleSheetsSyncRepository.finishRun(anyLong(), eq("test-instance"), any(), any(), any(), any(),
+            any(), any(), any(), any())).thenReturn(1);
+
+        Map<String, Integer> sheetIds = new LinkedHashMap<>();
+        for (int i = 0; i < TABS.size(); i++) {
+            sheetIds.put(TABS.get(i), i + 1);
+        }
+        lenient().when(googleSheetsService.getSheetIds("sheet-1")).thenReturn(sheetIds);
+    }
+
+    @Test
+    @DisplayName("Should skip every tab whose source watermark is unchanged")
+    void shouldSkipUnchangedTabs() throws Exception {
+        when(exportWatermarkService.watermark(eq(1L), eq(2024), anySet(), anyMap())).thenReturn("w");
+        Map<String, Map<String, String>> previous = new LinkedHashMap<>();
+        for (String tab : TABS) {
+            Map<String, String> fingerprint = new LinkedHashMap<>();
+            fingerprint.put("watermark", "1:w");
+            fingerprint.put("content", "c-" + tab);
+            previous.put(tab, fingerprint);
+        }
+        String fingerprints = objectMapper.writeValueAsString(previous);
+        sync.setTabFingerprints(fingerprints);
+
+        exportService.executeExport(1L, "test-instance", 30);
+
+        assertEquals("COMPLETED", sync.getStatus());
+        assertEquals(fingerprints, sync.getTabFingerprints());
+        for (String tab : TABS) {
+            verify(sseEmitterManager).sendProgress(eq(1L), anyInt(), any(), eq("数据未变化，跳过" + tab));
+        }
+        verify(googleSheetsService, never()).batchWriteData(any(), any());
+        verify(googleSheetsService, never()).batchClear(any(), any());
+        verifyNoInteractions(analysisService, assetAccountRepository, expenseRecordRepository);
+        verify(sseEmitterManager).sendSuccess(1L, sync.getShareUrl(), "sheet-1");
+    }
+
+    @Test
+    @DisplayName("Should drop saved fingerprints when export fails")
+    void shouldClearFingerprintsOnFailure() throws Exception {
+        when(exportWatermarkService.watermark(eq(1L), eq(2024), anySet(), anyMap())).thenReturn("changed");
+        sync.setTabFingerprints("{\"资产负债表\":{\"watermark\":\"1:w\",\"content\":\"c\"}}");
+        when(analysisService.getNetAssetAllocation(any(), any(), any(), any()))
+            .thenThrow(new IllegalStateException("boom"));
+
+        exportService.executeExport(1L, "test-instance", 30);
+
+        assertEquals("FAILED", sync.getStatus());
+        assertNull(sync.getTabFingerprints());
+        verify(sseEmitterManager).sendError(1L, "boom");
+    }
+
+    @Test
+    @DisplayName("Should stop without writing results once the lease has been requeued")
+    void shouldStopWhenLeaseIsLost() throws Exception {
+        when(googleSheetsSyncRepository.updateProgress(eq(1L), eq("test-instance"), eq(5), any(), any()))
+            .thenReturn(0);
+
+        exportService.executeExport(1L, "test-instance", 30);
+
+        verify(googleSheetsSyncRepository, never()).finishRun(anyLong(), any(), any(), any(), any(), any(),
+            any(), any(), any(), any());
+        verify(googleSheetsSyncRepository, never()).save(any());
+        verify(sseEmitterManager, never()).sendError(anyLong(), any());
+        verifyNoInteractions(googleSheetsService, exportWatermarkService);
+    }
+
+    @Test
+    @DisplayName("Should load the family-year dataset once for all rebuilt tabs")
+    void shouldLoadDatasetOnceForAllTabs() throws Exception {
+        when(exportWatermarkService.watermark(eq(1L), eq(2024), anySet(), anyMap())).thenReturn("changed");
+        when(analysisService.getNetAssetAllocation(any(), any(), any(), any())).thenReturn(Map.of("data", List.of()));
+
+        exportService.executeExport(1L, "test-instance", 30);
+
+        assertEquals("COMPLETED", sync.getStatus());
+        verify(assetAccountRepository, times(1)).findByFamilyIdAndIsActiveTrue(1L);
+        verify(userRepository, times(1)).findByFamilyId(1L);
+        verify(expenseCategoryMajorRepository, times(1)).findAll();
+        verify(expenseRecordRepository, times(1)).findByFamilyIdAndPeriodRange(1L, "2023-01", "2024-12");
+        verify(userRepository, never()).findAll();
+        // 家庭净资产配置：USD/CNY/All × 年末/去年年末
+        verify(analysisService, times(6)).getNetAssetAllocation(isNull(), eq(1L), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should share one data load across the years of a batch export")
+    void shouldShareDataLoadAcrossBatchYears() throws Exception {
+        GoogleSheetsSync previousYear = new GoogleSheetsSync();
+        previousYear.setId(2L);
+        previousYear.setFamilyId(1L);
+        previousYear.setYear(2023);
+        previousYear.setSpreadsheetId("sheet-2");
+        previousYear.setShareUrl("https://docs.google.com/spreadsheets/d/sheet-2");
+        previousYear.setPermission("reader");
+        when(googleSheetsSyncRepository.findById(2L)).thenReturn(Optional.of(previousYear));
+        when(googleSheetsService.getSheetIds("sheet-2")).thenReturn(Map.of());
+        when(exportWatermarkService.watermark(eq(1L), anyInt(), anySet(), anyMap())).thenReturn("changed");
+        when(analysisService.getNetAssetAllocation(any(), any(), any(), any())).thenReturn(Map.of("data", List.of()));
+
+        exportService.executeBatch("b1", List.of(1L, 2L), "test-instance", 30);
+
+        assertEquals("COMPLETED", sync.getStatus());
+        assertEquals("COMPLETED", previousYear.getStatus());
+        verify(assetAccountRepository, times(1)).findByFamilyIdAndIsActiveTrue(1L);
+        verify(expenseCategoryMajorRepository, times(1)).findAll();
+        verify(expenseRecordRepository, times(1)).findByFamilyIdAndPeriodRange(1L, "2022-01", "2024-12");
+        // 2023 年末同时是 2024 年的去年年末，只查询一次
+        verify(assetRecordRepository, times(1)).findLatestRecordsByFamilyAndDate(1L, LocalDate.of(2023, 12, 31));
+        verify(analysisService, times(9)).getNetAssetAllocation(isNull(), eq(1L), any(), any());
+        verify(sseEmitterManager).finish(eq(SseEmitterManager.batchStream("b1")), eq("complete"), anyMap());
+    }
+
+    @Test
+    @DisplayName("Should render a dry run into the in-memory model without calling the Sheets API")
+    void shouldDryRunWithoutCallingSheetsApi() throws Exception {
+        when(analysisService.getNetAssetAllocation(any(), any(), any(), any())).thenReturn(Map.of("data", List.of()));
+
+        GoogleSheetsExportService.DryRunReport report = exportService.dryRunAnnualReport(1L, 2024);
+
+        assertEquals(TABS, report.tabs().stream().map(GoogleSheetsExportService.DryRunTab::title).toList());
+        for (GoogleSheetsExportService.DryRunTab tab : report.tabs()) {
+            assertTrue(tab.rows() > 0 && tab.cells() > 0, tab.title());
+        }
+        // 新建表格 + 读取工作表 + 新增工作表 + 一次数据写入 + 一次格式提交（含删除默认工作表）+ 设置权限
+        assertEquals(Map.of("spreadsheets.create", 1, "spreadsheets.get", 1, "values.batchUpdate", 1,
+            "spreadsheets.batchUpdate", 2, "permissions.create", 1), report.apiRequests());
+        assertEquals(6, report.totalApiRequests());
+        verify(googleSheetsService, never()).createSpreadsheet(any());
+        verify(googleSheetsService, never()).getSheetIds(any());
+        verify(googleSheetsService, never()).batchWriteData(any(), any());
+        verify(googleSheetsService, never()).formatCells(any(), any());
+        verify(googleSheetsService, never()).setPermissions(any(), any());
+        verifyNoInteractions(googleSheetsSyncRepository, sseEmitterManager);
+    }
+}
@@ -0,0 +1,118 @@
+package com.finance.app.service.googlesheets;
+
+import com.finance.app.service.GoogleApiClientProvider;
+import com.finance.app.service.GoogleOAuthService;
+import com.finance.app.service.GoogleSheetsService;
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.services.sheets.v4.model.Request;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 在本地替身 HTTP 服务器上验证 Sheets 客户端复用连接和凭证
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("GoogleSheetsService Client Reuse Tests")
+class GoogleSheetsServiceTest {
+
+    private static final String SPREADSHEET_ID = "sheet-1";
+
+    @Mock
+    private GoogleOAuthService googleOAuthService;
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    private GoogleApiClientProvider clientProvider;
+    private GoogleSheetsService sheetsService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        Credential credential = new Credential(BearerToken.authorizationHeaderAccessMethod())
+            .setAccessToken("test-token");
+        when(googleOAuthService.getSavedCredential()).thenReturn(credential);
+
+        String rootUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+        clientProvider = new GoogleApiClientProvider(googleOAuthService, new ApacheHttpTransport(), rootUrl);
+        sheetsService = new GoogleSheetsService(clientProvider);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        clientProvider.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("Should reuse one keep-alive connection across API calls")
+    void shouldReuseConnectionAcrossCalls() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(sheetsService.sheetExists(SPREADSHEET_ID, "Data"));
+            sheetsService.writeData(SPREADSHEET_ID, "Data", List.of(List.of("A", i)));
+            sheetsService.formatCells(SPREADSHEET_ID, List.of(new Request()));
+        }
+
+        assertEquals(15, authorizations.size());
+        assertEquals(1, clientPorts.size(), "所有请求应复用同一个连接");
+    }
+
+    @Test
+    @DisplayName("Should authorize every request with the current saved credential")
+    void shouldUseCurrentCredentialForEachRequest() throws Exception {
+        sheetsService.sheetExists(SPREADSHEET_ID, "Data");
+
+        Credential renewed = new Credential(BearerToken.authorizationHeaderAccessMethod())
+            .setAccessToken("renewed-token");
+        when(googleOAuthService.getSavedCredential()).thenReturn(renewed);
+        sheetsService.sheetExists(SPREADSHEET_ID, "Data");
+
+        assertEquals(List.of("Bearer test-token", "Bearer renewed-token"), authorizations);
+        verify(googleOAuthService, times(2)).getSavedCredential();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+
+        String body = "GET".equals(exchange.getRequestMethod())
+            ? "{\"sheets\":[{\"properties\":{\"sheetId\":1,\"title\":\"Data\"}}]}"
+            : "{}";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.finance.app.service.googlesheets;
+
+import com.finance.app.service.CsvZipReportWriter;
+import com.finance.app.service.XlsxReportWriter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Report file writer Tests")
+class ReportFileWriterTest {
+
+    private static final List<List<Object>> ROWS = List.of(
+        List.of("2024年资产负债表"),
+        List.of(),
+        Arrays.asList("账户, \"现金\"", 12345678.9, new BigDecimal("100.50"), null));
+
+    @Test
+    @DisplayName("Should write one quoted CSV entry per tab")
+    void shouldWriteCsvEntries() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        CsvZipReportWriter writer = new CsvZipReportWriter(zip);
+        writer.beginReport("2024/");
+        writer.addSheet("资产负债表");
+        writer.writeData("资产负债表", ROWS);
+        writer.beginReport("2023/");
+        writer.addSheet("开支表-USD");
+        writer.writeData("开支表-USD", List.of(List.of("a")));
+        zip.finish();
+
+        Map<String, String> entries = unzip(out.toByteArray());
+        assertEquals(List.of("2024/资产负债表.csv", "2023/开支表-USD.csv"), List.copyOf(entries.keySet()));
+        assertEquals("\uFEFF2024年资产负债表\r\n\r\n\"账户, \"\"现金\"\"\",12345678.9,100.5,\r\n",
+            entries.get("2024/资产负债表.csv"));
+    }
+
+    @Test
+    @DisplayName("Should stream worksheets and write workbook parts on finish")
+    void shouldWriteXlsxWorkbook() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XlsxReportWriter writer = new XlsxReportWriter(out);
+        writer.beginReport("2024 ");
+        writer.writeData("资产负债表", ROWS);
+        writer.beginReport("2024 ");
+        writer.writeData("资产负债表", List.of());
+        writer.finish();
+
+        Map<String, String> entries = unzip(out.toByteArray());
+        assertTrue(entries.keySet().containsAll(List.of("xl/worksheets/sheet1.xml", "xl/worksheets/sheet2.xml",
+            "[Content_Types].xml", "_rels/.rels", "xl/workbook.xml", "xl/_rels/workbook.xml.rels")));
+
+        String sheet = entries.get("xl/worksheets/sheet1.xml");
+        assertTrue(sheet.contains("<row r=\"2\"></row>"));
+        assertTrue(sheet.contains("<c r=\"A3\" t=\"inlineStr\"><is><t xml:space=\"preserve\">账户, &quot;现金&quot;</t></is></c>"));
+        assertTrue(sheet.contains("<c r=\"B3\"><v>12345678.9</v></c><c r=\"C3\"><v>100.5</v></c></row>"));
+
+        String workbook = entries.get("xl/workbook.xml");
+        assertTrue(workbook.contains("<sheet name=\"2024 资产负债表\" sheetId=\"1\" r:id=\"rId1\"/>"));
+        assertTrue(workbook.contains("<sheet name=\"2024 资产负债表(2)\" sheetId=\"2\" r:id=\"rId2\"/>"));
+    }
+
+    private static Map<String, String> unzip(byte[] bytes) throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,62 @@
+package com.finance.app.service.googlesheets;
+
+import com.finance.app.service.SseEmitterManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SSE进度流：多订阅者、结束后关闭订阅、重新排队后重置
+ */
+@DisplayName("SseEmitterManager Tests")
+class SseEmitterManagerTest {
+
+    private SseEmitterManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new SseEmitterManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Should fan out to every subscriber and close them all when the job finishes")
+    void shouldFanOutAndCloseOnFinish() {
+        manager.subscribe(1L, null, Map.of("syncId", 1L));
+        manager.subscribe(1L, null, Map.of("syncId", 1L));
+        manager.subscribe(2L, null, Map.of("syncId", 2L));
+        assertEquals(3, manager.getActiveConnectionCount());
+
+        manager.sendProgress(1L, 10, "IN_PROGRESS", "生成中");
+        manager.sendSuccess(1L, "https://docs.google.com/spreadsheets/d/abc", "abc");
+
+        assertTrue(manager.isFinished(1L));
+        assertFalse(manager.isFinished(2L));
+        assertEquals(1, manager.getActiveConnectionCount());
+    }
+
+    @Test
+    @DisplayName("Should keep the finished job's result for late subscribers until it is requeued")
+    void shouldKeepResultUntilReset() {
+        manager.sendError(1L, "导出失败");
+        manager.sendError(1L, "重复的失败事件");
+
+        manager.subscribe(1L, null, Map.of("syncId", 1L));
+        assertTrue(manager.isFinished(1L));
+        assertEquals(0, manager.getActiveConnectionCount());
+
+        manager.reset(1L);
+        assertFalse(manager.isFinished(1L));
+        manager.subscribe(1L, "0", Map.of("syncId", 1L));
+        assertEquals(1, manager.getActiveConnectionCount());
+    }
+}
@@ -0,0 +1,134 @@
+package com.finance.app.service.googlesheets;
+
+import com.finance.app.service.GoogleSheetsService;
+import com.finance.app.service.StagedSheetsWriter;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("StagedSheetsWriter Tests")
+class StagedSheetsWriterTest {
+
+    private static final String SPREADSHEET_ID = "sheet-1";
+
+    @Mock
+    private GoogleSheetsService googleSheetsService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(googleSheetsService.getSheetIds(SPREADSHEET_ID)).thenReturn(Map.of("工作表1", 0, "资产负债表", 7));
+    }
+
+    @Test
+    @DisplayName("Should flush all tabs with one call per stage")
+    void shouldFlushAllTabsInFewCalls() throws Exception {
+        StagedSheetsWriter writer = new StagedSheetsWriter(googleSheetsService, SPREADSHEET_ID);
+
+        assertEquals(7, writer.addSheet("资产负债表"));
+        writer.clearSheet("资产负债表");
+        writer.writeData("资产负债表", List.of(List.of("A", 1)));
+        for (String title : List.of("开支表-USD", "开支表-CNY", "投资账户明细")) {
+            Integer sheetId = writer.addSheet(title);
+            assertTrue(sheetId > 7);
+            writer.writeData(title, List.of(List.of(title), List.of(1, 2, 3)));
+            writer.formatCells(List.of(new Request(), new Request()));
+        }
+        writer.deleteSheet("工作表1");
+
+        assertEquals(4, writer.flush());
+
+        InOrder inOrder = inOrder(googleSheetsService);
+        ArgumentCaptor<List<Request>> requests = ArgumentCaptor.forClass(List.class);
+        inOrder.verify(googleSheetsService).formatCells(eq(SPREADSHEET_ID), requests.capture());
+        assertEquals(3, requests.getValue().size());
+        assertNotNull(requests.getValue().get(0).getAddSheet());
+        inOrder.verify(googleSheetsService).batchClear(SPREADSHEET_ID, List.of("'资产负债表'"));
+        ArgumentCaptor<List<ValueRange>> values = ArgumentCaptor.forClass(List.class);
+        inOrder.verify(googleSheetsService).batchWriteData(eq(SPREADSHEET_ID), values.capture());
+        assertEquals(4, values.getValue().size());
+        assertEquals("'开支表-USD'!A1", values.getValue().get(1).getRange());
+        inOrder.verify(googleSheetsService).formatCells(eq(SPREADSHEET_ID), requests.capture());
+        List<Request> formats = requests.getValue();
+        assertEquals(7, formats.size());
+        assertNotNull(formats.get(6).getDeleteSheet(), "删除默认工作表应排在最后");
+    }
+
+    @Test
+    @DisplayName("Should split oversized value and format payloads")
+    void shouldSplitLargePayloads() throws Exception {
+        StagedSheetsWriter writer = new StagedSheetsWriter(googleSheetsService, SPREADSHEET_ID);
+
+        List<List<Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 30_000; i++) {
+            rows.add(List.of(i, i, i));
+        }
+        writer.addSheet("退休账户明细");
+        writer.writeData("退休账户明细", rows);
+        writer.formatCells(Collections.nCopies(1_200, new Request()));
+
+        writer.flush();
+
+        ArgumentCaptor<List<ValueRange>> values = ArgumentCaptor.forClass(List.class);
+        verify(googleSheetsService, times(2)).batchWriteData(eq(SPREADSHEET_ID), values.capture());
+        List<ValueRange> first = values.getAllValues().get(0);
+        List<ValueRange> second = values.getAllValues().get(1);
+        int firstRows = first.get(0).getValues().size();
+        assertTrue(firstRows * 3 <= 50_000);
+        assertEquals("'退休账户明细'!A" + (firstRows + 1), second.get(0).getRange());
+        assertEquals(30_000, firstRows + second.get(0).getValues().size());
+
+        // 1 次新增工作表 + 3 次格式请求（每次最多 500 个）
+        verify(googleSheetsService, times(4)).formatCells(eq(SPREADSHEET_ID), anyList());
+        verify(googleSheetsService, never()).batchClear(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should fingerprint tab content and discard its staged writes")
+    void shouldFingerprintAndDiscardTab() throws Exception {
+        StagedSheetsWriter writer = new StagedSheetsWriter(googleSheetsService, SPREADSHEET_ID);
+        assertTrue(writer.hasSheet("资产负债表"));
+        assertFalse(writer.hasSheet("开支表-USD"));
+
+        writer.addSheet("资产负债表");
+        writer.clearSheet("资产负债表");
+        writer.writeData("资产负债表", List.of(List.of("A", 1)));
+        writer.formatCells(List.of(new Request()));
+        String fingerprint = writer.contentFingerprint("资产负债表");
+
+        StagedSheetsWriter rebuilt = new StagedSheetsWriter(googleSheetsService, SPREADSHEET_ID);
+        rebuilt.addSheet("资产负债表");
+        rebuilt.writeData("资产负债表", List.of(List.of("A", 1)));
+        rebuilt.formatCells(List.of(new Request()));
+        assertEquals(fingerprint, rebuilt.contentFingerprint("资产负债表"));
+        rebuilt.writeData("资产负债表", List.of(List.of("B", 2)));
+        assertNotEquals(fingerprint, rebuilt.contentFingerprint("资产负债表"));
+
+        writer.addSheet("开支表-USD");
+        writer.writeData("开支表-USD", List.of(List.of("X")));
+        writer.discardTab("资产负债表");
+
+        // 只剩新增工作表和它的数据
+        assertEquals(2, writer.flush());
+        verify(googleSheetsService, never()).batchClear(any(), any());
+        ArgumentCaptor<List<ValueRange>> values = ArgumentCaptor.forClass(List.class);
+        verify(googleSheetsService).batchWriteData(eq(SPREADSHEET_ID), values.capture());
+        assertEquals(List.of("'开支表-USD'!A1"), values.getValue().stream().map(ValueRange::getRange).toList());
+    }
+}
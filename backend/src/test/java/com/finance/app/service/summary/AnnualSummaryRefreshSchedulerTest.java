@@ -0,0 +1,112 @@
+package com.finance.app.service.summary;
+
+import com.finance.app.model.User;
+import com.finance.app.repository.AnnualFinancialSummaryRepository;
+import com.finance.app.repository.UserRepository;
+import com.finance.app.service.AnnualFinancialSummaryService;
+import com.finance.app.service.AnnualSummaryRefreshScheduler;
+import com.finance.app.service.income.IncomeAnalysisService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 年度汇总写后刷新：事务提交后合并标记，连续写入只刷新一次
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("AnnualSummaryRefreshScheduler Tests")
+class AnnualSummaryRefreshSchedulerTest {
+
+    @Mock private AnnualFinancialSummaryService annualFinancialSummaryService;
+    @Mock private IncomeAnalysisService incomeAnalysisService;
+    @Mock private AnnualFinancialSummaryRepository financialSummaryRepository;
+    @Mock private UserRepository userRepository;
+    @Mock private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private AnnualSummaryRefreshScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new AnnualSummaryRefreshScheduler(annualFinancialSummaryService, incomeAnalysisService,
+            financialSummaryRepository, userRepository, meterRegistry, true, 50, 5000, 2);
+
+        User user = new User();
+        user.setId(7L);
+        user.setFamilyId(1L);
+        lenient().when(userRepository.findById(7L)).thenReturn(Optional.of(user));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        scheduler.stop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("同一事务内的批量写入提交后合并为每个年份一次刷新")
+    void shouldCoalesceBatchIntoOneRefreshPerYear() {
+        int lastYear = LocalDate.now().getYear();
+        scheduler.start();
+
+        TransactionSynchronizationManager.initSynchronization();
+        for (int i = 0; i < 200; i++) {
+            scheduler.onBalanceRecordChanged(7L, LocalDate.of(lastYear, 1, 1).minusDays(i));
+            scheduler.onIncomeRecordsChanged(1L, lastYear + "-03");
+        }
+        verifyNoInteractions(userRepository, annualFinancialSummaryService, incomeAnalysisService);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        verify(incomeAnalysisService, timeout(2000)).refreshAnnualIncomeSummary(1L, lastYear, "USD");
+        InOrder inOrder = inOrder(annualFinancialSummaryService, incomeAnalysisService);
+        inOrder.verify(annualFinancialSummaryService).calculateAndRefreshSummary(1L, lastYear - 1);
+        inOrder.verify(annualFinancialSummaryService).calculateAndRefreshSummary(1L, lastYear);
+        inOrder.verify(incomeAnalysisService).refreshAnnualIncomeSummary(1L, lastYear, "All");
+        inOrder.verify(incomeAnalysisService).refreshAnnualIncomeSummary(1L, lastYear, "CNY");
+        verify(annualFinancialSummaryService, times(2)).calculateAndRefreshSummary(eq(1L), anyInt());
+        verify(userRepository, times(1)).findById(7L);
+    }
+
+    @Test
+    @DisplayName("连续标记在防抖时间内只触发一次刷新，回滚的事务不标记")
+    void shouldDebounceAndIgnoreRollback() throws InterruptedException {
+        scheduler.start();
+
+        TransactionSynchronizationManager.initSynchronization();
+        scheduler.onIncomeRecordsChanged(1L, "2023-01");
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        for (int i = 0; i < 5; i++) {
+            scheduler.onIncomeRecordsChanged(1L, "2024-0" + (i + 1));
+            Thread.sleep(10);
+        }
+
+        verify(incomeAnalysisService, timeout(2000)).refreshAnnualIncomeSummary(1L, 2024, "USD");
+        Thread.sleep(200);
+        verify(incomeAnalysisService, times(3)).refreshAnnualIncomeSummary(eq(1L), eq(2024), anyString());
+        verify(incomeAnalysisService, never()).refreshAnnualIncomeSummary(eq(1L), eq(2023), anyString());
+        verifyNoInteractions(annualFinancialSummaryService);
+    }
+}
@@ -0,0 +1,76 @@
+package com.finance.app.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MoneyAccumulator Tests")
+class MoneyAccumulatorTest {
+
+    @Test
+    @DisplayName("随机金额与汇率的累加结果应与 BigDecimal 逐位一致")
+    void shouldMatchBigDecimalArithmetic() {
+        Random random = new Random(42);
+        MoneyAccumulator plain = new MoneyAccumulator();
+        MoneyAccumulator converted = new MoneyAccumulator();
+        MoneyAccumulator product = new MoneyAccumulator(MoneyAccumulator.AMOUNT_SCALE + MoneyAccumulator.RATE_SCALE);
+        BigDecimal expectedPlain = BigDecimal.ZERO;
+        BigDecimal expectedConverted = BigDecimal.ZERO;
+        BigDecimal expectedProduct = BigDecimal.ZERO;
+
+        for (int i = 0; i < 10_000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(random.nextLong() % 100_000_000L, 2);
+            BigDecimal rate = BigDecimal.valueOf(random.nextInt(2_000_000_000), 8);
+
+            plain.add(amount);
+            converted.addConverted(amount, rate);
+            product.addProduct(amount, rate);
+            expectedPlain = expectedPlain.add(amount);
+            expectedConverted = expectedConverted.add(amount.multiply(rate).setScale(2, RoundingMode.HALF_UP));
+            expectedProduct = expectedProduct.add(amount.multiply(rate));
+        }
+
+        assertEquals(expectedPlain, plain.toBigDecimal());
+        assertEquals(expectedConverted, converted.toBigDecimal());
+        assertEquals(expectedProduct, product.toBigDecimal());
+    }
+
+    @Test
+    @DisplayName("舍入正好一半时应远离零（HALF_UP）")
+    void shouldRoundHalfAwayFromZero() {
+        BigDecimal rate = new BigDecimal("0.50000000");
+
+        assertEquals(new BigDecimal("0.01"), new MoneyAccumulator().addConverted(new BigDecimal("0.01"), rate).toBigDecimal());
+        assertEquals(new BigDecimal("-0.01"), new MoneyAccumulator().addConverted(new BigDecimal("-0.01"), rate).toBigDecimal());
+        assertEquals(new BigDecimal("0.00"),
+            new MoneyAccumulator().addConverted(new BigDecimal("0.01"), new BigDecimal("0.49999999")).toBigDecimal());
+    }
+
+    @Test
+    @DisplayName("结果精度应与 BigDecimal.add 一致，空累加返回 0")
+    void shouldKeepBigDecimalScale() {
+        assertEquals(BigDecimal.ZERO, new MoneyAccumulator().toBigDecimal());
+        assertEquals(new BigDecimal("15"),
+            new MoneyAccumulator().add(new BigDecimal("10")).add(new BigDecimal("5")).add(null).toBigDecimal());
+        assertEquals(new BigDecimal("10.5"),
+            new MoneyAccumulator().add(new BigDecimal("10")).add(new BigDecimal("0.5")).toBigDecimal());
+    }
+
+    @Test
+    @DisplayName("超出 long 范围或精度时应切换为 BigDecimal 精确累加")
+    void shouldSpillToBigDecimal() {
+        BigDecimal large = new BigDecimal("90000000000000000.00");
+        assertEquals(large.add(large), new MoneyAccumulator().add(large).add(large).toBigDecimal());
+
+        BigDecimal fine = new BigDecimal("0.001");
+        assertEquals(new BigDecimal("1.001"),
+            new MoneyAccumulator().add(BigDecimal.ONE).add(fine).toBigDecimal());
+        assertEquals(new BigDecimal("1.0000000001"),
+            new MoneyAccumulator().add(BigDecimal.ONE).addProduct(new BigDecimal("0.01"), new BigDecimal("0.00000001")).toBigDecimal());
+    }
+}
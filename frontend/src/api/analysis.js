@@ -12,6 +12,14 @@ export const analysisAPI = {
     return request.get('/analysis/summary', { params })
   },
 
+  // 获取仪表盘数据（总览、净资产配置、增强指标、风险评估一次返回）
+  getDashboard(familyId = null, asOfDate = null) {
+    const params = {}
+    if (familyId) params.familyId = familyId
+    if (asOfDate) params.asOfDate = asOfDate
+    return request.get('/analysis/dashboard', { params })
+  },
+
   // 获取总资产趋势 (不传userId则获取所有用户的资产)
   getTotalTrend(userId = null, startDate, endDate) {
     const params = {}